@@ -0,0 +1,71 @@
+package local.pphilfre.benchmarks;
+
+import local.pphilfre.GameController;
+import local.pphilfre.WorldGenerator;
+import local.pphilfre.datamodel.GameDefinition;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Loads the worlds the benchmarks run against. A world is named either by the path of a
+ * world file, such as the bundled world.json, or as {@code synthetic:<rooms>} for a world of
+ * that many rooms made by {@link WorldGenerator}, with an NPC and a puzzle for every 20 rooms.
+ * <p>
+ * A synthetic world is written and compiled in the temporary directory the first time it is
+ * asked for and reused after that, so only the first fork pays for making a large world.
+ */
+final class BenchmarkWorlds {
+    private static final String SYNTHETIC_PREFIX = "synthetic:";
+    private static final long SEED = 1;
+    private static final int ROOMS_PER_NPC = 20;
+
+    private BenchmarkWorlds() {
+    }
+
+    /**
+     * Loads a world, sealed and compiled, as a game would.
+     *
+     * @param world The path of a world file, or "synthetic:" followed by a number of rooms
+     * @return The game definition
+     * @throws IOException If the world cannot be written or loaded
+     */
+    static GameDefinition load(String world) throws IOException {
+        if (world.startsWith(SYNTHETIC_PREFIX)) {
+            int rooms = Integer.parseInt(world.substring(SYNTHETIC_PREFIX.length()));
+            return GameController.loadGameDefinition(synthetic(rooms).toString());
+        }
+        return GameController.loadGameDefinition(world);
+    }
+
+    /**
+     * Gets the file of a synthetic world, writing and compiling it if it does not exist yet.
+     *
+     * @param rooms The number of rooms, at least 2
+     * @return The world file
+     * @throws IOException If the world cannot be written
+     */
+    private static Path synthetic(int rooms) throws IOException {
+        Path file = Paths.get(System.getProperty("java.io.tmpdir"),
+                              "text-adventure-generated-" + rooms + "-seed" + SEED + ".json");
+        if (Files.isRegularFile(file)) {
+            return file;
+        }
+        
+        WorldGenerator generator = new WorldGenerator();
+        generator.setSeed(SEED);
+        generator.setRooms(rooms);
+        generator.setNpcs(Math.max(1, rooms / ROOMS_PER_NPC));
+        generator.setPuzzles(Math.max(1, rooms / ROOMS_PER_NPC));
+        
+        // Written beside the final name and moved into place, so concurrent runs never see half a world
+        Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        generator.write(temporary);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        GameController.compileWorld(file.toString());
+        return file;
+    }
+}
@@ -0,0 +1,93 @@
+package local.pphilfre.benchmarks;
+
+import local.pphilfre.GameController;
+import local.pphilfre.datamodel.CompiledWorld;
+import local.pphilfre.save.MemorySaveStore;
+import local.pphilfre.utils.DiscardingOutputSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures whole commands through {@link GameController#processCommand(String)}: parsing,
+ * dispatch, the command itself and the end-of-turn checks. Each thread plays its own game
+ * against the shared world, cycling through commands that leave it where it started, so the
+ * game never drifts or ends however long the benchmark runs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+    private GameController gameController;
+    private String[] commands;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void start(EngineState state) {
+        gameController = new GameController(new DiscardingOutputSink());
+        gameController.setSaveStore(new MemorySaveStore());
+        gameController.startGame(state.gameDefinition);
+        
+        List<String> walk = new ArrayList<>();
+        walk.add("look");
+        walk.add("inventory");
+        if (state.itemName != null) {
+            walk.add("examine " + state.itemName);
+        }
+        addRoundTrip(walk, state);
+        commands = walk.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public void processCommand() {
+        gameController.processCommand(commands[next]);
+        next = next + 1 < commands.length ? next + 1 : 0;
+    }
+
+    @Benchmark
+    public void saveAndLoad() {
+        gameController.processCommand("save benchmark");
+        gameController.processCommand("load benchmark");
+    }
+
+    /**
+     * Adds a step out of the start room and back, through the first exit that is open both ways.
+     *
+     * @param walk The commands to add to
+     * @param state The world being played
+     */
+    private static void addRoundTrip(List<String> walk, EngineState state) {
+        CompiledWorld compiledWorld = state.gameWorld.getCompiledWorld();
+        int start = compiledWorld.getRoomOrdinal(state.roomId);
+        for (int out = compiledWorld.getExitStart(start); out < compiledWorld.getExitEnd(start); out++) {
+            if (!compiledWorld.getExit(out).canPlayerPass(state.player, state.gameWorld, out)) {
+                continue;
+            }
+            
+            int target = compiledWorld.getExitTargetRoom(out);
+            for (int back = compiledWorld.getExitStart(target); back < compiledWorld.getExitEnd(target); back++) {
+                if (compiledWorld.getExitTargetRoom(back) == start
+                        && compiledWorld.getExit(back).canPlayerPass(state.player, state.gameWorld, back)) {
+                    walk.add("go " + compiledWorld.getExitDirection(out));
+                    walk.add("go " + compiledWorld.getExitDirection(back));
+                    return;
+                }
+            }
+        }
+    }
+}
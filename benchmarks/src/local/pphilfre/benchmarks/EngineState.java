@@ -0,0 +1,57 @@
+package local.pphilfre.benchmarks;
+
+import local.pphilfre.Player;
+import local.pphilfre.World;
+import local.pphilfre.datamodel.CompiledWorld;
+import local.pphilfre.datamodel.EndCondition;
+import local.pphilfre.datamodel.GameDefinition;
+import local.pphilfre.datamodel.Room;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A loaded world with a player standing in its start room, shared by the benchmarks that only
+ * read the world. The item looked up is taken from the start room and the NPC from wherever the
+ * first NPC stands, so every world size has the same kind of things to find.
+ */
+@State(Scope.Benchmark)
+public class EngineState {
+    @Param({"world.json", "synthetic:1000", "synthetic:100000"})
+    public String world;
+
+    GameDefinition gameDefinition;
+    World gameWorld;
+    Player player;
+    Room room;
+    String roomId;
+    String itemName; // the name of an item lying in the start room, or null if it is empty
+    String npcName;  // the name of the first NPC
+    String npcRoomId; // the room the first NPC stands in
+    int exit;        // the ordinal of the first exit out of the start room, or CompiledWorld.NONE
+    List<EndCondition> endConditions;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        gameDefinition = BenchmarkWorlds.load(world);
+        gameWorld = new World(gameDefinition);
+        roomId = gameDefinition.getPlayerStart().getStartRoomId();
+        player = new Player(roomId, gameDefinition.getPlayerStart().getInitialInventory(), gameWorld);
+        room = gameWorld.getRoom(roomId);
+        endConditions = gameDefinition.getEndConditions();
+        
+        CompiledWorld compiledWorld = gameWorld.getCompiledWorld();
+        int start = compiledWorld.getRoomOrdinal(roomId);
+        int item = gameWorld.getFirstRoomItem(start);
+        itemName = item != CompiledWorld.NONE ? compiledWorld.getItem(item).getName() : null;
+        npcName = compiledWorld.getNpc(0).getName();
+        npcRoomId = compiledWorld.getRoomId(gameWorld.getNpcRoom(0));
+        exit = compiledWorld.getExitStart(start) < compiledWorld.getExitEnd(start)
+                ? compiledWorld.getExitStart(start) : CompiledWorld.NONE;
+    }
+}
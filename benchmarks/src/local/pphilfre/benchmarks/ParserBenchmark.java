@@ -0,0 +1,45 @@
+package local.pphilfre.benchmarks;
+
+import local.pphilfre.CommandParser;
+import local.pphilfre.CommandParser.ParsedCommand;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link CommandParser#parse}, both filling a reused command as the game does and
+ * allocating a new one, over commands of every shape the parser recognises.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"look", "go north", "take rusty lever", "use the brass key on the heavy door", "  TALK   to  Old Keeper  "})
+    public String input;
+
+    private final CommandParser parser = new CommandParser();
+    private final ParsedCommand command = new ParsedCommand();
+
+    @Benchmark
+    public ParsedCommand parseInto() {
+        parser.parse(input, command);
+        return command;
+    }
+
+    @Benchmark
+    public ParsedCommand parseNew() {
+        return parser.parse(input);
+    }
+}
@@ -0,0 +1,73 @@
+package local.pphilfre.benchmarks;
+
+import local.pphilfre.datamodel.CompiledWorld;
+import local.pphilfre.datamodel.GameState;
+import local.pphilfre.save.SaveCodecs;
+import local.pphilfre.utils.JsonUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures saving and loading a game at its start, through {@link JsonUtil} as the JSON saves
+ * are written and through the binary save format for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaveBenchmark {
+    private CompiledWorld compiledWorld;
+    private GameState gameState;
+    private byte[] jsonSave;
+    private byte[] binarySave;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 16);
+
+    @Setup(Level.Trial)
+    public void capture(EngineState state) throws IOException {
+        compiledWorld = state.gameWorld.getCompiledWorld();
+        gameState = new GameState(state.player.getState(), state.gameWorld.getDynamicState(),
+                                  state.gameDefinition.getGameInfo().getVersion());
+        jsonSave = saveJson();
+        binarySave = saveBinary();
+    }
+
+    @Benchmark
+    public byte[] saveJson() throws IOException {
+        buffer.reset();
+        JsonUtil.writeObject(gameState, buffer);
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public GameState loadJson() throws IOException {
+        return JsonUtil.readObject(new ByteArrayInputStream(jsonSave), GameState.class);
+    }
+
+    @Benchmark
+    public byte[] saveBinary() throws IOException {
+        buffer.reset();
+        SaveCodecs.BINARY.write(gameState, compiledWorld, buffer);
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public GameState loadBinary() throws IOException {
+        return SaveCodecs.BINARY.read(new ByteArrayInputStream(binarySave), compiledWorld);
+    }
+}
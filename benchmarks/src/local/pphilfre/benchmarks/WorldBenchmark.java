@@ -0,0 +1,71 @@
+package local.pphilfre.benchmarks;
+
+import local.pphilfre.datamodel.EndCondition;
+import local.pphilfre.datamodel.Exit;
+import local.pphilfre.datamodel.NpcInstance;
+import local.pphilfre.utils.DiscardingOutputSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the read-only queries every command leans on: finding things by name, describing
+ * a room, checking an exit's lock and checking the end conditions. None of them change the
+ * world, so one world is shared by every thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorldBenchmark {
+    private static final DiscardingOutputSink DISCARD = new DiscardingOutputSink();
+
+    @Benchmark
+    public String findItemInRoom(EngineState state) {
+        return state.gameWorld.getItemInRoomByName(state.itemName, state.roomId);
+    }
+
+    @Benchmark
+    public String findMissingItemInRoom(EngineState state) {
+        return state.gameWorld.getItemInRoomByName("nothing of the sort", state.roomId);
+    }
+
+    @Benchmark
+    public NpcInstance findNpcInRoom(EngineState state) {
+        return state.gameWorld.getNpcInstanceInRoomByName(state.npcName, state.npcRoomId);
+    }
+
+    @Benchmark
+    public String getFormattedDescription(EngineState state) {
+        return state.room.getFormattedDescription(state.gameWorld, state.player);
+    }
+
+    @Benchmark
+    public void printFormattedDescription(EngineState state) {
+        state.room.printFormattedDescription(state.gameWorld, state.player, DISCARD);
+    }
+
+    @Benchmark
+    public boolean isExitLocked(EngineState state) {
+        Exit exit = state.gameWorld.getCompiledWorld().getExit(state.exit);
+        return exit.isCurrentlyLocked(state.player, state.gameWorld, state.exit);
+    }
+
+    @Benchmark
+    public int checkEndConditions(EngineState state) {
+        int met = 0;
+        for (EndCondition condition : state.endConditions) {
+            if (condition.areCriteriaMet(state.player, state.gameWorld)) {
+                met++;
+            }
+        }
+        return met;
+    }
+}
@@ -1,6 +1,24 @@
 package local.pphilfre;
 
+import local.pphilfre.datamodel.EndCondition;
+import local.pphilfre.datamodel.GameDefinition;
+import local.pphilfre.save.AutosavePolicy;
+import local.pphilfre.save.Journal;
+import local.pphilfre.save.JournalWriter;
+import local.pphilfre.save.MappedSaveStore;
+import local.pphilfre.save.SaveCodec;
+import local.pphilfre.save.SaveCodecs;
+import local.pphilfre.save.SaveStore;
+import local.pphilfre.utils.BufferedOutputSink;
+import local.pphilfre.utils.OutputSink;
+
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
 /**
@@ -10,12 +28,102 @@ public class AdventureGame {
 
     /**
      * Entry point for the application.
+     * <p>
+     * Usage:
+     * <ul>
+     *   <li>{@code AdventureGame [world.json]} plays a single game on the console</li>
+     *   <li>{@code AdventureGame --server [port] [world.json]} hosts games for many TCP clients</li>
+     *   <li>{@code AdventureGame --compile [world.json]} writes the compiled world that later runs start from</li>
+     *   <li>{@code AdventureGame --solve [world.json]} finds the shortest way to win, or shows that there is none</li>
+     *   <li>{@code AdventureGame --replay [replay options] transcript...} plays files of commands without a console
+     *       (see {@link #replayTranscripts(String[])})</li>
+     *   <li>{@code AdventureGame --generate [generator options] world.json} writes a synthetic world of any size
+     *       (see {@link #generateWorld(String[])})</li>
+     * </ul>
+     * Either form may start with {@code --json-saves} to write human-readable JSON saves
+     * instead of the compact binary format, and with {@code --autosave[=triggers]} to save
+     * automatically in the background (see {@link AutosavePolicy#parse(String)}), and with
+     * {@code --save-store=file} to keep all saves in one memory-mapped file instead of a file each.
+     * A console game may also start with {@code --journal} to record every change as it happens,
+     * so the game resumes where it left off after a crash or quit.
      *
      * @param args Command-line arguments
      */
     public static void main(String[] args) {
-        GameController gameController = new GameController();
+        SaveCodec saveCodec = SaveCodecs.BINARY;
+        boolean journaling = false;
+        AutosavePolicy autosavePolicy = AutosavePolicy.NEVER;
+        String saveStoreFile = null;
+        int options = 0;
+        while (options < args.length && args[options].startsWith("--")
+                && !args[options].equals("--server") && !args[options].equals("--compile")
+                && !args[options].equals("--solve") && !args[options].equals("--replay")
+                && !args[options].equals("--generate")) {
+            if (args[options].equals("--json-saves")) {
+                saveCodec = SaveCodecs.JSON;
+            } else if (args[options].equals("--journal")) {
+                journaling = true;
+            } else if (args[options].equals("--autosave")) {
+                autosavePolicy = AutosavePolicy.DEFAULT;
+            } else if (args[options].startsWith("--autosave=")) {
+                try {
+                    autosavePolicy = AutosavePolicy.parse(args[options].substring("--autosave=".length()));
+                } catch (IllegalArgumentException e) {
+                    System.out.println(e.getMessage());
+                    return;
+                }
+            } else if (args[options].startsWith("--save-store=")) {
+                saveStoreFile = args[options].substring("--save-store=".length());
+            } else {
+                System.out.println("Unknown option: " + args[options]);
+                return;
+            }
+            options++;
+        }
+        args = Arrays.copyOfRange(args, options, args.length);
+        
+        if (args.length > 0 && args[0].equals("--compile")) {
+            compileWorld(args.length > 1 ? args[1] : "world.json");
+            return;
+        }
+        
+        if (args.length > 0 && args[0].equals("--solve")) {
+            solveWorld(args.length > 1 ? args[1] : "world.json");
+            return;
+        }
+        
+        if (args.length > 0 && args[0].equals("--replay")) {
+            replayTranscripts(args);
+            return;
+        }
+        
+        if (args.length > 0 && args[0].equals("--generate")) {
+            generateWorld(args);
+            return;
+        }
+        
+        SaveStore saveStore = null;
+        if (saveStoreFile != null) {
+            try {
+                saveStore = new MappedSaveStore(Paths.get(saveStoreFile));
+            } catch (IOException e) {
+                System.out.println("Error opening save store: " + e.getMessage());
+                return;
+            }
+        }
+        
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer(args, saveCodec, autosavePolicy, saveStore, journaling);
+            return;
+        }
+        
         Scanner scanner = new Scanner(System.in);
+        OutputSink out = new BufferedOutputSink(System.out);
+        GameController gameController = new GameController(out);
+        gameController.setSaveCodec(saveCodec);
+        if (saveStore != null) {
+            gameController.setSaveStore(saveStore);
+        }
         
         String worldFilePath = "world.json";
         
@@ -24,12 +132,27 @@ public class AdventureGame {
             worldFilePath = args[0];
         }
         
+        JournalWriter journalWriter = null;
+        Journal journal = null;
         try {
-            gameController.startGame(worldFilePath);
+            GameDefinition gameDefinition = GameController.loadGameDefinition(worldFilePath);
+            gameController.startGame(gameDefinition);
+            if (autosavePolicy != AutosavePolicy.NEVER) {
+                gameController.enableAutosave(autosavePolicy, "autosave");
+            }
+            if (journaling) {
+                journalWriter = new JournalWriter();
+                journal = Journal.open(Paths.get("saves"), "session", gameDefinition.getCompiledWorld(), journalWriter);
+                gameController.startJournal(journal);
+            }
             
             // Main game loop
             while (!gameController.isGameOver()) {
-                System.out.print("\n> ");
+                out.print("\n> ");
+                out.flush();
+                if (!scanner.hasNextLine()) {
+                    break;
+                }
                 String input = scanner.nextLine();
                 
                 // Special case for quitting
@@ -40,12 +163,378 @@ public class AdventureGame {
                 }
             }
             
-            System.out.println("\nThanks for playing! Goodbye!");
+            out.println("\nThanks for playing! Goodbye!");
+            out.flush();
         } catch (IOException e) {
             System.out.println("Error starting game: " + e.getMessage());
             e.printStackTrace();
         } finally {
+            gameController.finishAutosave();
+            if (journal != null) {
+                journal.close();
+            }
+            if (journalWriter != null) {
+                journalWriter.close();
+            }
+            closeSaveStore(saveStore);
             scanner.close();
         }
     }
+
+    /**
+     * Runs the multi-session TCP server.
+     *
+     * @param args Command-line arguments, starting with "--server"
+     * @param saveCodec The format sessions write their saves in
+     * @param autosavePolicy When sessions save themselves automatically
+     * @param saveStore Where sessions keep their saves, or null for a file per save
+     * @param journaling Whether each player's session is journaled
+     */
+    private static void runServer(String[] args, SaveCodec saveCodec, AutosavePolicy autosavePolicy, SaveStore saveStore,
+                                  boolean journaling) {
+        int port = GameServer.DEFAULT_PORT;
+        String worldFilePath = "world.json";
+        
+        if (args.length > 1) {
+            try {
+                port = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid port: " + args[1]);
+                closeSaveStore(saveStore);
+                return;
+            }
+        }
+        if (args.length > 2) {
+            worldFilePath = args[2];
+        }
+        
+        // One writer group-commits the journals of every session
+        JournalWriter journalWriter = journaling ? new JournalWriter() : null;
+        try {
+            // Load the world once and share it between every session
+            GameServer server = new GameServer(GameController.loadGameDefinition(worldFilePath), port);
+            server.setSaveCodec(saveCodec);
+            server.setAutosavePolicy(autosavePolicy);
+            server.setJournalWriter(journalWriter);
+            if (saveStore != null) {
+                server.setSaveStore(saveStore);
+            }
+            server.run();
+        } catch (IOException e) {
+            System.out.println("Error starting server: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            if (journalWriter != null) {
+                journalWriter.close();
+            }
+            closeSaveStore(saveStore);
+        }
+    }
+
+    /**
+     * Compiles a world file so later runs can start without parsing it.
+     *
+     * @param worldFilePath Path to the world file
+     */
+    private static void compileWorld(String worldFilePath) {
+        try {
+            long start = System.nanoTime();
+            Path artifact = GameController.compileWorld(worldFilePath);
+            System.out.println("Compiled " + worldFilePath + " to " + artifact
+                    + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (IOException e) {
+            System.out.println("Error compiling world: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Searches a world for the shortest route to each winning ending and prints it.
+     *
+     * @param worldFilePath Path to the world file
+     */
+    private static void solveWorld(String worldFilePath) {
+        WorldSolver.Result result;
+        long start = System.nanoTime();
+        try {
+            result = new WorldSolver(GameController.loadGameDefinition(worldFilePath)).solve();
+        } catch (IOException e) {
+            System.out.println("Error loading world: " + e.getMessage());
+            return;
+        }
+        System.out.println("Searched " + result.getStatesExplored() + " states in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        
+        List<EndCondition> winConditions = result.getWinConditions();
+        if (winConditions.isEmpty()) {
+            System.out.println("The world has no WIN end condition.");
+        }
+        for (int i = 0; i < winConditions.size(); i++) {
+            System.out.println();
+            System.out.println("WIN " + (i + 1) + ": " + winConditions.get(i).getMessage());
+            List<String> route = result.getRoute(i);
+            if (route != null) {
+                System.out.println("Reachable in " + route.size() + " commands:");
+                for (String command : route) {
+                    System.out.println("  " + command);
+                }
+            } else if (result.isLimitReached()) {
+                System.out.println("Not reached before the search gave up; the world is too large to be sure.");
+            } else {
+                System.out.println("Not reachable.");
+            }
+        }
+    }
+
+    /**
+     * Replays transcript files in parallel and reports how they ended and how fast they ran.
+     * <p>
+     * Options, before the transcripts:
+     * <ul>
+     *   <li>{@code --world=file} the world to play, world.json by default</li>
+     *   <li>{@code --repeat=n} replays every transcript n times, to measure throughput</li>
+     *   <li>{@code --threads=n} the number of replays run at once, one per processor by default</li>
+     *   <li>{@code --out=dir} writes each transcript's output to {@code dir/<transcript>.out}</li>
+     *   <li>{@code --expect=dir} compares each transcript's output with {@code dir/<transcript>.out}</li>
+     * </ul>
+     *
+     * @param args Command-line arguments, starting with "--replay"
+     */
+    private static void replayTranscripts(String[] args) {
+        String worldFilePath = "world.json";
+        int repeat = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path outDirectory = null;
+        Path expectDirectory = null;
+        List<Path> files = new ArrayList<>();
+        try {
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].startsWith("--world=")) {
+                    worldFilePath = args[i].substring("--world=".length());
+                } else if (args[i].startsWith("--repeat=")) {
+                    repeat = Integer.parseInt(args[i].substring("--repeat=".length()));
+                } else if (args[i].startsWith("--threads=")) {
+                    threads = Integer.parseInt(args[i].substring("--threads=".length()));
+                } else if (args[i].startsWith("--out=")) {
+                    outDirectory = Paths.get(args[i].substring("--out=".length()));
+                } else if (args[i].startsWith("--expect=")) {
+                    expectDirectory = Paths.get(args[i].substring("--expect=".length()));
+                } else if (args[i].startsWith("--")) {
+                    System.out.println("Unknown replay option: " + args[i]);
+                    return;
+                } else {
+                    files.add(Paths.get(args[i]));
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid number: " + e.getMessage());
+            return;
+        }
+        if (files.isEmpty() || repeat < 1 || threads < 1) {
+            System.out.println("Usage: --replay [--world=file] [--repeat=n] [--threads=n] [--out=dir] [--expect=dir] transcript...");
+            return;
+        }
+        
+        try {
+            List<TranscriptReplayer.Transcript> transcripts = new ArrayList<>();
+            for (Path file : files) {
+                transcripts.add(TranscriptReplayer.read(file));
+            }
+            
+            TranscriptReplayer replayer = new TranscriptReplayer(GameController.loadGameDefinition(worldFilePath));
+            replayer.setThreads(threads);
+            replayer.setCaptureOutput(outDirectory != null || expectDirectory != null);
+            
+            long start = System.nanoTime();
+            List<TranscriptReplayer.Result> results = replayer.replayAll(transcripts, repeat);
+            long elapsed = System.nanoTime() - start;
+            
+            long commands = 0;
+            for (TranscriptReplayer.Result result : results) {
+                commands += result.getCommandsRun();
+            }
+            
+            // The repeats of a transcript are together, so the first of each group stands for it
+            for (int t = 0; t < transcripts.size(); t++) {
+                TranscriptReplayer.Result result = results.get(t * repeat);
+                String name = result.getTranscript().getName();
+                System.out.println(name + ": " + describeReplay(result));
+                
+                if (outDirectory != null) {
+                    Files.createDirectories(outDirectory);
+                    Files.writeString(outDirectory.resolve(name + ".out"), result.render());
+                }
+                if (expectDirectory != null) {
+                    Path expectedFile = expectDirectory.resolve(name + ".out");
+                    if (!Files.isRegularFile(expectedFile)) {
+                        System.out.println("  no expected output in " + expectedFile);
+                        continue;
+                    }
+                    String expected = Files.readString(expectedFile);
+                    for (int r = 0; r < repeat; r++) {
+                        TranscriptReplayer.Result repeated = results.get(t * repeat + r);
+                        int difference = repeated.findFirstDifference(expected);
+                        if (difference >= 0) {
+                            System.out.println("  DIFFERS from " + expectedFile + describeDifference(repeated, difference)
+                                    + (repeat > 1 ? " in repeat " + (r + 1) : ""));
+                            break;
+                        }
+                        if (r == repeat - 1) {
+                            System.out.println("  matches " + expectedFile);
+                        }
+                    }
+                }
+            }
+            
+            double seconds = elapsed / 1e9;
+            System.out.printf("Replayed %d commands in %d games in %.3f s on %d threads: %.0f commands/s%n",
+                    commands, results.size(), seconds, threads, commands / seconds);
+        } catch (IOException e) {
+            System.out.println("Error replaying transcripts: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Describes how a replay ended.
+     *
+     * @param result The replay
+     * @return A short description, e.g. "11 commands, won"
+     */
+    private static String describeReplay(TranscriptReplayer.Result result) {
+        int total = result.getTranscript().getCommands().size();
+        String commands = result.getCommandsRun() == total
+                ? total + " commands" : result.getCommandsRun() + " of " + total + " commands";
+        
+        String ending;
+        if (result.getError() != null) {
+            ending = "crashed with " + result.getError();
+        } else if (result.getEndCondition() != null) {
+            ending = "WIN".equalsIgnoreCase(result.getEndCondition().getType()) ? "won" : "lost";
+        } else if (result.isGameOver()) {
+            ending = "quit";
+        } else {
+            ending = "still playing";
+        }
+        return commands + ", " + ending;
+    }
+
+    /**
+     * Describes where a replay differs from its expected output.
+     *
+     * @param result The replay
+     * @param difference The result of {@link TranscriptReplayer.Result#findFirstDifference(String)}
+     * @return The place, e.g. " at command 5 (go north)"
+     */
+    private static String describeDifference(TranscriptReplayer.Result result, int difference) {
+        if (difference == 0) {
+            return " before the first command";
+        }
+        if (difference > result.getCommandsRun()) {
+            return " after the last command";
+        }
+        return " at command " + difference + " (" + result.getTranscript().getCommands().get(difference - 1) + ")";
+    }
+
+    /**
+     * Writes a synthetic world for benchmarks and load tests, and optionally compiles it.
+     * <p>
+     * Options, before the world file (see {@link WorldGenerator} for what each controls):
+     * <ul>
+     *   <li>{@code --seed=n} the seed; the same seed and options always give the same world</li>
+     *   <li>{@code --rooms=n}, {@code --exits=n} and {@code --items=n} the rooms, exits per room and items per room</li>
+     *   <li>{@code --npcs=n}, {@code --dialogue-depth=n} and {@code --dialogue-branching=n} the NPCs and their dialogue</li>
+     *   <li>{@code --puzzles=n} and {@code --chain-length=n} the puzzles and how many are chained together</li>
+     *   <li>{@code --end-conditions=n} one way to win and n - 1 ways to lose</li>
+     *   <li>{@code --compile} also writes the compiled world, validating it on the way</li>
+     * </ul>
+     *
+     * @param args Command-line arguments, starting with "--generate"
+     */
+    private static void generateWorld(String[] args) {
+        WorldGenerator generator = new WorldGenerator();
+        boolean compile = false;
+        String worldFilePath = null;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i];
+                String value = arg.substring(arg.indexOf('=') + 1);
+                if (arg.startsWith("--seed=")) {
+                    generator.setSeed(Long.parseLong(value));
+                } else if (arg.startsWith("--rooms=")) {
+                    generator.setRooms(Integer.parseInt(value));
+                } else if (arg.startsWith("--exits=")) {
+                    generator.setExitsPerRoom(Integer.parseInt(value));
+                } else if (arg.startsWith("--items=")) {
+                    generator.setItemsPerRoom(Integer.parseInt(value));
+                } else if (arg.startsWith("--npcs=")) {
+                    generator.setNpcs(Integer.parseInt(value));
+                } else if (arg.startsWith("--dialogue-depth=")) {
+                    generator.setDialogueDepth(Integer.parseInt(value));
+                } else if (arg.startsWith("--dialogue-branching=")) {
+                    generator.setDialogueBranching(Integer.parseInt(value));
+                } else if (arg.startsWith("--puzzles=")) {
+                    generator.setPuzzles(Integer.parseInt(value));
+                } else if (arg.startsWith("--chain-length=")) {
+                    generator.setPuzzleChainLength(Integer.parseInt(value));
+                } else if (arg.startsWith("--end-conditions=")) {
+                    generator.setEndConditions(Integer.parseInt(value));
+                } else if (arg.equals("--compile")) {
+                    compile = true;
+                } else if (arg.startsWith("--") || worldFilePath != null) {
+                    System.out.println("Unknown generate option: " + arg);
+                    return;
+                } else {
+                    worldFilePath = arg;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid number: " + e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        if (worldFilePath == null) {
+            System.out.println("Usage: --generate [--seed=n] [--rooms=n] [--exits=n] [--items=n] [--npcs=n] "
+                    + "[--dialogue-depth=n] [--dialogue-branching=n] [--puzzles=n] [--chain-length=n] "
+                    + "[--end-conditions=n] [--compile] world.json");
+            return;
+        }
+        
+        try {
+            long start = System.nanoTime();
+            Path worldFile = Paths.get(worldFilePath);
+            generator.write(worldFile);
+            System.out.println("Generated " + worldFilePath + " (" + Files.size(worldFile) / 1024 + " KB) in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        } catch (IOException e) {
+            System.out.println("Error generating world: " + e.getMessage());
+            return;
+        }
+        
+        if (compile) {
+            compileWorld(worldFilePath);
+        }
+    }
+
+    /**
+     * Closes a save store, reporting rather than throwing any error.
+     *
+     * @param saveStore The save store, or null
+     */
+    private static void closeSaveStore(SaveStore saveStore) {
+        if (saveStore == null) {
+            return;
+        }
+        
+        try {
+            saveStore.close();
+        } catch (IOException e) {
+            System.out.println("Error closing save store: " + e.getMessage());
+        }
+    }
 }
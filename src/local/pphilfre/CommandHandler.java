@@ -0,0 +1,20 @@
+package local.pphilfre;
+
+import local.pphilfre.CommandParser.ParsedCommand;
+
+/**
+ * Handles one verb of the command language.
+ * Handlers are registered in a {@link CommandRegistry} under their verb and any aliases,
+ * and a single handler instance serves every session, so it must not keep per-session state.
+ */
+@FunctionalInterface
+public interface CommandHandler {
+
+    /**
+     * Executes a command.
+     *
+     * @param game The controller of the session the command came from
+     * @param command The parsed command
+     */
+    void handle(GameController game, ParsedCommand command);
+}
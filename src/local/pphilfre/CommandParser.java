@@ -1,134 +1,246 @@
 package local.pphilfre;
 
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Set;
 
 /**
  * Parses user input into structured commands.
+ * <p>
+ * The parser scans the input once, lowercasing it into a reusable buffer and collapsing runs
+ * of whitespace, and records where each token starts and ends. Prepositions and common words
+ * are matched against precomputed tables straight from the buffer, and the result is written
+ * into a {@link ParsedCommand} the caller keeps between commands.
+ * A parser instance holds this scratch state, so it must only be used by one session at a time.
  */
 public class CommandParser {
 
-    // Set of common prepositions used in adventure game commands
-    private static final Set<String> PREPOSITIONS = new HashSet<>(Arrays.asList(
+    // Common prepositions used in adventure game commands
+    private static final String[] PREPOSITIONS = {
         "on", "to", "with", "in", "at", "from", "under", "behind", "inside", "about",
         "for", "through", "by", "into"
-    ));
-    
-    // Set of special conjunctions used to combine objects
-    private static final Set<String> CONJUNCTIONS = new HashSet<>(Arrays.asList(
-        "and", "using", "then"
-    ));
+    };
+
+    // Verbs and one-word objects common enough to hand out shared instances instead of new strings
+    private static final String[] COMMON_WORDS = {
+        "go", "move", "walk", "take", "get", "grab", "pick", "drop", "use", "talk", "combine",
+        "examine", "look", "inspect", "inventory", "i", "save", "load", "help", "?", "quit", "exit",
+        "north", "south", "east", "west", "up", "down", "n", "s", "e", "w", "u", "d",
+        "northeast", "northwest", "southeast", "southwest", "in", "out", "yes", "y", "no"
+    };
+
+    private static final char[][] PREPOSITION_CHARS = toChars(PREPOSITIONS);
+    private static final char[][] COMMON_WORD_CHARS = toChars(COMMON_WORDS);
+
+    // Scratch state reused across calls
+    private char[] buffer = new char[64];
+    private int[] tokenStarts = new int[8];
+    private int[] tokenEnds = new int[8];
+    private int tokenCount;
 
     /**
-     * Parses a raw input string into a structured command.
+     * Parses a raw input string into a new structured command.
      *
      * @param rawInput The raw input string
      * @return A ParsedCommand object representing the structured command
      */
     public ParsedCommand parse(String rawInput) {
-        if (rawInput == null || rawInput.trim().isEmpty()) {
-            return new ParsedCommand("", "", "", "");
-        }
-        
-        // Convert to lowercase and split into tokens
-        String normalizedInput = rawInput.toLowerCase().trim();
-        String[] tokens = normalizedInput.split("\\s+");
+        ParsedCommand command = new ParsedCommand();
+        parse(rawInput, command);
+        return command;
+    }
+
+    /**
+     * Parses a raw input string into an existing command object, overwriting its contents.
+     *
+     * @param rawInput The raw input string
+     * @param command The command to fill in
+     */
+    public void parse(String rawInput, ParsedCommand command) {
+        tokenize(rawInput);
         
-        if (tokens.length == 0) {
-            return new ParsedCommand("", "", "", "");
+        if (tokenCount == 0) {
+            command.set("", "", "", "");
+            return;
         }
         
         // First token is always the verb
-        String verb = tokens[0];
+        String verb = word(0, COMMON_WORDS, COMMON_WORD_CHARS);
         
         // Handle single-word commands
-        if (tokens.length == 1) {
-            return new ParsedCommand(verb, "", "", "");
+        if (tokenCount == 1) {
+            command.set(verb, "", "", "");
+            return;
         }
         
-        // Look for prepositions and conjunctions
+        // Look for the first preposition
         int prepositionIndex = -1;
-        int conjunctionIndex = -1;
-        
-        for (int i = 1; i < tokens.length; i++) {
-            if (PREPOSITIONS.contains(tokens[i])) {
+        int preposition = -1;
+        for (int i = 1; i < tokenCount; i++) {
+            preposition = find(PREPOSITION_CHARS, tokenStarts[i], tokenEnds[i]);
+            if (preposition >= 0) {
                 prepositionIndex = i;
                 break;
-            } else if (CONJUNCTIONS.contains(tokens[i])) {
-                conjunctionIndex = i;
             }
         }
         
-        // Extract direct object, preposition, and indirect object
+        // Extract direct object, preposition, and indirect object. Conjunctions need no
+        // special handling: "combine a and b" keeps "a and b" as one multi-part direct object
         String directObject = "";
-        String preposition = "";
+        String prepositionWord = "";
         String indirectObject = "";
         
-        if (prepositionIndex > 1) {
-            // There's a direct object and a preposition
-            directObject = joinTokens(tokens, 1, prepositionIndex);
-            preposition = tokens[prepositionIndex];
-            
-            if (prepositionIndex < tokens.length - 1) {
-                // There's also an indirect object
-                indirectObject = joinTokens(tokens, prepositionIndex + 1, tokens.length);
+        if (prepositionIndex >= 1) {
+            prepositionWord = PREPOSITIONS[preposition];
+            if (prepositionIndex > 1) {
+                directObject = phrase(1, prepositionIndex);
             }
-        } else if (prepositionIndex == 1) {
-            // There's just a preposition followed by an indirect object
-            preposition = tokens[1];
-            
-            if (tokens.length > 2) {
-                indirectObject = joinTokens(tokens, 2, tokens.length);
+            if (prepositionIndex < tokenCount - 1) {
+                indirectObject = phrase(prepositionIndex + 1, tokenCount);
             }
-        } else if (conjunctionIndex > 1) {
-            // There's a direct object, conjunction, and another object (treat as multi-part direct object)
-            directObject = joinTokens(tokens, 1, tokens.length);
         } else {
-            // There's just a direct object
-            directObject = joinTokens(tokens, 1, tokens.length);
+            directObject = phrase(1, tokenCount);
         }
         
         // Handle special cases of verb+preposition as a compound verb
-        if (verb.equals("talk") && preposition.equals("to") && !indirectObject.isEmpty()) {
-            return new ParsedCommand("talk", indirectObject, "", "");
-        } else if (verb.equals("look") && preposition.equals("at") && !indirectObject.isEmpty()) {
-            return new ParsedCommand("examine", indirectObject, "", "");
+        if (verb.equals("talk") && prepositionWord.equals("to") && !indirectObject.isEmpty()) {
+            command.set("talk", indirectObject, "", "");
+        } else if (verb.equals("look") && prepositionWord.equals("at") && !indirectObject.isEmpty()) {
+            command.set("examine", indirectObject, "", "");
+        } else {
+            command.set(verb, directObject, prepositionWord, indirectObject);
         }
-        
-        return new ParsedCommand(verb, directObject, preposition, indirectObject);
     }
-    
+
     /**
-     * Joins tokens from start index (inclusive) to end index (exclusive) with spaces.
+     * Lowercases the input into the buffer with single spaces between tokens, and records
+     * where each token starts and ends.
      *
-     * @param tokens The array of tokens
-     * @param start The start index (inclusive)
-     * @param end The end index (exclusive)
-     * @return The joined string
+     * @param rawInput The raw input string
      */
-    private String joinTokens(String[] tokens, int start, int end) {
-        StringBuilder result = new StringBuilder();
+    private void tokenize(String rawInput) {
+        tokenCount = 0;
+        if (rawInput == null) {
+            return;
+        }
+        
+        int length = rawInput.length();
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, buffer.length * 2)];
+        }
         
-        for (int i = start; i < end && i < tokens.length; i++) {
-            result.append(tokens[i]);
+        int write = 0;
+        int i = 0;
+        while (i < length) {
+            while (i < length && isWhitespace(rawInput.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
             
-            if (i < end - 1 && i < tokens.length - 1) {
-                result.append(" ");
+            if (tokenCount == tokenStarts.length) {
+                tokenStarts = Arrays.copyOf(tokenStarts, tokenCount * 2);
+                tokenEnds = Arrays.copyOf(tokenEnds, tokenCount * 2);
+            }
+            if (tokenCount > 0) {
+                buffer[write++] = ' ';
             }
+            tokenStarts[tokenCount] = write;
+            while (i < length && !isWhitespace(rawInput.charAt(i))) {
+                buffer[write++] = Character.toLowerCase(rawInput.charAt(i++));
+            }
+            tokenEnds[tokenCount++] = write;
         }
-        
-        return result.toString();
+    }
+
+    /**
+     * Gets a token as a string, reusing the shared instance if it is in a word table.
+     *
+     * @param token The token index
+     * @param words The words in the table
+     * @param wordChars The same words as character arrays
+     * @return The token text
+     */
+    private String word(int token, String[] words, char[][] wordChars) {
+        int match = find(wordChars, tokenStarts[token], tokenEnds[token]);
+        if (match >= 0) {
+            return words[match];
+        }
+        return new String(buffer, tokenStarts[token], tokenEnds[token] - tokenStarts[token]);
+    }
+
+    /**
+     * Gets a run of tokens as a single space-separated string.
+     *
+     * @param start The first token index (inclusive)
+     * @param end The last token index (exclusive)
+     * @return The joined text
+     */
+    private String phrase(int start, int end) {
+        if (end - start == 1) {
+            return word(start, COMMON_WORDS, COMMON_WORD_CHARS);
+        }
+        return new String(buffer, tokenStarts[start], tokenEnds[end - 1] - tokenStarts[start]);
+    }
+
+    /**
+     * Looks up a region of the buffer in a word table.
+     *
+     * @param table The words to match against
+     * @param start The start of the region
+     * @param end The end of the region
+     * @return The index of the matching word, or -1 if there is none
+     */
+    private int find(char[][] table, int start, int end) {
+        int length = end - start;
+        for (int w = 0; w < table.length; w++) {
+            char[] word = table[w];
+            if (word.length == length && Arrays.equals(word, 0, length, buffer, start, end)) {
+                return w;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether a character separates tokens. Matches the regex class {@code \s}.
+     *
+     * @param c The character
+     * @return true if the character is whitespace
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Converts a word table to character arrays for comparing against the buffer.
+     *
+     * @param words The words
+     * @return The words as character arrays
+     */
+    private static char[][] toChars(String[] words) {
+        char[][] result = new char[words.length][];
+        for (int i = 0; i < words.length; i++) {
+            result[i] = words[i].toCharArray();
+        }
+        return result;
     }
 
     /**
      * Represents a parsed command with verb, direct object, preposition, and indirect object.
+     * A session keeps one instance and lets the parser overwrite it for each command.
      */
     public static class ParsedCommand {
-        private final String verb;
-        private final String directObject;
-        private final String preposition;
-        private final String indirectObject;
+        private String verb;
+        private String directObject;
+        private String preposition;
+        private String indirectObject;
+        
+        /**
+         * Creates an empty command, ready to be filled in by {@link CommandParser#parse(String, ParsedCommand)}.
+         */
+        public ParsedCommand() {
+            this("", "", "", "");
+        }
         
         public ParsedCommand(String verb, String directObject, String preposition, String indirectObject) {
             this.verb = verb;
@@ -137,6 +249,21 @@ public class CommandParser {
             this.indirectObject = indirectObject;
         }
         
+        /**
+         * Overwrites every part of the command.
+         *
+         * @param verb The verb
+         * @param directObject The direct object, or an empty string
+         * @param preposition The preposition, or an empty string
+         * @param indirectObject The indirect object, or an empty string
+         */
+        void set(String verb, String directObject, String preposition, String indirectObject) {
+            this.verb = verb;
+            this.directObject = directObject;
+            this.preposition = preposition;
+            this.indirectObject = indirectObject;
+        }
+        
         public String getVerb() {
             return verb;
         }
@@ -0,0 +1,212 @@
+package local.pphilfre;
+
+import local.pphilfre.CommandParser.ParsedCommand;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Maps verbs and their aliases to the handlers that execute them.
+ * <p>
+ * The table is built once and never changes afterwards, so one registry can serve every
+ * session of a game and dispatching a command is a single hash lookup. Each verb keeps an
+ * invocation counter, shared by all the sessions using the registry.
+ */
+public class CommandRegistry {
+    private final Map<String, Command> commandsByWord;  // verb or alias -> command
+    private final List<Command> commands;               // canonical verbs in registration order
+
+    /**
+     * Creates a registry from a builder's table.
+     *
+     * @param builder The builder holding the verbs and aliases
+     */
+    private CommandRegistry(Builder builder) {
+        this.commandsByWord = new HashMap<>(builder.commandsByWord);
+        this.commands = List.copyOf(builder.commands);
+    }
+
+    /**
+     * Creates a builder for a new, empty registry.
+     *
+     * @return The builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Finds the command for a verb or alias.
+     *
+     * @param word The verb as the player typed it, lowercased
+     * @return The command, or null if the word is not a known verb
+     */
+    public Command lookup(String word) {
+        return commandsByWord.get(word);
+    }
+
+    /**
+     * Gets every word, verbs and aliases alike, the registry recognises.
+     *
+     * @return An unmodifiable view of the words
+     */
+    public Set<String> getWords() {
+        return Collections.unmodifiableSet(commandsByWord.keySet());
+    }
+
+    /**
+     * Gets how often each verb has been executed, counting calls through any of its aliases.
+     *
+     * @return A new map from canonical verb to invocation count, in registration order
+     */
+    public Map<String, Long> getInvocationCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Command command : commands) {
+            counts.put(command.getVerb(), command.getInvocationCount());
+        }
+        return counts;
+    }
+
+    /**
+     * A verb and its handler, together with the verb's invocation counter.
+     */
+    public static class Command {
+        private final String verb;
+        private final CommandHandler handler;
+        private final LongAdder invocations = new LongAdder();
+        
+        /**
+         * Creates a new command.
+         *
+         * @param verb The canonical verb
+         * @param handler The handler that executes it
+         */
+        private Command(String verb, CommandHandler handler) {
+            this.verb = verb;
+            this.handler = handler;
+        }
+        
+        public String getVerb() {
+            return verb;
+        }
+        
+        public long getInvocationCount() {
+            return invocations.sum();
+        }
+        
+        /**
+         * Counts and executes a command.
+         *
+         * @param game The controller of the session the command came from
+         * @param parsedCommand The parsed command
+         */
+        public void invoke(GameController game, ParsedCommand parsedCommand) {
+            invocations.increment();
+            handler.handle(game, parsedCommand);
+        }
+    }
+
+    /**
+     * Collects verbs and aliases for a {@link CommandRegistry}.
+     */
+    public static class Builder {
+        private final Map<String, Command> commandsByWord = new HashMap<>();
+        private final List<Command> commands = new ArrayList<>();
+        
+        /**
+         * Creates an empty builder.
+         */
+        private Builder() {
+        }
+        
+        /**
+         * Registers a verb.
+         *
+         * @param verb The canonical verb
+         * @param handler The handler that executes it
+         * @param aliases Other words that run the same handler
+         * @return This builder
+         * @throws IllegalArgumentException If the verb or one of the aliases is already registered
+         */
+        public Builder register(String verb, CommandHandler handler, String... aliases) {
+            Command command = new Command(verb, handler);
+            addWord(verb, command);
+            for (String alias : aliases) {
+                addWord(alias, command);
+            }
+            commands.add(command);
+            return this;
+        }
+        
+        /**
+         * Adds an alias for a verb that has already been registered.
+         *
+         * @param alias The new word
+         * @param verb The verb or existing alias it stands for
+         * @return This builder
+         * @throws IllegalArgumentException If the verb is unknown or the alias is already registered
+         */
+        public Builder alias(String alias, String verb) {
+            Command command = commandsByWord.get(verb);
+            if (command == null) {
+                throw new IllegalArgumentException("Alias '" + alias + "' refers to unknown verb '" + verb + "'.");
+            }
+            addWord(alias, command);
+            return this;
+        }
+        
+        /**
+         * Adds aliases declared by a game definition. Aliases that refer to an unknown verb
+         * or clash with an existing word are skipped and reported instead.
+         *
+         * @param aliases Map of alias to the verb it stands for, may be null
+         * @return A list of problems with the aliases, empty if all of them were added
+         */
+        public List<String> addAliases(Map<String, String> aliases) {
+            List<String> problems = new ArrayList<>();
+            if (aliases == null) {
+                return problems;
+            }
+            
+            for (Map.Entry<String, String> entry : aliases.entrySet()) {
+                String alias = entry.getKey().toLowerCase();
+                String verb = entry.getValue() != null ? entry.getValue().toLowerCase() : null;
+                if (commandsByWord.containsKey(alias)) {
+                    problems.add("Verb alias '" + alias + "' is already a command.");
+                } else if (verb == null || !commandsByWord.containsKey(verb)) {
+                    problems.add("Verb alias '" + alias + "' refers to unknown verb '" + verb + "'.");
+                } else {
+                    alias(alias, verb);
+                }
+            }
+            return problems;
+        }
+        
+        /**
+         * Builds the registry. Later changes to the builder do not affect it.
+         *
+         * @return The new registry
+         */
+        public CommandRegistry build() {
+            return new CommandRegistry(this);
+        }
+        
+        /**
+         * Maps a word to a command.
+         *
+         * @param word The verb or alias
+         * @param command The command
+         */
+        private void addWord(String word, Command command) {
+            if (commandsByWord.putIfAbsent(word, command) != null) {
+                throw new IllegalArgumentException("Command word '" + word + "' is already registered.");
+            }
+        }
+    }
+}
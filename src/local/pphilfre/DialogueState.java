@@ -0,0 +1,64 @@
+package local.pphilfre;
+
+import local.pphilfre.datamodel.DialogueResponseOption;
+import local.pphilfre.datamodel.NpcDefinition;
+import local.pphilfre.datamodel.NpcInstance;
+
+import java.util.List;
+
+/**
+ * Holds a conversation that is waiting for the player to pick a response.
+ * While one is active, the next command the player enters is treated as a menu choice,
+ * so a conversation never blocks a thread while it waits for input.
+ */
+public class DialogueState {
+    private final NpcInstance npc;
+    private final NpcDefinition npcDefinition;
+    private final String currentNodeId;
+    private final List<DialogueResponseOption> validResponses;
+
+    /**
+     * Creates a new dialogue state.
+     *
+     * @param npc The NPC being talked to
+     * @param npcDefinition The definition of that NPC
+     * @param currentNodeId The ID of the dialogue node whose responses are on offer
+     * @param validResponses The responses the player may currently choose from, in menu order
+     */
+    public DialogueState(NpcInstance npc, NpcDefinition npcDefinition, String currentNodeId,
+                         List<DialogueResponseOption> validResponses) {
+        this.npc = npc;
+        this.npcDefinition = npcDefinition;
+        this.currentNodeId = currentNodeId;
+        this.validResponses = List.copyOf(validResponses);
+    }
+
+    public NpcInstance getNpc() {
+        return npc;
+    }
+
+    public NpcDefinition getNpcDefinition() {
+        return npcDefinition;
+    }
+
+    public String getCurrentNodeId() {
+        return currentNodeId;
+    }
+
+    public List<DialogueResponseOption> getValidResponses() {
+        return validResponses;
+    }
+
+    /**
+     * Gets the response for a menu number.
+     *
+     * @param choice The menu number, starting at 1
+     * @return The chosen response, or null if the number is out of range
+     */
+    public DialogueResponseOption getResponse(int choice) {
+        if (choice < 1 || choice > validResponses.size()) {
+            return null;
+        }
+        return validResponses.get(choice - 1);
+    }
+}
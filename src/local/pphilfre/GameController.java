@@ -1,31 +1,165 @@
 package local.pphilfre;
 
 import local.pphilfre.datamodel.*;
-import local.pphilfre.utils.JsonUtil;
+import local.pphilfre.save.AutosavePolicy;
+import local.pphilfre.save.Autosaver;
+import local.pphilfre.save.FileSaveStore;
+import local.pphilfre.save.Journal;
+import local.pphilfre.save.SaveCodec;
+import local.pphilfre.save.SaveCodecs;
+import local.pphilfre.save.SaveHeader;
+import local.pphilfre.save.SaveStore;
+import local.pphilfre.save.WorldArtifact;
+import local.pphilfre.utils.BufferedOutputSink;
+import local.pphilfre.utils.OutputSink;
+import local.pphilfre.utils.WorldLoader;
 import local.pphilfre.CommandParser.ParsedCommand;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.WeakHashMap;
 
 /**
  * Controls the game logic and orchestrates interactions between player, world, and commands.
  */
 public class GameController {
+    // Command tables are built once per game definition and shared by every session playing it
+    private static final Map<GameDefinition, CommandRegistry> COMMAND_REGISTRIES =
+            Collections.synchronizedMap(new WeakHashMap<>());
+    private static final DateTimeFormatter SAVE_TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
     private World world;
     private Player player;
     private CommandParser commandParser;
+    private final ParsedCommand parsedCommand = new ParsedCommand(); // reused for every command
+    private CommandRegistry commands;
     private boolean gameOver;
+    private boolean gameEnded; // an end condition was met, as opposed to the player quitting
+    private EndCondition endCondition; // the end condition that was met, null until then
     private GameDefinition gameDefinition;
+    private final OutputSink out;
+    private SaveCodec saveCodec = SaveCodecs.BINARY;
+    private SaveStore saveStore = new FileSaveStore(Paths.get("saves"));
+    private Journal journal; // records every change for crash recovery, null if not journaling
+    private AutosavePolicy autosavePolicy = AutosavePolicy.NEVER;
+    private Autosaver autosaver; // writes autosaves in the background, null if autosave is off
+    private int commandsSinceAutosave;
+    private int commandCount;    // commands entered in this game, including before it was last loaded
+    private long playTimeBefore; // milliseconds played before the game was last started or loaded
+    private long playResumedAt;  // System.nanoTime() when the game was last started or loaded
+
+    // Session state for commands that wait on the player's next input
+    private DialogueState activeDialogue;
+    private boolean awaitingQuitConfirmation;
 
     /**
-     * Creates a new game controller.
+     * Creates a new game controller that writes to the console.
      */
     public GameController() {
+        this(new BufferedOutputSink(System.out));
+    }
+
+    /**
+     * Creates a new game controller that writes all output to the given sink.
+     * The sink is flushed once at the end of every command. The controller never
+     * reads input itself; every line the player enters is passed to {@link #processCommand(String)}.
+     *
+     * @param out The destination for game output
+     */
+    public GameController(OutputSink out) {
         this.commandParser = new CommandParser();
         this.gameOver = false;
+        this.out = out;
+    }
+
+    /**
+     * Sets the format new saves are written in. Saves in any known format can still be loaded.
+     *
+     * @param saveCodec The save format
+     */
+    public void setSaveCodec(SaveCodec saveCodec) {
+        this.saveCodec = saveCodec;
+    }
+
+    /**
+     * Sets where saves are kept. The default keeps each save in its own file under "saves".
+     * The controller does not close the store.
+     *
+     * @param saveStore The save store
+     */
+    public void setSaveStore(SaveStore saveStore) {
+        this.saveStore = saveStore;
+    }
+
+    /**
+     * Records every change to this session in a journal from now on, so progress survives a crash.
+     * If the journal holds progress from an earlier run, that progress is restored first.
+     * Must be called after the game has been started.
+     *
+     * @param journal The journal, freshly opened
+     * @throws IOException If the earlier progress cannot be restored
+     */
+    public void startJournal(Journal journal) throws IOException {
+        GameState snapshot = journal.getSnapshot();
+        if (snapshot != null) {
+            world.restoreDynamicState(snapshot.getWorldDynamicState());
+            player.restoreState(snapshot.getPlayerState());
+            resumeClock(snapshot);
+        }
+        int commits = journal.replay(world, player);
+        
+        world.setStateChangeListener(journal);
+        this.journal = journal;
+        
+        if (snapshot != null || commits > 0) {
+            out.println("Resuming your previous game.");
+            displayCurrentRoom();
+            out.flush();
+        }
+    }
+
+    /**
+     * Saves this session automatically from now on, whenever the policy says so.
+     * The save is captured on the calling thread and written in the background.
+     * Must be called after the game has been started.
+     *
+     * @param policy When to autosave
+     * @param saveName The name to save under, as for the 'save' command
+     */
+    public void enableAutosave(AutosavePolicy policy, String saveName) {
+        this.autosavePolicy = policy;
+        this.autosaver = new Autosaver(saveStore, saveName + saveCodec.getFileExtension(),
+                                       saveCodec, world.getCompiledWorld());
+        this.commandsSinceAutosave = 0;
+    }
+
+    /**
+     * Waits for autosaves still being written in the background, and stops autosaving.
+     * Call this when the session ends.
+     */
+    public void finishAutosave() {
+        if (autosaver == null) {
+            return;
+        }
+        
+        try {
+            autosaver.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        autosaver = null;
     }
 
     /**
@@ -35,18 +169,32 @@ public class GameController {
      * @throws IOException If there's an error loading the world file
      */
     public void startGame(String worldFilePath) throws IOException {
-        // Load the game definition
-        gameDefinition = JsonUtil.loadGameDefinition(worldFilePath, GameDefinition.class);
-        
-        // Validate the game definition
-        List<String> validationErrors = gameDefinition.validate();
-        if (!validationErrors.isEmpty()) {
-            System.out.println("WARNING: The game definition has the following issues:");
-            for (String error : validationErrors) {
-                System.out.println("- " + error);
-            }
-            System.out.println();
-        }
+        startGame(loadGameDefinition(worldFilePath));
+    }
+
+    /**
+     * Starts the game from an already loaded game definition.
+     * The definition is only read, so the same instance may be passed to many controllers.
+     *
+     * @param gameDefinition The sealed game definition to play
+     */
+    public void startGame(GameDefinition gameDefinition) {
+        startGame(gameDefinition, getCommandRegistry(gameDefinition));
+    }
+
+    /**
+     * Starts the game from an already loaded game definition with a custom command table.
+     * Build the table from {@link #builtInCommands()} to keep the standard verbs.
+     *
+     * @param gameDefinition The sealed game definition to play
+     * @param commands The verbs this session understands
+     */
+    public void startGame(GameDefinition gameDefinition, CommandRegistry commands) {
+        this.gameDefinition = gameDefinition;
+        this.commands = commands;
+        this.commandCount = 0;
+        this.playTimeBefore = 0;
+        this.playResumedAt = System.nanoTime();
         
         // Create the world and player
         world = new World(gameDefinition);
@@ -55,15 +203,148 @@ public class GameController {
         
         // Display welcome message and initial room
         GameInfo gameInfo = gameDefinition.getGameInfo();
-        System.out.println();
-        System.out.println("========================================");
-        System.out.println(gameInfo.getGameTitle() + " v" + gameInfo.getVersion());
-        System.out.println("========================================");
-        System.out.println();
-        System.out.println(gameInfo.getWelcomeMessage());
-        System.out.println();
+        out.println();
+        out.println("========================================");
+        out.println(gameInfo.getGameTitle() + " v" + gameInfo.getVersion());
+        out.println("========================================");
+        out.println();
+        out.println(gameInfo.getWelcomeMessage());
+        out.println();
         
         displayCurrentRoom();
+        out.flush();
+    }
+
+    /**
+     * Loads, validates, seals and compiles a game definition so it can be shared between games.
+     *
+     * @param worldFilePath Path to the world.json file
+     * @return The sealed game definition
+     * @throws IOException If there's an error loading the world file
+     */
+    public static GameDefinition loadGameDefinition(String worldFilePath) throws IOException {
+        GameDefinition gameDefinition = null;
+        List<String> validationErrors = null;
+        
+        // Use the compiled world if one was made from this exact file; it was validated when compiled
+        Path worldFile = Paths.get(worldFilePath);
+        if (Files.isRegularFile(worldFile)) {
+            try {
+                WorldArtifact artifact = WorldArtifact.readIfCurrent(worldFile);
+                if (artifact != null) {
+                    gameDefinition = artifact.getDefinition();
+                    validationErrors = new ArrayList<>(artifact.getValidationErrors());
+                }
+            } catch (IOException e) {
+                System.out.println("WARNING: Ignoring compiled world " + WorldArtifact.pathFor(worldFile) + ": " + e.getMessage());
+            }
+        }
+        
+        // Otherwise load the game definition, streaming it so large worlds need not be bound in one pass
+        if (gameDefinition == null) {
+            gameDefinition = WorldLoader.load(worldFilePath);
+            validationErrors = gameDefinition.validate();
+        }
+        
+        // Validate any verb aliases the definition declares
+        CommandRegistry.Builder commands = builtInCommands();
+        validationErrors.addAll(commands.addAliases(gameDefinition.getVerbAliases()));
+        printValidationErrors(validationErrors);
+        
+        // Seal and compile the definition and its command table once so every game can share them
+        gameDefinition.getCompiledWorld();
+        COMMAND_REGISTRIES.put(gameDefinition, commands.build());
+        return gameDefinition;
+    }
+
+    /**
+     * Loads and validates a world file and writes its compiled form beside it, so later calls to
+     * {@link #loadGameDefinition(String)} can skip parsing and validating the JSON.
+     *
+     * @param worldFilePath Path to the world.json file, which must be on disk
+     * @return The path of the compiled world
+     * @throws IOException If the world file cannot be loaded or the compiled world cannot be written
+     */
+    public static Path compileWorld(String worldFilePath) throws IOException {
+        Path worldFile = Paths.get(worldFilePath);
+        if (!Files.isRegularFile(worldFile)) {
+            throw new IOException("Could not find world file: " + worldFilePath);
+        }
+        
+        GameDefinition gameDefinition = WorldLoader.load(worldFilePath);
+        List<String> validationErrors = gameDefinition.validate();
+        printValidationErrors(validationErrors);
+        return WorldArtifact.write(worldFile, gameDefinition, validationErrors);
+    }
+
+    /**
+     * Prints the problems found in a game definition, if there are any.
+     *
+     * @param validationErrors The problems found
+     */
+    private static void printValidationErrors(List<String> validationErrors) {
+        if (validationErrors.isEmpty()) {
+            return;
+        }
+        
+        System.out.println("WARNING: The game definition has the following issues:");
+        for (String error : validationErrors) {
+            System.out.println("- " + error);
+        }
+        System.out.println();
+    }
+
+    /**
+     * Creates a command table builder holding the standard verbs and their aliases.
+     * More verbs can be registered on it before it is passed to {@link #startGame(GameDefinition, CommandRegistry)}.
+     *
+     * @return A new builder with the built-in commands registered
+     */
+    public static CommandRegistry.Builder builtInCommands() {
+        return CommandRegistry.builder()
+            .register("go", (game, cmd) -> game.handleGo(cmd), "move", "walk")
+            .register("take", (game, cmd) -> game.handleTake(cmd), "get", "grab", "pick")
+            .register("drop", (game, cmd) -> game.handleDrop(cmd))
+            .register("use", (game, cmd) -> game.handleUse(cmd))
+            .register("talk", (game, cmd) -> game.handleTalk(cmd))
+            .register("combine", (game, cmd) -> game.handleCombine(cmd))
+            .register("examine", (game, cmd) -> {
+                if (cmd.getDirectObject().isEmpty()) {
+                    game.handleLook();
+                } else {
+                    game.handleExamine(cmd);
+                }
+            }, "look", "inspect")
+            .register("inventory", (game, cmd) -> game.handleInventory(), "i")
+            .register("save", (game, cmd) -> game.handleSave(cmd.getDirectObject()))
+            .register("load", (game, cmd) -> game.handleLoad(cmd.getDirectObject()))
+            .register("saves", (game, cmd) -> game.handleSaves())
+            .register("help", (game, cmd) -> game.handleHelp(), "?")
+            .register("quit", (game, cmd) -> game.handleQuit(), "exit");
+    }
+
+    /**
+     * Gets the shared command table for a game definition: the built-in commands plus the
+     * verb aliases the definition declares.
+     *
+     * @param gameDefinition The game definition
+     * @return The command registry
+     */
+    public static CommandRegistry getCommandRegistry(GameDefinition gameDefinition) {
+        return COMMAND_REGISTRIES.computeIfAbsent(gameDefinition, definition -> {
+            CommandRegistry.Builder commands = builtInCommands();
+            commands.addAliases(definition.getVerbAliases());
+            return commands.build();
+        });
+    }
+
+    /**
+     * Gets the command table this session dispatches through.
+     *
+     * @return The command registry, or null before the game has started
+     */
+    public CommandRegistry getCommands() {
+        return commands;
     }
 
     /**
@@ -76,84 +357,110 @@ public class GameController {
     }
 
     /**
-     * Processes a command from the player.
+     * Gets the end condition that finished the game.
+     *
+     * @return The end condition that was met, or null if none has been
+     */
+    public EndCondition getEndCondition() {
+        return endCondition;
+    }
+
+    /**
+     * Processes a command from the player and flushes its output.
      *
      * @param rawInput The raw input string
      */
     public void processCommand(String rawInput) {
+        try {
+            if (rawInput != null && !rawInput.isBlank()) {
+                commandCount++;
+            }
+            int roomBefore = player != null ? player.getCurrentRoom() : CompiledWorld.NONE;
+            int solvedBefore = autosaver != null ? world.getSolvedPuzzleCount() : 0;
+            executeCommand(rawInput);
+            commitJournal();
+            autosave(roomBefore, solvedBefore);
+        } finally {
+            out.flush();
+        }
+    }
+
+    /**
+     * Gets the number of commands entered in this game, including those before it was loaded.
+     *
+     * @return The command count
+     */
+    public int getCommandCount() {
+        return commandCount;
+    }
+
+    /**
+     * Gets how long this game has been played, including the time before it was loaded.
+     *
+     * @return The play time in milliseconds
+     */
+    public long getPlayTimeMillis() {
+        return playTimeBefore + (System.nanoTime() - playResumedAt) / 1_000_000;
+    }
+
+    /**
+     * Gets the sink this controller writes its output to.
+     *
+     * @return The output sink
+     */
+    public OutputSink getOutput() {
+        return out;
+    }
+
+    /**
+     * Gets the world of the game being played.
+     *
+     * @return The world, or null before the game has started
+     */
+    World getWorld() {
+        return world;
+    }
+
+    /**
+     * Gets the player of the game being played.
+     *
+     * @return The player, or null before the game has started
+     */
+    Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * Executes a command from the player without flushing its output.
+     *
+     * @param rawInput The raw input string
+     */
+    private void executeCommand(String rawInput) {
+        // Follow-up answers take priority over normal command parsing
+        if (awaitingQuitConfirmation) {
+            handleQuitConfirmation(rawInput);
+            return;
+        }
+        
+        if (activeDialogue != null) {
+            handleDialogueChoice(rawInput);
+            checkGameEndConditions();
+            return;
+        }
+        
         if (rawInput == null || rawInput.trim().isEmpty()) {
-            System.out.println("Please enter a command.");
+            out.println("Please enter a command.");
             return;
         }
         
-        ParsedCommand parsedCommand = commandParser.parse(rawInput);
-        String verb = parsedCommand.getVerb();
+        commandParser.parse(rawInput, parsedCommand);
         
-        switch (verb) {
-            case "go":
-            case "move":
-            case "walk":
-                handleGo(parsedCommand);
-                break;
-                
-            case "take":
-            case "get":
-            case "grab":
-            case "pick":
-                handleTake(parsedCommand);
-                break;
-                
-            case "drop":
-                handleDrop(parsedCommand);
-                break;
-                
-            case "use":
-                handleUse(parsedCommand);
-                break;
-                
-            case "talk":
-                handleTalk(parsedCommand);
-                break;
-                
-            case "combine":
-                handleCombine(parsedCommand);
-                break;
-                
-            case "examine":
-            case "look":
-            case "inspect":
-                if (parsedCommand.getDirectObject().isEmpty()) {
-                    handleLook();
-                } else {
-                    handleExamine(parsedCommand);
-                }
-                break;
-                
-            case "inventory":
-            case "i":
-                handleInventory();
-                break;
-                
-            case "save":
-                handleSave(parsedCommand.getDirectObject());
-                break;
-                
-            case "load":
-                handleLoad(parsedCommand.getDirectObject());
-                break;
-                
-            case "help":
-            case "?":
-                handleHelp();
-                break;
-                
-            case "quit":
-            case "exit":
-                handleQuit();
-                break;
-                
-            default:
-                System.out.println("I don't understand that command. Type 'help' for a list of commands.");
+        // Verbs and aliases share one table, so dispatch is a single lookup
+        CommandRegistry.Command command = commands.lookup(parsedCommand.getVerb());
+        if (command != null) {
+            command.invoke(this, parsedCommand);
+        } else {
+            out.println("I don't understand that command. Type 'help' for a list of commands.");
         }
         
         checkGameEndConditions();
@@ -167,38 +474,37 @@ public class GameController {
     private void handleGo(ParsedCommand cmd) {
         String direction = cmd.getDirectObject();
         if (direction.isEmpty()) {
-            System.out.println("Go where? Please specify a direction.");
+            out.println("Go where? Please specify a direction.");
             return;
         }
         
-        Room currentRoom = world.getRoom(player.getCurrentRoomId());
-        if (currentRoom == null) {
-            System.out.println("Error: Current room not found.");
+        CompiledWorld compiledWorld = world.getCompiledWorld();
+        if (player.getCurrentRoom() == CompiledWorld.NONE) {
+            out.println("Error: Current room not found.");
             return;
         }
         
-        Map<String, Exit> exits = currentRoom.getExits();
-        Exit exit = exits.get(direction);
-        
-        if (exit == null) {
-            System.out.println("There is no exit in that direction.");
+        int exitOrdinal = compiledWorld.findExit(player.getCurrentRoom(), direction);
+        if (exitOrdinal == CompiledWorld.NONE) {
+            out.println("There is no exit in that direction.");
             return;
         }
         
-        if (!exit.canPlayerPass(player, world)) {
+        Exit exit = compiledWorld.getExit(exitOrdinal);
+        if (!exit.canPlayerPass(player, world, exitOrdinal)) {
             if (exit.getLockedMessage() != null && !exit.getLockedMessage().isEmpty()) {
-                System.out.println(exit.getLockedMessage());
+                out.println(exit.getLockedMessage());
             } else {
-                System.out.println("You can't go that way.");
+                out.println("You can't go that way.");
             }
             return;
         }
         
         // Move to the new room
-        player.setCurrentRoomId(exit.getTargetRoomId());
+        player.setCurrentRoom(compiledWorld.getExitTargetRoom(exitOrdinal));
         
         if (exit.getUnlockedMessage() != null && !exit.getUnlockedMessage().isEmpty()) {
-            System.out.println(exit.getUnlockedMessage());
+            out.println(exit.getUnlockedMessage());
         }
         
         displayCurrentRoom();
@@ -212,26 +518,26 @@ public class GameController {
     private void handleTake(ParsedCommand cmd) {
         String itemName = cmd.getDirectObject();
         if (itemName.isEmpty()) {
-            System.out.println("Take what? Please specify an item.");
+            out.println("Take what? Please specify an item.");
             return;
         }
         
         String itemId = world.getItemInRoomByName(itemName, player.getCurrentRoomId());
         if (itemId == null) {
-            System.out.println("You don't see that here.");
+            out.println("You don't see that here.");
             return;
         }
         
         Item item = world.getItemDefinition(itemId);
         if (!item.isTakeable()) {
-            System.out.println("You can't take that.");
+            out.println("You can't take that.");
             return;
         }
         
         world.removeItemFromRoom(player.getCurrentRoomId(), itemId);
         player.addItem(itemId);
         
-        System.out.println("You take the " + item.getName() + ".");
+        out.println("You take the " + item.getName() + ".");
     }
 
     /**
@@ -242,13 +548,13 @@ public class GameController {
     private void handleDrop(ParsedCommand cmd) {
         String itemName = cmd.getDirectObject();
         if (itemName.isEmpty()) {
-            System.out.println("Drop what? Please specify an item.");
+            out.println("Drop what? Please specify an item.");
             return;
         }
         
         String itemId = player.getItemFromInventoryByName(itemName);
         if (itemId == null) {
-            System.out.println("You don't have that.");
+            out.println("You don't have that.");
             return;
         }
         
@@ -256,7 +562,7 @@ public class GameController {
         world.addItemToRoom(player.getCurrentRoomId(), itemId);
         
         Item item = world.getItemDefinition(itemId);
-        System.out.println("You drop the " + item.getName() + ".");
+        out.println("You drop the " + item.getName() + ".");
     }
 
     /**
@@ -269,14 +575,14 @@ public class GameController {
         String targetName = cmd.getIndirectObject();
         
         if (itemToUseName.isEmpty()) {
-            System.out.println("Use what? Please specify an item.");
+            out.println("Use what? Please specify an item.");
             return;
         }
         
         // Check if the player has the item
         String itemId = player.getItemFromInventoryByName(itemToUseName);
         if (itemId == null) {
-            System.out.println("You don't have that.");
+            out.println("You don't have that.");
             return;
         }
         
@@ -291,7 +597,7 @@ public class GameController {
             }
             
             // No self-use effect found
-            System.out.println("You need to specify what to use the " + item.getName() + " on.");
+            out.println("You need to specify what to use the " + item.getName() + " on.");
             return;
         }
         
@@ -305,18 +611,18 @@ public class GameController {
                 if (useEffect.getTriggersPuzzleId() != null) {
                     processPuzzleTrigger(useEffect.getTriggersPuzzleId(), itemId, targetItemId);
                 } else if (useEffect.getSuccessMessage() != null) {
-                    System.out.println(useEffect.getSuccessMessage());
+                    out.println(useEffect.getSuccessMessage());
                     
                     if (useEffect.isConsumesItem()) {
                         player.removeItem(itemId);
-                        System.out.println("The " + item.getName() + " is consumed.");
+                        out.println("The " + item.getName() + " is consumed.");
                     }
                     
                     if (useEffect.getSetsFlagName() != null) {
                         world.setGlobalFlag(useEffect.getSetsFlagName(), useEffect.getSetsFlagValue());
                     }
                 } else {
-                    System.out.println("You use the " + item.getName() + " on the " + 
+                    out.println("You use the " + item.getName() + " on the " + 
                                       world.getItemDefinition(targetItemId).getName() + " but nothing happens.");
                 }
                 return;
@@ -331,7 +637,7 @@ public class GameController {
                 if (useEffect.getTriggersPuzzleId() != null) {
                     processPuzzleTrigger(useEffect.getTriggersPuzzleId(), itemId, targetNpc.getDefinitionId());
                 } else if (useEffect.getSuccessMessage() != null) {
-                    System.out.println(useEffect.getSuccessMessage());
+                    out.println(useEffect.getSuccessMessage());
                     
                     if (useEffect.isConsumesItem()) {
                         player.removeItem(itemId);
@@ -341,7 +647,7 @@ public class GameController {
                         world.setGlobalFlag(useEffect.getSetsFlagName(), useEffect.getSetsFlagValue());
                     }
                 } else {
-                    System.out.println("You use the " + item.getName() + " on " + 
+                    out.println("You use the " + item.getName() + " on " + 
                                       world.getNpcDefinition(targetNpc.getDefinitionId()).getName() + 
                                       " but nothing happens.");
                 }
@@ -350,22 +656,16 @@ public class GameController {
         }
         
         // Check for room features as targets
-        for (Map.Entry<String, Puzzle> puzzleEntry : world.getGameDefinition().getPuzzles().entrySet()) {
-            Puzzle puzzle = puzzleEntry.getValue();
-            PuzzleSolutionCondition condition = puzzle.getSolutionCondition();
-            
-            if (condition != null && 
-                condition.getRequiredItemId() != null && condition.getRequiredItemId().equals(itemId) &&
-                condition.getRequiredTargetId() != null && 
-                targetName.toLowerCase().contains(condition.getRequiredTargetId().toLowerCase())) {
-                
-                processPuzzleTrigger(puzzleEntry.getKey(), itemId, condition.getRequiredTargetId());
-                return;
-            }
+        CompiledWorld compiledWorld = world.getCompiledWorld();
+        int trigger = compiledWorld.findFeatureTrigger(compiledWorld.getItemOrdinal(itemId), NameIndex.normalize(targetName));
+        if (trigger != CompiledWorld.NONE) {
+            processPuzzleTrigger(compiledWorld.getPuzzleId(compiledWorld.getTriggerPuzzle(trigger)),
+                                 itemId, compiledWorld.getTriggerTargetId(trigger));
+            return;
         }
         
         // No valid target found or no effect
-        System.out.println("You can't use the " + item.getName() + " on that.");
+        out.println("You can't use the " + item.getName() + " on that.");
     }
 
     /**
@@ -385,7 +685,7 @@ public class GameController {
             return;
         }
         
-        boolean solved = puzzle.attemptSolve(player, world, itemId, targetId);
+        boolean solved = puzzle.attemptSolve(player, world, itemId, targetId, out);
         
         if (solved) {
             // Consume the item if specified in the puzzle
@@ -398,7 +698,7 @@ public class GameController {
                     UseEffect effect = item.getUseEffectForTarget("puzzle", puzzleId);
                     if (effect != null && effect.isConsumesItem()) {
                         player.removeItem(itemId);
-                        System.out.println("The " + item.getName() + " is consumed.");
+                        out.println("The " + item.getName() + " is consumed.");
                     }
                 }
             }
@@ -413,140 +713,183 @@ public class GameController {
     private void handleTalk(ParsedCommand cmd) {
         String npcName = cmd.getDirectObject();
         if (npcName.isEmpty()) {
-            System.out.println("Talk to whom? Please specify an NPC.");
+            out.println("Talk to whom? Please specify an NPC.");
             return;
         }
         
         NpcInstance npc = world.getNpcInstanceInRoomByName(npcName, player.getCurrentRoomId());
         if (npc == null) {
-            System.out.println("There's no one like that here to talk to.");
+            out.println("There's no one like that here to talk to.");
             return;
         }
         
         NpcDefinition npcDef = world.getNpcDefinition(npc.getDefinitionId());
         if (npcDef == null) {
-            System.out.println("Error: NPC definition not found.");
+            out.println("Error: NPC definition not found.");
             return;
         }
         
-        // Start dialogue loop
-        Scanner scanner = new Scanner(System.in);
-        String currentNodeId = npc.getCurrentDialogueNodeId();
+        startDialogue(npc, npcDef, npc.getCurrentDialogueNodeId());
+    }
+
+    /**
+     * Shows a dialogue node, applies its effects and, if the conversation continues,
+     * stores the valid responses so the player's next command is read as a choice.
+     *
+     * @param npc The NPC being talked to
+     * @param npcDef The definition of that NPC
+     * @param nodeId The ID of the dialogue node to show
+     */
+    private void startDialogue(NpcInstance npc, NpcDefinition npcDef, String nodeId) {
+        activeDialogue = null;
         
-        while (true) {
-            DialogueNode node = npcDef.getDialogueTree().get(currentNodeId);
-            if (node == null) {
-                System.out.println("Error: Dialogue node not found.");
-                break;
+        DialogueNode node = npcDef.getDialogueTree().get(nodeId);
+        if (node == null) {
+            out.println("Error: Dialogue node not found.");
+            return;
+        }
+        
+        // Display NPC's dialogue
+        out.println("\n" + npcDef.getName() + ": " + node.getText());
+        
+        // Handle item giving
+        if (node.getGivesItemId() != null) {
+            Item item = world.getItemDefinition(node.getGivesItemId());
+            if (item != null) {
+                player.addItem(node.getGivesItemId());
+                out.println("\nYou received: " + item.getName());
             }
-            
-            // Display NPC's dialogue
-            System.out.println("\n" + npcDef.getName() + ": " + node.getText());
-            
-            // Handle item giving
-            if (node.getGivesItemId() != null) {
-                Item item = world.getItemDefinition(node.getGivesItemId());
-                if (item != null) {
-                    player.addItem(node.getGivesItemId());
-                    System.out.println("\nYou received: " + item.getName());
-                }
+        }
+        
+        // Handle flag setting
+        if (node.getSetsNpcFlag() != null) {
+            String[] parts = node.getSetsNpcFlag().split("=", 2);
+            if (parts.length == 2) {
+                world.setNpcFlag(npc.getDefinitionId(), parts[0], parts[1]);
             }
-            
-            // Handle flag setting
-            if (node.getSetsNpcFlag() != null) {
-                String[] parts = node.getSetsNpcFlag().split("=", 2);
-                if (parts.length == 2) {
-                    npc.setNpcFlag(parts[0], parts[1]);
-                }
+        }
+        
+        if (node.getSetsGlobalFlag() != null) {
+            String[] parts = node.getSetsGlobalFlag().split("=", 2);
+            if (parts.length == 2) {
+                world.setGlobalFlag(parts[0], parts[1]);
             }
+        }
+        
+        // End dialogue if marked as such
+        if (node.isEndsDialogue() || node.getResponses().isEmpty()) {
+            return;
+        }
+        
+        List<DialogueResponseOption> validResponses = findValidResponses(npc, node);
+        if (validResponses.isEmpty()) {
+            out.println("\nThe conversation ends.");
+            return;
+        }
+        
+        // Display valid responses and wait for the player's next command
+        out.println("\nYour responses:");
+        for (int i = 0; i < validResponses.size(); i++) {
+            out.println((i + 1) + ". " + validResponses.get(i).getText());
+        }
+        out.println("0. End conversation");
+        
+        activeDialogue = new DialogueState(npc, npcDef, nodeId, validResponses);
+    }
+
+    /**
+     * Gets the responses of a dialogue node whose requirements the current state meets.
+     *
+     * @param npc The NPC being talked to
+     * @param node The dialogue node
+     * @return The valid responses, in definition order
+     */
+    private List<DialogueResponseOption> findValidResponses(NpcInstance npc, DialogueNode node) {
+        List<DialogueResponseOption> validResponses = new ArrayList<>();
+        for (DialogueResponseOption response : node.getResponses()) {
+            boolean isValid = true;
             
-            if (node.getSetsGlobalFlag() != null) {
-                String[] parts = node.getSetsGlobalFlag().split("=", 2);
-                if (parts.length == 2) {
-                    world.setGlobalFlag(parts[0], parts[1]);
-                }
+            if (response.getRequiresPlayerItem() != null && !player.hasItem(response.getRequiresPlayerItem())) {
+                isValid = false;
             }
             
-            // End dialogue if marked as such
-            if (node.isEndsDialogue() || node.getResponses().isEmpty()) {
-                break;
-            }
-            
-            // Filter valid responses
-            List<DialogueResponseOption> validResponses = new ArrayList<>();
-            for (DialogueResponseOption response : node.getResponses()) {
-                boolean isValid = true;
-                
-                if (response.getRequiresPlayerItem() != null && !player.hasItem(response.getRequiresPlayerItem())) {
-                    isValid = false;
-                }
-                
-                if (response.getRequiresNpcFlag() != null) {
-                    String[] parts = response.getRequiresNpcFlag().split("=", 2);
-                    if (parts.length == 2) {
-                        String actualValue = npc.getNpcFlag(parts[0]);
-                        if (actualValue == null || !actualValue.equals(parts[1])) {
-                            isValid = false;
-                        }
-                    }
-                }
-                
-                if (response.getRequiresGlobalFlag() != null) {
-                    String[] parts = response.getRequiresGlobalFlag().split("=", 2);
-                    if (parts.length == 2) {
-                        String actualValue = world.getGlobalFlagValue(parts[0]);
-                        if (actualValue == null || !actualValue.equals(parts[1])) {
-                            isValid = false;
-                        }
+            if (response.getRequiresNpcFlag() != null) {
+                String[] parts = response.getRequiresNpcFlag().split("=", 2);
+                if (parts.length == 2) {
+                    String actualValue = npc.getNpcFlag(parts[0]);
+                    if (actualValue == null || !actualValue.equals(parts[1])) {
+                        isValid = false;
                     }
                 }
-                
-                if (isValid) {
-                    validResponses.add(response);
-                }
             }
             
-            if (validResponses.isEmpty()) {
-                System.out.println("\nThe conversation ends.");
-                break;
-            }
-            
-            // Display valid responses
-            System.out.println("\nYour responses:");
-            for (int i = 0; i < validResponses.size(); i++) {
-                System.out.println((i + 1) + ". " + validResponses.get(i).getText());
-            }
-            System.out.println("0. End conversation");
-            
-            // Get player's choice
-            int choice = -1;
-            while (choice < 0 || choice > validResponses.size()) {
-                System.out.print("\n> ");
-                try {
-                    String input = scanner.nextLine().trim();
-                    if (input.equals("0")) {
-                        choice = 0;
-                        break;
-                    }
-                    choice = Integer.parseInt(input);
-                    if (choice < 1 || choice > validResponses.size()) {
-                        System.out.println("Please enter a valid option number (1-" + validResponses.size() + " or 0 to end).");
-                        choice = -1;
+            if (response.getRequiresGlobalFlag() != null) {
+                String[] parts = response.getRequiresGlobalFlag().split("=", 2);
+                if (parts.length == 2) {
+                    String actualValue = world.getGlobalFlagValue(parts[0]);
+                    if (actualValue == null || !actualValue.equals(parts[1])) {
+                        isValid = false;
                     }
-                } catch (NumberFormatException e) {
-                    System.out.println("Please enter a number.");
                 }
             }
             
-            if (choice == 0) {
-                System.out.println("\nYou end the conversation.");
-                break;
+            if (isValid) {
+                validResponses.add(response);
             }
-            
-            // Update dialogue node
-            currentNodeId = validResponses.get(choice - 1).getTargetNodeId();
-            npc.setCurrentDialogueNodeId(currentNodeId);
         }
+        return validResponses;
+    }
+
+    /**
+     * Handles the player's input while a conversation is waiting for a response.
+     *
+     * @param rawInput The raw input string
+     */
+    private void handleDialogueChoice(String rawInput) {
+        String line = rawInput == null ? "" : rawInput.trim();
+        
+        if (line.equals("0")) {
+            activeDialogue = null;
+            out.println("\nYou end the conversation.");
+            return;
+        }
+        
+        int choice;
+        try {
+            choice = Integer.parseInt(line);
+        } catch (NumberFormatException e) {
+            out.println("Please enter a number.");
+            return;
+        }
+        
+        DialogueResponseOption response = activeDialogue.getResponse(choice);
+        if (response == null) {
+            out.println("Please enter a valid option number (1-" + activeDialogue.getValidResponses().size() + " or 0 to end).");
+            return;
+        }
+        
+        // Update dialogue node and carry on with the conversation
+        NpcInstance npc = activeDialogue.getNpc();
+        world.setNpcDialogueNode(npc.getDefinitionId(), response.getTargetNodeId());
+        startDialogue(npc, activeDialogue.getNpcDefinition(), response.getTargetNodeId());
+    }
+
+    /**
+     * Checks if a conversation is waiting for the player to choose a response.
+     *
+     * @return true if the next command will be read as a dialogue choice, false otherwise
+     */
+    public boolean isInDialogue() {
+        return activeDialogue != null;
+    }
+
+    /**
+     * Gets the conversation that is waiting for the player's choice.
+     *
+     * @return The active dialogue, or null if there is none
+     */
+    public DialogueState getActiveDialogue() {
+        return activeDialogue;
     }
 
     /**
@@ -558,14 +901,14 @@ public class GameController {
         String combinationStr = cmd.getDirectObject();
         
         if (combinationStr.isEmpty()) {
-            System.out.println("Combine what? Please specify the items to combine.");
+            out.println("Combine what? Please specify the items to combine.");
             return;
         }
         
         // Parse the combination string to extract two item names
         String[] parts = combinationStr.split(" and | with | using ");
         if (parts.length < 2) {
-            System.out.println("Please specify two items to combine (e.g., 'combine X and Y').");
+            out.println("Please specify two items to combine (e.g., 'combine X and Y').");
             return;
         }
         
@@ -577,12 +920,12 @@ public class GameController {
         String item2Id = player.getItemFromInventoryByName(item2Name);
         
         if (item1Id == null) {
-            System.out.println("You don't have a " + item1Name + ".");
+            out.println("You don't have a " + item1Name + ".");
             return;
         }
         
         if (item2Id == null) {
-            System.out.println("You don't have a " + item2Name + ".");
+            out.println("You don't have a " + item2Name + ".");
             return;
         }
         
@@ -603,10 +946,10 @@ public class GameController {
                 player.addItem(resultItemId);
                 
                 Item resultItem = world.getItemDefinition(resultItemId);
-                System.out.println("You combine the " + item1.getName() + " and the " + 
+                out.println("You combine the " + item1.getName() + " and the " + 
                                   item2.getName() + " to create a " + resultItem.getName() + ".");
             } else {
-                System.out.println("You try to combine the items, but nothing happens.");
+                out.println("You try to combine the items, but nothing happens.");
             }
         } else if (item2.getCanBeCombinedWith() != null && item2.getCanBeCombinedWith().contains(item1Id)) {
             // Try the other way around
@@ -621,13 +964,13 @@ public class GameController {
                 player.addItem(resultItemId);
                 
                 Item resultItem = world.getItemDefinition(resultItemId);
-                System.out.println("You combine the " + item1.getName() + " and the " + 
+                out.println("You combine the " + item1.getName() + " and the " + 
                                   item2.getName() + " to create a " + resultItem.getName() + ".");
             } else {
-                System.out.println("You try to combine the items, but nothing happens.");
+                out.println("You try to combine the items, but nothing happens.");
             }
         } else {
-            System.out.println("You can't combine those items.");
+            out.println("You can't combine those items.");
         }
     }
 
@@ -639,7 +982,7 @@ public class GameController {
     private void handleExamine(ParsedCommand cmd) {
         String targetName = cmd.getDirectObject();
         if (targetName.isEmpty()) {
-            System.out.println("Examine what?");
+            out.println("Examine what?");
             return;
         }
         
@@ -647,7 +990,7 @@ public class GameController {
         String itemId = player.getItemFromInventoryByName(targetName);
         if (itemId != null) {
             Item item = world.getItemDefinition(itemId);
-            System.out.println(item.getDescription());
+            out.println(item.getDescription());
             return;
         }
         
@@ -655,7 +998,7 @@ public class GameController {
         itemId = world.getItemInRoomByName(targetName, player.getCurrentRoomId());
         if (itemId != null) {
             Item item = world.getItemDefinition(itemId);
-            System.out.println(item.getDescription());
+            out.println(item.getDescription());
             return;
         }
         
@@ -663,7 +1006,7 @@ public class GameController {
         NpcInstance npc = world.getNpcInstanceInRoomByName(targetName, player.getCurrentRoomId());
         if (npc != null) {
             NpcDefinition npcDef = world.getNpcDefinition(npc.getDefinitionId());
-            System.out.println(npcDef.getPresenceDescription());
+            out.println(npcDef.getPresenceDescription());
             return;
         }
         
@@ -673,14 +1016,14 @@ public class GameController {
             return;
         }
         
-        System.out.println("You don't see anything like that here.");
+        out.println("You don't see anything like that here.");
     }
 
     /**
      * Handles the 'inventory' command.
      */
     private void handleInventory() {
-        player.displayInventory();
+        player.displayInventory(out);
     }
 
     /**
@@ -700,22 +1043,17 @@ public class GameController {
             saveName = "default";
         }
         
-        String fileName = "saves/" + saveName + ".json";
+        String key = saveName + saveCodec.getFileExtension();
         
         try {
-            PlayerState playerState = player.getState();
-            WorldDynamicState worldState = world.getDynamicState();
-            
-            GameState gameState = new GameState(
-                playerState,
-                worldState,
-                gameDefinition.getGameInfo().getVersion()
-            );
+            GameState gameState = captureState();
             
-            JsonUtil.saveObjectToJsonFile(gameState, fileName);
-            System.out.println("Game saved successfully to " + fileName);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            saveCodec.write(gameState, world.getCompiledWorld(), bytes);
+            saveStore.write(key, bytes.toByteArray());
+            out.println("Game saved successfully to " + saveStore.describe(key));
         } catch (IOException e) {
-            System.out.println("Error saving game: " + e.getMessage());
+            out.println("Error saving game: " + e.getMessage());
         }
     }
 
@@ -729,54 +1067,160 @@ public class GameController {
             saveName = "default";
         }
         
-        String fileName = "saves/" + saveName + ".json";
+        // Prefer the configured format, but fall back to saves written in any other format
+        SaveCodec codec = saveCodec;
+        String key = saveName + codec.getFileExtension();
+        if (!saveStore.contains(key)) {
+            for (SaveCodec other : SaveCodecs.all()) {
+                String otherKey = saveName + other.getFileExtension();
+                if (saveStore.contains(otherKey)) {
+                    codec = other;
+                    key = otherKey;
+                    break;
+                }
+            }
+        }
         
         try {
-            GameState gameState = JsonUtil.loadObjectFromJsonFile(fileName, GameState.class);
+            byte[] bytes = saveStore.read(key);
+            if (bytes == null) {
+                throw new IOException(saveStore.describe(key) + " (No such file or directory)");
+            }
+            GameState gameState = codec.read(new ByteArrayInputStream(bytes), world.getCompiledWorld());
             
             // Check version compatibility
             String currentVersion = gameDefinition.getGameInfo().getVersion();
             String savedVersion = gameState.getGameVersion();
             
             if (savedVersion != null && !savedVersion.equals(currentVersion)) {
-                System.out.println("Warning: Save file version (" + savedVersion + 
+                out.println("Warning: Save file version (" + savedVersion + 
                                  ") differs from current version (" + currentVersion + ").");
-                System.out.println("Some features may not work as expected.");
+                out.println("Some features may not work as expected.");
             }
             
+            // Restore world state first; it resets every item's location, including the player's inventory
+            world.restoreDynamicState(gameState.getWorldDynamicState());
+            
             // Restore player state
             player.restoreState(gameState.getPlayerState());
+            resumeClock(gameState);
             
-            // Restore world state
-            world.restoreDynamicState(gameState.getWorldDynamicState());
+            // Restoring is not journaled, so the journal has to start again from the loaded state
+            if (journal != null) {
+                journal.snapshot(captureState());
+            }
             
-            System.out.println("Game loaded successfully from " + fileName);
+            out.println("Game loaded successfully from " + saveStore.describe(key));
             displayCurrentRoom();
         } catch (IOException e) {
-            System.out.println("Error loading game: " + e.getMessage());
+            out.println("Error loading game: " + e.getMessage());
         }
     }
 
+    /**
+     * Handles the 'saves' command, listing saved games newest first.
+     * Only the save headers are read, from the save store's index.
+     */
+    private void handleSaves() {
+        Map<String, SaveHeader> saves;
+        try {
+            saves = saveStore.listSaves();
+        } catch (IOException e) {
+            out.println("Error listing saves: " + e.getMessage());
+            return;
+        }
+        
+        if (saves.isEmpty()) {
+            out.println("You have no saved games.");
+            return;
+        }
+        
+        List<Map.Entry<String, SaveHeader>> entries = new ArrayList<>(saves.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue().getSaveTimestamp(), a.getValue().getSaveTimestamp()));
+        
+        out.println("Saved games:");
+        for (Map.Entry<String, SaveHeader> entry : entries) {
+            SaveHeader header = entry.getValue();
+            out.println(String.format("  %-16s %-24s %9s %6d commands  saved %s  v%s",
+                saveNameOf(entry.getKey()),
+                roomNameOf(header.getCurrentRoomId()),
+                formatPlayTime(header.getPlayTimeMillis()),
+                header.getCommandCount(),
+                SAVE_TIME_FORMAT.format(Instant.ofEpochMilli(header.getSaveTimestamp())),
+                header.getGameVersion()));
+        }
+    }
+
+    /**
+     * Gets the name to show for a save: the name the player would load it by,
+     * with the format added if it is not the format this session saves in.
+     *
+     * @param key The save key
+     * @return The save's display name
+     */
+    private String saveNameOf(String key) {
+        SaveCodec codec = SaveCodecs.forKey(key);
+        String name = key.substring(0, key.length() - codec.getFileExtension().length());
+        return codec == saveCodec ? name : name + " (" + codec.getName() + ")";
+    }
+
+    /**
+     * Gets the name of a room to show in the save list.
+     *
+     * @param roomId The room ID, or null if unknown
+     * @return The room's name, or its ID if the room no longer exists
+     */
+    private String roomNameOf(String roomId) {
+        if (roomId == null) {
+            return "?";
+        }
+        
+        CompiledWorld compiled = world.getCompiledWorld();
+        int room = compiled.getRoomOrdinal(roomId);
+        return room != CompiledWorld.NONE ? compiled.getRoom(room).getName() : roomId;
+    }
+
+    /**
+     * Formats a play time as hours, minutes and seconds.
+     *
+     * @param millis The play time in milliseconds
+     * @return The formatted play time, e.g. "1:02:03"
+     */
+    private static String formatPlayTime(long millis) {
+        long seconds = millis / 1000;
+        return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
     /**
      * Handles the 'help' command.
      */
     private void handleHelp() {
-        System.out.println(gameDefinition.getGameInfo().getHelpText());
+        out.println(gameDefinition.getGameInfo().getHelpText());
     }
 
     /**
-     * Handles the 'quit' command.
+     * Handles the 'quit' command. The answer to the confirmation question is
+     * read from the player's next command.
      */
     private void handleQuit() {
-        System.out.println("Are you sure you want to quit? (y/n)");
-        Scanner scanner = new Scanner(System.in);
-        String input = scanner.nextLine().trim().toLowerCase();
+        out.println("Are you sure you want to quit? (y/n)");
+        awaitingQuitConfirmation = true;
+    }
+
+    /**
+     * Handles the player's answer to the quit confirmation question.
+     *
+     * @param rawInput The raw input string
+     */
+    private void handleQuitConfirmation(String rawInput) {
+        awaitingQuitConfirmation = false;
+        String answer = rawInput == null ? "" : rawInput.trim().toLowerCase();
         
-        if (input.equals("y") || input.equals("yes")) {
+        if (answer.equals("y") || answer.equals("yes")) {
             gameOver = true;
-            System.out.println("Thanks for playing " + gameDefinition.getGameInfo().getGameTitle() + "!");
+            out.println("Thanks for playing " + gameDefinition.getGameInfo().getGameTitle() + "!");
         } else {
-            System.out.println("Continuing game.");
+            out.println("Continuing game.");
         }
     }
 
@@ -784,15 +1228,125 @@ public class GameController {
      * Displays the current room to the player.
      */
     private void displayCurrentRoom() {
-        String roomId = player.getCurrentRoomId();
-        Room room = world.getRoom(roomId);
+        Room room = world.getCompiledWorld().getRoom(player.getCurrentRoom());
         
         if (room == null) {
-            System.out.println("Error: Current room not found.");
+            out.println("Error: Current room not found.");
             return;
         }
         
-        System.out.println("\n" + room.getFormattedDescription(world, player));
+        out.println();
+        room.printFormattedDescription(world, player, out);
+        out.println();
+    }
+
+    /**
+     * Captures the state of this session for saving.
+     *
+     * @return The game state
+     */
+    GameState captureState() {
+        GameState state = new GameState(
+            player.getState(),
+            world.getDynamicState(),
+            gameDefinition.getGameInfo().getVersion()
+        );
+        state.setPlayTimeMillis(getPlayTimeMillis());
+        state.setCommandCount(commandCount);
+        return state;
+    }
+
+    /**
+     * Puts this session into a captured state without showing anything, as the solver does
+     * to move between the states it explores. The game is no longer over afterwards, and a
+     * conversation can be resumed at the NPC's current dialogue node.
+     *
+     * @param state The state to restore
+     * @param dialogueNpcId The ID of the NPC the player is talking to in that state, or null
+     */
+    void restoreState(GameState state, String dialogueNpcId) {
+        world.restoreDynamicState(state.getWorldDynamicState());
+        player.restoreState(state.getPlayerState());
+        gameOver = false;
+        gameEnded = false;
+        endCondition = null;
+        awaitingQuitConfirmation = false;
+        activeDialogue = null;
+        
+        if (dialogueNpcId != null) {
+            NpcInstance npc = world.getNpcInstance(dialogueNpcId);
+            NpcDefinition npcDef = world.getNpcDefinition(dialogueNpcId);
+            DialogueNode node = npc != null && npcDef != null
+                    ? npcDef.getDialogueTree().get(npc.getCurrentDialogueNodeId()) : null;
+            if (node != null && !node.isEndsDialogue()) {
+                List<DialogueResponseOption> validResponses = findValidResponses(npc, node);
+                if (!validResponses.isEmpty()) {
+                    activeDialogue = new DialogueState(npc, npcDef, npc.getCurrentDialogueNodeId(), validResponses);
+                }
+            }
+        }
+    }
+
+    /**
+     * Carries on the play time and command count of a restored game.
+     *
+     * @param state The restored game state
+     */
+    private void resumeClock(GameState state) {
+        commandCount = state.getCommandCount();
+        playTimeBefore = state.getPlayTimeMillis();
+        playResumedAt = System.nanoTime();
+    }
+
+    /**
+     * Makes the changes of the last command durable, compacting the journal when it has grown large.
+     * A finished game has nothing to resume, so its journal is deleted.
+     */
+    private void commitJournal() {
+        if (journal == null) {
+            return;
+        }
+        
+        try {
+            if (gameEnded) {
+                world.setStateChangeListener(null);
+                journal.discard();
+                journal = null;
+                return;
+            }
+            journal.commit();
+            if (journal.needsSnapshot()) {
+                journal.snapshot(captureState());
+            }
+        } catch (IOException e) {
+            out.println("Warning: your progress could not be recorded: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hands the session's state to the autosaver if the last command calls for a save.
+     * Only the capture happens here; the write is left to the autosaver's thread.
+     *
+     * @param roomBefore The player's room before the command
+     * @param solvedBefore The number of solved puzzles before the command
+     */
+    private void autosave(int roomBefore, int solvedBefore) {
+        if (autosaver == null) {
+            return;
+        }
+        
+        IOException failure = autosaver.takeFailure();
+        if (failure != null) {
+            out.println("Warning: autosave failed: " + failure.getMessage());
+        }
+        
+        commandsSinceAutosave++;
+        boolean roomChanged = player.getCurrentRoom() != roomBefore;
+        boolean puzzleSolved = world.getSolvedPuzzleCount() > solvedBefore;
+        if (autosavePolicy.shouldSave(commandsSinceAutosave, roomChanged, puzzleSolved)) {
+            autosaver.submit(captureState());
+            commandsSinceAutosave = 0;
+        }
     }
 
     /**
@@ -807,15 +1361,17 @@ public class GameController {
         
         for (EndCondition ec : endConditions) {
             if (ec.areCriteriaMet(player, world)) {
-                System.out.println("\n" + ec.getMessage());
+                out.println("\n" + ec.getMessage());
                 
                 if ("WIN".equalsIgnoreCase(ec.getType())) {
-                    System.out.println("\nCongratulations! You have won the game!");
+                    out.println("\nCongratulations! You have won the game!");
                 } else if ("LOSE".equalsIgnoreCase(ec.getType())) {
-                    System.out.println("\nGame over.");
+                    out.println("\nGame over.");
                 }
                 
                 gameOver = true;
+                gameEnded = true;
+                endCondition = ec;
                 break;
             }
         }
@@ -0,0 +1,307 @@
+package local.pphilfre;
+
+import local.pphilfre.datamodel.GameDefinition;
+import local.pphilfre.save.AutosavePolicy;
+import local.pphilfre.save.FileSaveStore;
+import local.pphilfre.save.Journal;
+import local.pphilfre.save.JournalWriter;
+import local.pphilfre.save.PlayerSaveStore;
+import local.pphilfre.save.SaveCodec;
+import local.pphilfre.save.SaveCodecs;
+import local.pphilfre.save.SaveStore;
+import local.pphilfre.utils.BufferedOutputSink;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A line-based TCP server that hosts many concurrent games, e.g. for telnet clients.
+ * Every connection gets its own controller, world and player running on a virtual thread,
+ * while all of them share a single sealed {@link GameDefinition}.
+ * <p>
+ * Each player gives their name on connecting and sees only their own saves: the shared store is
+ * reached through a {@link PlayerSaveStore}, which files every save under the player's name.
+ */
+public class GameServer {
+
+    /** Port used when none is given on the command line. */
+    public static final int DEFAULT_PORT = 4000;
+
+    private static final int MAX_LINE_LENGTH = 1024; // far longer than any command; longer lines drop the client
+
+    private final GameDefinition gameDefinition;
+    private final int port;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicLong sessionCounter = new AtomicLong();
+    private final String runId = Long.toString(System.currentTimeMillis(), 36); // keeps session IDs unique across restarts
+    private volatile ServerSocket serverSocket;
+    private volatile SaveCodec saveCodec = SaveCodecs.BINARY;
+    private volatile AutosavePolicy autosavePolicy = AutosavePolicy.NEVER;
+    private volatile SaveStore saveStore = new FileSaveStore(Paths.get("saves")); // shared by every session
+    private volatile JournalWriter journalWriter; // shared by every session, null if sessions are not journaled
+
+    /**
+     * Creates a new game server.
+     *
+     * @param gameDefinition The sealed game definition shared by all sessions
+     * @param port The TCP port to listen on
+     */
+    public GameServer(GameDefinition gameDefinition, int port) {
+        this.gameDefinition = gameDefinition;
+        this.port = port;
+    }
+
+    /**
+     * Accepts connections until the server is stopped, starting one virtual thread per connection.
+     *
+     * @throws IOException If the server socket cannot be opened
+     */
+    public void run() throws IOException {
+        try (ServerSocket socket = new ServerSocket(port)) {
+            serverSocket = socket;
+            System.out.println("Serving " + gameDefinition.getGameInfo().getGameTitle() + " on port " + port);
+            
+            while (!socket.isClosed()) {
+                Socket client;
+                try {
+                    client = socket.accept();
+                } catch (IOException e) {
+                    if (socket.isClosed()) {
+                        break; // stop() was called
+                    }
+                    throw e;
+                }
+                
+                String sessionId = runId + "-" + sessionCounter.incrementAndGet();
+                Thread.ofVirtual()
+                      .name("session-" + sessionId)
+                      .start(() -> runSession(client, sessionId));
+            }
+        }
+    }
+
+    /**
+     * Stops accepting new connections. Sessions that are already running finish on their own.
+     */
+    public void stop() {
+        ServerSocket socket = serverSocket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    /**
+     * Sets the format sessions write their saves in. Only sessions started afterwards are affected.
+     *
+     * @param saveCodec The save format
+     */
+    public void setSaveCodec(SaveCodec saveCodec) {
+        this.saveCodec = saveCodec;
+    }
+
+    /**
+     * Sets where sessions keep their saves. The store is shared by every session, each seeing only
+     * its own player's saves, so it must be safe for concurrent use. Only sessions started
+     * afterwards are affected.
+     *
+     * @param saveStore The save store
+     */
+    public void setSaveStore(SaveStore saveStore) {
+        this.saveStore = saveStore;
+    }
+
+    /**
+     * Sets when sessions save themselves automatically. Each session autosaves among its player's
+     * saves under "autosave", so a returning player finds their latest autosave in the same slot.
+     * Only sessions started afterwards are affected.
+     *
+     * @param autosavePolicy The autosave policy
+     */
+    public void setAutosavePolicy(AutosavePolicy autosavePolicy) {
+        this.autosavePolicy = autosavePolicy;
+    }
+
+    /**
+     * Journals every session through a shared writer, so a player's progress survives a crash.
+     * Each player's journal is kept in {@code saves/<player>/}, and a player whose journal is
+     * already in use by another session plays without one. The writer stays open until the
+     * caller closes it. Only sessions started afterwards are affected.
+     *
+     * @param journalWriter The writer, or null to stop journaling
+     */
+    public void setJournalWriter(JournalWriter journalWriter) {
+        this.journalWriter = journalWriter;
+    }
+
+    /**
+     * Gets the number of sessions currently connected.
+     *
+     * @return The number of active sessions
+     */
+    public int getActiveSessionCount() {
+        return activeSessions.get();
+    }
+
+    /**
+     * Gets how often each verb has been executed across all sessions since the server started.
+     *
+     * @return A map from verb to invocation count
+     */
+    public Map<String, Long> getCommandCounts() {
+        return GameController.getCommandRegistry(gameDefinition).getInvocationCounts();
+    }
+
+    /**
+     * Runs a single game session for a connected client.
+     *
+     * @param client The client socket
+     * @param sessionId The ID of the session, unique across restarts
+     */
+    private void runSession(Socket client, String sessionId) {
+        activeSessions.incrementAndGet();
+        System.out.println("Session " + sessionId + " connected from " + client.getRemoteSocketAddress());
+        
+        try (Socket socket = client;
+             BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             OutputStream socketOut = socket.getOutputStream()) {
+            
+            BufferedOutputSink out = new BufferedOutputSink(socketOut);
+            String player = readPlayerName(input, out);
+            if (player == null) {
+                return; // Client disconnected
+            }
+            System.out.println("Session " + sessionId + " is " + player);
+            
+            GameController gameController = new GameController(out);
+            gameController.setSaveCodec(saveCodec);
+            gameController.setSaveStore(new PlayerSaveStore(saveStore, player));
+            gameController.startGame(gameDefinition);
+            if (autosavePolicy != AutosavePolicy.NEVER) {
+                gameController.enableAutosave(autosavePolicy, "autosave");
+            }
+            Journal journal = openJournal(gameController, player, out);
+            
+            // Session game loop, mirroring the console loop in AdventureGame
+            try {
+                while (!gameController.isGameOver()) {
+                    out.print("\n> ");
+                    out.flush();
+                    
+                    String line = out.checkError() ? null : readLine(input);
+                    if (line == null) {
+                        break; // Client disconnected
+                    }
+                    gameController.processCommand(line);
+                }
+            } finally {
+                gameController.finishAutosave();
+                if (journal != null) {
+                    journal.close();
+                }
+            }
+            
+            out.println("\nThanks for playing! Goodbye!");
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Session " + sessionId + " ended with an error: " + e.getMessage());
+        } finally {
+            activeSessions.decrementAndGet();
+            System.out.println("Session " + sessionId + " disconnected");
+        }
+    }
+
+    /**
+     * Opens a player's journal and resumes their game from it, if sessions are journaled.
+     *
+     * @param gameController The session's controller, with its game started
+     * @param player The player's name
+     * @param out The client's output
+     * @return The journal, or null if the session is not journaled
+     */
+    private Journal openJournal(GameController gameController, String player, BufferedOutputSink out) {
+        JournalWriter writer = journalWriter;
+        if (writer == null) {
+            return null;
+        }
+        
+        Journal journal = null;
+        try {
+            journal = Journal.open(Paths.get("saves", player), "session",
+                                   gameDefinition.getCompiledWorld(), writer);
+            gameController.startJournal(journal);
+            return journal;
+        } catch (IOException e) {
+            if (journal != null) {
+                journal.close();
+            }
+            out.println("Warning: your progress will not be recorded: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Asks a newly connected client for the name their saves are kept under, until they give a valid one.
+     *
+     * @param input The client's input
+     * @param out The client's output
+     * @return The player's name, or null if the client disconnected
+     * @throws IOException If the client's input cannot be read or a line is too long
+     */
+    private static String readPlayerName(BufferedReader input, BufferedOutputSink out) throws IOException {
+        while (true) {
+            out.print("What is your name? ");
+            out.flush();
+            
+            String line = out.checkError() ? null : readLine(input);
+            if (line == null) {
+                return null;
+            }
+            String name = line.trim();
+            if (PlayerSaveStore.isValidPlayerName(name)) {
+                return name;
+            }
+            out.println("Names are 1 to 32 letters, digits, '-' or '_'.");
+        }
+    }
+
+    /**
+     * Reads one line from a client. Lines are capped at {@link #MAX_LINE_LENGTH} characters,
+     * so a client that never sends a newline cannot make the server buffer its input without end.
+     *
+     * @param input The client's input
+     * @return The line without its terminator, or null if the client disconnected
+     * @throws IOException If the input cannot be read or the line is too long
+     */
+    private static String readLine(BufferedReader input) throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            int c = input.read();
+            if (c < 0) {
+                return line.length() > 0 ? line.toString() : null;
+            }
+            if (c == '\n') {
+                if (line.length() > 0 && line.charAt(line.length() - 1) == '\r') {
+                    line.setLength(line.length() - 1);
+                }
+                return line.toString();
+            }
+            if (line.length() == MAX_LINE_LENGTH) {
+                throw new IOException("Line longer than " + MAX_LINE_LENGTH + " characters");
+            }
+            line.append((char) c);
+        }
+    }
+}
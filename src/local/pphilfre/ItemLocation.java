@@ -0,0 +1,51 @@
+package local.pphilfre;
+
+/**
+ * Describes where an item currently is in a world.
+ * An item is always in exactly one place: a room, the player's inventory,
+ * an NPC's inventory, or nowhere at all (not yet spawned, or consumed).
+ */
+public class ItemLocation {
+    /**
+     * The kinds of holder an item can be in.
+     */
+    public enum Kind {
+        NOWHERE,
+        ROOM,
+        PLAYER,
+        NPC
+    }
+
+    /** The location of an item that is not in the world. */
+    public static final ItemLocation NOWHERE = new ItemLocation(Kind.NOWHERE, null);
+
+    /** The location of an item in the player's inventory. */
+    public static final ItemLocation PLAYER = new ItemLocation(Kind.PLAYER, null);
+
+    private final Kind kind;
+    private final String holderId;
+
+    /**
+     * Creates a new item location.
+     *
+     * @param kind The kind of holder
+     * @param holderId The ID of the room or NPC holding the item, or null for the player and nowhere
+     */
+    public ItemLocation(Kind kind, String holderId) {
+        this.kind = kind;
+        this.holderId = holderId;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getHolderId() {
+        return holderId;
+    }
+
+    @Override
+    public String toString() {
+        return holderId != null ? kind + ":" + holderId : kind.toString();
+    }
+}
@@ -1,21 +1,27 @@
 package local.pphilfre;
 
-import local.pphilfre.datamodel.Item;
+import local.pphilfre.datamodel.CompiledWorld;
 import local.pphilfre.datamodel.PlayerState;
+import local.pphilfre.utils.OutputSink;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Represents the player in the game.
+ * The current room is held as an ordinal of the world's {@link CompiledWorld}, and the
+ * inventory lives in the world's item location index so the world always knows where every item is.
  */
 public class Player {
-    private String currentRoomId;
-    private List<String> inventoryItemIds;
+    private int currentRoom;
     private Map<String, String> playerFlags;
     private World world; // Reference to the game world for item lookups
+    private CompiledWorld compiledWorld;
 
     /**
      * Creates a new player with the specified parameters.
@@ -25,10 +31,16 @@ public class Player {
      * @param world Reference to the game world
      */
     public Player(String startingRoomId, List<String> initialInventory, World world) {
-        this.currentRoomId = startingRoomId;
-        this.inventoryItemIds = initialInventory != null ? new ArrayList<>(initialInventory) : new ArrayList<>();
-        this.playerFlags = new HashMap<>();
         this.world = world;
+        this.compiledWorld = world.getCompiledWorld();
+        this.currentRoom = compiledWorld.getRoomOrdinal(startingRoomId);
+        this.playerFlags = new HashMap<>();
+        
+        if (initialInventory != null) {
+            for (String itemId : initialInventory) {
+                world.addItemToPlayer(compiledWorld.getItemOrdinal(itemId));
+            }
+        }
     }
 
     /**
@@ -37,7 +49,16 @@ public class Player {
      * @return The current room ID
      */
     public String getCurrentRoomId() {
-        return currentRoomId;
+        return compiledWorld.getRoomId(currentRoom);
+    }
+
+    /**
+     * Gets the current room ordinal.
+     *
+     * @return The current room ordinal
+     */
+    public int getCurrentRoom() {
+        return currentRoom;
     }
 
     /**
@@ -46,7 +67,20 @@ public class Player {
      * @param currentRoomId The room ID to set
      */
     public void setCurrentRoomId(String currentRoomId) {
-        this.currentRoomId = currentRoomId;
+        setCurrentRoom(compiledWorld.getRoomOrdinal(currentRoomId));
+    }
+
+    /**
+     * Sets the current room ordinal.
+     *
+     * @param currentRoom The room ordinal to set
+     */
+    public void setCurrentRoom(int currentRoom) {
+        this.currentRoom = currentRoom;
+        StateChangeListener listener = world.getStateChangeListener();
+        if (listener != null) {
+            listener.playerMoved(currentRoom);
+        }
     }
 
     /**
@@ -55,9 +89,16 @@ public class Player {
      * @param itemId The ID of the item to add
      */
     public void addItem(String itemId) {
-        if (itemId != null && !inventoryItemIds.contains(itemId)) {
-            inventoryItemIds.add(itemId);
-        }
+        addItem(compiledWorld.getItemOrdinal(itemId));
+    }
+
+    /**
+     * Adds an item to the player's inventory.
+     *
+     * @param item The ordinal of the item to add
+     */
+    public void addItem(int item) {
+        world.addItemToPlayer(item);
     }
 
     /**
@@ -67,7 +108,17 @@ public class Player {
      * @return true if the item was removed, false otherwise
      */
     public boolean removeItem(String itemId) {
-        return inventoryItemIds.remove(itemId);
+        return removeItem(compiledWorld.getItemOrdinal(itemId));
+    }
+
+    /**
+     * Removes an item from the player's inventory.
+     *
+     * @param item The ordinal of the item to remove
+     * @return true if the item was removed, false otherwise
+     */
+    public boolean removeItem(int item) {
+        return world.removeItemFromPlayer(item);
     }
 
     /**
@@ -77,7 +128,17 @@ public class Player {
      * @return true if the player has the item, false otherwise
      */
     public boolean hasItem(String itemId) {
-        return inventoryItemIds.contains(itemId);
+        return hasItem(compiledWorld.getItemOrdinal(itemId));
+    }
+
+    /**
+     * Checks if the player has a specific item.
+     *
+     * @param item The ordinal of the item to check for
+     * @return true if the player has the item, false otherwise
+     */
+    public boolean hasItem(int item) {
+        return item != CompiledWorld.NONE && world.getItemHolderKind(item) == ItemLocation.Kind.PLAYER;
     }
 
     /**
@@ -87,39 +148,26 @@ public class Player {
      * @return The item ID if found, null otherwise
      */
     public String getItemFromInventoryByName(String name) {
-        if (name == null || name.trim().isEmpty()) {
-            return null;
-        }
-        
-        String normalizedName = name.toLowerCase().trim();
-        
-        for (String itemId : inventoryItemIds) {
-            Item item = world.getItemDefinition(itemId);
-            if (item != null && item.getName().toLowerCase().contains(normalizedName)) {
-                return itemId;
-            }
-        }
-        
-        return null;
+        return compiledWorld.getItemId(world.findPlayerItemByName(name));
     }
 
     /**
-     * Displays the player's inventory to the console.
+     * Displays the player's inventory.
+     *
+     * @param out The sink to write the inventory to
      */
-    public void displayInventory() {
-        if (inventoryItemIds.isEmpty()) {
-            System.out.println("Your inventory is empty.");
+    public void displayInventory(OutputSink out) {
+        if (world.getPlayerItemCount() == 0) {
+            out.println("Your inventory is empty.");
             return;
         }
         
-        System.out.println("Inventory:");
-        System.out.println("----------");
+        out.println("Inventory:");
+        out.println("----------");
         
-        for (String itemId : inventoryItemIds) {
-            Item item = world.getItemDefinition(itemId);
-            if (item != null) {
-                System.out.println("- " + item.getName());
-            }
+        for (int item = world.getFirstPlayerItem(); item != CompiledWorld.NONE; item = world.getNextItem(item)) {
+            out.print("- ");
+            out.println(compiledWorld.getItem(item).getName());
         }
     }
 
@@ -146,6 +194,10 @@ public class Player {
             } else {
                 playerFlags.remove(flagName);
             }
+            StateChangeListener listener = world.getStateChangeListener();
+            if (listener != null) {
+                listener.playerFlagChanged(flagName, value);
+            }
         }
     }
 
@@ -155,7 +207,27 @@ public class Player {
      * @return The list of item IDs
      */
     public List<String> getInventoryItemIds() {
-        return new ArrayList<>(inventoryItemIds);
+        List<String> itemIds = new ArrayList<>(world.getPlayerItemCount());
+        for (int item = world.getFirstPlayerItem(); item != CompiledWorld.NONE; item = world.getNextItem(item)) {
+            itemIds.add(compiledWorld.getItemId(item));
+        }
+        return itemIds;
+    }
+
+    /**
+     * Writes a compact encoding of the player's room and flags, in flag name order.
+     * The inventory is not included, as it is part of {@link World#writeStateKey(DataOutput)}.
+     *
+     * @param out The output to write to
+     * @throws IOException If the output cannot be written
+     */
+    public void writeStateKey(DataOutput out) throws IOException {
+        out.writeInt(currentRoom);
+        out.writeInt(playerFlags.size());
+        for (Map.Entry<String, String> entry : new TreeMap<>(playerFlags).entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
     }
 
     /**
@@ -164,7 +236,7 @@ public class Player {
      * @return The current player state
      */
     public PlayerState getState() {
-        return new PlayerState(currentRoomId, inventoryItemIds, playerFlags);
+        return new PlayerState(getCurrentRoomId(), getInventoryItemIds(), playerFlags);
     }
 
     /**
@@ -174,9 +246,19 @@ public class Player {
      */
     public void restoreState(PlayerState state) {
         if (state != null) {
-            this.currentRoomId = state.getCurrentRoomId();
-            this.inventoryItemIds = new ArrayList<>(state.getInventoryItemIds());
-            this.playerFlags = new HashMap<>(state.getPlayerFlags());
+            // Restoring is not a change the world's listener should see
+            StateChangeListener listener = world.getStateChangeListener();
+            world.setStateChangeListener(null);
+            try {
+                this.currentRoom = compiledWorld.getRoomOrdinal(state.getCurrentRoomId());
+                world.clearPlayerItems();
+                for (String itemId : state.getInventoryItemIds()) {
+                    addItem(itemId);
+                }
+                this.playerFlags = new HashMap<>(state.getPlayerFlags());
+            } finally {
+                world.setStateChangeListener(listener);
+            }
         }
     }
 }
@@ -0,0 +1,97 @@
+package local.pphilfre;
+
+/**
+ * Receives every change made to a session's dynamic state through {@link World} and {@link Player}.
+ * Changes made while a state is being restored from a save are not reported.
+ * <p>
+ * Entities are passed as ordinals of the world's compiled form, so listeners can record
+ * changes without allocating.
+ */
+public interface StateChangeListener {
+
+    /**
+     * Called when an item is put in a room, wherever it was before.
+     *
+     * @param item The item ordinal
+     * @param room The room ordinal
+     */
+    void itemMovedToRoom(int item, int room);
+
+    /**
+     * Called when an item is put in the player's inventory, wherever it was before.
+     *
+     * @param item The item ordinal
+     */
+    void itemMovedToPlayer(int item);
+
+    /**
+     * Called when an item is taken out of a room or the player's inventory and left nowhere.
+     *
+     * @param item The item ordinal
+     */
+    void itemRemoved(int item);
+
+    /**
+     * Called when a puzzle's solved status is set.
+     *
+     * @param puzzle The puzzle ordinal
+     * @param solved The new solved status
+     */
+    void puzzleSolvedChanged(int puzzle, boolean solved);
+
+    /**
+     * Called when a global flag is set or cleared.
+     *
+     * @param flagName The flag name
+     * @param value The new value, or null if the flag was cleared
+     */
+    void globalFlagChanged(String flagName, String value);
+
+    /**
+     * Called when a puzzle effect locks or unlocks an exit.
+     *
+     * @param exit The exit ordinal
+     * @param locked The new locked state
+     */
+    void exitLockChanged(int exit, boolean locked);
+
+    /**
+     * Called when an NPC moves to another room.
+     *
+     * @param npc The NPC ordinal
+     * @param roomId The ID of the destination room
+     */
+    void npcMoved(int npc, String roomId);
+
+    /**
+     * Called when a conversation moves an NPC to another dialogue node.
+     *
+     * @param npc The NPC ordinal
+     * @param nodeId The ID of the new dialogue node
+     */
+    void npcDialogueChanged(int npc, String nodeId);
+
+    /**
+     * Called when an NPC-specific flag is set or cleared.
+     *
+     * @param npc The NPC ordinal
+     * @param flagName The flag name
+     * @param value The new value, or null if the flag was cleared
+     */
+    void npcFlagChanged(int npc, String flagName, String value);
+
+    /**
+     * Called when the player moves to another room.
+     *
+     * @param room The room ordinal
+     */
+    void playerMoved(int room);
+
+    /**
+     * Called when a player flag is set or cleared.
+     *
+     * @param flagName The flag name
+     * @param value The new value, or null if the flag was cleared
+     */
+    void playerFlagChanged(String flagName, String value);
+}
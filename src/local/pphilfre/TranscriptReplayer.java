@@ -0,0 +1,299 @@
+package local.pphilfre;
+
+import local.pphilfre.datamodel.EndCondition;
+import local.pphilfre.datamodel.GameDefinition;
+import local.pphilfre.save.MemorySaveStore;
+import local.pphilfre.utils.StringOutputSink;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays transcripts of commands, such as walkthroughs, through {@link GameController#processCommand(String)}
+ * without a console, capturing the output of every command.
+ * <p>
+ * Each replay is a fresh game with its own controller, world and player, and saves that stay in
+ * memory, so any number of replays can run side by side against one shared definition. A replay
+ * stops where the console game would, when the game is over, leaving any later commands unplayed.
+ * Lines are played exactly as written, blank ones included, so a replay matches what a player
+ * typing the transcript would have seen.
+ */
+public class TranscriptReplayer {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final GameDefinition gameDefinition;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean captureOutput = true;
+
+    /**
+     * Creates a replayer for a world.
+     *
+     * @param gameDefinition The sealed game definition shared by every replay
+     */
+    public TranscriptReplayer(GameDefinition gameDefinition) {
+        this.gameDefinition = gameDefinition;
+    }
+
+    /**
+     * Sets the number of replays run at the same time by {@link #replayAll(List, int)}.
+     *
+     * @param threads The number of threads
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Sets whether the output of each command is kept. Output that is not kept is still
+     * produced, so throughput is measured with the full cost of every command.
+     *
+     * @param captureOutput true to keep the output, false to throw it away
+     */
+    public void setCaptureOutput(boolean captureOutput) {
+        this.captureOutput = captureOutput;
+    }
+
+    /**
+     * Reads a transcript file, one command per line.
+     *
+     * @param file The transcript file
+     * @return The transcript, named after the file
+     * @throws IOException If the file cannot be read
+     */
+    public static Transcript read(Path file) throws IOException {
+        return new Transcript(file.getFileName().toString(), Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Replays one transcript in the calling thread.
+     *
+     * @param transcript The transcript
+     * @return The outcome of the replay
+     */
+    public Result replay(Transcript transcript) {
+        StringOutputSink out = new StringOutputSink();
+        GameController gameController = new GameController(out);
+        gameController.setSaveStore(new MemorySaveStore());
+        List<String> outputs = captureOutput ? new ArrayList<>(transcript.getCommands().size() + 1) : null;
+        
+        long start = System.nanoTime();
+        int commandsRun = 0;
+        String error = null;
+        try {
+            gameController.startGame(gameDefinition);
+            keep(outputs, out.drain());
+            
+            for (String command : transcript.getCommands()) {
+                if (gameController.isGameOver()) {
+                    break;
+                }
+                commandsRun++;
+                gameController.processCommand(command);
+                keep(outputs, out.drain());
+            }
+        } catch (RuntimeException e) {
+            // A crash is an outcome worth reporting like any other, not a reason to stop the batch;
+            // the command that crashed counts as run, with whatever it printed first
+            error = e.toString();
+            keep(outputs, out.drain());
+        }
+        long elapsed = System.nanoTime() - start;
+        
+        return new Result(transcript, commandsRun, outputs, gameController.isGameOver(),
+                          gameController.getEndCondition(), error, elapsed);
+    }
+
+    /**
+     * Replays many transcripts in parallel, each the given number of times.
+     *
+     * @param transcripts The transcripts
+     * @param repeat How many times to replay each transcript
+     * @return The outcome of every replay, in transcript order with the repeats of a transcript together
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    public List<Result> replayAll(List<Transcript> transcripts, int repeat) throws InterruptedException {
+        List<Callable<Result>> replays = new ArrayList<>(transcripts.size() * repeat);
+        for (Transcript transcript : transcripts) {
+            for (int i = 0; i < repeat; i++) {
+                replays.add(() -> replay(transcript));
+            }
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Result> results = new ArrayList<>(replays.size());
+            for (Future<Result> future : executor.invokeAll(replays)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            // replay() reports its own failures, so this is a bug in the replayer itself
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Adds a command's output to the captured outputs.
+     *
+     * @param outputs The captured outputs, or null if output is not kept
+     * @param output The output
+     */
+    private static void keep(List<String> outputs, String output) {
+        if (outputs != null) {
+            outputs.add(output);
+        }
+    }
+
+    /**
+     * A named list of commands to replay.
+     */
+    public static class Transcript {
+        private final String name;
+        private final List<String> commands;
+        
+        /**
+         * Creates a transcript.
+         *
+         * @param name The name reports use for the transcript, e.g. its file name
+         * @param commands The commands, in order
+         */
+        public Transcript(String name, List<String> commands) {
+            this.name = name;
+            this.commands = Collections.unmodifiableList(new ArrayList<>(commands));
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public List<String> getCommands() {
+            return commands;
+        }
+    }
+
+    /**
+     * The outcome of replaying a transcript.
+     */
+    public static class Result {
+        private final Transcript transcript;
+        private final int commandsRun;
+        private final List<String> outputs; // the opening output, then one entry per command run; null if not kept
+        private final boolean gameOver;
+        private final EndCondition endCondition;
+        private final String error;
+        private final long elapsedNanos;
+        
+        Result(Transcript transcript, int commandsRun, List<String> outputs, boolean gameOver,
+               EndCondition endCondition, String error, long elapsedNanos) {
+            this.transcript = transcript;
+            this.commandsRun = commandsRun;
+            this.outputs = outputs;
+            this.gameOver = gameOver;
+            this.endCondition = endCondition;
+            this.error = error;
+            this.elapsedNanos = elapsedNanos;
+        }
+        
+        public Transcript getTranscript() {
+            return transcript;
+        }
+        
+        public int getCommandsRun() {
+            return commandsRun;
+        }
+        
+        public boolean isGameOver() {
+            return gameOver;
+        }
+        
+        public EndCondition getEndCondition() {
+            return endCondition;
+        }
+        
+        public String getError() {
+            return error;
+        }
+        
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+        
+        /**
+         * Gets the output shown when the game started, before the first command.
+         *
+         * @return The opening output, or null if output was not kept
+         */
+        public String getOpeningOutput() {
+            return outputs != null ? outputs.get(0) : null;
+        }
+        
+        /**
+         * Gets the output of a command.
+         *
+         * @param index The index of the command in the transcript, less than {@link #getCommandsRun()}
+         * @return The command's output, or null if output was not kept
+         */
+        public String getOutput(int index) {
+            return outputs != null ? outputs.get(index + 1) : null;
+        }
+        
+        /**
+         * Renders the replay as a console session would show it: the opening output, then each
+         * command after a prompt, followed by its output.
+         *
+         * @return The rendered replay, or null if output was not kept
+         */
+        public String render() {
+            if (outputs == null) {
+                return null;
+            }
+            
+            StringBuilder text = new StringBuilder(outputs.get(0));
+            for (int i = 0; i < commandsRun; i++) {
+                text.append("> ").append(transcript.getCommands().get(i)).append(LINE_SEPARATOR);
+                text.append(outputs.get(i + 1));
+            }
+            return text.toString();
+        }
+        
+        /**
+         * Finds where this replay first differs from an earlier rendering of the same transcript.
+         * Output must have been kept.
+         *
+         * @param expected The expected rendering, as returned by {@link #render()}
+         * @return -1 if the renderings are identical, 0 if the opening output differs, the number
+         *         of the first command that differs counting from 1, or one more than
+         *         {@link #getCommandsRun()} if the expected rendering carries on after the last command
+         */
+        public int findFirstDifference(String expected) {
+            if (render().equals(expected)) {
+                return -1;
+            }
+            
+            if (!expected.startsWith(outputs.get(0))) {
+                return 0;
+            }
+            int offset = outputs.get(0).length();
+            for (int i = 0; i < commandsRun; i++) {
+                String block = "> " + transcript.getCommands().get(i) + LINE_SEPARATOR + outputs.get(i + 1);
+                if (!expected.startsWith(block, offset)) {
+                    return i + 1;
+                }
+                offset += block.length();
+            }
+            return commandsRun + 1;
+        }
+    }
+}
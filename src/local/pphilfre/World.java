@@ -2,31 +2,57 @@ package local.pphilfre;
 
 import local.pphilfre.datamodel.*;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 
 /**
  * Represents the game world and manages its dynamic state.
+ * All mutable state lives in this class; the {@link GameDefinition} it is built from
+ * is never modified, so one definition can back many worlds at once.
+ * <p>
+ * The state is held in arrays and bit sets indexed by the ordinals of the
+ * {@link CompiledWorld}. The String-based methods translate IDs to ordinals on the way in.
  */
 public class World {
     private GameDefinition gameDefinition;
-    
-    // Dynamic world state
-    private Map<String, List<String>> currentRoomItems;  // roomId -> list of itemIds
-    private Map<String, Boolean> puzzleSolvedStatus;     // puzzleId -> solved status
-    private Map<String, NpcInstance> npcInstances;       // npcDefinitionId -> NpcInstance
-    private Map<String, String> currentGlobalFlags;      // flagName -> value
-    private Map<String, Boolean> currentExitLockedStates; // "roomId_exitDir" -> locked status
+    private CompiledWorld compiledWorld;
+
+    // Dynamic world state, indexed by ordinal
+    private ItemLocation.Kind[] itemHolderKinds; // item -> kind of holder the item is in
+    private int[] itemHolders;              // item -> room or NPC ordinal holding the item, NONE otherwise
+    private int[] nextItems;                // item -> next item in the same room or inventory, NONE at the end
+    private int[] previousItems;            // item -> previous item in the same room or inventory, NONE at the start
+    private int[] itemListHeads;            // list -> first item; lists are the rooms followed by the player's inventory
+    private int[] itemListTails;            // list -> last item
+    private int[] itemListCounts;           // list -> number of items
+    private int playerItemList;             // index of the player's inventory in the item lists
+    private BitSet solvedPuzzles;           // puzzle -> solved status
+    private NpcInstance[] npcInstances;     // npc -> NpcInstance, null if the NPC is not placed
+    private int[] npcRooms;                 // npc -> room ordinal, NONE if the NPC is not in a known room
+    private int[][] roomNpcs;               // room -> NPC ordinals in ascending order, first roomNpcCounts[room] are valid
+    private int[] roomNpcCounts;            // room -> number of NPCs in the room
+    private String[] globalFlagValues;      // flag -> value
+    private Map<String, String> extraGlobalFlags; // flags the definition never mentions, created on demand
+    private BitSet overriddenExits;         // exit -> locked state has been set by a puzzle effect
+    private BitSet lockedExits;             // exit -> locked state set by puzzle effects
+    private StateChangeListener listener;   // told about every change, null if nobody is listening
 
     /**
      * Creates a new game world from a game definition.
      *
-     * @param gameDefinition The game definition to use
+     * @param gameDefinition The game definition to use, shared read-only with other worlds
      */
     public World(GameDefinition gameDefinition) {
         this.gameDefinition = gameDefinition;
+        this.compiledWorld = gameDefinition.getCompiledWorld();
         
         // Initialize dynamic state
         initializeWorldState();
@@ -37,63 +63,73 @@ public class World {
      */
     private void initializeWorldState() {
         // Initialize room items from room definitions
-        currentRoomItems = new HashMap<>();
-        for (Map.Entry<String, Room> entry : gameDefinition.getRooms().entrySet()) {
-            String roomId = entry.getKey();
-            Room room = entry.getValue();
-            currentRoomItems.put(roomId, new ArrayList<>(room.getItemIds()));
+        clearItemLocations();
+        for (int room = 0; room < compiledWorld.getRoomCount(); room++) {
+            for (int item : compiledWorld.getInitialRoomItems(room)) {
+                moveItemToRoom(room, item);
+            }
         }
         
         // Set all puzzles to unsolved
-        puzzleSolvedStatus = new HashMap<>();
-        for (String puzzleId : gameDefinition.getPuzzles().keySet()) {
-            puzzleSolvedStatus.put(puzzleId, false);
-        }
+        solvedPuzzles = new BitSet(compiledWorld.getPuzzleCount());
         
         // Create NPC instances based on NPC definitions and their initial placements
-        npcInstances = new HashMap<>();
-        for (Map.Entry<String, NpcDefinition> entry : gameDefinition.getNpcs().entrySet()) {
-            String npcId = entry.getKey();
-            NpcDefinition npcDef = entry.getValue();
-            
-            // Find which room this NPC starts in
-            String startRoomId = null;
-            for (Map.Entry<String, Room> roomEntry : gameDefinition.getRooms().entrySet()) {
-                if (roomEntry.getValue().getNpcIds().contains(npcId)) {
-                    startRoomId = roomEntry.getKey();
-                    break;
-                }
-            }
-            
-            if (startRoomId != null) {
-                NpcInstance npcInstance = new NpcInstance(
-                    npcId,
-                    startRoomId,
+        npcInstances = new NpcInstance[compiledWorld.getNpcCount()];
+        clearNpcOccupancy();
+        for (int npc = 0; npc < npcInstances.length; npc++) {
+            int startRoom = compiledWorld.getInitialNpcRoom(npc);
+            if (startRoom != CompiledWorld.NONE) {
+                NpcDefinition npcDef = compiledWorld.getNpc(npc);
+                npcInstances[npc] = new NpcInstance(
+                    compiledWorld.getNpcId(npc),
+                    compiledWorld.getRoomId(startRoom),
                     npcDef.getInitialDialogueNodeId(),
                     npcDef.getInitialItemIds(),
                     npcDef.getInitialNpcFlags()
                 );
-                npcInstances.put(npcId, npcInstance);
+                addNpcToRoom(npc, startRoom);
+                placeNpcItems(npc);
             }
         }
         
         // Initialize global flags from game definition
-        currentGlobalFlags = new HashMap<>(gameDefinition.getGlobalFlags());
-        
-        // Initialize exit locked states from room definitions
-        currentExitLockedStates = new HashMap<>();
-        for (Map.Entry<String, Room> roomEntry : gameDefinition.getRooms().entrySet()) {
-            String roomId = roomEntry.getKey();
-            Room room = roomEntry.getValue();
-            
-            for (Map.Entry<String, Exit> exitEntry : room.getExits().entrySet()) {
-                String direction = exitEntry.getKey();
-                Exit exit = exitEntry.getValue();
-                String exitKey = roomId + "_" + direction;
-                
-                currentExitLockedStates.put(exitKey, exit.isInitiallyLocked());
-            }
+        globalFlagValues = new String[compiledWorld.getFlagCount()];
+        for (int flag = 0; flag < globalFlagValues.length; flag++) {
+            globalFlagValues[flag] = compiledWorld.getInitialFlagValue(flag);
         }
+        extraGlobalFlags = null;
+        
+        // Exit locks start out governed purely by each exit's own requirements;
+        // explicit overrides are only recorded once a puzzle effect locks or unlocks an exit
+        overriddenExits = new BitSet(compiledWorld.getExitCount());
+        lockedExits = new BitSet(compiledWorld.getExitCount());
+    }
+
+    /**
+     * Sets the listener told about every change to this world and its player.
+     *
+     * @param listener The listener, or null to stop reporting changes
+     */
+    public void setStateChangeListener(StateChangeListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Gets the listener told about every change to this world and its player.
+     *
+     * @return The listener, or null if nobody is listening
+     */
+    public StateChangeListener getStateChangeListener() {
+        return listener;
+    }
+
+    /**
+     * Gets the compiled form of the game definition this world runs on.
+     *
+     * @return The compiled world
+     */
+    public CompiledWorld getCompiledWorld() {
+        return compiledWorld;
     }
 
     /**
@@ -103,7 +139,7 @@ public class World {
      * @return The room definition, or null if not found
      */
     public Room getRoom(String roomId) {
-        return gameDefinition.getRooms().get(roomId);
+        return compiledWorld.getRoom(compiledWorld.getRoomOrdinal(roomId));
     }
 
     /**
@@ -113,7 +149,7 @@ public class World {
      * @return The item definition, or null if not found
      */
     public Item getItemDefinition(String itemId) {
-        return gameDefinition.getItems().get(itemId);
+        return compiledWorld.getItem(compiledWorld.getItemOrdinal(itemId));
     }
 
     /**
@@ -123,7 +159,7 @@ public class World {
      * @return The NPC definition, or null if not found
      */
     public NpcDefinition getNpcDefinition(String npcId) {
-        return gameDefinition.getNpcs().get(npcId);
+        return compiledWorld.getNpc(compiledWorld.getNpcOrdinal(npcId));
     }
 
     /**
@@ -133,17 +169,115 @@ public class World {
      * @return The puzzle definition, or null if not found
      */
     public Puzzle getPuzzleDefinition(String puzzleId) {
-        return gameDefinition.getPuzzles().get(puzzleId);
+        return compiledWorld.getPuzzle(compiledWorld.getPuzzleOrdinal(puzzleId));
     }
 
     /**
      * Gets the list of item IDs currently in a room.
      *
      * @param roomId The room ID
-     * @return The list of item IDs, or an empty list if the room doesn't exist
+     * @return A new list of item IDs, or an empty list if the room doesn't exist
      */
     public List<String> getItemsInRoom(String roomId) {
-        return currentRoomItems.getOrDefault(roomId, new ArrayList<>());
+        int room = compiledWorld.getRoomOrdinal(roomId);
+        if (room == CompiledWorld.NONE) {
+            return new ArrayList<>();
+        }
+        
+        return getItemIds(room);
+    }
+
+    /**
+     * Gets the number of items currently in a room.
+     *
+     * @param room The room ordinal
+     * @return The number of items
+     */
+    public int getRoomItemCount(int room) {
+        return itemListCounts[room];
+    }
+
+    /**
+     * Gets the first item in a room. Use {@link #getNextItem(int)} to walk the rest.
+     *
+     * @param room The room ordinal
+     * @return The item ordinal, or NONE if the room is empty
+     */
+    public int getFirstRoomItem(int room) {
+        return itemListHeads[room];
+    }
+
+    /**
+     * Gets the number of items in the player's inventory.
+     *
+     * @return The number of items
+     */
+    public int getPlayerItemCount() {
+        return itemListCounts[playerItemList];
+    }
+
+    /**
+     * Gets the first item in the player's inventory. Use {@link #getNextItem(int)} to walk the rest.
+     *
+     * @return The item ordinal, or NONE if the inventory is empty
+     */
+    public int getFirstPlayerItem() {
+        return itemListHeads[playerItemList];
+    }
+
+    /**
+     * Gets the item after this one in the same room or inventory, in the order the items arrived.
+     *
+     * @param item The item ordinal
+     * @return The next item ordinal, or NONE if this is the last item
+     */
+    public int getNextItem(int item) {
+        return nextItems[item];
+    }
+
+    /**
+     * Gets the location of an item.
+     *
+     * @param itemId The item ID
+     * @return The item's location, or {@link ItemLocation#NOWHERE} if the item is unknown
+     */
+    public ItemLocation getItemLocation(String itemId) {
+        int item = compiledWorld.getItemOrdinal(itemId);
+        if (item == CompiledWorld.NONE) {
+            return ItemLocation.NOWHERE;
+        }
+        
+        switch (itemHolderKinds[item]) {
+            case ROOM:
+                return new ItemLocation(ItemLocation.Kind.ROOM, compiledWorld.getRoomId(itemHolders[item]));
+            case NPC:
+                return new ItemLocation(ItemLocation.Kind.NPC, compiledWorld.getNpcId(itemHolders[item]));
+            case PLAYER:
+                return ItemLocation.PLAYER;
+            default:
+                return ItemLocation.NOWHERE;
+        }
+    }
+
+    /**
+     * Gets the kind of holder an item is in.
+     *
+     * @param item The item ordinal
+     * @return The kind of holder
+     */
+    public ItemLocation.Kind getItemHolderKind(int item) {
+        return itemHolderKinds[item];
+    }
+
+    /**
+     * Gets the room or NPC holding an item.
+     *
+     * @param item The item ordinal
+     * @return The room ordinal or NPC ordinal, depending on {@link #getItemHolderKind(int)},
+     *         or NONE if the item is with the player or nowhere
+     */
+    public int getItemHolder(int item) {
+        return itemHolders[item];
     }
 
     /**
@@ -153,9 +287,38 @@ public class World {
      * @param itemId The item ID
      */
     public void addItemToRoom(String roomId, String itemId) {
-        List<String> items = currentRoomItems.computeIfAbsent(roomId, k -> new ArrayList<>());
-        if (!items.contains(itemId)) {
-            items.add(itemId);
+        addItemToRoom(compiledWorld.getRoomOrdinal(roomId), compiledWorld.getItemOrdinal(itemId));
+    }
+
+    /**
+     * Adds an item to a room, taking it from wherever it was before.
+     *
+     * @param room The room ordinal
+     * @param item The item ordinal
+     */
+    public void addItemToRoom(int room, int item) {
+        moveItemToRoom(room, item);
+    }
+
+    /**
+     * Moves an item into a room and tells the listener. The constructor uses this rather than
+     * {@link #addItemToRoom(int, int)}, which a subclass could override.
+     *
+     * @param room The room ordinal
+     * @param item The item ordinal
+     */
+    private void moveItemToRoom(int room, int item) {
+        if (room == CompiledWorld.NONE || item == CompiledWorld.NONE
+                || (itemHolderKinds[item] == ItemLocation.Kind.ROOM && itemHolders[item] == room)) {
+            return;
+        }
+        
+        detachItem(item);
+        appendItem(item, room);
+        itemHolderKinds[item] = ItemLocation.Kind.ROOM;
+        itemHolders[item] = room;
+        if (listener != null) {
+            listener.itemMovedToRoom(item, room);
         }
     }
 
@@ -167,8 +330,187 @@ public class World {
      * @return true if the item was removed, false otherwise
      */
     public boolean removeItemFromRoom(String roomId, String itemId) {
-        List<String> items = currentRoomItems.get(roomId);
-        return items != null && items.remove(itemId);
+        return removeItemFromRoom(compiledWorld.getRoomOrdinal(roomId), compiledWorld.getItemOrdinal(itemId));
+    }
+
+    /**
+     * Removes an item from a room. The item is then nowhere until it is added somewhere else.
+     *
+     * @param room The room ordinal
+     * @param item The item ordinal
+     * @return true if the item was removed, false if it was not in the room
+     */
+    public boolean removeItemFromRoom(int room, int item) {
+        if (room == CompiledWorld.NONE || item == CompiledWorld.NONE
+                || itemHolderKinds[item] != ItemLocation.Kind.ROOM || itemHolders[item] != room) {
+            return false;
+        }
+        
+        detachItem(item);
+        if (listener != null) {
+            listener.itemRemoved(item);
+        }
+        return true;
+    }
+
+    /**
+     * Puts an item in the player's inventory, taking it from wherever it was before.
+     *
+     * @param item The item ordinal
+     */
+    public void addItemToPlayer(int item) {
+        if (item == CompiledWorld.NONE || itemHolderKinds[item] == ItemLocation.Kind.PLAYER) {
+            return;
+        }
+        
+        detachItem(item);
+        appendItem(item, playerItemList);
+        itemHolderKinds[item] = ItemLocation.Kind.PLAYER;
+        if (listener != null) {
+            listener.itemMovedToPlayer(item);
+        }
+    }
+
+    /**
+     * Removes an item from the player's inventory. The item is then nowhere until it is added somewhere else.
+     *
+     * @param item The item ordinal
+     * @return true if the item was removed, false if the player did not have it
+     */
+    public boolean removeItemFromPlayer(int item) {
+        if (item == CompiledWorld.NONE || itemHolderKinds[item] != ItemLocation.Kind.PLAYER) {
+            return false;
+        }
+        
+        detachItem(item);
+        if (listener != null) {
+            listener.itemRemoved(item);
+        }
+        return true;
+    }
+
+    /**
+     * Removes every item from the player's inventory.
+     */
+    public void clearPlayerItems() {
+        while (itemListHeads[playerItemList] != CompiledWorld.NONE) {
+            detachItem(itemListHeads[playerItemList]);
+        }
+    }
+
+    /**
+     * Resets every item to being nowhere.
+     */
+    private void clearItemLocations() {
+        int itemCount = compiledWorld.getItemCount();
+        int listCount = compiledWorld.getRoomCount() + 1;
+        itemHolderKinds = new ItemLocation.Kind[itemCount];
+        Arrays.fill(itemHolderKinds, ItemLocation.Kind.NOWHERE);
+        itemHolders = new int[itemCount];
+        Arrays.fill(itemHolders, CompiledWorld.NONE);
+        nextItems = new int[itemCount];
+        previousItems = new int[itemCount];
+        itemListHeads = new int[listCount];
+        Arrays.fill(itemListHeads, CompiledWorld.NONE);
+        itemListTails = new int[listCount];
+        Arrays.fill(itemListTails, CompiledWorld.NONE);
+        itemListCounts = new int[listCount];
+        playerItemList = listCount - 1;
+    }
+
+    /**
+     * Records the items an NPC carries as being held by that NPC.
+     * Items that are already somewhere else in the world stay where they are.
+     *
+     * @param npc The NPC ordinal
+     */
+    private void placeNpcItems(int npc) {
+        for (String itemId : npcInstances[npc].getInventoryItemIds()) {
+            int item = compiledWorld.getItemOrdinal(itemId);
+            if (item != CompiledWorld.NONE && itemHolderKinds[item] == ItemLocation.Kind.NOWHERE) {
+                itemHolderKinds[item] = ItemLocation.Kind.NPC;
+                itemHolders[item] = npc;
+            }
+        }
+    }
+
+    /**
+     * Appends an item to the end of a room or the player's inventory.
+     * The item must not currently be in any list.
+     *
+     * @param item The item ordinal
+     * @param list The room ordinal, or playerItemList for the inventory
+     */
+    private void appendItem(int item, int list) {
+        int tail = itemListTails[list];
+        previousItems[item] = tail;
+        nextItems[item] = CompiledWorld.NONE;
+        if (tail == CompiledWorld.NONE) {
+            itemListHeads[list] = item;
+        } else {
+            nextItems[tail] = item;
+        }
+        itemListTails[list] = item;
+        itemListCounts[list]++;
+    }
+
+    /**
+     * Takes an item out of whatever holds it and leaves it nowhere.
+     *
+     * @param item The item ordinal
+     */
+    private void detachItem(int item) {
+        switch (itemHolderKinds[item]) {
+            case ROOM:
+                unlinkItem(item, itemHolders[item]);
+                break;
+            case PLAYER:
+                unlinkItem(item, playerItemList);
+                break;
+            case NPC:
+                npcInstances[itemHolders[item]].removeItem(compiledWorld.getItemId(item));
+                break;
+            default:
+                return;
+        }
+        itemHolderKinds[item] = ItemLocation.Kind.NOWHERE;
+        itemHolders[item] = CompiledWorld.NONE;
+    }
+
+    /**
+     * Unlinks an item from a room or the player's inventory, keeping the order of the rest.
+     *
+     * @param item The item ordinal
+     * @param list The room ordinal, or playerItemList for the inventory
+     */
+    private void unlinkItem(int item, int list) {
+        int previous = previousItems[item];
+        int next = nextItems[item];
+        if (previous == CompiledWorld.NONE) {
+            itemListHeads[list] = next;
+        } else {
+            nextItems[previous] = next;
+        }
+        if (next == CompiledWorld.NONE) {
+            itemListTails[list] = previous;
+        } else {
+            previousItems[next] = previous;
+        }
+        itemListCounts[list]--;
+    }
+
+    /**
+     * Gets the IDs of the items in a room or the player's inventory, in order.
+     *
+     * @param list The room ordinal, or playerItemList for the inventory
+     * @return A new list of item IDs
+     */
+    private List<String> getItemIds(int list) {
+        List<String> result = new ArrayList<>(itemListCounts[list]);
+        for (int item = itemListHeads[list]; item != CompiledWorld.NONE; item = nextItems[item]) {
+            result.add(compiledWorld.getItemId(item));
+        }
+        return result;
     }
 
     /**
@@ -179,21 +521,68 @@ public class World {
      * @return The item ID if found, null otherwise
      */
     public String getItemInRoomByName(String itemName, String roomId) {
-        if (itemName == null || itemName.trim().isEmpty() || roomId == null) {
+        int room = compiledWorld.getRoomOrdinal(roomId);
+        if (itemName == null || room == CompiledWorld.NONE) {
             return null;
         }
         
-        String normalizedName = itemName.toLowerCase().trim();
-        List<String> roomItems = getItemsInRoom(roomId);
+        return compiledWorld.getItemId(findItemByName(NameIndex.normalize(itemName), room));
+    }
+
+    /**
+     * Finds the item in a room or the player's inventory that best matches a phrase.
+     * Exact names win over word-prefix matches, which win over substring matches.
+     *
+     * @param query The normalized phrase
+     * @param list The room ordinal, or playerItemList for the inventory
+     * @return The item ordinal, or NONE if nothing matches
+     */
+    private int findItemByName(String query, int list) {
+        if (query.isEmpty()) {
+            return CompiledWorld.NONE;
+        }
         
-        for (String itemId : roomItems) {
-            Item item = getItemDefinition(itemId);
-            if (item != null && item.getName().toLowerCase().contains(normalizedName)) {
-                return itemId;
+        NameIndex names = compiledWorld.getItemNames();
+        int item = CompiledWorld.NONE;
+        if (itemListCounts[list] <= names.countCandidates(query)) {
+            // Fewer items here than in the world-wide postings for the first word, so rank them directly
+            int bestRank = NameIndex.NO_MATCH;
+            for (int candidate = itemListHeads[list]; candidate != CompiledWorld.NONE; candidate = nextItems[candidate]) {
+                int rank = names.tokenRank(candidate, query);
+                if (NameIndex.isBetter(candidate, rank, item, bestRank)) {
+                    item = candidate;
+                    bestRank = rank;
+                }
             }
+        } else {
+            ItemLocation.Kind kind = list == playerItemList ? ItemLocation.Kind.PLAYER : ItemLocation.Kind.ROOM;
+            int holder = list == playerItemList ? CompiledWorld.NONE : list;
+            item = names.resolve(query, candidate -> itemHolderKinds[candidate] == kind && itemHolders[candidate] == holder);
+        }
+        if (item != CompiledWorld.NONE) {
+            return item;
         }
         
-        return null;
+        // Fall back to a substring match, taking the first item in arrival order
+        for (item = itemListHeads[list]; item != CompiledWorld.NONE; item = nextItems[item]) {
+            if (names.containsPhrase(item, query)) {
+                return item;
+            }
+        }
+        return CompiledWorld.NONE;
+    }
+
+    /**
+     * Finds the item in the player's inventory that best matches a phrase.
+     *
+     * @param itemName The phrase the player typed
+     * @return The item ordinal, or NONE if nothing matches
+     */
+    public int findPlayerItemByName(String itemName) {
+        if (itemName == null) {
+            return CompiledWorld.NONE;
+        }
+        return findItemByName(NameIndex.normalize(itemName), playerItemList);
     }
 
     /**
@@ -203,7 +592,26 @@ public class World {
      * @return true if the puzzle is solved, false otherwise
      */
     public boolean isPuzzleSolved(String puzzleId) {
-        return puzzleSolvedStatus.getOrDefault(puzzleId, false);
+        return isPuzzleSolved(compiledWorld.getPuzzleOrdinal(puzzleId));
+    }
+
+    /**
+     * Checks if a puzzle is solved.
+     *
+     * @param puzzle The puzzle ordinal
+     * @return true if the puzzle is solved, false otherwise
+     */
+    public boolean isPuzzleSolved(int puzzle) {
+        return puzzle != CompiledWorld.NONE && solvedPuzzles.get(puzzle);
+    }
+
+    /**
+     * Gets the number of puzzles that are solved.
+     *
+     * @return The number of solved puzzles
+     */
+    public int getSolvedPuzzleCount() {
+        return solvedPuzzles.cardinality();
     }
 
     /**
@@ -213,11 +621,21 @@ public class World {
      * @param solved The solved status
      */
     public void setPuzzleSolved(String puzzleId, boolean solved) {
-        puzzleSolvedStatus.put(puzzleId, solved);
-        
-        Puzzle puzzle = getPuzzleDefinition(puzzleId);
-        if (puzzle != null) {
-            puzzle.setSolved(solved);
+        setPuzzleSolved(compiledWorld.getPuzzleOrdinal(puzzleId), solved);
+    }
+
+    /**
+     * Sets the solved status of a puzzle.
+     *
+     * @param puzzle The puzzle ordinal
+     * @param solved The solved status
+     */
+    public void setPuzzleSolved(int puzzle, boolean solved) {
+        if (puzzle != CompiledWorld.NONE) {
+            solvedPuzzles.set(puzzle, solved);
+            if (listener != null) {
+                listener.puzzleSolvedChanged(puzzle, solved);
+            }
         }
     }
 
@@ -228,7 +646,17 @@ public class World {
      * @return The NPC instance, or null if not found
      */
     public NpcInstance getNpcInstance(String npcDefinitionId) {
-        return npcInstances.get(npcDefinitionId);
+        return getNpcInstance(compiledWorld.getNpcOrdinal(npcDefinitionId));
+    }
+
+    /**
+     * Gets an NPC instance by its ordinal.
+     *
+     * @param npc The NPC ordinal
+     * @return The NPC instance, or null if the NPC is not placed in the world
+     */
+    public NpcInstance getNpcInstance(int npc) {
+        return npc != CompiledWorld.NONE ? npcInstances[npc] : null;
     }
 
     /**
@@ -239,19 +667,40 @@ public class World {
      * @return The NPC instance if found, null otherwise
      */
     public NpcInstance getNpcInstanceInRoomByName(String npcName, String roomId) {
-        if (npcName == null || npcName.trim().isEmpty() || roomId == null) {
+        int room = compiledWorld.getRoomOrdinal(roomId);
+        if (npcName == null || room == CompiledWorld.NONE) {
             return null;
         }
         
-        String normalizedName = npcName.toLowerCase().trim();
+        String query = NameIndex.normalize(npcName);
+        if (query.isEmpty()) {
+            return null;
+        }
         
-        for (NpcInstance npc : npcInstances.values()) {
-            if (roomId.equals(npc.getCurrentRoomId())) {
-                NpcDefinition def = getNpcDefinition(npc.getDefinitionId());
-                if (def != null && def.getName().toLowerCase().contains(normalizedName)) {
-                    return npc;
+        NameIndex names = compiledWorld.getNpcNames();
+        int npc = CompiledWorld.NONE;
+        if (roomNpcCounts[room] <= names.countCandidates(query)) {
+            // Fewer NPCs here than in the world-wide postings for the first word, so rank them directly
+            int bestRank = NameIndex.NO_MATCH;
+            for (int i = 0; i < roomNpcCounts[room]; i++) {
+                int rank = names.tokenRank(roomNpcs[room][i], query);
+                if (NameIndex.isBetter(roomNpcs[room][i], rank, npc, bestRank)) {
+                    npc = roomNpcs[room][i];
+                    bestRank = rank;
                 }
             }
+        } else {
+            npc = names.resolve(query, candidate -> npcRooms[candidate] == room);
+        }
+        if (npc != CompiledWorld.NONE) {
+            return npcInstances[npc];
+        }
+        
+        // Fall back to a substring match
+        for (int i = 0; i < roomNpcCounts[room]; i++) {
+            if (names.containsPhrase(roomNpcs[room][i], query)) {
+                return npcInstances[roomNpcs[room][i]];
+            }
         }
         
         return null;
@@ -264,17 +713,193 @@ public class World {
      * @return The list of NPC instances
      */
     public List<NpcInstance> getNpcsInRoom(String roomId) {
-        List<NpcInstance> result = new ArrayList<>();
-        
-        for (NpcInstance npc : npcInstances.values()) {
-            if (roomId.equals(npc.getCurrentRoomId())) {
-                result.add(npc);
-            }
+        int room = compiledWorld.getRoomOrdinal(roomId);
+        if (room == CompiledWorld.NONE) {
+            return new ArrayList<>();
         }
         
+        List<NpcInstance> result = new ArrayList<>(roomNpcCounts[room]);
+        for (int i = 0; i < roomNpcCounts[room]; i++) {
+            result.add(npcInstances[roomNpcs[room][i]]);
+        }
         return result;
     }
 
+    /**
+     * Gets the number of NPCs currently in a room.
+     *
+     * @param room The room ordinal
+     * @return The number of NPCs
+     */
+    public int getRoomNpcCount(int room) {
+        return roomNpcCounts[room];
+    }
+
+    /**
+     * Gets an NPC currently in a room by its position in the room.
+     *
+     * @param room The room ordinal
+     * @param index The position, from 0 to {@link #getRoomNpcCount(int)} - 1
+     * @return The NPC ordinal
+     */
+    public int getRoomNpc(int room, int index) {
+        return roomNpcs[room][index];
+    }
+
+    /**
+     * Gets the room an NPC is currently in.
+     *
+     * @param npc The NPC ordinal
+     * @return The room ordinal, or NONE if the NPC is not in a known room
+     */
+    public int getNpcRoom(int npc) {
+        return npcRooms[npc];
+    }
+
+    /**
+     * Moves an NPC to another room.
+     * NPCs must always be moved through this method rather than by setting the room on
+     * their {@link NpcInstance} directly, so the room occupancy index stays correct.
+     *
+     * @param npcDefinitionId The NPC definition ID
+     * @param roomId The ID of the destination room
+     */
+    public void moveNpc(String npcDefinitionId, String roomId) {
+        int npc = compiledWorld.getNpcOrdinal(npcDefinitionId);
+        if (npc == CompiledWorld.NONE || npcInstances[npc] == null) {
+            return;
+        }
+        
+        npcInstances[npc].setCurrentRoomId(roomId);
+        removeNpcFromRoom(npc);
+        addNpcToRoom(npc, compiledWorld.getRoomOrdinal(roomId));
+        if (listener != null) {
+            listener.npcMoved(npc, roomId);
+        }
+    }
+
+    /**
+     * Moves an NPC's conversation to another dialogue node.
+     *
+     * @param npcDefinitionId The NPC definition ID
+     * @param nodeId The ID of the dialogue node
+     */
+    public void setNpcDialogueNode(String npcDefinitionId, String nodeId) {
+        setNpcDialogueNode(compiledWorld.getNpcOrdinal(npcDefinitionId), nodeId);
+    }
+
+    /**
+     * Moves an NPC's conversation to another dialogue node.
+     *
+     * @param npc The NPC ordinal
+     * @param nodeId The ID of the dialogue node
+     */
+    public void setNpcDialogueNode(int npc, String nodeId) {
+        if (npc == CompiledWorld.NONE || npcInstances[npc] == null) {
+            return;
+        }
+        
+        npcInstances[npc].setCurrentDialogueNodeId(nodeId);
+        if (listener != null) {
+            listener.npcDialogueChanged(npc, nodeId);
+        }
+    }
+
+    /**
+     * Sets or clears an NPC-specific flag.
+     *
+     * @param npcDefinitionId The NPC definition ID
+     * @param flagName The flag name
+     * @param value The flag value, or null to clear the flag
+     */
+    public void setNpcFlag(String npcDefinitionId, String flagName, String value) {
+        setNpcFlag(compiledWorld.getNpcOrdinal(npcDefinitionId), flagName, value);
+    }
+
+    /**
+     * Sets or clears an NPC-specific flag.
+     *
+     * @param npc The NPC ordinal
+     * @param flagName The flag name
+     * @param value The flag value, or null to clear the flag
+     */
+    public void setNpcFlag(int npc, String flagName, String value) {
+        if (npc == CompiledWorld.NONE || npcInstances[npc] == null || flagName == null) {
+            return;
+        }
+        
+        npcInstances[npc].setNpcFlag(flagName, value);
+        if (listener != null) {
+            listener.npcFlagChanged(npc, flagName, value);
+        }
+    }
+
+    /**
+     * Empties the room occupancy index.
+     */
+    private void clearNpcOccupancy() {
+        int roomCount = compiledWorld.getRoomCount();
+        npcRooms = new int[compiledWorld.getNpcCount()];
+        Arrays.fill(npcRooms, CompiledWorld.NONE);
+        if (roomNpcs == null) {
+            roomNpcs = new int[roomCount][];
+        }
+        roomNpcCounts = new int[roomCount];
+    }
+
+    /**
+     * Records an NPC as being in a room, keeping the room's NPCs in ordinal order
+     * so rooms always list their occupants in definition order.
+     *
+     * @param npc The NPC ordinal
+     * @param room The room ordinal, or NONE to leave the NPC out of the index
+     */
+    private void addNpcToRoom(int npc, int room) {
+        npcRooms[npc] = room;
+        if (room == CompiledWorld.NONE) {
+            return;
+        }
+        
+        int count = roomNpcCounts[room];
+        int[] npcs = roomNpcs[room];
+        if (npcs == null) {
+            npcs = roomNpcs[room] = new int[2];
+        } else if (count == npcs.length) {
+            npcs = roomNpcs[room] = Arrays.copyOf(npcs, count * 2);
+        }
+        
+        int index = count;
+        while (index > 0 && npcs[index - 1] > npc) {
+            npcs[index] = npcs[index - 1];
+            index--;
+        }
+        npcs[index] = npc;
+        roomNpcCounts[room] = count + 1;
+    }
+
+    /**
+     * Removes an NPC from the room it is recorded in.
+     *
+     * @param npc The NPC ordinal
+     */
+    private void removeNpcFromRoom(int npc) {
+        int room = npcRooms[npc];
+        npcRooms[npc] = CompiledWorld.NONE;
+        if (room == CompiledWorld.NONE) {
+            return;
+        }
+        
+        int[] npcs = roomNpcs[room];
+        int count = roomNpcCounts[room];
+        for (int i = 0; i < count; i++) {
+            if (npcs[i] == npc) {
+                System.arraycopy(npcs, i + 1, npcs, i, count - i - 1);
+                roomNpcCounts[room] = count - 1;
+                return;
+            }
+        }
+    }
+
     /**
      * Gets the value of a global flag.
      *
@@ -282,7 +907,21 @@ public class World {
      * @return The flag value, or null if not set
      */
     public String getGlobalFlagValue(String flagName) {
-        return currentGlobalFlags.get(flagName);
+        int flag = compiledWorld.getFlagOrdinal(flagName);
+        if (flag != CompiledWorld.NONE) {
+            return globalFlagValues[flag];
+        }
+        return extraGlobalFlags != null ? extraGlobalFlags.get(flagName) : null;
+    }
+
+    /**
+     * Gets the value of a global flag.
+     *
+     * @param flag The flag ordinal
+     * @return The flag value, or null if not set
+     */
+    public String getGlobalFlagValue(int flag) {
+        return globalFlagValues[flag];
     }
 
     /**
@@ -292,12 +931,23 @@ public class World {
      * @param value The flag value
      */
     public void setGlobalFlag(String flagName, String value) {
-        if (flagName != null) {
-            if (value != null) {
-                currentGlobalFlags.put(flagName, value);
-            } else {
-                currentGlobalFlags.remove(flagName);
+        if (flagName == null) {
+            return;
+        }
+        
+        int flag = compiledWorld.getFlagOrdinal(flagName);
+        if (flag != CompiledWorld.NONE) {
+            globalFlagValues[flag] = value;
+        } else if (value != null) {
+            if (extraGlobalFlags == null) {
+                extraGlobalFlags = new HashMap<>();
             }
+            extraGlobalFlags.put(flagName, value);
+        } else if (extraGlobalFlags != null) {
+            extraGlobalFlags.remove(flagName);
+        }
+        if (listener != null) {
+            listener.globalFlagChanged(flagName, value);
         }
     }
 
@@ -309,24 +959,40 @@ public class World {
      * @return true if the exit is locked, false otherwise
      */
     public boolean isExitCurrentlyLocked(String roomId, String direction) {
-        String exitKey = roomId + "_" + direction;
-        Boolean lockedState = currentExitLockedStates.get(exitKey);
+        int exit = compiledWorld.findExit(compiledWorld.getRoomOrdinal(roomId), direction);
+        if (exit == CompiledWorld.NONE) {
+            return false;
+        }
         
-        if (lockedState != null) {
-            return lockedState;
+        if (overriddenExits.get(exit)) {
+            return lockedExits.get(exit);
         } else {
             // Fall back to the initial state in the room definition
-            Room room = getRoom(roomId);
-            if (room != null) {
-                Exit exit = room.getExits().get(direction);
-                if (exit != null) {
-                    return exit.isInitiallyLocked();
-                }
-            }
-            return false;
+            return compiledWorld.getExit(exit).isInitiallyLocked();
         }
     }
 
+    /**
+     * Checks if an exit has been explicitly locked by a puzzle effect in this world.
+     *
+     * @param roomId The room ID
+     * @param direction The exit direction
+     * @return true if the exit has been forced locked, false otherwise
+     */
+    public boolean isExitForcedLocked(String roomId, String direction) {
+        return isExitForcedLocked(compiledWorld.findExit(compiledWorld.getRoomOrdinal(roomId), direction));
+    }
+
+    /**
+     * Checks if an exit has been explicitly locked by a puzzle effect in this world.
+     *
+     * @param exit The exit ordinal
+     * @return true if the exit has been forced locked, false otherwise
+     */
+    public boolean isExitForcedLocked(int exit) {
+        return exit != CompiledWorld.NONE && lockedExits.get(exit);
+    }
+
     /**
      * Sets the locked state of an exit.
      *
@@ -335,15 +1001,21 @@ public class World {
      * @param locked The locked state
      */
     public void setExitLockedState(String roomId, String direction, boolean locked) {
-        String exitKey = roomId + "_" + direction;
-        currentExitLockedStates.put(exitKey, locked);
-        
-        // Also update the Exit object for consistency
-        Room room = getRoom(roomId);
-        if (room != null) {
-            Exit exit = room.getExits().get(direction);
-            if (exit != null) {
-                exit.setCurrentLockedState(locked);
+        setExitLockedState(compiledWorld.findExit(compiledWorld.getRoomOrdinal(roomId), direction), locked);
+    }
+
+    /**
+     * Sets the locked state of an exit.
+     *
+     * @param exit The exit ordinal
+     * @param locked The locked state
+     */
+    public void setExitLockedState(int exit, boolean locked) {
+        if (exit != CompiledWorld.NONE) {
+            overriddenExits.set(exit);
+            lockedExits.set(exit, locked);
+            if (listener != null) {
+                listener.exitLockChanged(exit, locked);
             }
         }
     }
@@ -364,65 +1036,349 @@ public class World {
 
     /**
      * Gets the current dynamic state of the world for saving.
+     * The saved state uses string IDs so it does not depend on ordinals, and only records
+     * what differs from the initial state, so its size follows what the player has touched
+     * rather than the size of the world.
      *
-     * @return The world dynamic state
+     * @return The world dynamic state, as a delta
      */
     public WorldDynamicState getDynamicState() {
         WorldDynamicState state = new WorldDynamicState();
+        state.setDelta(true);
         
-        state.setRoomItemStates(new HashMap<>(currentRoomItems));
-        state.setPuzzleSolvedStates(new HashMap<>(puzzleSolvedStatus));
-        state.setNpcInstanceStates(new HashMap<>(npcInstances));
-        state.setGlobalFlagStates(new HashMap<>(currentGlobalFlags));
-        state.setRoomExitLockedStates(new HashMap<>(currentExitLockedStates));
+        Map<String, List<String>> roomItemStates = new HashMap<>();
+        for (int room = 0; room < compiledWorld.getRoomCount(); room++) {
+            if (!hasInitialItems(room)) {
+                roomItemStates.put(compiledWorld.getRoomId(room), getItemIds(room));
+            }
+        }
+        state.setRoomItemStates(roomItemStates);
+        
+        // Puzzles start unsolved, so only solved ones are recorded
+        Map<String, Boolean> puzzleStates = new HashMap<>();
+        for (int puzzle = solvedPuzzles.nextSetBit(0); puzzle >= 0; puzzle = solvedPuzzles.nextSetBit(puzzle + 1)) {
+            puzzleStates.put(compiledWorld.getPuzzleId(puzzle), Boolean.TRUE);
+        }
+        state.setPuzzleSolvedStates(puzzleStates);
+        
+        Map<String, NpcInstance> npcStates = new HashMap<>();
+        for (int npc = 0; npc < npcInstances.length; npc++) {
+            if (npcInstances[npc] != null && !isNpcInInitialState(npc)) {
+                npcStates.put(npcInstances[npc].getDefinitionId(), copyNpcInstance(npcInstances[npc]));
+            }
+        }
+        state.setNpcInstanceStates(npcStates);
+        
+        // A flag cleared since the start is recorded with a null value
+        Map<String, String> flagStates = new HashMap<>();
+        for (int flag = 0; flag < globalFlagValues.length; flag++) {
+            if (!Objects.equals(globalFlagValues[flag], compiledWorld.getInitialFlagValue(flag))) {
+                flagStates.put(compiledWorld.getFlagName(flag), globalFlagValues[flag]);
+            }
+        }
+        if (extraGlobalFlags != null) {
+            flagStates.putAll(extraGlobalFlags);
+        }
+        state.setGlobalFlagStates(flagStates);
+        
+        Map<String, Boolean> exitStates = new HashMap<>();
+        for (int exit = overriddenExits.nextSetBit(0); exit >= 0; exit = overriddenExits.nextSetBit(exit + 1)) {
+            exitStates.put(compiledWorld.getExitKey(exit), lockedExits.get(exit));
+        }
+        state.setRoomExitLockedStates(exitStates);
         
         return state;
     }
 
+    /**
+     * Writes a compact encoding of the dynamic state that two worlds share exactly when they are
+     * in the same state, whatever order the changes were made in. Items are recorded by holder
+     * rather than in list order, and flags in name order, so the encoding can be compared or
+     * hashed to recognise a state that has been seen before.
+     *
+     * @param out The output to write to
+     * @throws IOException If the output cannot be written
+     */
+    public void writeStateKey(DataOutput out) throws IOException {
+        for (int item = 0; item < itemHolderKinds.length; item++) {
+            out.writeByte(itemHolderKinds[item].ordinal());
+            writeVarInt(out, itemHolders[item] + 1);
+        }
+        
+        writeBits(out, solvedPuzzles);
+        
+        for (int npc = 0; npc < npcInstances.length; npc++) {
+            NpcInstance instance = npcInstances[npc];
+            if (instance == null) {
+                out.writeByte(0);
+                continue;
+            }
+            out.writeByte(1);
+            writeVarInt(out, npcRooms[npc] + 1);
+            writeNullableString(out, instance.getCurrentDialogueNodeId());
+            writeStringMap(out, instance.getNpcSpecificFlags());
+        }
+        
+        for (String value : globalFlagValues) {
+            writeNullableString(out, value);
+        }
+        writeStringMap(out, extraGlobalFlags);
+        
+        writeBits(out, overriddenExits);
+        writeBits(out, lockedExits);
+    }
+
+    /**
+     * Writes an unsigned varint for the state key.
+     *
+     * @param out The output
+     * @param value The value, which must not be negative
+     * @throws IOException If the output cannot be written
+     */
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Writes a bit set for the state key.
+     *
+     * @param out The output
+     * @param bits The bit set
+     * @throws IOException If the output cannot be written
+     */
+    private static void writeBits(DataOutput out, BitSet bits) throws IOException {
+        long[] words = bits.toLongArray();
+        writeVarInt(out, words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Writes a string that may be null for the state key.
+     *
+     * @param out The output
+     * @param value The string, or null
+     * @throws IOException If the output cannot be written
+     */
+    private static void writeNullableString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Writes a map of strings in key order for the state key.
+     *
+     * @param out The output
+     * @param map The map, or null for an empty one
+     * @throws IOException If the output cannot be written
+     */
+    private static void writeStringMap(DataOutput out, Map<String, String> map) throws IOException {
+        if (map == null || map.isEmpty()) {
+            writeVarInt(out, 0);
+            return;
+        }
+        
+        writeVarInt(out, map.size());
+        for (Map.Entry<String, String> entry : new TreeMap<>(map).entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeNullableString(out, entry.getValue());
+        }
+    }
+
     /**
      * Restores the world dynamic state from a saved state.
+     * This empties the player's inventory, so the player must be restored afterwards.
      *
-     * @param state The state to restore from
+     * @param state The state to restore from, either a delta or a full state
      */
     public void restoreDynamicState(WorldDynamicState state) {
         if (state == null) return;
         
-        // Restore room items
-        currentRoomItems = new HashMap<>(state.getRoomItemStates());
+        // Restoring is not a change the listener should see
+        StateChangeListener restoringListener = listener;
+        listener = null;
+        try {
+            if (state.isDelta()) {
+                restoreDelta(state);
+            } else {
+                restoreFull(state);
+            }
+        } finally {
+            listener = restoringListener;
+        }
+    }
+
+    /**
+     * Replaces the whole world state with a full saved state.
+     *
+     * @param state The full state
+     */
+    private void restoreFull(WorldDynamicState state) {
+        // Restore room items; every item, including the player's, starts out nowhere
+        clearItemLocations();
+        for (Map.Entry<String, List<String>> entry : state.getRoomItemStates().entrySet()) {
+            int room = compiledWorld.getRoomOrdinal(entry.getKey());
+            for (String itemId : entry.getValue()) {
+                addItemToRoom(room, compiledWorld.getItemOrdinal(itemId));
+            }
+        }
         
         // Restore puzzle solved status
-        puzzleSolvedStatus = new HashMap<>(state.getPuzzleSolvedStates());
-        for (Map.Entry<String, Boolean> entry : puzzleSolvedStatus.entrySet()) {
-            Puzzle puzzle = getPuzzleDefinition(entry.getKey());
-            if (puzzle != null) {
-                puzzle.setSolved(entry.getValue());
-            }
+        solvedPuzzles.clear();
+        for (Map.Entry<String, Boolean> entry : state.getPuzzleSolvedStates().entrySet()) {
+            setPuzzleSolved(entry.getKey(), Boolean.TRUE.equals(entry.getValue()));
         }
         
-        // Restore NPC instances
-        npcInstances = new HashMap<>(state.getNpcInstanceStates());
+        // Restore NPC instances, copying them so the saved state and this world never share objects
+        Arrays.fill(npcInstances, null);
+        clearNpcOccupancy();
+        for (Map.Entry<String, NpcInstance> entry : state.getNpcInstanceStates().entrySet()) {
+            int npc = compiledWorld.getNpcOrdinal(entry.getKey());
+            if (npc != CompiledWorld.NONE) {
+                npcInstances[npc] = copyNpcInstance(entry.getValue());
+                addNpcToRoom(npc, compiledWorld.getRoomOrdinal(npcInstances[npc].getCurrentRoomId()));
+                placeNpcItems(npc);
+            }
+        }
         
         // Restore global flags
-        currentGlobalFlags = new HashMap<>(state.getGlobalFlagStates());
+        Arrays.fill(globalFlagValues, null);
+        extraGlobalFlags = null;
+        for (Map.Entry<String, String> entry : state.getGlobalFlagStates().entrySet()) {
+            setGlobalFlag(entry.getKey(), entry.getValue());
+        }
         
         // Restore exit locked states
-        currentExitLockedStates = new HashMap<>(state.getRoomExitLockedStates());
-        
-        // Update Exit objects for consistency
-        for (Map.Entry<String, Boolean> entry : currentExitLockedStates.entrySet()) {
-            String[] parts = entry.getKey().split("_", 2);
-            if (parts.length == 2) {
-                String roomId = parts[0];
-                String direction = parts[1];
-                Room room = getRoom(roomId);
-                if (room != null) {
-                    Exit exit = room.getExits().get(direction);
-                    if (exit != null) {
-                        exit.setCurrentLockedState(entry.getValue());
+        overriddenExits.clear();
+        lockedExits.clear();
+        for (Map.Entry<String, Boolean> entry : state.getRoomExitLockedStates().entrySet()) {
+            if (entry.getValue() != null) {
+                setExitLockedState(compiledWorld.getExitByKey(entry.getKey()), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Resets the world to its initial state and applies the differences recorded in a delta state.
+     *
+     * @param state The delta state
+     */
+    private void restoreDelta(WorldDynamicState state) {
+        initializeWorldState();
+        
+        // Replace the contents of every room that changed; items taken out are left nowhere
+        // until the NPCs and the player claim them
+        for (Map.Entry<String, List<String>> entry : state.getRoomItemStates().entrySet()) {
+            int room = compiledWorld.getRoomOrdinal(entry.getKey());
+            if (room == CompiledWorld.NONE) {
+                continue;
+            }
+            while (itemListHeads[room] != CompiledWorld.NONE) {
+                detachItem(itemListHeads[room]);
+            }
+            for (String itemId : entry.getValue()) {
+                addItemToRoom(room, compiledWorld.getItemOrdinal(itemId));
+            }
+        }
+        
+        for (Map.Entry<String, Boolean> entry : state.getPuzzleSolvedStates().entrySet()) {
+            setPuzzleSolved(entry.getKey(), Boolean.TRUE.equals(entry.getValue()));
+        }
+        
+        // Replace the NPCs that changed, releasing the items their initial instances carried
+        for (Map.Entry<String, NpcInstance> entry : state.getNpcInstanceStates().entrySet()) {
+            int npc = compiledWorld.getNpcOrdinal(entry.getKey());
+            if (npc == CompiledWorld.NONE) {
+                continue;
+            }
+            if (npcInstances[npc] != null) {
+                for (String itemId : npcInstances[npc].getInventoryItemIds()) {
+                    int item = compiledWorld.getItemOrdinal(itemId);
+                    if (item != CompiledWorld.NONE && itemHolderKinds[item] == ItemLocation.Kind.NPC && itemHolders[item] == npc) {
+                        itemHolderKinds[item] = ItemLocation.Kind.NOWHERE;
+                        itemHolders[item] = CompiledWorld.NONE;
                     }
                 }
+                removeNpcFromRoom(npc);
+            }
+            npcInstances[npc] = copyNpcInstance(entry.getValue());
+            addNpcToRoom(npc, compiledWorld.getRoomOrdinal(npcInstances[npc].getCurrentRoomId()));
+            placeNpcItems(npc);
+        }
+        
+        for (Map.Entry<String, String> entry : state.getGlobalFlagStates().entrySet()) {
+            setGlobalFlag(entry.getKey(), entry.getValue());
+        }
+        
+        for (Map.Entry<String, Boolean> entry : state.getRoomExitLockedStates().entrySet()) {
+            if (entry.getValue() != null) {
+                setExitLockedState(compiledWorld.getExitByKey(entry.getKey()), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Checks whether a room holds exactly the items it starts with, in the same order.
+     *
+     * @param room The room ordinal
+     * @return true if the room's items are unchanged
+     */
+    private boolean hasInitialItems(int room) {
+        int[] initialItems = compiledWorld.getInitialRoomItems(room);
+        if (itemListCounts[room] != initialItems.length) {
+            return false;
+        }
+        int item = itemListHeads[room];
+        for (int initialItem : initialItems) {
+            if (item != initialItem) {
+                return false;
             }
+            item = nextItems[item];
         }
+        return true;
+    }
+
+    /**
+     * Checks whether an NPC is still in the room, dialogue node, inventory and flags it starts with.
+     *
+     * @param npc The NPC ordinal
+     * @return true if the NPC is unchanged
+     */
+    private boolean isNpcInInitialState(int npc) {
+        NpcInstance instance = npcInstances[npc];
+        NpcDefinition definition = compiledWorld.getNpc(npc);
+        int initialRoom = compiledWorld.getInitialNpcRoom(npc);
+        List<String> initialItems = definition.getInitialItemIds();
+        Map<String, String> initialFlags = definition.getInitialNpcFlags();
+        
+        return npcRooms[npc] == initialRoom
+            && Objects.equals(instance.getCurrentRoomId(), compiledWorld.getRoomId(initialRoom))
+            && Objects.equals(instance.getCurrentDialogueNodeId(), definition.getInitialDialogueNodeId())
+            && instance.getInventoryItemIds().equals(initialItems != null ? initialItems : List.of())
+            && instance.getNpcSpecificFlags().equals(initialFlags != null ? initialFlags : Map.of());
+    }
+
+    /**
+     * Creates a deep copy of an NPC instance.
+     *
+     * @param npc The NPC instance to copy
+     * @return The copy
+     */
+    private static NpcInstance copyNpcInstance(NpcInstance npc) {
+        return new NpcInstance(
+            npc.getDefinitionId(),
+            npc.getCurrentRoomId(),
+            npc.getCurrentDialogueNodeId(),
+            npc.getInventoryItemIds(),
+            npc.getNpcSpecificFlags()
+        );
     }
 
     /**
@@ -0,0 +1,755 @@
+package local.pphilfre;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import local.pphilfre.utils.JsonUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Writes synthetic worlds of any size for benchmarks and load tests, as world JSON that loads
+ * and validates like a hand-written world.
+ * <p>
+ * The rooms form a grid with two-way exits between neighbours, so every room can be reached, and
+ * may have one-way passages to random rooms besides. Each room holds a few scenery items. NPCs
+ * wander the grid with dialogue trees of any depth; the first NPCs each hand over a key at the
+ * very bottom of their tree. The keys start chains of puzzles: using a key on its fixture
+ * solves a puzzle and reveals the key to the next fixture, somewhere else on the grid. The last
+ * room, the way out, is locked until the last puzzle is solved, and the game is won there once
+ * every chain is finished. Cursed items, lost if picked up, provide the other end conditions.
+ * <p>
+ * Generation is driven by a single seeded {@link Random}, so the same seed and settings always
+ * give the same world, byte for byte. The world is written as it is generated, never held in
+ * memory, so worlds of millions of rooms take only as much memory as their NPCs and puzzles.
+ */
+public class WorldGenerator {
+    private static final String[] DIRECTIONS = {
+        "east", "west", "north", "south", "up", "down", "northeast", "northwest", "southeast", "southwest"
+    };
+    private static final int GRID_DIRECTIONS = 4; // east, west, north and south link neighbours both ways
+    private static final int MAX_DIALOGUE_NODES = 100_000; // per NPC
+    private static final int MAX_BRANCHING = 7; // with the farewell and flagged responses, choices stay single digits
+
+    private static final String[] ADJECTIVES = {
+        "Dusty", "Damp", "Narrow", "Vaulted", "Crumbling", "Silent", "Flooded", "Gilded", "Smoky", "Frozen",
+        "Mossy", "Battered", "Sunken", "Painted", "Charred", "Cramped", "Lofty", "Forgotten", "Drafty", "Glittering"
+    };
+    private static final String[] ROOM_KINDS = {
+        "Chamber", "Hall", "Gallery", "Cellar", "Vault", "Corridor", "Crypt", "Library", "Armoury", "Shrine",
+        "Kitchen", "Cistern", "Workshop", "Chapel", "Landing", "Storeroom"
+    };
+    private static final String[] ROOM_DETAILS = {
+        "Water drips somewhere out of sight.",
+        "Faded murals cover the walls.",
+        "The air smells of old smoke.",
+        "Cobwebs hang in thick curtains from the ceiling.",
+        "Your footsteps echo back at you a moment too late.",
+        "Scratches on the floor suggest something heavy was dragged through here.",
+        "A cold draught comes from nowhere in particular.",
+        "Broken furniture is piled against one wall."
+    };
+    private static final String[] NOUNS = {
+        "Lantern", "Goblet", "Candlestick", "Tapestry", "Bucket", "Chair", "Mirror", "Chest", "Book", "Rope",
+        "Bottle", "Helmet", "Shield", "Crate", "Statuette", "Bell", "Skull", "Map", "Coin", "Vase"
+    };
+    private static final String[] ITEM_DETAILS = {
+        "It has seen better days.",
+        "Someone has scratched initials into it.",
+        "It is heavier than it looks.",
+        "It is covered in a fine grey dust.",
+        "It looks oddly out of place here.",
+        "There is nothing remarkable about it."
+    };
+    private static final String[] METALS = {"Iron", "Brass", "Silver", "Bronze", "Copper", "Golden", "Bone", "Crystal"};
+    private static final String[] FIXTURES = {"Altar", "Pedestal", "Statue", "Lock Plate", "Brazier", "Sarcophagus", "Fountain", "Lectern"};
+    private static final String[] NPC_NAMES = {
+        "Mara", "Oswin", "Tilda", "Bram", "Edda", "Corwin", "Isolde", "Fenn", "Greta", "Hollis",
+        "Ysolde", "Piet", "Rowan", "Sabine", "Tobin", "Wren", "Alder", "Briony", "Cato", "Della"
+    };
+    private static final String[] NPC_TITLES = {
+        "Hermit", "Guard", "Scholar", "Ghost", "Cook", "Pilgrim", "Smith", "Warden",
+        "Fool", "Mapmaker", "Beggar", "Priest", "Gardener", "Thief", "Bard", "Archivist"
+    };
+    private static final String[] NPC_LINES = {
+        "Few come this way any more.",
+        "I remember when these halls were full of light.",
+        "Mind where you step; the floors are not what they were.",
+        "You have the look of someone searching for something.",
+        "There are stories about this place. Most of them are true.",
+        "I could tell you more, if you have the patience to listen.",
+        "The keys were hidden so that nobody would find them all.",
+        "Every lock down here was made by the same hand."
+    };
+    private static final String[] PLAYER_LINES = {
+        "Tell me more.",
+        "What do you mean?",
+        "Who made this place?",
+        "Have you seen any keys?",
+        "How long have you been here?",
+        "Is there a way out?",
+        "Why should I believe you?"
+    };
+
+    private long seed = 1;
+    private int rooms = 100;
+    private int exitsPerRoom = 4;
+    private int itemsPerRoom = 2;
+    private int npcs = 10;
+    private int dialogueDepth = 5;
+    private int dialogueBranching = 2;
+    private int puzzles = 10;
+    private int puzzleChainLength = 5;
+    private int endConditions = 3;
+
+    /**
+     * Sets the seed that decides every random choice.
+     *
+     * @param seed The seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the number of rooms, including the way out.
+     *
+     * @param rooms The number of rooms, at least 2
+     */
+    public void setRooms(int rooms) {
+        requireAtLeast("rooms", rooms, 2);
+        this.rooms = rooms;
+    }
+
+    /**
+     * Sets the most exits a room may have. Below 4, rooms are linked in corridors along the rows
+     * of the grid, which join at the first column; at 4, every room is linked to its grid
+     * neighbours; beyond 4, each room also has one-way passages to random rooms.
+     * Rooms at the edges of the grid have fewer exits.
+     *
+     * @param exitsPerRoom The number of exits, from 2 to 10
+     */
+    public void setExitsPerRoom(int exitsPerRoom) {
+        requireBetween("exits per room", exitsPerRoom, 2, DIRECTIONS.length);
+        this.exitsPerRoom = exitsPerRoom;
+    }
+
+    /**
+     * Sets the number of scenery items in every room.
+     *
+     * @param itemsPerRoom The number of items, from 0 to 20
+     */
+    public void setItemsPerRoom(int itemsPerRoom) {
+        requireBetween("items per room", itemsPerRoom, 0, NOUNS.length);
+        this.itemsPerRoom = itemsPerRoom;
+    }
+
+    /**
+     * Sets the number of NPCs.
+     *
+     * @param npcs The number of NPCs, 0 or more
+     */
+    public void setNpcs(int npcs) {
+        requireAtLeast("NPCs", npcs, 0);
+        this.npcs = npcs;
+    }
+
+    /**
+     * Sets how many choices deep every NPC's dialogue tree goes.
+     *
+     * @param dialogueDepth The depth, at least 1
+     */
+    public void setDialogueDepth(int dialogueDepth) {
+        requireAtLeast("dialogue depth", dialogueDepth, 1);
+        this.dialogueDepth = dialogueDepth;
+    }
+
+    /**
+     * Sets how many ways the conversation can go from each line of dialogue, besides leaving it.
+     *
+     * @param dialogueBranching The number of responses, from 1 to 7
+     */
+    public void setDialogueBranching(int dialogueBranching) {
+        requireBetween("dialogue branching", dialogueBranching, 1, MAX_BRANCHING);
+        this.dialogueBranching = dialogueBranching;
+    }
+
+    /**
+     * Sets the total number of puzzles, across every chain.
+     *
+     * @param puzzles The number of puzzles, 0 or more
+     */
+    public void setPuzzles(int puzzles) {
+        requireAtLeast("puzzles", puzzles, 0);
+        this.puzzles = puzzles;
+    }
+
+    /**
+     * Sets how many puzzles each chain has; the last chain may be shorter.
+     *
+     * @param puzzleChainLength The chain length, at least 1
+     */
+    public void setPuzzleChainLength(int puzzleChainLength) {
+        requireAtLeast("puzzle chain length", puzzleChainLength, 1);
+        this.puzzleChainLength = puzzleChainLength;
+    }
+
+    /**
+     * Sets the number of end conditions: one way to win, the rest ways to lose.
+     *
+     * @param endConditions The number of end conditions, at least 1
+     */
+    public void setEndConditions(int endConditions) {
+        requireAtLeast("end conditions", endConditions, 1);
+        this.endConditions = endConditions;
+    }
+
+    /**
+     * Writes a world to a file, replacing anything already there.
+     *
+     * @param file The file to write
+     * @throws IOException If the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            write(out);
+        }
+    }
+
+    /**
+     * Writes a world as JSON to a stream. The stream is not closed.
+     *
+     * @param out The stream to write to
+     * @throws IOException If the world cannot be written
+     */
+    public void write(OutputStream out) throws IOException {
+        if (countDialogueNodes() > MAX_DIALOGUE_NODES) {
+            throw new IllegalArgumentException("A dialogue tree " + dialogueDepth + " deep with " + dialogueBranching
+                    + " responses per line would have more than " + MAX_DIALOGUE_NODES + " lines.");
+        }
+        
+        Layout layout = new Layout(new Random(seed));
+        try (JsonGenerator json = JsonUtil.createGenerator(out)) {
+            json.writeStartObject();
+            writeGameInfo(json);
+            writePlayerStart(json);
+            writeRooms(json, layout);
+            writeItems(json, layout);
+            writeNpcs(json, layout);
+            writePuzzles(json, layout);
+            writeEndConditions(json, layout);
+            writeGlobalFlags(json, layout);
+            json.writeEndObject();
+        }
+    }
+
+    /**
+     * Counts the lines of dialogue in one NPC's tree, including its farewell.
+     *
+     * @return The number of dialogue nodes, or more than {@link #MAX_DIALOGUE_NODES} if there are too many to count
+     */
+    private long countDialogueNodes() {
+        long nodes = 1;
+        long level = 1;
+        for (int depth = 0; depth <= dialogueDepth && nodes <= MAX_DIALOGUE_NODES; depth++) {
+            nodes += level;
+            level *= dialogueBranching;
+        }
+        return nodes;
+    }
+
+    private void writeGameInfo(JsonGenerator json) throws IOException {
+        json.writeObjectFieldStart("gameInfo");
+        json.writeStringField("gameTitle", "Generated World " + seed);
+        json.writeStringField("version", "1.0");
+        json.writeStringField("welcomeMessage", "You wake in a maze of " + rooms + " rooms. Somewhere there is a way out, "
+                + "but it will not open until every lock has been found.");
+        json.writeStringField("helpText", "Commands: GO, TAKE, DROP, USE [item] ON [target], EXAMINE, TALK TO, "
+                + "COMBINE, INVENTORY, LOOK, SAVE, LOAD, SAVES, HELP, QUIT");
+        json.writeEndObject();
+    }
+
+    private void writePlayerStart(JsonGenerator json) throws IOException {
+        json.writeObjectFieldStart("playerStart");
+        json.writeStringField("startRoomId", roomId(0));
+        json.writeArrayFieldStart("initialInventory");
+        json.writeString("worn_map");
+        json.writeEndArray();
+        json.writeEndObject();
+    }
+
+    /**
+     * Writes every room, with its scenery, the things placed in it and its exits.
+     *
+     * @param json The generator to write to
+     * @param layout Where things were placed
+     * @throws IOException If the rooms cannot be written
+     */
+    private void writeRooms(JsonGenerator json, Layout layout) throws IOException {
+        Random random = layout.random;
+        int wayOut = rooms - 1;
+        json.writeObjectFieldStart("rooms");
+        for (int room = 0; room < rooms; room++) {
+            json.writeObjectFieldStart(roomId(room));
+            json.writeStringField("id", roomId(room));
+            if (room == wayOut) {
+                json.writeStringField("name", "The Way Out");
+                json.writeStringField("baseDescription", "Daylight pours down a long stair to the surface. You are free.");
+            } else {
+                json.writeStringField("name", pick(random, ADJECTIVES) + " " + pick(random, ROOM_KINDS));
+                json.writeStringField("baseDescription", "You are in room " + (room + 1) + " of " + rooms + ". "
+                        + pick(random, ROOM_DETAILS) + " " + pick(random, ROOM_DETAILS));
+            }
+            
+            json.writeArrayFieldStart("itemIds");
+            for (int i = 0; i < itemsPerRoom; i++) {
+                json.writeString(sceneryId(room, i));
+            }
+            for (String itemId : layout.itemsIn(room)) {
+                json.writeString(itemId);
+            }
+            json.writeEndArray();
+            
+            json.writeArrayFieldStart("npcIds");
+            for (String npcId : layout.npcsIn(room)) {
+                json.writeString(npcId);
+            }
+            json.writeEndArray();
+            
+            json.writeObjectFieldStart("exits");
+            writeExits(json, layout, room);
+            json.writeEndObject();
+            json.writeEndObject();
+        }
+        json.writeEndObject();
+    }
+
+    /**
+     * Writes a room's exits: to its grid neighbours, then any one-way passages.
+     *
+     * @param json The generator to write to
+     * @param layout Where things were placed
+     * @param room The room
+     * @throws IOException If the exits cannot be written
+     */
+    private void writeExits(JsonGenerator json, Layout layout, int room) throws IOException {
+        int width = layout.width;
+        int column = room % width;
+        boolean fullGrid = exitsPerRoom >= GRID_DIRECTIONS;
+        if (column + 1 < width && room + 1 < rooms) {
+            writeExit(json, layout, "east", room + 1);
+        }
+        if (column > 0) {
+            writeExit(json, layout, "west", room - 1);
+        }
+        if ((fullGrid || column == 0) && room + width < rooms) {
+            writeExit(json, layout, "north", room + width);
+        }
+        if ((fullGrid || column == 0) && room >= width) {
+            writeExit(json, layout, "south", room - width);
+        }
+        
+        // Passages never lead to the way out, so it can only be reached through its locked doors
+        for (int d = GRID_DIRECTIONS; d < exitsPerRoom; d++) {
+            writeExit(json, layout, DIRECTIONS[d], layout.random.nextInt(rooms - 1));
+        }
+    }
+
+    /**
+     * Writes an exit, locking it until the last puzzle is solved if it leads to the way out.
+     *
+     * @param json The generator to write to
+     * @param layout Where things were placed
+     * @param direction The direction of the exit
+     * @param target The room the exit leads to
+     * @throws IOException If the exit cannot be written
+     */
+    private void writeExit(JsonGenerator json, Layout layout, String direction, int target) throws IOException {
+        json.writeObjectFieldStart(direction);
+        json.writeStringField("targetRoomId", roomId(target));
+        if (target == rooms - 1 && puzzles > 0) {
+            json.writeBooleanField("isInitiallyLocked", true);
+            json.writeStringField("lockedMessage", "The great door will not move. Its last lock is still closed.");
+            json.writeStringField("requiredPuzzleIdSolved", puzzleId(puzzles - 1));
+        } else {
+            json.writeBooleanField("isInitiallyLocked", false);
+        }
+        json.writeEndObject();
+    }
+
+    /**
+     * Writes every item: the scenery of each room, then the map, keys, fixtures and cursed items.
+     *
+     * @param json The generator to write to
+     * @param layout Where things were placed
+     * @throws IOException If the items cannot be written
+     */
+    private void writeItems(JsonGenerator json, Layout layout) throws IOException {
+        Random random = layout.random;
+        json.writeObjectFieldStart("items");
+        for (int room = 0; room < rooms; room++) {
+            // Nouns run on from a random start, so no two items in a room share a name
+            int noun = random.nextInt(NOUNS.length);
+            for (int i = 0; i < itemsPerRoom; i++) {
+                String adjective = pick(random, ADJECTIVES);
+                String name = adjective + " " + NOUNS[(noun + i) % NOUNS.length];
+                writeItem(json, sceneryId(room, i), name, "A " + name.toLowerCase() + ". " + pick(random, ITEM_DETAILS),
+                          random.nextInt(3) != 0);
+                json.writeEndObject();
+            }
+        }
+        
+        writeItem(json, "worn_map", "Worn Map", "A map of the maze, so worn that nothing on it can be read.", true);
+        json.writeEndObject();
+        
+        for (int puzzle = 0; puzzle < puzzles; puzzle++) {
+            String key = METALS[puzzle % METALS.length] + " Key " + (puzzle + 1);
+            String fixture = FIXTURES[puzzle % FIXTURES.length] + " " + (puzzle + 1);
+            writeItem(json, keyId(puzzle), key, "A key stamped with the number " + (puzzle + 1) + ". It must fit something.", true);
+            json.writeObjectFieldStart("useEffects");
+            json.writeObjectFieldStart("item:" + fixtureId(puzzle));
+            json.writeStringField("successMessage", "The key turns with a satisfying click.");
+            json.writeStringField("triggersPuzzleId", puzzleId(puzzle));
+            json.writeEndObject();
+            json.writeEndObject();
+            json.writeEndObject();
+            
+            writeItem(json, fixtureId(puzzle), fixture, "It has a keyhole, stamped with the number " + (puzzle + 1) + ".", false);
+            json.writeEndObject();
+        }
+        
+        for (int trap = 0; trap < layout.trapRooms.length; trap++) {
+            String name = "Cursed " + NOUNS[trap % NOUNS.length] + " " + (trap + 1);
+            writeItem(json, trapId(trap), name, "It hums faintly. Best left alone.", true);
+            json.writeEndObject();
+        }
+        json.writeEndObject();
+    }
+
+    /**
+     * Starts writing an item, leaving it open for any further fields.
+     *
+     * @param json The generator to write to
+     * @param id The item's ID
+     * @param name The item's name
+     * @param description The item's description
+     * @param takeable true if the player can pick the item up
+     * @throws IOException If the item cannot be written
+     */
+    private static void writeItem(JsonGenerator json, String id, String name, String description, boolean takeable)
+            throws IOException {
+        json.writeObjectFieldStart(id);
+        json.writeStringField("id", id);
+        json.writeStringField("name", name);
+        json.writeStringField("description", description);
+        json.writeBooleanField("takeable", takeable);
+    }
+
+    /**
+     * Writes every NPC with its dialogue tree. The NPC for each puzzle chain gives that chain's
+     * first key at the end of its first line of questioning.
+     *
+     * @param json The generator to write to
+     * @param layout Where things were placed
+     * @throws IOException If the NPCs cannot be written
+     */
+    private void writeNpcs(JsonGenerator json, Layout layout) throws IOException {
+        json.writeObjectFieldStart("npcs");
+        for (int npc = 0; npc < npcs; npc++) {
+            String name = NPC_NAMES[npc % NPC_NAMES.length] + " the " + NPC_TITLES[(npc / NPC_NAMES.length) % NPC_TITLES.length];
+            json.writeObjectFieldStart(npcId(npc));
+            json.writeStringField("id", npcId(npc));
+            json.writeStringField("name", name);
+            json.writeStringField("presenceDescription", name + " is here, watching you.");
+            json.writeStringField("initialDialogueNodeId", "greeting");
+            
+            json.writeObjectFieldStart("dialogueTree");
+            String gift = npc < layout.chains ? keyId(npc * puzzleChainLength) : null;
+            writeDialogueNode(json, layout.random, "greeting", 0, gift);
+            json.writeObjectFieldStart("farewell");
+            json.writeStringField("text", "Go carefully.");
+            json.writeBooleanField("endsDialogue", true);
+            json.writeEndObject();
+            json.writeEndObject();
+            
+            json.writeArrayFieldStart("initialItemIds");
+            json.writeEndArray();
+            json.writeObjectFieldStart("initialNpcFlags");
+            json.writeStringField("met", "false");
+            json.writeStringField("trusts_you", "false");
+            json.writeEndObject();
+            json.writeEndObject();
+        }
+        json.writeEndObject();
+    }
+
+    /**
+     * Writes a line of dialogue and, depth first, everything that can follow it.
+     *
+     * @param json The generator to write to
+     * @param random The source of random choices
+     * @param nodeId The ID of the line
+     * @param depth How many choices it takes to reach the line
+     * @param gift The item given at the end of the first branch below this line, or null
+     * @throws IOException If the dialogue cannot be written
+     */
+    private void writeDialogueNode(JsonGenerator json, Random random, String nodeId, int depth, String gift)
+            throws IOException {
+        json.writeObjectFieldStart(nodeId);
+        json.writeStringField("text", pick(random, NPC_LINES));
+        if (depth == 0) {
+            json.writeStringField("setsNpcFlag", "met=true");
+        }
+        if (depth == dialogueDepth) {
+            if (gift != null) {
+                json.writeStringField("givesItemId", gift);
+                json.writeStringField("setsNpcFlag", "trusts_you=true");
+            }
+            json.writeBooleanField("endsDialogue", true);
+            json.writeEndObject();
+            return;
+        }
+        
+        String[] children = new String[dialogueBranching];
+        json.writeArrayFieldStart("responses");
+        for (int i = 0; i < dialogueBranching; i++) {
+            children[i] = (depth == 0 ? "node" : nodeId) + "_" + i;
+            writeResponse(json, pick(random, PLAYER_LINES), children[i], null);
+        }
+        if (depth == 0) {
+            writeResponse(json, "About what you told me before...", children[0], "trusts_you=true");
+        }
+        writeResponse(json, "Goodbye.", "farewell", null);
+        json.writeEndArray();
+        json.writeEndObject();
+        
+        for (int i = 0; i < dialogueBranching; i++) {
+            writeDialogueNode(json, random, children[i], depth + 1, i == 0 ? gift : null);
+        }
+    }
+
+    private static void writeResponse(JsonGenerator json, String text, String targetNodeId, String requiresNpcFlag)
+            throws IOException {
+        json.writeStartObject();
+        json.writeStringField("text", text);
+        json.writeStringField("targetNodeId", targetNodeId);
+        if (requiresNpcFlag != null) {
+            json.writeStringField("requiresNpcFlag", requiresNpcFlag);
+        }
+        json.writeEndObject();
+    }
+
+    /**
+     * Writes every puzzle. Each is solved by using its key on its fixture, and reveals the next
+     * key of its chain beside the fixture; the last of a chain marks the chain as finished.
+     *
+     * @param json The generator to write to
+     * @param layout Where things were placed
+     * @throws IOException If the puzzles cannot be written
+     */
+    private void writePuzzles(JsonGenerator json, Layout layout) throws IOException {
+        json.writeObjectFieldStart("puzzles");
+        for (int puzzle = 0; puzzle < puzzles; puzzle++) {
+            boolean lastOfChain = isLastOfChain(puzzle);
+            json.writeObjectFieldStart(puzzleId(puzzle));
+            json.writeStringField("id", puzzleId(puzzle));
+            json.writeStringField("description", "A keyhole waits for the right key.");
+            json.writeObjectFieldStart("solutionCondition");
+            json.writeStringField("type", "ITEM_USED_ON_TARGET");
+            json.writeStringField("requiredItemId", keyId(puzzle));
+            json.writeStringField("requiredTargetId", fixtureId(puzzle));
+            json.writeEndObject();
+            json.writeStringField("successMessage", lastOfChain
+                    ? "Far away, something heavy falls into place."
+                    : "A hidden drawer slides open, and another key drops out.");
+            json.writeStringField("failureMessage", "Nothing happens.");
+            json.writeStringField("alreadySolvedMessage", "That lock is already open.");
+            
+            json.writeArrayFieldStart("effectsOnSolve");
+            if (!lastOfChain) {
+                json.writeStartObject();
+                json.writeStringField("type", "SPAWN_ITEM");
+                json.writeStringField("targetRoomId", roomId(layout.fixtureRooms[puzzle]));
+                json.writeStringField("itemIdToSpawnOrRemove", keyId(puzzle + 1));
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeStringField("setsFlagOnSolve", flagFor(puzzle));
+            json.writeStringField("setsFlagValueOnSolve", "true");
+            json.writeEndObject();
+        }
+        json.writeEndObject();
+    }
+
+    /**
+     * Writes the end conditions: winning at the way out once every chain is finished, and
+     * losing by holding any cursed item.
+     *
+     * @param json The generator to write to
+     * @param layout Where things were placed
+     * @throws IOException If the end conditions cannot be written
+     */
+    private void writeEndConditions(JsonGenerator json, Layout layout) throws IOException {
+        json.writeArrayFieldStart("endConditions");
+        json.writeStartObject();
+        json.writeStringField("type", "WIN");
+        json.writeStringField("message", "You climb the stair into the daylight. You have escaped the maze!");
+        json.writeArrayFieldStart("criteria");
+        json.writeStartObject();
+        json.writeStringField("type", "PLAYER_IN_ROOM");
+        json.writeStringField("roomId", roomId(rooms - 1));
+        json.writeEndObject();
+        for (int chain = 0; chain < layout.chains; chain++) {
+            json.writeStartObject();
+            json.writeStringField("type", "FLAG_SET");
+            json.writeStringField("flagName", chainFlag(chain));
+            json.writeStringField("flagValue", "true");
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+        json.writeEndObject();
+        
+        for (int trap = 0; trap < layout.trapRooms.length; trap++) {
+            json.writeStartObject();
+            json.writeStringField("type", "LOSE");
+            json.writeStringField("message", "The cursed thing crumbles to ash in your hands, and so, shortly after, do you.");
+            json.writeArrayFieldStart("criteria");
+            json.writeStartObject();
+            json.writeStringField("type", "PLAYER_HAS_ITEM");
+            json.writeStringField("itemId", trapId(trap));
+            json.writeEndObject();
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+        json.writeEndArray();
+    }
+
+    private void writeGlobalFlags(JsonGenerator json, Layout layout) throws IOException {
+        json.writeObjectFieldStart("globalFlags");
+        for (int puzzle = 0; puzzle < puzzles; puzzle++) {
+            json.writeStringField(flagFor(puzzle), "false");
+        }
+        json.writeEndObject();
+    }
+
+    private boolean isLastOfChain(int puzzle) {
+        return puzzle % puzzleChainLength == puzzleChainLength - 1 || puzzle == puzzles - 1;
+    }
+
+    private String flagFor(int puzzle) {
+        return isLastOfChain(puzzle) ? chainFlag(puzzle / puzzleChainLength) : "puzzle_" + (puzzle + 1) + "_solved";
+    }
+
+    private static String roomId(int room) {
+        return "room_" + room;
+    }
+
+    private static String sceneryId(int room, int index) {
+        return "item_" + room + "_" + index;
+    }
+
+    private static String keyId(int puzzle) {
+        return "key_" + (puzzle + 1);
+    }
+
+    private static String fixtureId(int puzzle) {
+        return "fixture_" + (puzzle + 1);
+    }
+
+    private static String trapId(int trap) {
+        return "cursed_" + (trap + 1);
+    }
+
+    private static String npcId(int npc) {
+        return "npc_" + (npc + 1);
+    }
+
+    private static String puzzleId(int puzzle) {
+        return "puzzle_" + (puzzle + 1);
+    }
+
+    private static String chainFlag(int chain) {
+        return "chain_" + (chain + 1) + "_done";
+    }
+
+    private static String pick(Random random, String[] words) {
+        return words[random.nextInt(words.length)];
+    }
+
+    private static void requireAtLeast(String what, int value, int min) {
+        if (value < min) {
+            throw new IllegalArgumentException("The number of " + what + " must be at least " + min + ", not " + value + ".");
+        }
+    }
+
+    private static void requireBetween(String what, int value, int min, int max) {
+        if (value < min || value > max) {
+            throw new IllegalArgumentException("The number of " + what + " must be from " + min + " to " + max
+                                               + ", not " + value + ".");
+        }
+    }
+
+    /**
+     * Where the NPCs, fixtures, chain keys and cursed items of one world were placed. Nothing
+     * is ever placed in the way out, which stays locked until the puzzles are done.
+     */
+    private class Layout {
+        final Random random;
+        final int width;              // rooms in each row of the grid
+        final int chains;             // puzzle chains, each started by a key
+        final int[] fixtureRooms;     // by puzzle
+        final int[] trapRooms;        // by cursed item
+        private final Map<Integer, List<String>> items = new HashMap<>(); // placed items by room, after the scenery
+        private final Map<Integer, List<String>> npcsByRoom = new HashMap<>();
+        
+        Layout(Random random) {
+            this.random = random;
+            width = (int) Math.ceil(Math.sqrt(rooms));
+            chains = (puzzles + puzzleChainLength - 1) / puzzleChainLength;
+            
+            for (int npc = 0; npc < npcs; npc++) {
+                place(npcsByRoom, npcId(npc));
+            }
+            fixtureRooms = new int[puzzles];
+            for (int puzzle = 0; puzzle < puzzles; puzzle++) {
+                fixtureRooms[puzzle] = place(items, fixtureId(puzzle));
+            }
+            // Chains with no NPC to hand over their first key leave it lying somewhere
+            for (int chain = npcs; chain < chains; chain++) {
+                place(items, keyId(chain * puzzleChainLength));
+            }
+            trapRooms = new int[endConditions - 1];
+            for (int trap = 0; trap < trapRooms.length; trap++) {
+                trapRooms[trap] = place(items, trapId(trap));
+            }
+        }
+        
+        /**
+         * Puts something in a random room other than the way out.
+         *
+         * @param byRoom The things placed so far, by room
+         * @param id The ID of the thing to place
+         * @return The room it was placed in
+         */
+        private int place(Map<Integer, List<String>> byRoom, String id) {
+            int room = random.nextInt(rooms - 1);
+            byRoom.computeIfAbsent(room, r -> new ArrayList<>()).add(id);
+            return room;
+        }
+        
+        List<String> itemsIn(int room) {
+            return items.getOrDefault(room, List.of());
+        }
+        
+        List<String> npcsIn(int room) {
+            return npcsByRoom.getOrDefault(room, List.of());
+        }
+    }
+}
@@ -0,0 +1,605 @@
+package local.pphilfre;
+
+import local.pphilfre.datamodel.CompiledWorld;
+import local.pphilfre.datamodel.EndCondition;
+import local.pphilfre.datamodel.GameDefinition;
+import local.pphilfre.datamodel.GameState;
+import local.pphilfre.datamodel.Item;
+import local.pphilfre.datamodel.UseEffect;
+import local.pphilfre.save.SaveCodec;
+import local.pphilfre.save.SaveCodecs;
+import local.pphilfre.utils.DiscardingOutputSink;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Searches a world for the shortest way to meet each of its winning end conditions.
+ * <p>
+ * A search state is the world's dynamic state and the player's state, plus the NPC the
+ * player is talking to if a conversation is waiting for a response. The moves from a state
+ * are the commands that can change it: going through each exit of the room, taking the items
+ * in it, using held items on themselves and on the items, NPCs and room features they have an
+ * effect on, combining held items, dropping items that something else is used on, talking to
+ * the NPCs in the room and choosing a response while talking. Looking, examining and the
+ * other verbs never change the state, and dropping any other item only undoes a take, so
+ * they are left out. Every move is played on a real {@link GameController}, so the solver
+ * follows exactly the rules the game does.
+ * <p>
+ * The search is breadth-first, so the first route found to a condition is a shortest one.
+ * Each level is expanded in parallel on the common fork-join pool, every worker thread
+ * playing moves in a session of its own, and states already seen are recognised by their
+ * state keys in a set shared by all workers. The states themselves are kept as binary saves,
+ * and only until they have been expanded, so the saves held at any time are those of about two
+ * levels. The search stops partway through a level once it has seen the maximum number of states,
+ * or once the keys and saves it holds would take more than its memory budget.
+ */
+public class WorldSolver {
+    /** The number of states after which the search gives up by default. */
+    public static final int DEFAULT_MAX_STATES = 2_000_000;
+
+    private static final int CHUNK_SIZE = 32;      // frontier states one task expands before splitting
+    private static final int STATE_OVERHEAD = 160; // bytes of headers, set entry and node per state, roughly
+    private static final SaveCodec STATE_CODEC = SaveCodecs.BINARY;
+
+    private final GameDefinition gameDefinition;
+    private final CompiledWorld compiledWorld;
+    private final List<EndCondition> winConditions; // the WIN end conditions, in definition order
+    private final BitSet usedOnItems;                // item -> some item has a use effect on it
+    private int maxStates = DEFAULT_MAX_STATES;
+    private long maxMemory = Runtime.getRuntime().maxMemory() / 2;
+
+    /**
+     * Creates a solver for a world.
+     *
+     * @param gameDefinition The sealed game definition to solve
+     */
+    public WorldSolver(GameDefinition gameDefinition) {
+        this.gameDefinition = gameDefinition;
+        this.compiledWorld = gameDefinition.getCompiledWorld();
+        
+        List<EndCondition> wins = new ArrayList<>();
+        if (gameDefinition.getEndConditions() != null) {
+            for (EndCondition endCondition : gameDefinition.getEndConditions()) {
+                if ("WIN".equalsIgnoreCase(endCondition.getType())) {
+                    wins.add(endCondition);
+                }
+            }
+        }
+        this.winConditions = Collections.unmodifiableList(wins);
+        
+        // Only an item lying in the room can be a target, so these are the items worth dropping
+        this.usedOnItems = new BitSet(compiledWorld.getItemCount());
+        for (int item = 0; item < compiledWorld.getItemCount(); item++) {
+            for (String key : compiledWorld.getItem(item).getUseEffects().keySet()) {
+                if (key.startsWith("item:")) {
+                    int target = compiledWorld.getItemOrdinal(key.substring("item:".length()));
+                    if (target != CompiledWorld.NONE) {
+                        usedOnItems.set(target);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the number of states after which the search gives up.
+     *
+     * @param maxStates The state limit
+     */
+    public void setMaxStates(int maxStates) {
+        this.maxStates = maxStates;
+    }
+
+    /**
+     * Sets roughly how much memory the states held by the search may take before it gives up:
+     * the keys of every state seen and the saves of the states still to be expanded.
+     * By default this is half of the largest heap the JVM may use.
+     *
+     * @param maxMemory The memory budget in bytes
+     */
+    public void setMaxMemory(long maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Searches the world until every WIN end condition has been met, every reachable state
+     * has been explored, or the state or memory limit has been reached.
+     *
+     * @return The shortest route found to each WIN end condition
+     */
+    public Result solve() {
+        Search search = new Search();
+        Node[] routes = new Node[winConditions.size()];
+        int found = 0;
+        
+        // A condition may already hold before the first command
+        Worker worker = search.workers.get();
+        GameController start = worker.session;
+        Node root = capture(start, null, null);
+        search.admit(worker.stateKey(), root);
+        for (int i = 0; i < routes.length; i++) {
+            if (winConditions.get(i).areCriteriaMet(start.getPlayer(), start.getWorld())) {
+                routes[i] = root;
+                found++;
+            }
+        }
+        
+        List<Node> frontier = Collections.singletonList(root);
+        while (!frontier.isEmpty() && found < routes.length && !search.limitReached) {
+            Level level = ForkJoinPool.commonPool().invoke(new ExpandTask(frontier, 0, frontier.size(), search));
+            
+            // Wins are listed in frontier order, so the route kept does not depend on thread timing;
+            // a win found in a level cut short is still a shortest route, as no earlier level held one
+            for (Win win : level.wins) {
+                if (routes[win.condition] == null) {
+                    routes[win.condition] = win.route;
+                    found++;
+                }
+            }
+            frontier = level.next;
+        }
+        
+        List<List<String>> commands = new ArrayList<>(routes.length);
+        for (Node route : routes) {
+            commands.add(route != null ? route.getCommands() : null);
+        }
+        return new Result(winConditions, commands, search.visited.size(), search.limitReached);
+    }
+
+    /**
+     * Plays every move from a state, keeping the states not seen before.
+     *
+     * @param node The state to expand
+     * @param search The search the state belongs to
+     * @param worker The worker thread's session
+     * @param level Collects the new states and the wins
+     */
+    private void expand(Node node, Search search, Worker worker, Level level) {
+        GameController session = worker.session;
+        GameState state = decode(node.save);
+        search.release(node);
+        session.restoreState(state, node.dialogueNpcId);
+        
+        boolean restored = true;
+        for (String command : findMoves(session)) {
+            if (!restored) {
+                session.restoreState(state, node.dialogueNpcId);
+            }
+            restored = false;
+            session.processCommand(command);
+            
+            EndCondition endCondition = session.getEndCondition();
+            if (endCondition != null) {
+                // The game is over either way; only wins are worth reporting
+                int condition = winConditions.indexOf(endCondition);
+                if (condition >= 0) {
+                    level.wins.add(new Win(condition, new Node(null, null, node, command)));
+                }
+                continue;
+            }
+            
+            StateKey key = worker.stateKey();
+            if (search.visited.contains(key)) {
+                continue;
+            }
+            if (search.isFull()) {
+                search.limitReached = true;
+                return;
+            }
+            Node next = capture(session, node, command);
+            if (search.admit(key, next)) {
+                level.next.add(next);
+            }
+        }
+    }
+
+    /**
+     * Lists the commands that can change the state a session is in.
+     *
+     * @param session The session
+     * @return The commands to try
+     */
+    private List<String> findMoves(GameController session) {
+        List<String> moves = new ArrayList<>();
+        
+        DialogueState dialogue = session.getActiveDialogue();
+        if (dialogue != null) {
+            for (int choice = 1; choice <= dialogue.getValidResponses().size(); choice++) {
+                moves.add(Integer.toString(choice));
+            }
+            moves.add("0");
+            return moves;
+        }
+        
+        World world = session.getWorld();
+        int room = session.getPlayer().getCurrentRoom();
+        for (int exit = compiledWorld.getExitStart(room); exit < compiledWorld.getExitEnd(room); exit++) {
+            moves.add("go " + compiledWorld.getExitDirection(exit));
+        }
+        for (int item = world.getFirstRoomItem(room); item != CompiledWorld.NONE; item = world.getNextItem(item)) {
+            if (compiledWorld.getItem(item).isTakeable()) {
+                moves.add("take " + itemName(item));
+            }
+        }
+        for (int i = 0; i < world.getRoomNpcCount(room); i++) {
+            moves.add("talk to " + compiledWorld.getNpcNames().getName(world.getRoomNpc(room, i)));
+        }
+        
+        for (int held = world.getFirstPlayerItem(); held != CompiledWorld.NONE; held = world.getNextItem(held)) {
+            Item item = compiledWorld.getItem(held);
+            String name = itemName(held);
+            Map<String, UseEffect> useEffects = item.getUseEffects();
+            
+            if (useEffects.containsKey("self:" + compiledWorld.getItemId(held))) {
+                moves.add("use " + name);
+            }
+            for (int target = world.getFirstRoomItem(room); target != CompiledWorld.NONE; target = world.getNextItem(target)) {
+                if (useEffects.containsKey("item:" + compiledWorld.getItemId(target))) {
+                    moves.add("use " + name + " on " + itemName(target));
+                }
+            }
+            for (int i = 0; i < world.getRoomNpcCount(room); i++) {
+                int npc = world.getRoomNpc(room, i);
+                if (useEffects.containsKey("npc:" + compiledWorld.getNpcId(npc))) {
+                    moves.add("use " + name + " on " + compiledWorld.getNpcNames().getName(npc));
+                }
+            }
+            for (int trigger = compiledWorld.getTriggerStart(held); trigger < compiledWorld.getTriggerEnd(held); trigger++) {
+                moves.add("use " + name + " on " + compiledWorld.getTriggerTargetId(trigger));
+            }
+            
+            if (item.getCanBeCombinedWith() != null) {
+                for (int other = world.getFirstPlayerItem(); other != CompiledWorld.NONE; other = world.getNextItem(other)) {
+                    if (item.getCanBeCombinedWith().contains(compiledWorld.getItemId(other))) {
+                        moves.add("combine " + name + " and " + itemName(other));
+                    }
+                }
+            }
+            
+            if (usedOnItems.get(held)) {
+                moves.add("drop " + name);
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Gets the name a command uses for an item.
+     *
+     * @param item The item ordinal
+     * @return The item's normalized name
+     */
+    private String itemName(int item) {
+        return compiledWorld.getItemNames().getName(item);
+    }
+
+    /**
+     * Records the state a session is in as a search node.
+     *
+     * @param session The session
+     * @param parent The state the move was played from, or null for the start
+     * @param command The move that led here, or null for the start
+     * @return The node
+     */
+    private Node capture(GameController session, Node parent, String command) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try {
+            STATE_CODEC.write(session.captureState(), compiledWorld, bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        DialogueState dialogue = session.getActiveDialogue();
+        String dialogueNpcId = dialogue != null ? dialogue.getNpc().getDefinitionId() : null;
+        return new Node(bytes.toByteArray(), dialogueNpcId, parent, command);
+    }
+
+    /**
+     * Reads back a state recorded by {@link #capture(GameController, Node, String)}.
+     *
+     * @param save The recorded state
+     * @return The game state
+     */
+    private GameState decode(byte[] save) {
+        try {
+            return STATE_CODEC.read(new ByteArrayInputStream(save), compiledWorld);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The outcome of a search.
+     */
+    public static class Result {
+        private final List<EndCondition> winConditions;
+        private final List<List<String>> routes;
+        private final int statesExplored;
+        private final boolean limitReached;
+        
+        Result(List<EndCondition> winConditions, List<List<String>> routes, int statesExplored, boolean limitReached) {
+            this.winConditions = winConditions;
+            this.routes = routes;
+            this.statesExplored = statesExplored;
+            this.limitReached = limitReached;
+        }
+        
+        /**
+         * Gets the WIN end conditions of the world, in definition order.
+         *
+         * @return The WIN end conditions
+         */
+        public List<EndCondition> getWinConditions() {
+            return winConditions;
+        }
+        
+        /**
+         * Gets the shortest route found to a WIN end condition.
+         *
+         * @param index The index of the condition in {@link #getWinConditions()}
+         * @return The commands that meet it, or null if it was not reached
+         */
+        public List<String> getRoute(int index) {
+            return routes.get(index);
+        }
+        
+        /**
+         * Gets the number of distinct states the search saw.
+         *
+         * @return The number of states
+         */
+        public int getStatesExplored() {
+            return statesExplored;
+        }
+        
+        /**
+         * Checks whether the search gave up before it had explored every reachable state.
+         * If it did not, a condition that was not reached cannot be met at all.
+         *
+         * @return true if the state or memory limit was reached, false otherwise
+         */
+        public boolean isLimitReached() {
+            return limitReached;
+        }
+    }
+
+    /**
+     * A state found by the search, with the move that first reached it.
+     */
+    private static class Node {
+        byte[] save;                // the state as a binary save, null once expanded and for a winning move
+        final String dialogueNpcId; // the NPC waiting for a response, null outside conversations
+        final Node parent;          // the state the move was played from, null for the start
+        final String command;       // the move, null for the start
+        
+        Node(byte[] save, String dialogueNpcId, Node parent, String command) {
+            this.save = save;
+            this.dialogueNpcId = dialogueNpcId;
+            this.parent = parent;
+            this.command = command;
+        }
+        
+        /**
+         * Gets the moves from the start of the game to this state.
+         *
+         * @return The commands, in order
+         */
+        List<String> getCommands() {
+            List<String> commands = new ArrayList<>();
+            for (Node node = this; node.parent != null; node = node.parent) {
+                commands.add(node.command);
+            }
+            Collections.reverse(commands);
+            return commands;
+        }
+    }
+
+    /**
+     * A move that meets a WIN end condition.
+     */
+    private static class Win {
+        final int condition; // index into the WIN end conditions
+        final Node route;
+        
+        Win(int condition, Node route) {
+            this.condition = condition;
+            this.route = route;
+        }
+    }
+
+    /**
+     * The state shared by every worker during one search: the states seen so far and what
+     * they cost to hold.
+     */
+    private class Search {
+        final Set<StateKey> visited = ConcurrentHashMap.newKeySet();
+        final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+        final AtomicLong memory = new AtomicLong(); // bytes held by keys and unexpanded saves, roughly
+        volatile boolean limitReached;
+        
+        /**
+         * Checks whether the search has reached its state or memory limit.
+         *
+         * @return true if no more states may be added
+         */
+        boolean isFull() {
+            return limitReached || visited.size() >= maxStates || memory.get() >= maxMemory;
+        }
+        
+        /**
+         * Records a state as seen.
+         *
+         * @param key The state's key
+         * @param node The state
+         * @return true if the state had not been seen before
+         */
+        boolean admit(StateKey key, Node node) {
+            if (!visited.add(key)) {
+                return false;
+            }
+            memory.addAndGet(key.bytes.length + node.save.length + STATE_OVERHEAD);
+            return true;
+        }
+        
+        /**
+         * Lets go of a state's save once it is being expanded; only its route is still needed.
+         *
+         * @param node The state
+         */
+        void release(Node node) {
+            memory.addAndGet(-node.save.length);
+            node.save = null;
+        }
+    }
+
+    /**
+     * The states and wins found by expanding part of a level.
+     */
+    private static class Level {
+        final List<Node> next = new ArrayList<>();
+        final List<Win> wins = new ArrayList<>();
+    }
+
+    /**
+     * A state key, compared by content.
+     */
+    private static class StateKey {
+        private final byte[] bytes;
+        private final int hash;
+        
+        StateKey(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Arrays.hashCode(bytes);
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StateKey && Arrays.equals(bytes, ((StateKey) o).bytes);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The session a worker thread plays moves in, with a buffer for state keys.
+     */
+    private class Worker {
+        final GameController session = new GameController(new DiscardingOutputSink());
+        final KeyBuffer keyBuffer = new KeyBuffer();
+        final DataOutputStream keyOut = new DataOutputStream(keyBuffer);
+        
+        Worker() {
+            session.startGame(gameDefinition);
+        }
+        
+        /**
+         * Gets the key of the state the session is in.
+         *
+         * @return The state key
+         */
+        StateKey stateKey() {
+            keyBuffer.reset();
+            try {
+                session.getPlayer().writeStateKey(keyOut);
+                session.getWorld().writeStateKey(keyOut);
+                DialogueState dialogue = session.getActiveDialogue();
+                keyOut.writeInt(dialogue != null ? compiledWorld.getNpcOrdinal(dialogue.getNpc().getDefinitionId()) : CompiledWorld.NONE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new StateKey(keyBuffer.toByteArray());
+        }
+    }
+
+    /**
+     * A reusable, unsynchronized buffer that state keys are written into.
+     */
+    private static class KeyBuffer extends OutputStream {
+        private byte[] bytes = new byte[256];
+        private int length;
+        
+        @Override
+        public void write(int b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length * 2);
+            }
+            bytes[length++] = (byte) b;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (length + len > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length * 2, length + len));
+            }
+            System.arraycopy(b, off, bytes, length, len);
+            length += len;
+        }
+        
+        void reset() {
+            length = 0;
+        }
+        
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    /**
+     * Expands a slice of the frontier, splitting it in half until it is small enough.
+     * The results of the halves are joined in order.
+     */
+    @SuppressWarnings("serial") // RecursiveTask is Serializable, but tasks never leave the pool
+    private class ExpandTask extends RecursiveTask<Level> {
+        private final List<Node> frontier;
+        private final int from;
+        private final int to;
+        private final Search search;
+        
+        ExpandTask(List<Node> frontier, int from, int to, Search search) {
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+            this.search = search;
+        }
+        
+        @Override
+        protected Level compute() {
+            if (to - from <= CHUNK_SIZE) {
+                Level level = new Level();
+                Worker worker = search.workers.get();
+                for (int i = from; i < to && !search.limitReached; i++) {
+                    expand(frontier.get(i), search, worker, level);
+                }
+                return level;
+            }
+            
+            int middle = (from + to) >>> 1;
+            ExpandTask left = new ExpandTask(frontier, from, middle, search);
+            ExpandTask right = new ExpandTask(frontier, middle, to, search);
+            left.fork();
+            Level level = right.compute();
+            Level first = left.join();
+            first.next.addAll(level.next);
+            first.wins.addAll(level.wins);
+            return first;
+        }
+    }
+}
@@ -0,0 +1,602 @@
+package local.pphilfre.datamodel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compiled, read-only view of a {@link GameDefinition} in which every room, item, NPC,
+ * puzzle, global flag and exit has a dense integer ordinal.
+ * <p>
+ * The runtime keeps its per-session state in arrays and bit sets indexed by these ordinals.
+ * String IDs are only translated to ordinals at the edges: when reading JSON, when
+ * saving, and when the player refers to something by name. Ordinals follow the order in
+ * which entries appear in the world file, so they are stable for a given file.
+ */
+public class CompiledWorld {
+    /** Ordinal used for "no such entity". */
+    public static final int NONE = -1;
+
+    private final GameDefinition definition;
+
+    private final String[] roomIds;
+    private final Room[] rooms;
+    private final Map<String, Integer> roomOrdinals;
+
+    private final String[] itemIds;
+    private final Item[] items;
+    private final Map<String, Integer> itemOrdinals;
+    private final NameIndex itemNames;
+
+    private final String[] npcIds;
+    private final NpcDefinition[] npcs;
+    private final Map<String, Integer> npcOrdinals;
+    private final NameIndex npcNames;
+
+    private final String[] puzzleIds;
+    private final Puzzle[] puzzles;
+    private final Map<String, Integer> puzzleOrdinals;
+
+    // Puzzle triggers for "use X on <feature>", grouped by the item they need
+    private final int[] itemTriggerStart;       // item -> first trigger, with a sentinel at the end
+    private final int[] triggerPuzzles;         // trigger -> puzzle ordinal
+    private final String[] triggerTargetIds;    // trigger -> required target ID as written in the definition
+    private final String[] triggerTargets;      // trigger -> lowercased required target ID
+
+    private final String[] flagNames;
+    private final String[] initialFlagValues;
+    private final Map<String, Integer> flagOrdinals;
+
+    // Exits are numbered room by room; the exits of room r are [roomExitStart[r], roomExitStart[r + 1])
+    private final int[] roomExitStart;
+    private final String[] exitDirections;
+    private final Exit[] exits;
+    private final int[] exitTargetRooms;
+    private final int[] exitRequiredItems;
+    private final int[] exitRequiredPuzzles;
+    private final int[] exitRequiredFlags;
+    private final String[] exitKeys;            // exit -> "roomId_exitDir", as used in saved states
+    private final Map<String, Integer> exitKeyOrdinals;
+
+    private final int[][] initialRoomItems;
+    private final int[] initialNpcRooms;
+
+    private final long fingerprint;
+
+    private CompiledWorld(GameDefinition definition) {
+        this.definition = definition;
+        
+        // Rooms, items, NPCs and puzzles are numbered in definition order
+        roomIds = definition.getRooms().keySet().toArray(new String[0]);
+        rooms = definition.getRooms().values().toArray(new Room[0]);
+        roomOrdinals = indexOf(roomIds);
+        
+        itemIds = definition.getItems().keySet().toArray(new String[0]);
+        items = definition.getItems().values().toArray(new Item[0]);
+        itemOrdinals = indexOf(itemIds);
+        String[] rawItemNames = new String[items.length];
+        for (int i = 0; i < items.length; i++) {
+            rawItemNames[i] = items[i].getName();
+        }
+        itemNames = new NameIndex(rawItemNames);
+        
+        npcIds = definition.getNpcs().keySet().toArray(new String[0]);
+        npcs = definition.getNpcs().values().toArray(new NpcDefinition[0]);
+        npcOrdinals = indexOf(npcIds);
+        String[] rawNpcNames = new String[npcs.length];
+        for (int i = 0; i < npcs.length; i++) {
+            rawNpcNames[i] = npcs[i].getName();
+        }
+        npcNames = new NameIndex(rawNpcNames);
+        
+        puzzleIds = definition.getPuzzles().keySet().toArray(new String[0]);
+        puzzles = definition.getPuzzles().values().toArray(new Puzzle[0]);
+        puzzleOrdinals = indexOf(puzzleIds);
+        
+        // Flags are every flag declared up front plus every flag the world refers to
+        Map<String, String> flags = new LinkedHashMap<>(definition.getGlobalFlags());
+        collectReferencedFlags(definition, flags);
+        flagNames = flags.keySet().toArray(new String[0]);
+        initialFlagValues = flags.values().toArray(new String[0]);
+        flagOrdinals = indexOf(flagNames);
+        
+        // Exits
+        roomExitStart = new int[rooms.length + 1];
+        int exitCount = 0;
+        for (int r = 0; r < rooms.length; r++) {
+            roomExitStart[r] = exitCount;
+            exitCount += rooms[r].getExits().size();
+        }
+        roomExitStart[rooms.length] = exitCount;
+        
+        exitDirections = new String[exitCount];
+        exits = new Exit[exitCount];
+        exitTargetRooms = new int[exitCount];
+        exitRequiredItems = new int[exitCount];
+        exitRequiredPuzzles = new int[exitCount];
+        exitRequiredFlags = new int[exitCount];
+        exitKeys = new String[exitCount];
+        
+        int e = 0;
+        for (int r = 0; r < rooms.length; r++) {
+            for (Map.Entry<String, Exit> entry : rooms[r].getExits().entrySet()) {
+                Exit exit = entry.getValue();
+                exitDirections[e] = entry.getKey();
+                exits[e] = exit;
+                exitTargetRooms[e] = ordinal(roomOrdinals, exit.getTargetRoomId());
+                exitRequiredItems[e] = ordinal(itemOrdinals, exit.getRequiredItemIdToUnlock());
+                exitRequiredPuzzles[e] = ordinal(puzzleOrdinals, exit.getRequiredPuzzleIdSolved());
+                exitRequiredFlags[e] = exit.getRequiredFlagValue() != null
+                        ? ordinal(flagOrdinals, exit.getRequiredFlagName()) : NONE;
+                exitKeys[e] = roomIds[r] + "_" + entry.getKey();
+                e++;
+            }
+        }
+        exitKeyOrdinals = indexOf(exitKeys);
+        
+        // Initial placement of items and NPCs
+        initialRoomItems = new int[rooms.length][];
+        initialNpcRooms = new int[npcs.length];
+        Arrays.fill(initialNpcRooms, NONE);
+        for (int r = 0; r < rooms.length; r++) {
+            initialRoomItems[r] = ordinals(itemOrdinals, rooms[r].getItemIds());
+            for (String npcId : rooms[r].getNpcIds()) {
+                int npc = ordinal(npcOrdinals, npcId);
+                if (npc != NONE && initialNpcRooms[npc] == NONE) {
+                    initialNpcRooms[npc] = r;
+                }
+            }
+        }
+        
+        // Feature triggers: every puzzle that needs a specific item used on a named target,
+        // bucketed by item and kept in definition order within each bucket
+        itemTriggerStart = new int[items.length + 1];
+        int[] triggerItems = new int[puzzles.length];
+        int triggerCount = 0;
+        for (int p = 0; p < puzzles.length; p++) {
+            PuzzleSolutionCondition condition = puzzles[p].getSolutionCondition();
+            triggerItems[p] = NONE;
+            if (condition != null && condition.getRequiredTargetId() != null) {
+                triggerItems[p] = ordinal(itemOrdinals, condition.getRequiredItemId());
+                if (triggerItems[p] != NONE) {
+                    itemTriggerStart[triggerItems[p] + 1]++;
+                    triggerCount++;
+                }
+            }
+        }
+        for (int i = 0; i < items.length; i++) {
+            itemTriggerStart[i + 1] += itemTriggerStart[i];
+        }
+        
+        triggerPuzzles = new int[triggerCount];
+        triggerTargetIds = new String[triggerCount];
+        triggerTargets = new String[triggerCount];
+        int[] nextTrigger = Arrays.copyOf(itemTriggerStart, items.length);
+        for (int p = 0; p < puzzles.length; p++) {
+            if (triggerItems[p] != NONE) {
+                int t = nextTrigger[triggerItems[p]]++;
+                String targetId = puzzles[p].getSolutionCondition().getRequiredTargetId();
+                triggerPuzzles[t] = p;
+                triggerTargetIds[t] = targetId;
+                triggerTargets[t] = targetId.toLowerCase();
+            }
+        }
+        
+        fingerprint = computeFingerprint();
+    }
+
+    /**
+     * Computes a 64-bit FNV-1a hash over every ID in ordinal order. Two compiled worlds with
+     * the same fingerprint assign the same ordinals, so state stored as ordinals can move between them.
+     *
+     * @return The fingerprint
+     */
+    private long computeFingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        for (String[] ids : new String[][] { roomIds, itemIds, npcIds, puzzleIds, flagNames, exitKeys }) {
+            for (String id : ids) {
+                for (int i = 0; i < id.length(); i++) {
+                    hash = (hash ^ id.charAt(i)) * 0x100000001b3L;
+                }
+                hash = (hash ^ 0xFFFF) * 0x100000001b3L;
+            }
+            hash = (hash ^ 0xFFFE) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Compiles a game definition. The definition is sealed first, so the compiled form
+     * can never go out of date.
+     *
+     * @param definition The game definition to compile
+     * @return The compiled world
+     */
+    public static CompiledWorld compile(GameDefinition definition) {
+        definition.seal();
+        return new CompiledWorld(definition);
+    }
+
+    /**
+     * Collects every global flag name the world reads or writes, with a null initial value
+     * for flags that are not declared in the definition's global flags.
+     *
+     * @param definition The game definition
+     * @param flags The map to add flag names to
+     */
+    private static void collectReferencedFlags(GameDefinition definition, Map<String, String> flags) {
+        List<String> names = new ArrayList<>();
+        
+        for (Room room : definition.getRooms().values()) {
+            for (Exit exit : room.getExits().values()) {
+                names.add(exit.getRequiredFlagName());
+            }
+        }
+        for (Item item : definition.getItems().values()) {
+            for (UseEffect effect : item.getUseEffects().values()) {
+                names.add(effect.getSetsFlagName());
+            }
+        }
+        for (NpcDefinition npc : definition.getNpcs().values()) {
+            for (DialogueNode node : npc.getDialogueTree().values()) {
+                names.add(flagNameOf(node.getSetsGlobalFlag()));
+                for (DialogueResponseOption response : node.getResponses()) {
+                    names.add(flagNameOf(response.getRequiresGlobalFlag()));
+                }
+            }
+        }
+        for (Puzzle puzzle : definition.getPuzzles().values()) {
+            names.add(puzzle.getSetsFlagOnSolve());
+            if (puzzle.getSolutionCondition() != null) {
+                names.add(puzzle.getSolutionCondition().getRequiredGlobalFlag());
+            }
+            for (PuzzleEffect effect : puzzle.getEffectsOnSolve()) {
+                names.add(effect.getFlagToSet());
+            }
+        }
+        for (EndCondition endCondition : definition.getEndConditions()) {
+            for (ConditionCriterion criterion : endCondition.getCriteria()) {
+                names.add(criterion.getFlagName());
+            }
+        }
+        
+        for (String name : names) {
+            if (name != null && !flags.containsKey(name)) {
+                flags.put(name, null);
+            }
+        }
+    }
+
+    /**
+     * Extracts the flag name from a "name=value" assignment.
+     *
+     * @param assignment The assignment string
+     * @return The flag name, or null if the assignment is malformed
+     */
+    private static String flagNameOf(String assignment) {
+        if (assignment == null) {
+            return null;
+        }
+        int separator = assignment.indexOf('=');
+        return separator > 0 ? assignment.substring(0, separator) : null;
+    }
+
+    private static Map<String, Integer> indexOf(String[] ids) {
+        Map<String, Integer> index = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) {
+            index.put(ids[i], i);
+        }
+        return index;
+    }
+
+    private static int ordinal(Map<String, Integer> index, String id) {
+        if (id == null) {
+            return NONE;
+        }
+        Integer ordinal = index.get(id);
+        return ordinal != null ? ordinal : NONE;
+    }
+
+    private static int[] ordinals(Map<String, Integer> index, List<String> ids) {
+        int[] result = new int[ids.size()];
+        int count = 0;
+        for (String id : ids) {
+            int ordinal = ordinal(index, id);
+            if (ordinal != NONE) {
+                result[count++] = ordinal;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    public GameDefinition getDefinition() {
+        return definition;
+    }
+
+    /**
+     * Gets a hash of the ordinal assignment. It changes whenever a room, item, NPC, puzzle,
+     * flag or exit is added, removed, renamed or reordered in the definition.
+     *
+     * @return The fingerprint
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    // ---- Rooms ----
+
+    public int getRoomCount() {
+        return rooms.length;
+    }
+
+    public int getRoomOrdinal(String roomId) {
+        return ordinal(roomOrdinals, roomId);
+    }
+
+    public String getRoomId(int room) {
+        return room >= 0 ? roomIds[room] : null;
+    }
+
+    public Room getRoom(int room) {
+        return room >= 0 ? rooms[room] : null;
+    }
+
+    // ---- Items ----
+
+    public int getItemCount() {
+        return items.length;
+    }
+
+    public int getItemOrdinal(String itemId) {
+        return ordinal(itemOrdinals, itemId);
+    }
+
+    public String getItemId(int item) {
+        return item >= 0 ? itemIds[item] : null;
+    }
+
+    public Item getItem(int item) {
+        return item >= 0 ? items[item] : null;
+    }
+
+    public NameIndex getItemNames() {
+        return itemNames;
+    }
+
+    // ---- NPCs ----
+
+    public int getNpcCount() {
+        return npcs.length;
+    }
+
+    public int getNpcOrdinal(String npcId) {
+        return ordinal(npcOrdinals, npcId);
+    }
+
+    public String getNpcId(int npc) {
+        return npc >= 0 ? npcIds[npc] : null;
+    }
+
+    public NpcDefinition getNpc(int npc) {
+        return npc >= 0 ? npcs[npc] : null;
+    }
+
+    public NameIndex getNpcNames() {
+        return npcNames;
+    }
+
+    // ---- Puzzles ----
+
+    public int getPuzzleCount() {
+        return puzzles.length;
+    }
+
+    public int getPuzzleOrdinal(String puzzleId) {
+        return ordinal(puzzleOrdinals, puzzleId);
+    }
+
+    public String getPuzzleId(int puzzle) {
+        return puzzle >= 0 ? puzzleIds[puzzle] : null;
+    }
+
+    public Puzzle getPuzzle(int puzzle) {
+        return puzzle >= 0 ? puzzles[puzzle] : null;
+    }
+
+    /**
+     * Finds the puzzle triggered by using an item on a named feature of a room.
+     * Only the puzzles that need this item are checked, so the cost does not grow with
+     * the number of puzzles in the world. The first puzzle, in definition order, whose
+     * required target appears in the phrase wins.
+     *
+     * @param item The ordinal of the item being used
+     * @param target The normalized phrase naming the target
+     * @return The trigger ordinal, or NONE if no puzzle matches
+     */
+    public int findFeatureTrigger(int item, String target) {
+        if (item == NONE) {
+            return NONE;
+        }
+        for (int t = itemTriggerStart[item]; t < itemTriggerStart[item + 1]; t++) {
+            if (target.contains(triggerTargets[t])) {
+                return t;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Gets the first feature trigger that needs an item. The item's triggers run up to, but
+     * not including, {@link #getTriggerEnd(int)}.
+     *
+     * @param item The item ordinal
+     * @return The first trigger ordinal of the item
+     */
+    public int getTriggerStart(int item) {
+        return itemTriggerStart[item];
+    }
+
+    /**
+     * Gets the trigger ordinal just past the last feature trigger that needs an item.
+     *
+     * @param item The item ordinal
+     * @return The end of the item's trigger range
+     */
+    public int getTriggerEnd(int item) {
+        return itemTriggerStart[item + 1];
+    }
+
+    public int getTriggerPuzzle(int trigger) {
+        return triggerPuzzles[trigger];
+    }
+
+    public String getTriggerTargetId(int trigger) {
+        return triggerTargetIds[trigger];
+    }
+
+    // ---- Flags ----
+
+    public int getFlagCount() {
+        return flagNames.length;
+    }
+
+    public int getFlagOrdinal(String flagName) {
+        return ordinal(flagOrdinals, flagName);
+    }
+
+    public String getFlagName(int flag) {
+        return flag >= 0 ? flagNames[flag] : null;
+    }
+
+    /**
+     * Gets the value a flag has when a new game starts.
+     *
+     * @param flag The flag ordinal
+     * @return The initial value, or null if the flag starts unset
+     */
+    public String getInitialFlagValue(int flag) {
+        return initialFlagValues[flag];
+    }
+
+    // ---- Exits ----
+
+    public int getExitCount() {
+        return exits.length;
+    }
+
+    /**
+     * Gets the first exit ordinal of a room. The room's exits run up to, but not including,
+     * {@link #getExitEnd(int)}.
+     *
+     * @param room The room ordinal
+     * @return The first exit ordinal of the room
+     */
+    public int getExitStart(int room) {
+        return roomExitStart[room];
+    }
+
+    /**
+     * Gets the exit ordinal just past the last exit of a room.
+     *
+     * @param room The room ordinal
+     * @return The end of the room's exit range
+     */
+    public int getExitEnd(int room) {
+        return roomExitStart[room + 1];
+    }
+
+    /**
+     * Finds the exit leaving a room in a direction.
+     *
+     * @param room The room ordinal
+     * @param direction The exit direction
+     * @return The exit ordinal, or {@link #NONE} if there is no such exit
+     */
+    public int findExit(int room, String direction) {
+        if (room < 0 || direction == null) {
+            return NONE;
+        }
+        for (int e = roomExitStart[room]; e < roomExitStart[room + 1]; e++) {
+            if (exitDirections[e].equals(direction)) {
+                return e;
+            }
+        }
+        return NONE;
+    }
+
+    public String getExitDirection(int exit) {
+        return exitDirections[exit];
+    }
+
+    public Exit getExit(int exit) {
+        return exits[exit];
+    }
+
+    public int getExitTargetRoom(int exit) {
+        return exitTargetRooms[exit];
+    }
+
+    public int getExitRequiredItem(int exit) {
+        return exitRequiredItems[exit];
+    }
+
+    public int getExitRequiredPuzzle(int exit) {
+        return exitRequiredPuzzles[exit];
+    }
+
+    /**
+     * Gets the flag an exit requires, or {@link #NONE} if it has no flag requirement.
+     * The required value is {@link Exit#getRequiredFlagValue()}.
+     *
+     * @param exit The exit ordinal
+     * @return The flag ordinal
+     */
+    public int getExitRequiredFlag(int exit) {
+        return exitRequiredFlags[exit];
+    }
+
+    /**
+     * Gets the "roomId_exitDir" key that identifies an exit in saved states.
+     *
+     * @param exit The exit ordinal
+     * @return The exit key, or null for {@link #NONE}
+     */
+    public String getExitKey(int exit) {
+        return exit >= 0 ? exitKeys[exit] : null;
+    }
+
+    /**
+     * Finds an exit by its saved-state key.
+     *
+     * @param exitKey The "roomId_exitDir" key
+     * @return The exit ordinal, or NONE if no exit has that key
+     */
+    public int getExitByKey(String exitKey) {
+        return ordinal(exitKeyOrdinals, exitKey);
+    }
+
+    // ---- Initial state ----
+
+    /**
+     * Gets the items a room starts with. The returned array must not be modified.
+     *
+     * @param room The room ordinal
+     * @return The item ordinals, in definition order
+     */
+    public int[] getInitialRoomItems(int room) {
+        return initialRoomItems[room];
+    }
+
+    /**
+     * Gets the room an NPC starts in.
+     *
+     * @param npc The NPC ordinal
+     * @return The room ordinal, or {@link #NONE} if the NPC is not placed in any room
+     */
+    public int getInitialNpcRoom(int npc) {
+        return initialNpcRooms[npc];
+    }
+}
@@ -3,6 +3,7 @@ package local.pphilfre.datamodel;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 
 /**
  * Represents a node in an NPC's dialogue tree.
@@ -93,4 +94,11 @@ public class DialogueNode {
     public void setEndsDialogue(boolean endsDialogue) {
         this.endsDialogue = endsDialogue;
     }
+
+    /**
+     * Makes the response list of this node read-only once the definition has been loaded.
+     */
+    void seal() {
+        responses = Collections.unmodifiableList(responses);
+    }
 }
@@ -6,6 +6,7 @@ import local.pphilfre.Player;
 import local.pphilfre.World;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -48,6 +49,13 @@ public class EndCondition {
         this.criteria = criteria != null ? criteria : new ArrayList<>();
     }
 
+    /**
+     * Makes the criteria list read-only once the definition has been loaded.
+     */
+    void seal() {
+        criteria = Collections.unmodifiableList(criteria);
+    }
+
     /**
      * Checks if all criteria for this end condition are met.
      *
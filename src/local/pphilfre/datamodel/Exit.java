@@ -17,9 +17,6 @@ public class Exit {
     private String requiredPuzzleIdSolved;
     private String requiredFlagName;
     private String requiredFlagValue;
-    
-    @JsonIgnore
-    private boolean currentLockedState;
 
     public Exit() {
         // Default constructor for Jackson
@@ -97,14 +94,20 @@ public class Exit {
         this.requiredFlagValue = requiredFlagValue;
     }
 
+    /**
+     * Checks if the exit is currently locked based on puzzle solution, items, or flags.
+     * 
+     * @param player The current player
+     * @param world The game world
+     * @param roomId The ID of the room this exit leaves from
+     * @param direction The direction of this exit
+     * @return true if the exit is locked, false otherwise
+     */
     @JsonIgnore
-    public boolean isCurrentLockedState() {
-        return currentLockedState;
-    }
-
-    @JsonIgnore
-    public void setCurrentLockedState(boolean currentLockedState) {
-        this.currentLockedState = currentLockedState;
+    public boolean isCurrentlyLocked(Player player, World world, String roomId, String direction) {
+        CompiledWorld compiledWorld = world.getCompiledWorld();
+        int exit = compiledWorld.findExit(compiledWorld.getRoomOrdinal(roomId), direction);
+        return exit != CompiledWorld.NONE && isCurrentlyLocked(player, world, exit);
     }
 
     /**
@@ -112,31 +115,32 @@ public class Exit {
      * 
      * @param player The current player
      * @param world The game world
+     * @param exitOrdinal The ordinal of this exit in the world's compiled form
      * @return true if the exit is locked, false otherwise
      */
     @JsonIgnore
-    public boolean isCurrentlyLocked(Player player, World world) {
-        // If we're tracking explicit locked state, use that
-        if (currentLockedState) {
+    public boolean isCurrentlyLocked(Player player, World world, int exitOrdinal) {
+        CompiledWorld compiledWorld = world.getCompiledWorld();
+        
+        // If a puzzle effect has explicitly locked the exit, use that
+        if (world.isExitForcedLocked(exitOrdinal)) {
             return true;
         }
         
         // Check for puzzle-based lock
-        if (requiredPuzzleIdSolved != null && !world.isPuzzleSolved(requiredPuzzleIdSolved)) {
+        if (requiredPuzzleIdSolved != null && !world.isPuzzleSolved(compiledWorld.getExitRequiredPuzzle(exitOrdinal))) {
             return true;
         }
         
         // Check for item-based lock
-        if (requiredItemIdToUnlock != null && !player.hasItem(requiredItemIdToUnlock)) {
+        if (requiredItemIdToUnlock != null && !player.hasItem(compiledWorld.getExitRequiredItem(exitOrdinal))) {
             return true;
         }
         
         // Check for flag-based lock
-        if (requiredFlagName != null && requiredFlagValue != null) {
-            String actualValue = world.getGlobalFlagValue(requiredFlagName);
-            if (!requiredFlagValue.equals(actualValue)) {
-                return true;
-            }
+        int requiredFlag = compiledWorld.getExitRequiredFlag(exitOrdinal);
+        if (requiredFlag != CompiledWorld.NONE && !requiredFlagValue.equals(world.getGlobalFlagValue(requiredFlag))) {
+            return true;
         }
         
         // No locks apply
@@ -148,10 +152,25 @@ public class Exit {
      *
      * @param player The current player
      * @param world The game world
+     * @param roomId The ID of the room this exit leaves from
+     * @param direction The direction of this exit
+     * @return true if the player can pass, false otherwise
+     */
+    @JsonIgnore
+    public boolean canPlayerPass(Player player, World world, String roomId, String direction) {
+        return !isCurrentlyLocked(player, world, roomId, direction);
+    }
+
+    /**
+     * Checks if the player can pass through this exit.
+     *
+     * @param player The current player
+     * @param world The game world
+     * @param exitOrdinal The ordinal of this exit in the world's compiled form
      * @return true if the player can pass, false otherwise
      */
     @JsonIgnore
-    public boolean canPlayerPass(Player player, World world) {
-        return !isCurrentlyLocked(player, world);
+    public boolean canPlayerPass(Player player, World world, int exitOrdinal) {
+        return !isCurrentlyLocked(player, world, exitOrdinal);
     }
 }
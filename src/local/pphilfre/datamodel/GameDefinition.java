@@ -1,7 +1,9 @@
 package local.pphilfre.datamodel;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,6 +20,12 @@ public class GameDefinition {
     private Map<String, Puzzle> puzzles;
     private List<EndCondition> endConditions;
     private Map<String, String> globalFlags;
+    private Map<String, String> verbAliases; // extra words for built-in verbs, e.g. "pull" -> "use"
+
+    @JsonIgnore
+    private boolean sealed;
+    @JsonIgnore
+    private CompiledWorld compiledWorld;
 
     public GameDefinition() {
         // Default constructor for Jackson
@@ -27,6 +35,7 @@ public class GameDefinition {
         this.puzzles = new HashMap<>();
         this.endConditions = new ArrayList<>();
         this.globalFlags = new HashMap<>();
+        this.verbAliases = new HashMap<>();
     }
 
     @JsonProperty("gameInfo")
@@ -101,6 +110,78 @@ public class GameDefinition {
         this.globalFlags = globalFlags != null ? globalFlags : new HashMap<>();
     }
 
+    @JsonProperty("verbAliases")
+    public Map<String, String> getVerbAliases() {
+        return verbAliases;
+    }
+
+    public void setVerbAliases(Map<String, String> verbAliases) {
+        this.verbAliases = verbAliases != null ? verbAliases : new HashMap<>();
+    }
+
+    /**
+     * Checks whether this definition has been sealed.
+     *
+     * @return true if {@link #seal()} has been called, false otherwise
+     */
+    @JsonIgnore
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * Makes this definition and everything it contains read-only.
+     * A sealed definition holds no per-session state, so a single instance can be
+     * shared by any number of concurrent {@link local.pphilfre.World} instances.
+     * Calling this more than once has no further effect.
+     */
+    public void seal() {
+        if (sealed) {
+            return;
+        }
+        
+        if (playerStart != null) {
+            playerStart.seal();
+        }
+        for (Room room : rooms.values()) {
+            room.seal();
+        }
+        for (Item item : items.values()) {
+            item.seal();
+        }
+        for (NpcDefinition npc : npcs.values()) {
+            npc.seal();
+        }
+        for (Puzzle puzzle : puzzles.values()) {
+            puzzle.seal();
+        }
+        for (EndCondition endCondition : endConditions) {
+            endCondition.seal();
+        }
+        
+        rooms = Collections.unmodifiableMap(rooms);
+        items = Collections.unmodifiableMap(items);
+        npcs = Collections.unmodifiableMap(npcs);
+        puzzles = Collections.unmodifiableMap(puzzles);
+        endConditions = Collections.unmodifiableList(endConditions);
+        globalFlags = Collections.unmodifiableMap(globalFlags);
+        verbAliases = Collections.unmodifiableMap(verbAliases);
+        sealed = true;
+    }
+
+    /**
+     * Gets the compiled form of this definition, sealing and compiling it on first use.
+     *
+     * @return The compiled world
+     */
+    @JsonIgnore
+    public synchronized CompiledWorld getCompiledWorld() {
+        if (compiledWorld == null) {
+            compiledWorld = CompiledWorld.compile(this);
+        }
+        return compiledWorld;
+    }
+
     /**
      * Validates the game definition to ensure all referenced IDs exist.
      * 
@@ -108,60 +189,19 @@ public class GameDefinition {
      */
     public List<String> validate() {
         List<String> errors = new ArrayList<>();
-        
-        // Check that player start room exists
-        if (playerStart != null && playerStart.getStartRoomId() != null) {
-            if (!rooms.containsKey(playerStart.getStartRoomId())) {
-                errors.add("Player start room ID '" + playerStart.getStartRoomId() + "' does not exist.");
-            }
-            
-            // Check that all initial inventory items exist
-            for (String itemId : playerStart.getInitialInventory()) {
-                if (!items.containsKey(itemId)) {
-                    errors.add("Initial inventory item ID '" + itemId + "' does not exist.");
-                }
-            }
-        } else {
-            errors.add("Player start is not defined properly.");
-        }
-        
-        // Check room references
-        for (Map.Entry<String, Room> roomEntry : rooms.entrySet()) {
-            Room room = roomEntry.getValue();
-            
-            // Check item references
-            for (String itemId : room.getItemIds()) {
-                if (!items.containsKey(itemId)) {
-                    errors.add("Room '" + room.getId() + "' references non-existent item '" + itemId + "'.");
-                }
-            }
-            
-            // Check NPC references
-            for (String npcId : room.getNpcIds()) {
-                if (!npcs.containsKey(npcId)) {
-                    errors.add("Room '" + room.getId() + "' references non-existent NPC '" + npcId + "'.");
-                }
-            }
-            
-            // Check exit references
-            for (Map.Entry<String, Exit> exitEntry : room.getExits().entrySet()) {
-                Exit exit = exitEntry.getValue();
-                if (!rooms.containsKey(exit.getTargetRoomId())) {
-                    errors.add("Exit from room '" + room.getId() + "' to '" + exit.getTargetRoomId() + "' references a non-existent room.");
-                }
-                
-                if (exit.getRequiredItemIdToUnlock() != null && !items.containsKey(exit.getRequiredItemIdToUnlock())) {
-                    errors.add("Exit from room '" + room.getId() + "' requires a non-existent item '" + exit.getRequiredItemIdToUnlock() + "'.");
-                }
-                
-                if (exit.getRequiredPuzzleIdSolved() != null && !puzzles.containsKey(exit.getRequiredPuzzleIdSolved())) {
-                    errors.add("Exit from room '" + room.getId() + "' requires a non-existent puzzle '" + exit.getRequiredPuzzleIdSolved() + "'.");
-                }
-            }
+        for (ValidationIssue issue : findIssues()) {
+            errors.add(issue.getMessage());
         }
-        
-        // Additional validations could be added here for puzzles, items, NPCs, etc.
-        
         return errors;
     }
+
+    /**
+     * Validates the game definition, checking every reference between its rooms, items, NPCs,
+     * dialogue, puzzles and end conditions. Large definitions are checked in parallel.
+     *
+     * @return The issues found, in file order, empty if the definition is valid
+     */
+    public List<ValidationIssue> findIssues() {
+        return new WorldValidator(this).validate();
+    }
 }
@@ -1,15 +1,20 @@
 package local.pphilfre.datamodel;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
 /**
  * Represents the complete game state for saving and loading.
+ * The small header fields are written first, so a save listing can stop reading after them.
  */
+@JsonPropertyOrder({"gameVersion", "saveTimestamp", "playTimeMillis", "commandCount", "playerState", "worldDynamicState"})
 public class GameState {
     private PlayerState playerState;
     private WorldDynamicState worldDynamicState;
     private String gameVersion;  // Store this to handle save compatibility in future versions
     private long saveTimestamp;  // When the game was saved
+    private long playTimeMillis; // How long the game had been played when it was saved
+    private int commandCount;    // How many commands had been entered when it was saved
 
     public GameState() {
         // Default constructor for Jackson
@@ -58,4 +63,22 @@ public class GameState {
     public void setSaveTimestamp(long saveTimestamp) {
         this.saveTimestamp = saveTimestamp;
     }
+
+    @JsonProperty("playTimeMillis")
+    public long getPlayTimeMillis() {
+        return playTimeMillis;
+    }
+
+    public void setPlayTimeMillis(long playTimeMillis) {
+        this.playTimeMillis = playTimeMillis;
+    }
+
+    @JsonProperty("commandCount")
+    public int getCommandCount() {
+        return commandCount;
+    }
+
+    public void setCommandCount(int commandCount) {
+        this.commandCount = commandCount;
+    }
 }
@@ -1,7 +1,9 @@
 package local.pphilfre.datamodel;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -13,6 +15,8 @@ public class Item {
     private String id;
     private String name;
     private String description;
+    @JsonIgnore
+    private LazyText lazyDescription; // fetched on demand instead, when loaded from a compiled world
     private boolean takeable;
     private List<String> canBeCombinedWith;
     private String combinationResultItemId;
@@ -44,11 +48,22 @@ public class Item {
 
     @JsonProperty("description")
     public String getDescription() {
-        return description;
+        return lazyDescription != null ? lazyDescription.get() : description;
     }
 
     public void setDescription(String description) {
         this.description = description;
+        this.lazyDescription = null;
+    }
+
+    /**
+     * Sets the description to text that is only fetched when it is needed.
+     *
+     * @param description The description
+     */
+    public void deferDescription(LazyText description) {
+        this.description = null;
+        this.lazyDescription = description;
     }
 
     @JsonProperty("takeable")
@@ -87,6 +102,14 @@ public class Item {
         this.useEffects = useEffects != null ? useEffects : new HashMap<>();
     }
 
+    /**
+     * Makes the collections of this item read-only once the definition has been loaded.
+     */
+    void seal() {
+        canBeCombinedWith = Collections.unmodifiableList(canBeCombinedWith);
+        useEffects = Collections.unmodifiableMap(useEffects);
+    }
+
     /**
      * Gets the effect of using this item on a target.
      *
@@ -0,0 +1,16 @@
+package local.pphilfre.datamodel;
+
+/**
+ * Text that is fetched when it is needed rather than kept on the heap, such as the description
+ * of a room in a large compiled world. An implementation may drop the text again when memory
+ * runs short and fetch it afresh on the next call.
+ */
+public interface LazyText {
+
+    /**
+     * Gets the text.
+     *
+     * @return The text, or null if there is none
+     */
+    String get();
+}
@@ -0,0 +1,324 @@
+package local.pphilfre.datamodel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+/**
+ * A precomputed index over the names of one kind of entity (items or NPCs), used to
+ * resolve the noun phrases the player types.
+ * <p>
+ * Names are lowercased and split into tokens once, when the world is compiled. Each distinct
+ * token maps to the ordinals of the entities whose names contain it, so a phrase is resolved
+ * by looking up its first word instead of scanning every candidate; a caller whose own candidates
+ * are fewer than that word's entities ranks them directly instead. Matches are ranked:
+ * an exact name beats a phrase whose words start the name's words in order
+ * ("rusty lev" for "Rusty Lever"), which beats a plain substring match.
+ */
+public class NameIndex {
+    public static final int NO_MATCH = 0;
+    public static final int TOKEN_PREFIX = 2;
+    public static final int EXACT = 3;
+
+    private final String[] names;          // entity -> lowercased name
+    private final int[][] tokenBounds;     // entity -> start and end offsets of each token in its name
+    private final String[] tokens;         // distinct tokens, sorted
+    private final int[] postingStarts;     // token -> first index in postings, with a sentinel at the end
+    private final int[] postings;          // entity ordinals, grouped by token and ascending within a token
+
+    /**
+     * Builds an index over a set of names.
+     *
+     * @param rawNames The entity names, indexed by ordinal; null names never match
+     */
+    public NameIndex(String[] rawNames) {
+        this.names = new String[rawNames.length];
+        this.tokenBounds = new int[rawNames.length][];
+        Map<String, List<Integer>> tokenEntities = new TreeMap<>();
+        
+        for (int entity = 0; entity < rawNames.length; entity++) {
+            String name = rawNames[entity] != null ? normalize(rawNames[entity]) : "";
+            names[entity] = name;
+            
+            List<Integer> bounds = new ArrayList<>();
+            int pos = 0;
+            while ((pos = nextTokenStart(name, pos)) < name.length()) {
+                int end = tokenEnd(name, pos);
+                bounds.add(pos);
+                bounds.add(end);
+                List<Integer> entities = tokenEntities.computeIfAbsent(name.substring(pos, end), k -> new ArrayList<>());
+                if (entities.isEmpty() || entities.get(entities.size() - 1) != entity) {
+                    entities.add(entity);
+                }
+                pos = end;
+            }
+            tokenBounds[entity] = bounds.stream().mapToInt(Integer::intValue).toArray();
+        }
+        
+        this.tokens = tokenEntities.keySet().toArray(new String[0]);
+        this.postingStarts = new int[tokens.length + 1];
+        int postingCount = 0;
+        for (List<Integer> entities : tokenEntities.values()) {
+            postingCount += entities.size();
+        }
+        this.postings = new int[postingCount];
+        int t = 0;
+        int p = 0;
+        for (List<Integer> entities : tokenEntities.values()) {
+            postingStarts[t++] = p;
+            for (int entity : entities) {
+                postings[p++] = entity;
+            }
+        }
+        postingStarts[t] = p;
+    }
+
+    /**
+     * Normalizes a phrase for matching. Already-normalized input is returned as-is.
+     *
+     * @param phrase The phrase the player typed
+     * @return The trimmed, lowercased phrase
+     */
+    public static String normalize(String phrase) {
+        return phrase.toLowerCase().trim();
+    }
+
+    /**
+     * Gets the normalized name of an entity.
+     *
+     * @param entity The entity ordinal
+     * @return The lowercased name
+     */
+    public String getName(int entity) {
+        return names[entity];
+    }
+
+    /**
+     * Resolves a phrase against the entities in scope using the token index.
+     * Only exact and token-prefix matches are found this way; ties go to the entity
+     * defined first. Callers fall back to {@link #containsPhrase(int, String)} over their
+     * own candidates when this finds nothing.
+     *
+     * @param query The normalized phrase
+     * @param inScope Tests whether an entity ordinal is currently a candidate
+     * @return The best matching entity ordinal, or {@link CompiledWorld#NONE}
+     */
+    public int resolve(String query, IntPredicate inScope) {
+        int start = nextTokenStart(query, 0);
+        if (start >= query.length()) {
+            return CompiledWorld.NONE;
+        }
+        int end = tokenEnd(query, start);
+        int first = lowerBound(query, start, end);
+        
+        int best = CompiledWorld.NONE;
+        int bestRank = NO_MATCH;
+        for (int p = postingStarts[first]; p < postingStarts[prefixEnd(query, start, end, first)]; p++) {
+            int entity = postings[p];
+            if (!inScope.test(entity)) {
+                continue;
+            }
+            int rank = tokenRank(entity, query);
+            if (isBetter(entity, rank, best, bestRank)) {
+                best = entity;
+                bestRank = rank;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Counts the postings {@link #resolve} would walk for a phrase: one for each entity with a
+     * word starting with the phrase's first word, per such word. A caller with fewer candidates
+     * of its own should rank them with {@link #tokenRank} instead.
+     *
+     * @param query The normalized phrase
+     * @return The number of postings
+     */
+    public int countCandidates(String query) {
+        int start = nextTokenStart(query, 0);
+        if (start >= query.length()) {
+            return 0;
+        }
+        int end = tokenEnd(query, start);
+        int first = lowerBound(query, start, end);
+        return postingStarts[prefixEnd(query, start, end, first)] - postingStarts[first];
+    }
+
+    /**
+     * Checks whether a match beats the best so far: a higher rank wins, and ties go to the
+     * entity defined first.
+     *
+     * @param entity The entity ordinal
+     * @param rank The entity's rank from {@link #tokenRank}
+     * @param best The best entity so far, or {@link CompiledWorld#NONE}
+     * @param bestRank The best entity's rank
+     * @return true if the entity is the better match
+     */
+    public static boolean isBetter(int entity, int rank, int best, int bestRank) {
+        return rank > bestRank || (rank == bestRank && rank != NO_MATCH && entity < best);
+    }
+
+    /**
+     * Checks whether an entity's name contains a phrase anywhere.
+     *
+     * @param entity The entity ordinal
+     * @param query The normalized phrase
+     * @return true if the name contains the phrase
+     */
+    public boolean containsPhrase(int entity, String query) {
+        return names[entity].contains(query);
+    }
+
+    /**
+     * Ranks a phrase against an entity's name tokens. Each word of the phrase must start a
+     * word of the name, in order; if every word matches a whole word and no name word is
+     * skipped, the match is exact.
+     *
+     * @param entity The entity ordinal
+     * @param query The normalized phrase
+     * @return {@link #EXACT}, {@link #TOKEN_PREFIX} or {@link #NO_MATCH}
+     */
+    public int tokenRank(int entity, String query) {
+        String name = names[entity];
+        int[] bounds = tokenBounds[entity];
+        int tokenCount = bounds.length / 2;
+        int nameToken = 0;
+        boolean exact = true;
+        boolean any = false;
+        
+        int pos = 0;
+        while ((pos = nextTokenStart(query, pos)) < query.length()) {
+            int end = tokenEnd(query, pos);
+            int length = end - pos;
+            int matched = nameToken;
+            while (matched < tokenCount && !(bounds[matched * 2 + 1] - bounds[matched * 2] >= length
+                    && name.regionMatches(bounds[matched * 2], query, pos, length))) {
+                matched++;
+            }
+            if (matched == tokenCount) {
+                return NO_MATCH;
+            }
+            if (matched != nameToken || bounds[matched * 2 + 1] - bounds[matched * 2] != length) {
+                exact = false;
+            }
+            nameToken = matched + 1;
+            any = true;
+            pos = end;
+        }
+        
+        if (!any) {
+            return NO_MATCH;
+        }
+        return exact && nameToken == tokenCount ? EXACT : TOKEN_PREFIX;
+    }
+
+    /**
+     * Finds the first sorted token that is not less than a region of the query.
+     *
+     * @param query The phrase
+     * @param start The start of the region
+     * @param end The end of the region
+     * @return The index of the first token not less than the region
+     */
+    private int lowerBound(String query, int start, int end) {
+        int low = 0;
+        int high = tokens.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareToRegion(tokens[mid], query, start, end) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the end of the run of sorted tokens that start with a region of the query.
+     *
+     * @param query The phrase
+     * @param start The start of the region
+     * @param end The end of the region
+     * @param first The first token not less than the region, from {@link #lowerBound}
+     * @return The index just after the last token starting with the region
+     */
+    private int prefixEnd(String query, int start, int end, int first) {
+        int low = first;
+        int high = tokens.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (isPrefix(query, start, end, tokens[mid])) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares a token with a region of another string, like {@link String#compareTo}.
+     *
+     * @param token The token
+     * @param query The string holding the region
+     * @param start The start of the region
+     * @param end The end of the region
+     * @return A negative number, zero or a positive number as the token sorts before, equal to or after the region
+     */
+    private static int compareToRegion(String token, String query, int start, int end) {
+        int length = Math.min(token.length(), end - start);
+        for (int i = 0; i < length; i++) {
+            int diff = token.charAt(i) - query.charAt(start + i);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return token.length() - (end - start);
+    }
+
+    /**
+     * Checks whether a region of the query is a prefix of a token.
+     *
+     * @param query The string holding the region
+     * @param start The start of the region
+     * @param end The end of the region
+     * @param token The token
+     * @return true if the token starts with the region
+     */
+    private static boolean isPrefix(String query, int start, int end, String token) {
+        return token.length() >= end - start && token.regionMatches(0, query, start, end - start);
+    }
+
+    /**
+     * Finds the start of the next token.
+     *
+     * @param text The text to scan
+     * @param from The position to start from
+     * @return The position of the next token character, or the text length if there is none
+     */
+    private static int nextTokenStart(String text, int from) {
+        while (from < text.length() && !Character.isLetterOrDigit(text.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Finds the end of the token starting at a position.
+     *
+     * @param text The text to scan
+     * @param start The start of the token
+     * @return The position just after the token
+     */
+    private static int tokenEnd(String text, int start) {
+        int end = start;
+        while (end < text.length() && Character.isLetterOrDigit(text.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+}
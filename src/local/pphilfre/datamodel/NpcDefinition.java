@@ -1,10 +1,12 @@
 package local.pphilfre.datamodel;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Collections;
 
 /**
  * Defines the static properties of an NPC.
@@ -13,6 +15,8 @@ public class NpcDefinition {
     private String id;
     private String name;
     private String presenceDescription;
+    @JsonIgnore
+    private LazyText lazyPresenceDescription; // fetched on demand instead, when loaded from a compiled world
     private String initialDialogueNodeId;
     private Map<String, DialogueNode> dialogueTree;
     private List<String> initialItemIds;
@@ -45,11 +49,22 @@ public class NpcDefinition {
 
     @JsonProperty("presenceDescription")
     public String getPresenceDescription() {
-        return presenceDescription;
+        return lazyPresenceDescription != null ? lazyPresenceDescription.get() : presenceDescription;
     }
 
     public void setPresenceDescription(String presenceDescription) {
         this.presenceDescription = presenceDescription;
+        this.lazyPresenceDescription = null;
+    }
+
+    /**
+     * Sets the presence description to text that is only fetched when it is needed.
+     *
+     * @param presenceDescription The presence description
+     */
+    public void deferPresenceDescription(LazyText presenceDescription) {
+        this.presenceDescription = null;
+        this.lazyPresenceDescription = presenceDescription;
     }
 
     @JsonProperty("initialDialogueNodeId")
@@ -87,4 +102,17 @@ public class NpcDefinition {
     public void setInitialNpcFlags(Map<String, String> initialNpcFlags) {
         this.initialNpcFlags = initialNpcFlags != null ? initialNpcFlags : new HashMap<>();
     }
+
+    /**
+     * Makes the collections of this NPC definition, including its dialogue tree,
+     * read-only once the definition has been loaded.
+     */
+    void seal() {
+        for (DialogueNode node : dialogueTree.values()) {
+            node.seal();
+        }
+        dialogueTree = Collections.unmodifiableMap(dialogueTree);
+        initialItemIds = Collections.unmodifiableList(initialItemIds);
+        initialNpcFlags = Collections.unmodifiableMap(initialNpcFlags);
+    }
 }
@@ -3,6 +3,7 @@ package local.pphilfre.datamodel;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 
 /**
  * Defines the player's starting position and inventory.
@@ -38,4 +39,11 @@ public class PlayerStart {
     public void setInitialInventory(List<String> initialInventory) {
         this.initialInventory = initialInventory != null ? initialInventory : new ArrayList<>();
     }
+
+    /**
+     * Makes the initial inventory read-only once the definition has been loaded.
+     */
+    void seal() {
+        initialInventory = Collections.unmodifiableList(initialInventory);
+    }
 }
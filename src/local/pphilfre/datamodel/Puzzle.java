@@ -4,8 +4,10 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import local.pphilfre.Player;
 import local.pphilfre.World;
+import local.pphilfre.utils.OutputSink;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -21,9 +23,6 @@ public class Puzzle {
     private List<PuzzleEffect> effectsOnSolve;
     private String setsFlagOnSolve;
     private String setsFlagValueOnSolve;
-    
-    @JsonIgnore
-    private boolean solved = false;
 
     public Puzzle() {
         // Default constructor for Jackson
@@ -111,40 +110,38 @@ public class Puzzle {
         this.setsFlagValueOnSolve = setsFlagValueOnSolve;
     }
 
-    @JsonIgnore
-    public boolean isSolved() {
-        return solved;
-    }
-
-    @JsonIgnore
-    public void setSolved(boolean solved) {
-        this.solved = solved;
+    /**
+     * Makes the collections of this puzzle read-only once the definition has been loaded.
+     */
+    void seal() {
+        effectsOnSolve = Collections.unmodifiableList(effectsOnSolve);
     }
 
     /**
      * Attempts to solve the puzzle with the given context.
+     * The solved status is read from and written to the world, never to this definition.
      *
      * @param player The current player
      * @param world The game world
      * @param itemUsedId Optional ID of the item used
      * @param targetId Optional ID of the target
+     * @param out The sink to write puzzle messages to
      * @return true if the puzzle was solved, false otherwise
      */
     @JsonIgnore
-    public boolean attemptSolve(Player player, World world, String itemUsedId, String targetId) {
-        if (solved) {
+    public boolean attemptSolve(Player player, World world, String itemUsedId, String targetId, OutputSink out) {
+        if (world.isPuzzleSolved(id)) {
             if (alreadySolvedMessage != null && !alreadySolvedMessage.isEmpty()) {
-                System.out.println(alreadySolvedMessage);
+                out.println(alreadySolvedMessage);
             }
             return false; // Already solved, no need to solve again
         }
 
         if (solutionCondition != null && solutionCondition.isMet(player, world, itemUsedId, targetId)) {
-            solved = true;
             world.setPuzzleSolved(id, true);
             
             if (successMessage != null && !successMessage.isEmpty()) {
-                System.out.println(successMessage);
+                out.println(successMessage);
             }
             
             // Apply effects
@@ -160,7 +157,7 @@ public class Puzzle {
             return true;
         } else {
             if (failureMessage != null && !failureMessage.isEmpty()) {
-                System.out.println(failureMessage);
+                out.println(failureMessage);
             }
             return false;
         }
@@ -129,10 +129,7 @@ public class PuzzleEffect {
                 
             case "MOVE_NPC":
                 if (npcIdToMove != null && destinationRoomId != null) {
-                    NpcInstance npc = world.getNpcInstance(npcIdToMove);
-                    if (npc != null) {
-                        npc.setCurrentRoomId(destinationRoomId);
-                    }
+                    world.moveNpc(npcIdToMove, destinationRoomId);
                 }
                 break;
                 
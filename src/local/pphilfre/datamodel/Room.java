@@ -4,8 +4,11 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import local.pphilfre.Player;
 import local.pphilfre.World;
+import local.pphilfre.utils.OutputSink;
+import local.pphilfre.utils.StringOutputSink;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,6 +20,8 @@ public class Room {
     private String id;
     private String name;
     private String baseDescription;
+    @JsonIgnore
+    private LazyText lazyBaseDescription; // fetched on demand instead, when loaded from a compiled world
     private List<String> itemIds;
     private List<String> npcIds;
     private Map<String, Exit> exits;
@@ -48,11 +53,22 @@ public class Room {
 
     @JsonProperty("baseDescription")
     public String getBaseDescription() {
-        return baseDescription;
+        return lazyBaseDescription != null ? lazyBaseDescription.get() : baseDescription;
     }
 
     public void setBaseDescription(String baseDescription) {
         this.baseDescription = baseDescription;
+        this.lazyBaseDescription = null;
+    }
+
+    /**
+     * Sets the base description to text that is only fetched when it is needed.
+     *
+     * @param baseDescription The base description
+     */
+    public void deferBaseDescription(LazyText baseDescription) {
+        this.baseDescription = null;
+        this.lazyBaseDescription = baseDescription;
     }
 
     @JsonProperty("itemIds")
@@ -82,6 +98,15 @@ public class Room {
         this.exits = exits != null ? exits : new HashMap<>();
     }
 
+    /**
+     * Makes the collections of this room read-only once the definition has been loaded.
+     */
+    void seal() {
+        itemIds = Collections.unmodifiableList(itemIds);
+        npcIds = Collections.unmodifiableList(npcIds);
+        exits = Collections.unmodifiableMap(exits);
+    }
+
     /**
      * Gets a formatted description of the room that includes its base description,
      * visible items, NPCs, and available exits.
@@ -92,73 +117,90 @@ public class Room {
      */
     @JsonIgnore
     public String getFormattedDescription(World world, Player player) {
-        StringBuilder description = new StringBuilder();
-        
+        StringOutputSink description = new StringOutputSink();
+        printFormattedDescription(world, player, description);
+        return description.toString();
+    }
+
+    /**
+     * Writes the formatted description of the room straight to an output sink,
+     * without building an intermediate string.
+     *
+     * @param world The game world
+     * @param player The current player
+     * @param out The sink to write the description to
+     */
+    @JsonIgnore
+    public void printFormattedDescription(World world, Player player, OutputSink out) {
         // Add the room name and basic description
-        description.append(name).append("\n");
-        description.append("----------------------------------\n");
-        description.append(baseDescription).append("\n\n");
+        out.print(name);
+        out.print("\n----------------------------------\n");
+        out.print(getBaseDescription());
+        out.print("\n\n");
         
         // Add items in the room
-        List<String> roomItems = world.getItemsInRoom(id);
-        if (!roomItems.isEmpty()) {
-            description.append("You can see: ");
-            for (int i = 0; i < roomItems.size(); i++) {
-                String itemId = roomItems.get(i);
-                Item item = world.getItemDefinition(itemId);
-                if (item != null) {
-                    description.append(item.getName());
-                    if (i < roomItems.size() - 1) {
-                        description.append(", ");
-                    }
+        CompiledWorld compiledWorld = world.getCompiledWorld();
+        int room = compiledWorld.getRoomOrdinal(id);
+        int itemCount = world.getRoomItemCount(room);
+        if (itemCount > 0) {
+            out.print("You can see: ");
+            for (int item = world.getFirstRoomItem(room); item != CompiledWorld.NONE; item = world.getNextItem(item)) {
+                out.print(compiledWorld.getItem(item).getName());
+                if (world.getNextItem(item) != CompiledWorld.NONE) {
+                    out.print(", ");
                 }
             }
-            description.append("\n");
+            out.print("\n");
         }
         
         // Add NPCs in the room
-        List<NpcInstance> roomNpcs = world.getNpcsInRoom(id);
-        if (!roomNpcs.isEmpty()) {
-            description.append("\n");
-            for (NpcInstance npcInstance : roomNpcs) {
-                NpcDefinition npcDef = world.getNpcDefinition(npcInstance.getDefinitionId());
-                if (npcDef != null && npcDef.getPresenceDescription() != null) {
-                    description.append(npcDef.getPresenceDescription()).append("\n");
-                } else if (npcDef != null) {
-                    description.append(npcDef.getName()).append(" is here.\n");
+        int npcCount = world.getRoomNpcCount(room);
+        if (npcCount > 0) {
+            out.print("\n");
+            for (int i = 0; i < npcCount; i++) {
+                NpcDefinition npcDef = compiledWorld.getNpc(world.getRoomNpc(room, i));
+                if (npcDef.getPresenceDescription() != null) {
+                    out.print(npcDef.getPresenceDescription());
+                    out.print("\n");
+                } else {
+                    out.print(npcDef.getName());
+                    out.print(" is here.\n");
                 }
             }
         }
         
         // Add available exits
-        if (!exits.isEmpty()) {
-            description.append("\nExits: ");
-            List<String> availableExits = new ArrayList<>();
+        int firstExit = compiledWorld.getExitStart(room);
+        int endExit = compiledWorld.getExitEnd(room);
+        if (firstExit < endExit) {
+            out.print("\nExits: ");
+            boolean anyAvailable = false;
             
-            for (Map.Entry<String, Exit> exit : exits.entrySet()) {
-                String direction = exit.getKey();
-                Exit exitObj = exit.getValue();
-                
-                if (!exitObj.isCurrentlyLocked(player, world)) {
-                    availableExits.add(direction);
-                } else if (exitObj.getLockedMessage() != null && !exitObj.getLockedMessage().isEmpty()) {
-                    description.append("\nThe exit to the ").append(direction)
-                            .append(" ").append(exitObj.getLockedMessage());
+            // Locked exit messages come first, followed by the list of open directions
+            for (int exit = firstExit; exit < endExit; exit++) {
+                Exit exitObj = compiledWorld.getExit(exit);
+                if (exitObj.isCurrentlyLocked(player, world, exit)
+                        && exitObj.getLockedMessage() != null && !exitObj.getLockedMessage().isEmpty()) {
+                    out.print("\nThe exit to the ");
+                    out.print(compiledWorld.getExitDirection(exit));
+                    out.print(" ");
+                    out.print(exitObj.getLockedMessage());
                 }
             }
             
-            if (!availableExits.isEmpty()) {
-                for (int i = 0; i < availableExits.size(); i++) {
-                    description.append(availableExits.get(i));
-                    if (i < availableExits.size() - 1) {
-                        description.append(", ");
+            for (int exit = firstExit; exit < endExit; exit++) {
+                if (!compiledWorld.getExit(exit).isCurrentlyLocked(player, world, exit)) {
+                    if (anyAvailable) {
+                        out.print(", ");
                     }
+                    out.print(compiledWorld.getExitDirection(exit));
+                    anyAvailable = true;
                 }
-            } else {
-                description.append("None available");
+            }
+            
+            if (!anyAvailable) {
+                out.print("None available");
             }
         }
-        
-        return description.toString();
     }
 }
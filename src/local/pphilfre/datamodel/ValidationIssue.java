@@ -0,0 +1,41 @@
+package local.pphilfre.datamodel;
+
+/**
+ * A problem found while validating a {@link GameDefinition}, such as a reference to something
+ * that does not exist.
+ */
+public class ValidationIssue {
+    private final String section;   // the part of the world file, e.g. "rooms" or "endConditions"
+    private final String entityId;  // the entry the problem is in, or null for the section as a whole
+    private final String message;
+
+    /**
+     * Creates a new validation issue.
+     *
+     * @param section The part of the world file the problem is in, named as in the JSON
+     * @param entityId The ID of the entry the problem is in, or null
+     * @param message A description of the problem
+     */
+    public ValidationIssue(String section, String entityId, String message) {
+        this.section = section;
+        this.entityId = entityId;
+        this.message = message;
+    }
+
+    public String getSection() {
+        return section;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return message;
+    }
+}
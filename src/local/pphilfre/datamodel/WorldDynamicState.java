@@ -7,6 +7,11 @@ import java.util.Map;
 
 /**
  * Represents the dynamic state of the game world for saving and loading.
+ * <p>
+ * A delta state only records what differs from the world's initial state: rooms whose items
+ * changed (an empty list means the room was emptied), solved puzzles, NPCs that moved, talked or
+ * traded, flags whose value changed (a null value means the flag was cleared) and exit overrides.
+ * A full state, as written by older versions, records everything.
  */
 public class WorldDynamicState {
     private Map<String, List<String>> roomItemStates;  // roomId -> list of itemIds
@@ -14,6 +19,7 @@ public class WorldDynamicState {
     private Map<String, NpcInstance> npcInstanceStates;  // npcDefId -> NpcInstance
     private Map<String, String> globalFlagStates;      // flagName -> value
     private Map<String, Boolean> roomExitLockedStates; // "roomId_exitDir" -> locked status
+    private boolean delta;                             // true if only changes from the initial state are recorded
 
     public WorldDynamicState() {
         // Default constructor for Jackson
@@ -68,4 +74,13 @@ public class WorldDynamicState {
     public void setRoomExitLockedStates(Map<String, Boolean> roomExitLockedStates) {
         this.roomExitLockedStates = roomExitLockedStates != null ? roomExitLockedStates : new HashMap<>();
     }
+
+    @JsonProperty("delta")
+    public boolean isDelta() {
+        return delta;
+    }
+
+    public void setDelta(boolean delta) {
+        this.delta = delta;
+    }
 }
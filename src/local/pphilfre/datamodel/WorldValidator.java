@@ -0,0 +1,608 @@
+package local.pphilfre.datamodel;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Checks every cross-reference in a {@link GameDefinition}: that each room, item, NPC, puzzle and
+ * dialogue node an entry names exists, that use effects, puzzle conditions, puzzle effects and end
+ * conditions are of a kind the engine understands, and that flag settings are well formed.
+ * <p>
+ * Each section of the definition is checked as its own task on the common fork-join pool, and
+ * large sections are split into chunks, so a big world is validated on every core. Issues are
+ * reported in file order however the work was divided.
+ */
+class WorldValidator {
+    private static final int CHUNK_SIZE = 512; // entries checked by one task before it splits
+
+    private static final Set<String> USE_TARGET_TYPES = new HashSet<>(Arrays.asList("self", "item", "npc", "puzzle"));
+    private static final Set<String> SOLUTION_TYPES = new HashSet<>(Arrays.asList(
+            "ITEM_USED_ON_TARGET", "NPC_STATE_REACHED", "GLOBAL_FLAG_SET", "PLAYER_HAS_ITEM"));
+    private static final Set<String> EFFECT_TYPES = new HashSet<>(Arrays.asList(
+            "UNLOCK_EXIT", "LOCK_EXIT", "SPAWN_ITEM", "REMOVE_ITEM", "MOVE_NPC", "SET_FLAG"));
+    private static final Set<String> END_TYPES = new HashSet<>(Arrays.asList("WIN", "LOSE"));
+    private static final Set<String> CRITERION_TYPES = new HashSet<>(Arrays.asList(
+            "PLAYER_HAS_ITEM", "PLAYER_IN_ROOM", "FLAG_SET", "PUZZLE_SOLVED"));
+
+    private final GameDefinition definition;
+    private final Map<String, Room> rooms;
+    private final Map<String, Item> items;
+    private final Map<String, NpcDefinition> npcs;
+    private final Map<String, Puzzle> puzzles;
+
+    /**
+     * Creates a validator for a definition. The definition must not change while it is validated.
+     *
+     * @param definition The game definition
+     */
+    WorldValidator(GameDefinition definition) {
+        this.definition = definition;
+        this.rooms = definition.getRooms();
+        this.items = definition.getItems();
+        this.npcs = definition.getNpcs();
+        this.puzzles = definition.getPuzzles();
+    }
+
+    /**
+     * Validates the whole definition.
+     *
+     * @return Every issue found, in file order
+     */
+    List<ValidationIssue> validate() {
+        return ForkJoinPool.commonPool().invoke(new RecursiveTask<List<ValidationIssue>>() {
+            @Override
+            protected List<ValidationIssue> compute() {
+                List<SectionTask<?>> sections = new ArrayList<>();
+                sections.add(new SectionTask<>("rooms", entries(rooms), WorldValidator.this::checkRoom));
+                sections.add(new SectionTask<>("items", entries(items), WorldValidator.this::checkItem));
+                sections.add(new SectionTask<>("npcs", entries(npcs), WorldValidator.this::checkNpc));
+                sections.add(new SectionTask<>("puzzles", entries(puzzles), WorldValidator.this::checkPuzzle));
+                sections.add(new SectionTask<>("endConditions", numbered(definition.getEndConditions()),
+                                               WorldValidator.this::checkEndCondition));
+                for (SectionTask<?> section : sections) {
+                    section.fork();
+                }
+                
+                // The player start is a single entry, so check it here while the sections run
+                List<ValidationIssue> issues = new ArrayList<>();
+                checkPlayerStart(definition.getPlayerStart(), new IssueList("playerStart", null, issues));
+                for (SectionTask<?> section : sections) {
+                    issues.addAll(section.join());
+                }
+                return issues;
+            }
+        });
+    }
+
+    /**
+     * Checks the player's starting room and inventory.
+     *
+     * @param playerStart The player start, or null
+     * @param issues Where to report problems
+     */
+    private void checkPlayerStart(PlayerStart playerStart, IssueList issues) {
+        if (playerStart == null || playerStart.getStartRoomId() == null) {
+            issues.add("Player start is not defined properly.");
+            return;
+        }
+        
+        if (!rooms.containsKey(playerStart.getStartRoomId())) {
+            issues.add("Player start room ID '" + playerStart.getStartRoomId() + "' does not exist.");
+        }
+        for (String itemId : playerStart.getInitialInventory()) {
+            if (!items.containsKey(itemId)) {
+                issues.add("Initial inventory item ID '" + itemId + "' does not exist.");
+            }
+        }
+    }
+
+    /**
+     * Checks a room's items, NPCs and exits.
+     *
+     * @param key The room's key in the definition
+     * @param room The room, or null
+     * @param issues Where to report problems
+     */
+    private void checkRoom(String key, Room room, IssueList issues) {
+        if (room == null) {
+            issues.add("Room '" + key + "' has no definition.");
+            return;
+        }
+        checkKey("Room", key, room.getId(), issues);
+        
+        for (String itemId : room.getItemIds()) {
+            if (!items.containsKey(itemId)) {
+                issues.add("Room '" + room.getId() + "' references non-existent item '" + itemId + "'.");
+            }
+        }
+        for (String npcId : room.getNpcIds()) {
+            if (!npcs.containsKey(npcId)) {
+                issues.add("Room '" + room.getId() + "' references non-existent NPC '" + npcId + "'.");
+            }
+        }
+        
+        for (Map.Entry<String, Exit> exitEntry : room.getExits().entrySet()) {
+            Exit exit = exitEntry.getValue();
+            if (exit == null) {
+                issues.add("Exit '" + exitEntry.getKey() + "' from room '" + room.getId() + "' has no definition.");
+                continue;
+            }
+            if (!rooms.containsKey(exit.getTargetRoomId())) {
+                issues.add("Exit from room '" + room.getId() + "' to '" + exit.getTargetRoomId() + "' references a non-existent room.");
+            }
+            if (exit.getRequiredItemIdToUnlock() != null && !items.containsKey(exit.getRequiredItemIdToUnlock())) {
+                issues.add("Exit from room '" + room.getId() + "' requires a non-existent item '" + exit.getRequiredItemIdToUnlock() + "'.");
+            }
+            if (exit.getRequiredPuzzleIdSolved() != null && !puzzles.containsKey(exit.getRequiredPuzzleIdSolved())) {
+                issues.add("Exit from room '" + room.getId() + "' requires a non-existent puzzle '" + exit.getRequiredPuzzleIdSolved() + "'.");
+            }
+            if (exit.getRequiredFlagValue() != null && exit.getRequiredFlagName() == null) {
+                issues.add("Exit '" + exitEntry.getKey() + "' from room '" + room.getId() + "' requires a flag value but names no flag.");
+            }
+        }
+    }
+
+    /**
+     * Checks an item's combinations and use effects.
+     *
+     * @param key The item's key in the definition
+     * @param item The item, or null
+     * @param issues Where to report problems
+     */
+    private void checkItem(String key, Item item, IssueList issues) {
+        if (item == null) {
+            issues.add("Item '" + key + "' has no definition.");
+            return;
+        }
+        checkKey("Item", key, item.getId(), issues);
+        
+        for (String otherId : item.getCanBeCombinedWith()) {
+            if (!items.containsKey(otherId)) {
+                issues.add("Item '" + key + "' can be combined with non-existent item '" + otherId + "'.");
+            }
+        }
+        String resultId = item.getCombinationResultItemId();
+        if (resultId != null && !items.containsKey(resultId)) {
+            issues.add("Item '" + key + "' combines into non-existent item '" + resultId + "'.");
+        } else if (resultId == null && !item.getCanBeCombinedWith().isEmpty()) {
+            issues.add("Item '" + key + "' can be combined but has no combination result.");
+        }
+        
+        for (Map.Entry<String, UseEffect> effectEntry : item.getUseEffects().entrySet()) {
+            checkUseEffect(key, effectEntry.getKey(), effectEntry.getValue(), issues);
+        }
+    }
+
+    /**
+     * Checks one of an item's use effects and the target its key names.
+     *
+     * @param itemId The item's ID
+     * @param target The effect's key, of the form "type:id"
+     * @param effect The effect, or null
+     * @param issues Where to report problems
+     */
+    private void checkUseEffect(String itemId, String target, UseEffect effect, IssueList issues) {
+        String[] parts = target.split(":", 2);
+        if (parts.length != 2 || !USE_TARGET_TYPES.contains(parts[0])) {
+            issues.add("Item '" + itemId + "' has a use effect for '" + target
+                       + "', which is not of the form self:, item:, npc: or puzzle: followed by an ID.");
+        } else if (parts[0].equals("self") && !parts[1].equals(itemId)) {
+            issues.add("Item '" + itemId + "' has a use effect on itself under another item's ID '" + parts[1] + "'.");
+        } else if (parts[0].equals("item") && !items.containsKey(parts[1])) {
+            issues.add("Item '" + itemId + "' has a use effect on non-existent item '" + parts[1] + "'.");
+        } else if (parts[0].equals("npc") && !npcs.containsKey(parts[1])) {
+            issues.add("Item '" + itemId + "' has a use effect on non-existent NPC '" + parts[1] + "'.");
+        } else if (parts[0].equals("puzzle") && !puzzles.containsKey(parts[1])) {
+            issues.add("Item '" + itemId + "' has a use effect for non-existent puzzle '" + parts[1] + "'.");
+        }
+        
+        if (effect == null) {
+            issues.add("Item '" + itemId + "' has no definition for its use effect '" + target + "'.");
+        } else if (effect.getTriggersPuzzleId() != null && !puzzles.containsKey(effect.getTriggersPuzzleId())) {
+            issues.add("Item '" + itemId + "' triggers non-existent puzzle '" + effect.getTriggersPuzzleId() + "'.");
+        }
+    }
+
+    /**
+     * Checks an NPC's items and dialogue tree.
+     *
+     * @param key The NPC's key in the definition
+     * @param npc The NPC, or null
+     * @param issues Where to report problems
+     */
+    private void checkNpc(String key, NpcDefinition npc, IssueList issues) {
+        if (npc == null) {
+            issues.add("NPC '" + key + "' has no definition.");
+            return;
+        }
+        checkKey("NPC", key, npc.getId(), issues);
+        
+        for (String itemId : npc.getInitialItemIds()) {
+            if (!items.containsKey(itemId)) {
+                issues.add("NPC '" + key + "' holds non-existent item '" + itemId + "'.");
+            }
+        }
+        
+        Map<String, DialogueNode> tree = npc.getDialogueTree();
+        String startNodeId = npc.getInitialDialogueNodeId();
+        if (startNodeId != null && !tree.containsKey(startNodeId)) {
+            issues.add("NPC '" + key + "' starts dialogue at non-existent node '" + startNodeId + "'.");
+        }
+        for (Map.Entry<String, DialogueNode> nodeEntry : tree.entrySet()) {
+            checkDialogueNode(key, nodeEntry.getKey(), nodeEntry.getValue(), tree, issues);
+        }
+    }
+
+    /**
+     * Checks a dialogue node and its responses.
+     *
+     * @param npcId The ID of the NPC the node belongs to
+     * @param nodeId The node's ID
+     * @param node The node, or null
+     * @param tree The NPC's whole dialogue tree
+     * @param issues Where to report problems
+     */
+    private void checkDialogueNode(String npcId, String nodeId, DialogueNode node,
+                                   Map<String, DialogueNode> tree, IssueList issues) {
+        String where = "Dialogue node '" + nodeId + "' of NPC '" + npcId + "'";
+        if (node == null) {
+            issues.add(where + " has no definition.");
+            return;
+        }
+        
+        if (node.getGivesItemId() != null && !items.containsKey(node.getGivesItemId())) {
+            issues.add(where + " gives non-existent item '" + node.getGivesItemId() + "'.");
+        }
+        if (node.getRequiresItemId() != null && !items.containsKey(node.getRequiresItemId())) {
+            issues.add(where + " requires non-existent item '" + node.getRequiresItemId() + "'.");
+        }
+        checkFlagSetting(where + " sets NPC flag", node.getSetsNpcFlag(), issues);
+        checkFlagSetting(where + " sets global flag", node.getSetsGlobalFlag(), issues);
+        
+        for (DialogueResponseOption response : node.getResponses()) {
+            if (response == null) {
+                issues.add(where + " has an empty response.");
+                continue;
+            }
+            if (response.getTargetNodeId() != null && !tree.containsKey(response.getTargetNodeId())) {
+                issues.add(where + " has a response leading to non-existent node '" + response.getTargetNodeId() + "'.");
+            }
+            if (response.getRequiresPlayerItem() != null && !items.containsKey(response.getRequiresPlayerItem())) {
+                issues.add(where + " has a response requiring non-existent item '" + response.getRequiresPlayerItem() + "'.");
+            }
+            checkFlagSetting(where + " has a response requiring NPC flag", response.getRequiresNpcFlag(), issues);
+            checkFlagSetting(where + " has a response requiring global flag", response.getRequiresGlobalFlag(), issues);
+        }
+    }
+
+    /**
+     * Checks that a flag setting is of the form "name=value", which is all the engine understands.
+     *
+     * @param where The start of the message, describing what sets or requires the flag
+     * @param setting The setting, or null
+     * @param issues Where to report problems
+     */
+    private void checkFlagSetting(String where, String setting, IssueList issues) {
+        if (setting != null && setting.split("=", 2).length != 2) {
+            issues.add(where + " '" + setting + "', which is not of the form name=value.");
+        }
+    }
+
+    /**
+     * Checks a puzzle's solution condition and effects.
+     *
+     * @param key The puzzle's key in the definition
+     * @param puzzle The puzzle, or null
+     * @param issues Where to report problems
+     */
+    private void checkPuzzle(String key, Puzzle puzzle, IssueList issues) {
+        if (puzzle == null) {
+            issues.add("Puzzle '" + key + "' has no definition.");
+            return;
+        }
+        checkKey("Puzzle", key, puzzle.getId(), issues);
+        
+        PuzzleSolutionCondition condition = puzzle.getSolutionCondition();
+        String where = "Puzzle '" + key + "'";
+        if (condition == null) {
+            issues.add(where + " has no solution condition and can never be solved.");
+        } else if (!SOLUTION_TYPES.contains(condition.getType())) {
+            issues.add(where + " has an unknown solution condition type '" + condition.getType() + "'.");
+        } else {
+            switch (condition.getType()) {
+                case "ITEM_USED_ON_TARGET":
+                    requireItem(where + " needs", condition.getRequiredItemId(), issues);
+                    if (condition.getRequiredTargetId() == null) {
+                        issues.add(where + " needs an item used on a target but names no target.");
+                    }
+                    break;
+                case "NPC_STATE_REACHED":
+                    requireNpc(where + " watches", condition.getRequiredNpcId(), issues);
+                    if (condition.getRequiredNpcFlag() == null || condition.getRequiredNpcFlagValue() == null) {
+                        issues.add(where + " watches an NPC but names no flag and value.");
+                    }
+                    break;
+                case "GLOBAL_FLAG_SET":
+                    if (condition.getRequiredGlobalFlag() == null || condition.getRequiredGlobalFlagValue() == null) {
+                        issues.add(where + " watches a global flag but names no flag and value.");
+                    }
+                    break;
+                case "PLAYER_HAS_ITEM":
+                    requireItem(where + " needs", condition.getRequiredItemId(), issues);
+                    break;
+            }
+        }
+        
+        for (PuzzleEffect effect : puzzle.getEffectsOnSolve()) {
+            checkPuzzleEffect(where, effect, issues);
+        }
+    }
+
+    /**
+     * Checks one effect of solving a puzzle.
+     *
+     * @param where The start of the message, naming the puzzle
+     * @param effect The effect, or null
+     * @param issues Where to report problems
+     */
+    private void checkPuzzleEffect(String where, PuzzleEffect effect, IssueList issues) {
+        if (effect == null) {
+            issues.add(where + " has an empty effect.");
+            return;
+        }
+        if (!EFFECT_TYPES.contains(effect.getType())) {
+            issues.add(where + " has an unknown effect type '" + effect.getType() + "'.");
+            return;
+        }
+        
+        String what = where + " effect " + effect.getType();
+        switch (effect.getType()) {
+            case "UNLOCK_EXIT":
+            case "LOCK_EXIT":
+                Room room = requireRoom(what + " names", effect.getTargetRoomId(), issues);
+                if (room != null && !room.getExits().containsKey(effect.getExitDirection())) {
+                    issues.add(what + " names non-existent exit '" + effect.getExitDirection()
+                               + "' of room '" + effect.getTargetRoomId() + "'.");
+                }
+                break;
+            case "SPAWN_ITEM":
+            case "REMOVE_ITEM":
+                requireRoom(what + " names", effect.getTargetRoomId(), issues);
+                requireItem(what + " names", effect.getItemIdToSpawnOrRemove(), issues);
+                break;
+            case "MOVE_NPC":
+                requireNpc(what + " names", effect.getNpcIdToMove(), issues);
+                requireRoom(what + " names", effect.getDestinationRoomId(), issues);
+                break;
+            case "SET_FLAG":
+                if (effect.getFlagToSet() == null || effect.getFlagValue() == null) {
+                    issues.add(what + " names no flag and value.");
+                }
+                break;
+        }
+    }
+
+    /**
+     * Checks an end condition and its criteria.
+     *
+     * @param number The condition's position in the list, counting from 1
+     * @param condition The condition, or null
+     * @param issues Where to report problems
+     */
+    private void checkEndCondition(String number, EndCondition condition, IssueList issues) {
+        String where = "End condition " + number;
+        if (condition == null) {
+            issues.add(where + " has no definition.");
+            return;
+        }
+        
+        if (!END_TYPES.contains(condition.getType())) {
+            issues.add(where + " has an unknown type '" + condition.getType() + "'; it must be WIN or LOSE.");
+        }
+        if (condition.getCriteria().isEmpty()) {
+            issues.add(where + " has no criteria and can never be met.");
+        }
+        for (ConditionCriterion criterion : condition.getCriteria()) {
+            if (criterion == null) {
+                issues.add(where + " has an empty criterion.");
+            } else if (!CRITERION_TYPES.contains(criterion.getType())) {
+                issues.add(where + " has an unknown criterion type '" + criterion.getType() + "'.");
+            } else {
+                switch (criterion.getType()) {
+                    case "PLAYER_HAS_ITEM":
+                        requireItem(where + " needs", criterion.getItemId(), issues);
+                        break;
+                    case "PLAYER_IN_ROOM":
+                        requireRoom(where + " needs", criterion.getRoomId(), issues);
+                        break;
+                    case "FLAG_SET":
+                        if (criterion.getFlagName() == null || criterion.getFlagValue() == null) {
+                            issues.add(where + " needs a flag but names no flag and value.");
+                        }
+                        break;
+                    case "PUZZLE_SOLVED":
+                        // The puzzle is named in the item ID field
+                        if (!puzzles.containsKey(criterion.getItemId())) {
+                            issues.add(where + " needs non-existent puzzle '" + criterion.getItemId() + "'.");
+                        }
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that an entry's ID matches the key it is stored under, which is what the engine uses.
+     *
+     * @param kind The kind of entry, for the message
+     * @param key The entry's key
+     * @param id The entry's ID
+     * @param issues Where to report problems
+     */
+    private void checkKey(String kind, String key, String id, IssueList issues) {
+        if (!key.equals(id)) {
+            issues.add(kind + " '" + key + "' has a different ID '" + id + "'.");
+        }
+    }
+
+    /**
+     * Checks that a room exists.
+     *
+     * @param where The start of the message
+     * @param roomId The room's ID, or null
+     * @param issues Where to report problems
+     * @return The room, or null if it does not exist
+     */
+    private Room requireRoom(String where, String roomId, IssueList issues) {
+        Room room = roomId != null ? rooms.get(roomId) : null;
+        if (room == null) {
+            issues.add(where + " non-existent room '" + roomId + "'.");
+        }
+        return room;
+    }
+
+    /**
+     * Checks that an item exists.
+     *
+     * @param where The start of the message
+     * @param itemId The item's ID, or null
+     * @param issues Where to report problems
+     */
+    private void requireItem(String where, String itemId, IssueList issues) {
+        if (itemId == null || !items.containsKey(itemId)) {
+            issues.add(where + " non-existent item '" + itemId + "'.");
+        }
+    }
+
+    /**
+     * Checks that an NPC exists.
+     *
+     * @param where The start of the message
+     * @param npcId The NPC's ID, or null
+     * @param issues Where to report problems
+     */
+    private void requireNpc(String where, String npcId, IssueList issues) {
+        if (npcId == null || !npcs.containsKey(npcId)) {
+            issues.add(where + " non-existent NPC '" + npcId + "'.");
+        }
+    }
+
+    /**
+     * Gets the entries of a map as a list that can be split between tasks.
+     *
+     * @param <T> The type of value
+     * @param map The map
+     * @return The entries, in map order
+     */
+    private static <T> List<Map.Entry<String, T>> entries(Map<String, T> map) {
+        return new ArrayList<>(map.entrySet());
+    }
+
+    /**
+     * Gets the elements of a list keyed by their position, counting from 1.
+     *
+     * @param <T> The type of element
+     * @param list The list
+     * @return The numbered elements
+     */
+    private static <T> List<Map.Entry<String, T>> numbered(List<T> list) {
+        List<Map.Entry<String, T>> entries = new ArrayList<>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            entries.add(new AbstractMap.SimpleEntry<>(String.valueOf(i + 1), list.get(i)));
+        }
+        return entries;
+    }
+
+    /**
+     * Checks one entry of a section.
+     *
+     * @param <T> The type of entry
+     */
+    private interface EntryCheck<T> {
+        /**
+         * Checks the entry.
+         *
+         * @param key The entry's key, or its number for list sections
+         * @param entry The entry, or null
+         * @param issues Where to report problems
+         */
+        void check(String key, T entry, IssueList issues);
+    }
+
+    /**
+     * Collects the issues of one entry, tagging each with the entry's section and key.
+     */
+    private static class IssueList {
+        private final String section;
+        private final String entityId;
+        private final List<ValidationIssue> issues;
+        
+        IssueList(String section, String entityId, List<ValidationIssue> issues) {
+            this.section = section;
+            this.entityId = entityId;
+            this.issues = issues;
+        }
+        
+        /**
+         * Reports a problem.
+         *
+         * @param message A description of the problem
+         */
+        void add(String message) {
+            issues.add(new ValidationIssue(section, entityId, message));
+        }
+    }
+
+    /**
+     * Checks a range of a section's entries, splitting it in two while it is large.
+     *
+     * @param <T> The type of entry
+     */
+    @SuppressWarnings("serial") // RecursiveTask is Serializable, but tasks never leave the pool
+    private static class SectionTask<T> extends RecursiveTask<List<ValidationIssue>> {
+        private final String section;
+        private final List<Map.Entry<String, T>> entries;
+        private final int from;
+        private final int to;
+        private final EntryCheck<T> check;
+        
+        SectionTask(String section, List<Map.Entry<String, T>> entries, EntryCheck<T> check) {
+            this(section, entries, 0, entries.size(), check);
+        }
+        
+        SectionTask(String section, List<Map.Entry<String, T>> entries, int from, int to, EntryCheck<T> check) {
+            this.section = section;
+            this.entries = entries;
+            this.from = from;
+            this.to = to;
+            this.check = check;
+        }
+        
+        @Override
+        protected List<ValidationIssue> compute() {
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                SectionTask<T> first = new SectionTask<>(section, entries, from, middle, check);
+                first.fork();
+                List<ValidationIssue> second = new SectionTask<>(section, entries, middle, to, check).compute();
+                List<ValidationIssue> issues = first.join();
+                issues.addAll(second);
+                return issues;
+            }
+            
+            List<ValidationIssue> issues = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                Map.Entry<String, T> entry = entries.get(i);
+                check.check(entry.getKey(), entry.getValue(), new IssueList(section, entry.getKey(), issues));
+            }
+            return issues;
+        }
+    }
+}
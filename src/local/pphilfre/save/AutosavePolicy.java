@@ -0,0 +1,90 @@
+package local.pphilfre.save;
+
+/**
+ * Decides when a session saves itself automatically.
+ * A policy is immutable, so one instance can be shared by every session.
+ */
+public class AutosavePolicy {
+    /** Never autosave. */
+    public static final AutosavePolicy NEVER = new AutosavePolicy(0, false, false);
+
+    /** Autosave every 20 commands, and whenever the player changes room or solves a puzzle. */
+    public static final AutosavePolicy DEFAULT = new AutosavePolicy(20, true, true);
+
+    private final int everyCommands;
+    private final boolean onRoomChange;
+    private final boolean onPuzzleSolved;
+
+    /**
+     * Creates a new autosave policy.
+     *
+     * @param everyCommands Save after this many commands, or 0 to not count commands
+     * @param onRoomChange Whether to save when the player enters another room
+     * @param onPuzzleSolved Whether to save when a puzzle is solved
+     */
+    public AutosavePolicy(int everyCommands, boolean onRoomChange, boolean onPuzzleSolved) {
+        if (everyCommands < 0) {
+            throw new IllegalArgumentException("everyCommands must not be negative: " + everyCommands);
+        }
+        this.everyCommands = everyCommands;
+        this.onRoomChange = onRoomChange;
+        this.onPuzzleSolved = onPuzzleSolved;
+    }
+
+    /**
+     * Parses a policy from a comma-separated list of triggers: a number N to save every N commands,
+     * {@code room} to save on entering a room, and {@code puzzle} to save when a puzzle is solved.
+     * For example {@code "10,room"}.
+     *
+     * @param spec The policy specification
+     * @return The policy
+     * @throws IllegalArgumentException If the specification has an unknown trigger
+     */
+    public static AutosavePolicy parse(String spec) {
+        int everyCommands = 0;
+        boolean onRoomChange = false;
+        boolean onPuzzleSolved = false;
+        
+        for (String part : spec.split(",")) {
+            String trigger = part.trim().toLowerCase();
+            if (trigger.equals("room")) {
+                onRoomChange = true;
+            } else if (trigger.equals("puzzle")) {
+                onPuzzleSolved = true;
+            } else if (!trigger.isEmpty()) {
+                try {
+                    everyCommands = Integer.parseInt(trigger);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Unknown autosave trigger: " + part.trim());
+                }
+            }
+        }
+        return new AutosavePolicy(everyCommands, onRoomChange, onPuzzleSolved);
+    }
+
+    /**
+     * Decides whether a command should be followed by an autosave.
+     *
+     * @param commandsSinceSave The number of commands since the last autosave, including this one
+     * @param roomChanged Whether the command moved the player to another room
+     * @param puzzleSolved Whether the command solved a puzzle
+     * @return true if the session should autosave now
+     */
+    public boolean shouldSave(int commandsSinceSave, boolean roomChanged, boolean puzzleSolved) {
+        return (everyCommands > 0 && commandsSinceSave >= everyCommands)
+            || (onRoomChange && roomChanged)
+            || (onPuzzleSolved && puzzleSolved);
+    }
+
+    public int getEveryCommands() {
+        return everyCommands;
+    }
+
+    public boolean isOnRoomChange() {
+        return onRoomChange;
+    }
+
+    public boolean isOnPuzzleSolved() {
+        return onPuzzleSolved;
+    }
+}
@@ -0,0 +1,175 @@
+package local.pphilfre.save;
+
+import local.pphilfre.datamodel.CompiledWorld;
+import local.pphilfre.datamodel.GameState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes a session's autosaves on a background thread, so the command that triggers a save
+ * never waits for the disk.
+ * <p>
+ * The state is double-buffered: at most one state is being written and at most one is waiting.
+ * A state submitted while another is waiting replaces it, so a burst of saves is coalesced into
+ * writing only the latest. The {@link SaveStore} replaces the previous autosave atomically,
+ * so a crash mid-write leaves it intact.
+ */
+public class Autosaver {
+    private final SaveStore store;
+    private final String key;
+    private final SaveCodec codec;
+    private final CompiledWorld world;
+
+    // Guarded by this
+    private GameState pending;        // the latest state waiting to be written, null if none
+    private boolean writing;          // a writer thread is running
+    private boolean closed;
+    private IOException failure;      // the last write failure not yet reported
+    private long savesWritten;
+    private long savesCoalesced;
+
+    /**
+     * Creates an autosaver for one session.
+     *
+     * @param store The store to save to
+     * @param key The key to save under
+     * @param codec The save format
+     * @param world The compiled world the session plays
+     */
+    public Autosaver(SaveStore store, String key, SaveCodec codec, CompiledWorld world) {
+        this.store = store;
+        this.key = key;
+        this.codec = codec;
+        this.world = world;
+    }
+
+    /**
+     * Queues a state to be saved and returns immediately.
+     * The state must not be modified afterwards; {@code World} and {@code Player} hand out copies.
+     *
+     * @param state The state to save
+     */
+    public synchronized void submit(GameState state) {
+        if (closed) {
+            return;
+        }
+        
+        if (pending != null) {
+            savesCoalesced++;
+        }
+        pending = state;
+        if (!writing) {
+            writing = true;
+            Thread.ofVirtual().name("autosave").start(this::drain);
+        }
+    }
+
+    /**
+     * Gets the error from the last failed write, if it has not been reported yet.
+     *
+     * @return The error, or null if every write since the last call succeeded
+     */
+    public synchronized IOException takeFailure() {
+        IOException result = failure;
+        failure = null;
+        return result;
+    }
+
+    /**
+     * Gets the key autosaves are written under.
+     *
+     * @return The autosave key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the number of autosaves written so far.
+     *
+     * @return The number of saves written
+     */
+    public synchronized long getSavesWritten() {
+        return savesWritten;
+    }
+
+    /**
+     * Gets the number of autosaves that were replaced by a newer one before they were written.
+     *
+     * @return The number of saves coalesced
+     */
+    public synchronized long getSavesCoalesced() {
+        return savesCoalesced;
+    }
+
+    /**
+     * Stops accepting saves and waits for the one being written and the one waiting to finish.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public synchronized void close() throws InterruptedException {
+        closed = true;
+        while (writing) {
+            wait();
+        }
+    }
+
+    /**
+     * Writes waiting states until there are none left. A write that fails, however it fails,
+     * is reported through {@link #takeFailure()} and never leaves close() waiting.
+     */
+    private void drain() {
+        boolean drained = false;
+        try {
+            while (true) {
+                GameState state;
+                synchronized (this) {
+                    state = pending;
+                    pending = null;
+                    if (state == null) {
+                        writing = false;
+                        notifyAll();
+                        drained = true;
+                        return;
+                    }
+                }
+                
+                try {
+                    write(state);
+                    synchronized (this) {
+                        savesWritten++;
+                    }
+                } catch (IOException e) {
+                    synchronized (this) {
+                        failure = e;
+                    }
+                } catch (RuntimeException e) {
+                    synchronized (this) {
+                        failure = new IOException(e.toString(), e);
+                    }
+                }
+            }
+        } finally {
+            if (!drained) {
+                // An error escaped, so this thread is gone; let the next save start another
+                synchronized (this) {
+                    writing = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes a state and writes it to the store.
+     *
+     * @param state The state to write
+     * @throws IOException If the state cannot be written
+     */
+    private void write(GameState state) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.write(state, world, bytes);
+        store.write(key, bytes.toByteArray());
+    }
+}
@@ -0,0 +1,160 @@
+package local.pphilfre.save;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the primitive values written by {@link BinaryWriter}.
+ */
+class BinaryReader {
+    // Upper bound on string lengths and element counts, so corrupt data fails fast
+    private static final int MAX_LENGTH = 1 << 24;
+
+    private final InputStream in;
+
+    /**
+     * Creates a reader over a stream. The stream should be buffered.
+     *
+     * @param in The stream to read from
+     */
+    BinaryReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads a single byte.
+     *
+     * @return The byte, from 0 to 255
+     * @throws IOException If the stream ends or cannot be read
+     */
+    int readByte() throws IOException {
+        int value = in.read();
+        if (value < 0) {
+            throw new EOFException("Unexpected end of save data");
+        }
+        return value;
+    }
+
+    /**
+     * Reads raw bytes.
+     *
+     * @param length The number of bytes to read
+     * @return The bytes
+     * @throws IOException If the stream ends or cannot be read
+     */
+    byte[] readBytes(int length) throws IOException {
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) {
+            throw new EOFException("Unexpected end of save data");
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads a varint that must fit in an int.
+     *
+     * @return The value
+     * @throws IOException If the stream ends, cannot be read, or the value is too large
+     */
+    int readVarInt() throws IOException {
+        long value = readVarLong();
+        if (value > 0xFFFFFFFFL) {
+            throw new IOException("Corrupt save data: varint out of range");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads a varint.
+     *
+     * @return The value
+     * @throws IOException If the stream ends, cannot be read, or the varint is too long
+     */
+    long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt save data: varint too long");
+    }
+
+    /**
+     * Reads an int written as four big-endian bytes.
+     *
+     * @return The value
+     * @throws IOException If the stream ends or cannot be read
+     */
+    int readFixedInt() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+    /**
+     * Reads a long written as eight big-endian bytes.
+     *
+     * @return The value
+     * @throws IOException If the stream ends or cannot be read
+     */
+    long readFixedLong() throws IOException {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+    /**
+     * Reads a count of elements, checking it is plausible.
+     *
+     * @return The count
+     * @throws IOException If the stream ends, cannot be read, or the count is implausible
+     */
+    int readCount() throws IOException {
+        int count = readVarInt();
+        if (count < 0 || count > MAX_LENGTH) {
+            throw new IOException("Corrupt save data: bad element count " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Reads an ordinal, which may be NONE (-1).
+     *
+     * @param limit The number of valid ordinals
+     * @return The ordinal
+     * @throws IOException If the stream ends, cannot be read, or the ordinal is out of range
+     */
+    int readOrdinal(int limit) throws IOException {
+        int ordinal = readVarInt() - 1;
+        if (ordinal < -1 || ordinal >= limit) {
+            throw new IOException("Corrupt save data: ordinal " + ordinal + " out of range");
+        }
+        return ordinal;
+    }
+
+    /**
+     * Reads a string, which may be null.
+     *
+     * @return The string
+     * @throws IOException If the stream ends, cannot be read, or the length is implausible
+     */
+    String readString() throws IOException {
+        int length = readVarInt();
+        if (length == 0) {
+            return null;
+        }
+        if (length < 0 || length - 1 > MAX_LENGTH) {
+            throw new IOException("Corrupt save data: bad string length");
+        }
+        return new String(readBytes(length - 1), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,360 @@
+package local.pphilfre.save;
+
+import local.pphilfre.datamodel.CompiledWorld;
+import local.pphilfre.datamodel.GameState;
+import local.pphilfre.datamodel.NpcInstance;
+import local.pphilfre.datamodel.PlayerState;
+import local.pphilfre.datamodel.WorldDynamicState;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, versioned binary save format.
+ * <p>
+ * Rooms, items, NPCs, puzzles, flags and exits are written as ordinals of the
+ * {@link CompiledWorld} rather than as string IDs, and all numbers are varints, so a typical
+ * save is a few hundred bytes. Ordinals are only meaningful for the world they came from,
+ * so the header records the world's fingerprint and a save made for a different world is rejected.
+ * <p>
+ * Layout (version 3):
+ * <pre>
+ * magic "TASV", varint format version, fixed64 world fingerprint,
+ * header:  string game version, varint save timestamp, string room ID, varint play time, varint command count
+ * player:  ordinal room, items, flags
+ * world:   byte delta, rooms with items, solved puzzles, NPC instances, global flags, exit overrides
+ * </pre>
+ * The header is everything a save listing needs and can be read on its own, without the world.
+ * Version 2 had only the game version and timestamp in its header, and version 1 also had no
+ * delta byte and always held the full world state; both can still be read.
+ * Lists are a varint count followed by the elements; strings are a varint UTF-8 length + 1
+ * (0 for null) followed by the bytes; ordinals are written + 1 so that NONE is 0.
+ */
+public class BinarySaveCodec implements SaveCodec {
+    private static final byte[] MAGIC = { 'T', 'A', 'S', 'V' };
+    private static final int FORMAT_VERSION = 3;
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".sav";
+    }
+
+    @Override
+    public void write(GameState state, CompiledWorld world, OutputStream out) throws IOException {
+        BinaryWriter writer = new BinaryWriter(out);
+        writer.writeBytes(MAGIC);
+        writer.writeVarInt(FORMAT_VERSION);
+        writer.writeFixedLong(world.getFingerprint());
+        writer.writeString(state.getGameVersion());
+        writer.writeVarLong(state.getSaveTimestamp());
+        writer.writeString(state.getPlayerState().getCurrentRoomId());
+        writer.writeVarLong(state.getPlayTimeMillis());
+        writer.writeVarInt(state.getCommandCount());
+        
+        writePlayer(state.getPlayerState(), world, writer);
+        writeWorld(state.getWorldDynamicState(), world, writer);
+    }
+
+    @Override
+    public GameState read(InputStream in, CompiledWorld world) throws IOException {
+        BinaryReader reader = new BinaryReader(in);
+        int version = readVersion(reader);
+        if (reader.readFixedLong() != world.getFingerprint()) {
+            throw new IOException("Save was made for a different world definition");
+        }
+        
+        GameState state = new GameState();
+        state.setGameVersion(reader.readString());
+        state.setSaveTimestamp(reader.readVarLong());
+        if (version >= 3) {
+            reader.readString(); // the room again, which the player section also holds
+            state.setPlayTimeMillis(reader.readVarLong());
+            state.setCommandCount(reader.readVarInt());
+        }
+        state.setPlayerState(readPlayer(world, reader));
+        state.setWorldDynamicState(readWorld(world, reader, version));
+        return state;
+    }
+
+    @Override
+    public SaveHeader readHeader(InputStream in) throws IOException {
+        BinaryReader reader = new BinaryReader(in);
+        int version = readVersion(reader);
+        reader.readFixedLong(); // the world fingerprint, only checked when the save is loaded
+        
+        String gameVersion = reader.readString();
+        long saveTimestamp = reader.readVarLong();
+        if (version < 3) {
+            return new SaveHeader(gameVersion, saveTimestamp, null, 0, 0);
+        }
+        return new SaveHeader(gameVersion, saveTimestamp, reader.readString(), reader.readVarLong(), reader.readVarInt());
+    }
+
+    /**
+     * Reads and checks the magic number and format version.
+     *
+     * @param reader The reader
+     * @return The format version
+     * @throws IOException If the data is not a binary save this codec can read
+     */
+    private int readVersion(BinaryReader reader) throws IOException {
+        byte[] magic = reader.readBytes(MAGIC.length);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not a binary save file");
+            }
+        }
+        int version = reader.readVarInt();
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new IOException("Unsupported save format version " + version);
+        }
+        return version;
+    }
+
+    /**
+     * Writes the player's state.
+     *
+     * @param player The player state
+     * @param world The compiled world
+     * @param writer The writer
+     * @throws IOException If the state cannot be written
+     */
+    private void writePlayer(PlayerState player, CompiledWorld world, BinaryWriter writer) throws IOException {
+        writer.writeOrdinal(world.getRoomOrdinal(player.getCurrentRoomId()));
+        writeItems(player.getInventoryItemIds(), world, writer);
+        writeStringMap(player.getPlayerFlags(), writer);
+    }
+
+    /**
+     * Reads the player's state.
+     *
+     * @param world The compiled world
+     * @param reader The reader
+     * @return The player state
+     * @throws IOException If the state cannot be read
+     */
+    private PlayerState readPlayer(CompiledWorld world, BinaryReader reader) throws IOException {
+        String roomId = world.getRoomId(reader.readOrdinal(world.getRoomCount()));
+        List<String> inventory = readItems(world, reader);
+        Map<String, String> flags = readStringMap(reader);
+        return new PlayerState(roomId, inventory, flags);
+    }
+
+    /**
+     * Writes the world's dynamic state.
+     *
+     * @param state The world state
+     * @param world The compiled world
+     * @param writer The writer
+     * @throws IOException If the state cannot be written
+     */
+    private void writeWorld(WorldDynamicState state, CompiledWorld world, BinaryWriter writer) throws IOException {
+        writer.writeByte(state.isDelta() ? 1 : 0);
+        
+        // Rooms that hold items; in a delta an empty room is a change and must be kept
+        List<Map.Entry<String, List<String>>> rooms = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : state.getRoomItemStates().entrySet()) {
+            if ((state.isDelta() || !entry.getValue().isEmpty()) && world.getRoomOrdinal(entry.getKey()) != CompiledWorld.NONE) {
+                rooms.add(entry);
+            }
+        }
+        writer.writeVarInt(rooms.size());
+        for (Map.Entry<String, List<String>> entry : rooms) {
+            writer.writeOrdinal(world.getRoomOrdinal(entry.getKey()));
+            writeItems(entry.getValue(), world, writer);
+        }
+        
+        // Solved puzzles
+        List<Integer> solved = new ArrayList<>();
+        for (Map.Entry<String, Boolean> entry : state.getPuzzleSolvedStates().entrySet()) {
+            int puzzle = world.getPuzzleOrdinal(entry.getKey());
+            if (Boolean.TRUE.equals(entry.getValue()) && puzzle != CompiledWorld.NONE) {
+                solved.add(puzzle);
+            }
+        }
+        writer.writeVarInt(solved.size());
+        for (int puzzle : solved) {
+            writer.writeOrdinal(puzzle);
+        }
+        
+        // NPC instances
+        List<NpcInstance> npcs = new ArrayList<>();
+        for (NpcInstance npc : state.getNpcInstanceStates().values()) {
+            if (world.getNpcOrdinal(npc.getDefinitionId()) != CompiledWorld.NONE) {
+                npcs.add(npc);
+            }
+        }
+        writer.writeVarInt(npcs.size());
+        for (NpcInstance npc : npcs) {
+            writer.writeOrdinal(world.getNpcOrdinal(npc.getDefinitionId()));
+            writer.writeOrdinal(world.getRoomOrdinal(npc.getCurrentRoomId()));
+            writer.writeString(npc.getCurrentDialogueNodeId());
+            writeItems(npc.getInventoryItemIds(), world, writer);
+            writeStringMap(npc.getNpcSpecificFlags(), writer);
+        }
+        
+        // Global flags; flags the world does not declare are written by name
+        Map<String, String> flags = state.getGlobalFlagStates();
+        writer.writeVarInt(flags.size());
+        for (Map.Entry<String, String> entry : flags.entrySet()) {
+            int flag = world.getFlagOrdinal(entry.getKey());
+            writer.writeOrdinal(flag);
+            if (flag == CompiledWorld.NONE) {
+                writer.writeString(entry.getKey());
+            }
+            writer.writeString(entry.getValue());
+        }
+        
+        // Exit lock overrides
+        List<Map.Entry<String, Boolean>> exits = new ArrayList<>();
+        for (Map.Entry<String, Boolean> entry : state.getRoomExitLockedStates().entrySet()) {
+            if (entry.getValue() != null && world.getExitByKey(entry.getKey()) != CompiledWorld.NONE) {
+                exits.add(entry);
+            }
+        }
+        writer.writeVarInt(exits.size());
+        for (Map.Entry<String, Boolean> entry : exits) {
+            writer.writeOrdinal(world.getExitByKey(entry.getKey()));
+            writer.writeByte(entry.getValue() ? 1 : 0);
+        }
+    }
+
+    /**
+     * Reads the world's dynamic state.
+     *
+     * @param world The compiled world
+     * @param reader The reader
+     * @param version The format version of the save
+     * @return The world state
+     * @throws IOException If the state cannot be read
+     */
+    private WorldDynamicState readWorld(CompiledWorld world, BinaryReader reader, int version) throws IOException {
+        WorldDynamicState state = new WorldDynamicState();
+        state.setDelta(version >= 2 && reader.readByte() != 0);
+        
+        Map<String, List<String>> roomItems = new HashMap<>();
+        for (int i = reader.readCount(); i > 0; i--) {
+            String roomId = world.getRoomId(reader.readOrdinal(world.getRoomCount()));
+            roomItems.put(roomId, readItems(world, reader));
+        }
+        state.setRoomItemStates(roomItems);
+        
+        Map<String, Boolean> puzzles = new HashMap<>();
+        for (int i = reader.readCount(); i > 0; i--) {
+            puzzles.put(world.getPuzzleId(reader.readOrdinal(world.getPuzzleCount())), Boolean.TRUE);
+        }
+        state.setPuzzleSolvedStates(puzzles);
+        
+        Map<String, NpcInstance> npcs = new HashMap<>();
+        for (int i = reader.readCount(); i > 0; i--) {
+            String npcId = world.getNpcId(reader.readOrdinal(world.getNpcCount()));
+            String roomId = world.getRoomId(reader.readOrdinal(world.getRoomCount()));
+            String dialogueNodeId = reader.readString();
+            List<String> items = readItems(world, reader);
+            Map<String, String> flags = readStringMap(reader);
+            npcs.put(npcId, new NpcInstance(npcId, roomId, dialogueNodeId, items, flags));
+        }
+        state.setNpcInstanceStates(npcs);
+        
+        Map<String, String> flags = new HashMap<>();
+        for (int i = reader.readCount(); i > 0; i--) {
+            int flag = reader.readOrdinal(world.getFlagCount());
+            String name = flag != CompiledWorld.NONE ? world.getFlagName(flag) : reader.readString();
+            flags.put(name, reader.readString());
+        }
+        state.setGlobalFlagStates(flags);
+        
+        Map<String, Boolean> exits = new HashMap<>();
+        for (int i = reader.readCount(); i > 0; i--) {
+            int exit = reader.readOrdinal(world.getExitCount());
+            if (exit == CompiledWorld.NONE) {
+                throw new IOException("Corrupt save data: missing exit");
+            }
+            exits.put(world.getExitKey(exit), reader.readByte() != 0);
+        }
+        state.setRoomExitLockedStates(exits);
+        
+        return state;
+    }
+
+    /**
+     * Writes a list of item IDs as ordinals, skipping IDs the world does not know.
+     *
+     * @param itemIds The item IDs
+     * @param world The compiled world
+     * @param writer The writer
+     * @throws IOException If the list cannot be written
+     */
+    private void writeItems(List<String> itemIds, CompiledWorld world, BinaryWriter writer) throws IOException {
+        int count = 0;
+        for (String itemId : itemIds) {
+            if (world.getItemOrdinal(itemId) != CompiledWorld.NONE) {
+                count++;
+            }
+        }
+        writer.writeVarInt(count);
+        for (String itemId : itemIds) {
+            int item = world.getItemOrdinal(itemId);
+            if (item != CompiledWorld.NONE) {
+                writer.writeOrdinal(item);
+            }
+        }
+    }
+
+    /**
+     * Reads a list of item ordinals back into item IDs.
+     *
+     * @param world The compiled world
+     * @param reader The reader
+     * @return The item IDs
+     * @throws IOException If the list cannot be read
+     */
+    private List<String> readItems(CompiledWorld world, BinaryReader reader) throws IOException {
+        int count = reader.readCount();
+        List<String> itemIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            itemIds.add(world.getItemId(reader.readOrdinal(world.getItemCount())));
+        }
+        return itemIds;
+    }
+
+    /**
+     * Writes a map of strings to strings.
+     *
+     * @param map The map
+     * @param writer The writer
+     * @throws IOException If the map cannot be written
+     */
+    private void writeStringMap(Map<String, String> map, BinaryWriter writer) throws IOException {
+        writer.writeVarInt(map.size());
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writer.writeString(entry.getKey());
+            writer.writeString(entry.getValue());
+        }
+    }
+
+    /**
+     * Reads a map of strings to strings.
+     *
+     * @param reader The reader
+     * @return The map
+     * @throws IOException If the map cannot be read
+     */
+    private Map<String, String> readStringMap(BinaryReader reader) throws IOException {
+        Map<String, String> map = new HashMap<>();
+        for (int i = reader.readCount(); i > 0; i--) {
+            map.put(reader.readString(), reader.readString());
+        }
+        return map;
+    }
+}
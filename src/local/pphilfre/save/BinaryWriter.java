@@ -0,0 +1,117 @@
+package local.pphilfre.save;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the primitive values of the binary save format.
+ * Integers are written as unsigned LEB128 varints, so small values such as ordinals and
+ * counts take a single byte.
+ */
+class BinaryWriter {
+    private final OutputStream out;
+
+    /**
+     * Creates a writer over a stream. The stream should be buffered.
+     *
+     * @param out The stream to write to
+     */
+    BinaryWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes a single byte.
+     *
+     * @param value The byte to write, only the low 8 bits are used
+     * @throws IOException If the stream cannot be written
+     */
+    void writeByte(int value) throws IOException {
+        out.write(value);
+    }
+
+    /**
+     * Writes raw bytes.
+     *
+     * @param bytes The bytes to write
+     * @throws IOException If the stream cannot be written
+     */
+    void writeBytes(byte[] bytes) throws IOException {
+        out.write(bytes);
+    }
+
+    /**
+     * Writes a non-negative int as a varint.
+     *
+     * @param value The value to write
+     * @throws IOException If the stream cannot be written
+     */
+    void writeVarInt(int value) throws IOException {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Writes a non-negative long as a varint.
+     *
+     * @param value The value to write
+     * @throws IOException If the stream cannot be written
+     */
+    void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * Writes an int as four big-endian bytes.
+     *
+     * @param value The value to write
+     * @throws IOException If the stream cannot be written
+     */
+    void writeFixedInt(int value) throws IOException {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            out.write(value >>> shift);
+        }
+    }
+
+    /**
+     * Writes a long as eight big-endian bytes.
+     *
+     * @param value The value to write
+     * @throws IOException If the stream cannot be written
+     */
+    void writeFixedLong(long value) throws IOException {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    /**
+     * Writes an ordinal, which may be NONE (-1), as a varint of ordinal + 1.
+     *
+     * @param ordinal The ordinal to write
+     * @throws IOException If the stream cannot be written
+     */
+    void writeOrdinal(int ordinal) throws IOException {
+        writeVarInt(ordinal + 1);
+    }
+
+    /**
+     * Writes a string, which may be null, as its UTF-8 length + 1 followed by the bytes.
+     *
+     * @param value The string to write
+     * @throws IOException If the stream cannot be written
+     */
+    void writeString(String value) throws IOException {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,277 @@
+package local.pphilfre.save;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps each save in its own file in a directory, named after its key.
+ * This is the original layout, e.g. {@code saves/default.sav}. A qualified key such as
+ * {@code "alice/default.sav"} is kept in a subdirectory, and listed by the same qualified key.
+ * <p>
+ * Save headers are cached along with each file's size and modification time, so listing the
+ * directory again only reads the headers of files that were added or changed since. Listing a
+ * prefix such as {@code "alice/"} only visits that subdirectory, and listings never hold the lock
+ * that writes take, so one player's listing does not hold up anyone else's save.
+ */
+public class FileSaveStore implements SaveStore {
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int HEADER_BUFFER_SIZE = 256; // enough for a binary save's whole header
+
+    private final Path directory;
+    private final Map<String, IndexEntry> index = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a store over a directory. The directory is created when the first save is written.
+     *
+     * @param directory The directory holding the saves
+     */
+    public FileSaveStore(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public byte[] read(String key) throws IOException {
+        Path file = fileFor(key);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        return Files.readAllBytes(file);
+    }
+
+    @Override
+    public synchronized void write(String key, byte[] data) throws IOException {
+        Path file = fileFor(key);
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        
+        // Write beside the old save, force it to disk and only then rename it over the old one,
+        // so neither a crash nor a power loss can leave an empty or partial save behind
+        Path temporary = file.resolveSibling(file.getFileName() + TEMPORARY_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        
+        // The header is already in memory, so the next listing need not read the file back
+        SaveHeader header;
+        try {
+            header = SaveCodecs.readHeader(key, data);
+        } catch (IOException e) {
+            header = null;
+        }
+        index.put(key, new IndexEntry(Files.readAttributes(file, BasicFileAttributes.class), header));
+    }
+
+    @Override
+    public synchronized boolean delete(String key) throws IOException {
+        Path file = fileFor(key);
+        index.remove(key);
+        return Files.deleteIfExists(file);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        try {
+            return Files.isRegularFile(fileFor(key));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public List<String> keys() throws IOException {
+        return keys("");
+    }
+
+    @Override
+    public List<String> keys(String prefix) throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, Path> file : listFiles(prefix).entrySet()) {
+            if (!file.getKey().endsWith(TEMPORARY_SUFFIX)) {
+                keys.add(file.getKey());
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public SaveHeader readHeader(String key) throws IOException {
+        Path file = fileFor(key);
+        if (SaveCodecs.forKey(key) == null || !Files.isRegularFile(file)) {
+            index.remove(key);
+            return null;
+        }
+        return header(key, file, Files.readAttributes(file, BasicFileAttributes.class));
+    }
+
+    @Override
+    public Map<String, SaveHeader> listSaves() throws IOException {
+        return listSaves("");
+    }
+
+    @Override
+    public Map<String, SaveHeader> listSaves(String prefix) throws IOException {
+        Map<String, SaveHeader> saves = new TreeMap<>();
+        Set<String> present = new HashSet<>();
+        for (Map.Entry<String, Path> file : listFiles(prefix).entrySet()) {
+            String key = file.getKey();
+            if (SaveCodecs.forKey(key) == null) {
+                continue;
+            }
+            
+            present.add(key);
+            SaveHeader header = header(key, file.getValue(),
+                                       Files.readAttributes(file.getValue(), BasicFileAttributes.class));
+            if (header != null) {
+                saves.put(key, header);
+            }
+        }
+        index.keySet().removeIf(key -> key.startsWith(prefix) && !present.contains(key));
+        return saves;
+    }
+
+    @Override
+    public String describe(String key) {
+        return directory.resolve(key).toString();
+    }
+
+    @Override
+    public void close() {
+        // Nothing is held open
+    }
+
+    /**
+     * Gets the file a key is kept in. Keys come from the names players type, so a key that
+     * would reach outside the directory, such as "../../escaped.sav", is refused.
+     *
+     * @param key The save key
+     * @return The save file
+     * @throws IOException If the key does not name a file inside the directory
+     */
+    private Path fileFor(String key) throws IOException {
+        Path root = directory.toAbsolutePath().normalize();
+        Path file = root.resolve(key).normalize();
+        if (!file.startsWith(root) || file.equals(root)) {
+            throw new IOException("Invalid save name: " + key);
+        }
+        return file;
+    }
+
+    /**
+     * Lists the files whose keys start with a prefix, looking only in the subdirectory the prefix
+     * names and below it.
+     *
+     * @param prefix The prefix, or "" for every file
+     * @return The files by key, sorted by key
+     * @throws IOException If the directory cannot be listed
+     */
+    private Map<String, Path> listFiles(String prefix) throws IOException {
+        Map<String, Path> files = new TreeMap<>();
+        Path root = directory.toAbsolutePath().normalize();
+        int slash = prefix.lastIndexOf('/');
+        Path start = slash < 0 ? root : fileFor(prefix.substring(0, slash));
+        if (!Files.isDirectory(start, LinkOption.NOFOLLOW_LINKS)) {
+            return files;
+        }
+        
+        List<Path> directories = new ArrayList<>();
+        directories.add(start);
+        for (int i = 0; i < directories.size(); i++) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directories.get(i))) {
+                for (Path file : entries) {
+                    if (Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+                        directories.add(file);
+                    } else if (Files.isRegularFile(file)) {
+                        String key = root.relativize(file).toString().replace(File.separatorChar, '/');
+                        if (key.startsWith(prefix)) {
+                            files.put(key, file);
+                        }
+                    }
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Gets a save's header from the index, reading it from the file if the file has changed.
+     * This runs without the store's lock. The attributes are read before the header, so if a write
+     * lands in between, the entry's attributes are older than its header and the next listing
+     * simply reads the file again.
+     *
+     * @param key The save key
+     * @param file The save file
+     * @param attributes The file's current attributes
+     * @return The header, or null if it cannot be read
+     */
+    private SaveHeader header(String key, Path file, BasicFileAttributes attributes) {
+        IndexEntry entry = index.get(key);
+        if (entry == null || !entry.matches(attributes)) {
+            entry = new IndexEntry(attributes, readFileHeader(key, file));
+            index.put(key, entry);
+        }
+        return entry.header;
+    }
+
+    /**
+     * Reads the header from the start of a save file.
+     *
+     * @param key The save key
+     * @param file The save file
+     * @return The header, or null if it cannot be read
+     */
+    private static SaveHeader readFileHeader(String key, Path file) {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), HEADER_BUFFER_SIZE)) {
+            return SaveCodecs.forKey(key).readHeader(in);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A cached save header and the state of the file it was read from.
+     */
+    private static class IndexEntry {
+        private final long size;
+        private final long modified;
+        private final SaveHeader header;
+        
+        IndexEntry(BasicFileAttributes attributes, SaveHeader header) {
+            this.size = attributes.size();
+            this.modified = attributes.lastModifiedTime().toMillis();
+            this.header = header;
+        }
+        
+        /**
+         * Checks whether the file still looks the way it did when the header was read.
+         *
+         * @param attributes The file's current attributes
+         * @return true if the size and modification time are unchanged
+         */
+        boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size() && modified == attributes.lastModifiedTime().toMillis();
+        }
+    }
+}
@@ -0,0 +1,581 @@
+package local.pphilfre.save;
+
+import local.pphilfre.ItemLocation;
+import local.pphilfre.Player;
+import local.pphilfre.StateChangeListener;
+import local.pphilfre.World;
+import local.pphilfre.datamodel.CompiledWorld;
+import local.pphilfre.datamodel.GameState;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of every change made to one session's state, compacted by periodic snapshots.
+ * <p>
+ * The journal listens to the session's {@link World}. Each change is encoded as a small record,
+ * an opcode followed by ordinals and strings, into a buffer. {@link #commit()} writes everything
+ * buffered since the last commit as one checksummed frame and waits until it is on disk, so progress
+ * is durable after every command without rewriting a save file. Once the journal has grown past a
+ * threshold, {@link #snapshot(GameState)} writes the whole state to a snapshot file and starts the
+ * journal again empty.
+ * <p>
+ * After a crash the session is recovered from the latest snapshot plus the frames written after it.
+ * A frame that was only partly written fails its checksum and is dropped, along with anything after it.
+ * <p>
+ * Files:
+ * <pre>
+ * name.snapshot  the last snapshot, in the binary save format
+ * name.journal   magic "TAJL", varint format version, fixed64 world fingerprint,
+ *                fixed64 timestamp of the snapshot it follows (0 for the initial state),
+ *                then frames of varint payload length, payload, fixed32 CRC-32 of the payload
+ * </pre>
+ */
+public class Journal implements StateChangeListener, Closeable {
+    private static final byte[] MAGIC = { 'T', 'A', 'J', 'L' };
+    private static final int FORMAT_VERSION = 1;
+    private static final long SNAPSHOT_THRESHOLD = 64 * 1024; // journal bytes before it is compacted
+
+    // Record opcodes
+    private static final int ITEM_TO_ROOM = 1;
+    private static final int ITEM_TO_PLAYER = 2;
+    private static final int ITEM_REMOVED = 3;
+    private static final int PUZZLE_SOLVED = 4;
+    private static final int GLOBAL_FLAG = 5;
+    private static final int EXIT_LOCK = 6;
+    private static final int NPC_MOVED = 7;
+    private static final int NPC_DIALOGUE = 8;
+    private static final int NPC_FLAG = 9;
+    private static final int PLAYER_MOVED = 10;
+    private static final int PLAYER_FLAG = 11;
+
+    private final Path journalPath;
+    private final Path snapshotPath;
+    private final CompiledWorld world;
+    private final JournalWriter writer;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final BinaryWriter records = new BinaryWriter(pending);
+    private FileChannel channel;
+    private GameState snapshot;          // snapshot found when the journal was opened, null if there was none
+    private List<byte[]> recoveredFrames; // frames found when the journal was opened, until they are replayed
+    private long baseTimestamp;          // timestamp of the snapshot the journal follows, 0 for the initial state
+    private long journalSize;            // bytes of valid journal data on disk
+
+    /**
+     * Opens a journal, reading back any snapshot and committed frames left by an earlier run.
+     *
+     * @param directory The directory holding the journal files
+     * @param name The name of the journal, used for its file names
+     * @param world The compiled world the session plays
+     * @param writer The writer that appends frames to disk
+     * @return The journal
+     * @throws IOException If the files cannot be read or were made for a different world
+     */
+    public static Journal open(Path directory, String name, CompiledWorld world, JournalWriter writer) throws IOException {
+        Files.createDirectories(directory);
+        Journal journal = new Journal(directory.resolve(name + ".journal"), directory.resolve(name + ".snapshot"), world, writer);
+        try {
+            journal.recover();
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    /**
+     * Creates a journal over a pair of files. {@link #open} reads them back.
+     *
+     * @param journalPath The journal file
+     * @param snapshotPath The snapshot file
+     * @param world The compiled world the session plays
+     * @param writer The writer that appends frames to disk
+     */
+    private Journal(Path journalPath, Path snapshotPath, CompiledWorld world, JournalWriter writer) {
+        this.journalPath = journalPath;
+        this.snapshotPath = snapshotPath;
+        this.world = world;
+        this.writer = writer;
+    }
+
+    /**
+     * Gets the snapshot left by an earlier run.
+     *
+     * @return The snapshot to restore before replaying, or null if the session starts from the initial state
+     */
+    public GameState getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Replays the frames left by an earlier run onto a session that has been restored from
+     * {@link #getSnapshot()}, or that is in its initial state if there is no snapshot.
+     * The journal must not be listening to the world yet.
+     *
+     * @param world The session's world
+     * @param player The session's player
+     * @return The number of commits replayed
+     * @throws IOException If a frame cannot be decoded
+     */
+    public int replay(World world, Player player) throws IOException {
+        int count = recoveredFrames.size();
+        for (byte[] frame : recoveredFrames) {
+            apply(frame, world, player);
+        }
+        recoveredFrames = List.of();
+        return count;
+    }
+
+    /**
+     * Writes every change recorded since the last commit to the journal as one frame,
+     * and waits until it is on disk.
+     *
+     * @throws IOException If the frame cannot be written
+     */
+    public void commit() throws IOException {
+        if (pending.size() == 0) {
+            return;
+        }
+        
+        byte[] payload = pending.toByteArray();
+        pending.reset();
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(payload.length + 9);
+        BinaryWriter frameWriter = new BinaryWriter(frame);
+        frameWriter.writeVarInt(payload.length);
+        frameWriter.writeBytes(payload);
+        frameWriter.writeFixedInt(checksum(payload));
+        
+        try {
+            writer.append(channel, ByteBuffer.wrap(frame.toByteArray())).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        journalSize += frame.size();
+    }
+
+    /**
+     * Checks whether the journal has grown enough that it should be compacted into a snapshot.
+     *
+     * @return true if {@link #snapshot(GameState)} should be called
+     */
+    public boolean needsSnapshot() {
+        return journalSize > SNAPSHOT_THRESHOLD;
+    }
+
+    /**
+     * Writes the session's whole state as the new snapshot and empties the journal.
+     * Changes recorded but not yet committed are part of the state, so they are dropped.
+     *
+     * @param state The session's current state
+     * @throws IOException If the snapshot cannot be written
+     */
+    public void snapshot(GameState state) throws IOException {
+        pending.reset();
+        
+        // The journal names its snapshot by timestamp, so every snapshot needs a new one
+        long timestamp = Math.max(state.getSaveTimestamp(), baseTimestamp + 1);
+        state.setSaveTimestamp(timestamp);
+        
+        // Write the snapshot next to the old one and swap it in, so a crash leaves one or the other
+        Path temporary = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (FileChannel snapshotChannel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(snapshotChannel));
+            SaveCodecs.BINARY.write(state, world, out);
+            out.flush();
+            snapshotChannel.force(true);
+        }
+        Files.move(temporary, snapshotPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        
+        // If we crash before the journal is reset, its old base timestamp marks it as stale
+        baseTimestamp = timestamp;
+        resetJournal();
+    }
+
+    /**
+     * Closes the journal and deletes its files, e.g. once the game has ended.
+     *
+     * @throws IOException If the files cannot be deleted
+     */
+    public void discard() throws IOException {
+        pending.reset();
+        close();
+        Files.deleteIfExists(journalPath);
+        Files.deleteIfExists(snapshotPath);
+    }
+
+    /**
+     * Closes the journal file. Changes that were not committed are lost.
+     */
+    @Override
+    public void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to do with it
+            }
+            channel = null;
+        }
+    }
+
+    @Override
+    public void itemMovedToRoom(int item, int room) {
+        try {
+            records.writeByte(ITEM_TO_ROOM);
+            records.writeOrdinal(item);
+            records.writeOrdinal(room);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void itemMovedToPlayer(int item) {
+        try {
+            records.writeByte(ITEM_TO_PLAYER);
+            records.writeOrdinal(item);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void itemRemoved(int item) {
+        try {
+            records.writeByte(ITEM_REMOVED);
+            records.writeOrdinal(item);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void puzzleSolvedChanged(int puzzle, boolean solved) {
+        try {
+            records.writeByte(PUZZLE_SOLVED);
+            records.writeOrdinal(puzzle);
+            records.writeByte(solved ? 1 : 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void globalFlagChanged(String flagName, String value) {
+        try {
+            records.writeByte(GLOBAL_FLAG);
+            int flag = world.getFlagOrdinal(flagName);
+            records.writeOrdinal(flag);
+            if (flag == CompiledWorld.NONE) {
+                records.writeString(flagName);
+            }
+            records.writeString(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void exitLockChanged(int exit, boolean locked) {
+        try {
+            records.writeByte(EXIT_LOCK);
+            records.writeOrdinal(exit);
+            records.writeByte(locked ? 1 : 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void npcMoved(int npc, String roomId) {
+        try {
+            records.writeByte(NPC_MOVED);
+            records.writeOrdinal(npc);
+            records.writeString(roomId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void npcDialogueChanged(int npc, String nodeId) {
+        try {
+            records.writeByte(NPC_DIALOGUE);
+            records.writeOrdinal(npc);
+            records.writeString(nodeId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void npcFlagChanged(int npc, String flagName, String value) {
+        try {
+            records.writeByte(NPC_FLAG);
+            records.writeOrdinal(npc);
+            records.writeString(flagName);
+            records.writeString(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void playerMoved(int room) {
+        try {
+            records.writeByte(PLAYER_MOVED);
+            records.writeOrdinal(room);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void playerFlagChanged(String flagName, String value) {
+        try {
+            records.writeByte(PLAYER_FLAG);
+            records.writeString(flagName);
+            records.writeString(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads back the snapshot and the committed frames of an earlier run, and leaves the
+     * journal file ready for appending after the last good frame.
+     *
+     * @throws IOException If the files cannot be read or were made for a different world
+     */
+    private void recover() throws IOException {
+        channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        
+        // A second game on the same files would interleave its frames with ours
+        try {
+            if (channel.tryLock() == null) {
+                throw new IOException(journalPath + " is in use by another game");
+            }
+        } catch (OverlappingFileLockException e) {
+            throw new IOException(journalPath + " is in use by another game");
+        }
+        
+        if (Files.exists(snapshotPath)) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(snapshotPath))) {
+                snapshot = SaveCodecs.BINARY.read(in, world);
+            }
+            baseTimestamp = snapshot.getSaveTimestamp();
+        }
+        
+        recoveredFrames = readFrames();
+        if (recoveredFrames == null) {
+            recoveredFrames = List.of();
+            resetJournal();
+        } else {
+            // Cut off a frame that was only partly written when the last run stopped
+            channel.truncate(journalSize);
+            channel.position(journalSize);
+        }
+    }
+
+    /**
+     * Reads the committed frames from the journal file, stopping at the first incomplete or corrupt one.
+     * Sets {@link #journalSize} to the end of the last good frame.
+     *
+     * @return The frame payloads, or null if the file holds no usable journal for the current snapshot
+     * @throws IOException If the file cannot be read or was made for a different world
+     */
+    private List<byte[]> readFrames() throws IOException {
+        byte[] bytes = new byte[Math.toIntExact(channel.size())];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        BinaryReader reader = new BinaryReader(in);
+        long fingerprint;
+        long base;
+        try {
+            byte[] magic = reader.readBytes(MAGIC.length);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) {
+                    throw new IOException("Not a journal file: " + journalPath);
+                }
+            }
+            int version = reader.readVarInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported journal format version " + version);
+            }
+            fingerprint = reader.readFixedLong();
+            base = reader.readFixedLong();
+        } catch (EOFException e) {
+            return null; // Empty, or the header was being written when the last run stopped
+        }
+        
+        if (fingerprint != world.getFingerprint()) {
+            throw new IOException("Journal was made for a different world definition");
+        }
+        if (base != baseTimestamp) {
+            return null; // Written before the current snapshot, which already includes it
+        }
+        
+        List<byte[]> frames = new ArrayList<>();
+        journalSize = bytes.length - in.available();
+        while (in.available() > 0) {
+            try {
+                byte[] payload = reader.readBytes(reader.readCount());
+                if (reader.readFixedInt() != checksum(payload)) {
+                    break;
+                }
+                frames.add(payload);
+            } catch (IOException e) {
+                break;
+            }
+            journalSize = bytes.length - in.available();
+        }
+        return frames;
+    }
+
+    /**
+     * Empties the journal file and writes a header for the current snapshot.
+     *
+     * @throws IOException If the file cannot be written
+     */
+    private void resetJournal() throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        BinaryWriter headerWriter = new BinaryWriter(header);
+        headerWriter.writeBytes(MAGIC);
+        headerWriter.writeVarInt(FORMAT_VERSION);
+        headerWriter.writeFixedLong(world.getFingerprint());
+        headerWriter.writeFixedLong(baseTimestamp);
+        
+        channel.truncate(0);
+        ByteBuffer buffer = ByteBuffer.wrap(header.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+        channel.position(header.size());
+        channel.force(true);
+        journalSize = header.size();
+    }
+
+    /**
+     * Applies the records of one frame to a session.
+     *
+     * @param payload The frame payload
+     * @param world The session's world
+     * @param player The session's player
+     * @throws IOException If a record cannot be decoded
+     */
+    private void apply(byte[] payload, World world, Player player) throws IOException {
+        CompiledWorld compiled = this.world;
+        ByteArrayInputStream in = new ByteArrayInputStream(payload);
+        BinaryReader reader = new BinaryReader(in);
+        
+        while (in.available() > 0) {
+            int opcode = reader.readByte();
+            switch (opcode) {
+                case ITEM_TO_ROOM: {
+                    int item = reader.readOrdinal(compiled.getItemCount());
+                    world.addItemToRoom(reader.readOrdinal(compiled.getRoomCount()), item);
+                    break;
+                }
+                case ITEM_TO_PLAYER:
+                    world.addItemToPlayer(reader.readOrdinal(compiled.getItemCount()));
+                    break;
+                case ITEM_REMOVED: {
+                    int item = reader.readOrdinal(compiled.getItemCount());
+                    if (item == CompiledWorld.NONE) {
+                        break;
+                    }
+                    if (world.getItemHolderKind(item) == ItemLocation.Kind.ROOM) {
+                        world.removeItemFromRoom(world.getItemHolder(item), item);
+                    } else if (world.getItemHolderKind(item) == ItemLocation.Kind.PLAYER) {
+                        world.removeItemFromPlayer(item);
+                    }
+                    break;
+                }
+                case PUZZLE_SOLVED: {
+                    int puzzle = reader.readOrdinal(compiled.getPuzzleCount());
+                    world.setPuzzleSolved(puzzle, reader.readByte() != 0);
+                    break;
+                }
+                case GLOBAL_FLAG: {
+                    int flag = reader.readOrdinal(compiled.getFlagCount());
+                    String flagName = flag != CompiledWorld.NONE ? compiled.getFlagName(flag) : reader.readString();
+                    world.setGlobalFlag(flagName, reader.readString());
+                    break;
+                }
+                case EXIT_LOCK: {
+                    int exit = reader.readOrdinal(compiled.getExitCount());
+                    world.setExitLockedState(exit, reader.readByte() != 0);
+                    break;
+                }
+                case NPC_MOVED: {
+                    int npc = reader.readOrdinal(compiled.getNpcCount());
+                    world.moveNpc(compiled.getNpcId(npc), reader.readString());
+                    break;
+                }
+                case NPC_DIALOGUE: {
+                    int npc = reader.readOrdinal(compiled.getNpcCount());
+                    world.setNpcDialogueNode(npc, reader.readString());
+                    break;
+                }
+                case NPC_FLAG: {
+                    int npc = reader.readOrdinal(compiled.getNpcCount());
+                    String flagName = reader.readString();
+                    world.setNpcFlag(npc, flagName, reader.readString());
+                    break;
+                }
+                case PLAYER_MOVED:
+                    player.setCurrentRoom(reader.readOrdinal(compiled.getRoomCount()));
+                    break;
+                case PLAYER_FLAG: {
+                    String flagName = reader.readString();
+                    player.setPlayerFlag(flagName, reader.readString());
+                    break;
+                }
+                default:
+                    throw new IOException("Corrupt journal: unknown record type " + opcode);
+            }
+        }
+    }
+
+    /**
+     * Computes the checksum stored after each frame.
+     *
+     * @param payload The frame payload
+     * @return The CRC-32 of the payload
+     */
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
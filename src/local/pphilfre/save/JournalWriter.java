@@ -0,0 +1,150 @@
+package local.pphilfre.save;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Appends journal frames to disk on a single background thread with group commit.
+ * <p>
+ * Sessions hand their frames over and wait for them to become durable. The writer takes
+ * everything that has queued up since its last batch, writes it, and then forces each file it
+ * touched once, so many commits arriving together share one fsync instead of paying for one each.
+ * One writer can be shared by every journal in the process.
+ */
+public class JournalWriter implements Closeable {
+    // Queued by close() to stop the writer thread once earlier appends are done
+    private static final Append STOP = new Append(null, null);
+
+    private final BlockingQueue<Append> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private boolean closed; // guarded by this
+
+    /**
+     * Creates a writer and starts its background thread.
+     */
+    public JournalWriter() {
+        this.thread = Thread.ofPlatform()
+                            .name("journal-writer")
+                            .daemon(true)
+                            .start(this::run);
+    }
+
+    /**
+     * Queues a frame to be appended to a journal file.
+     *
+     * @param channel The journal file, positioned at its end
+     * @param frame The bytes to append
+     * @return A future completed once the frame is on disk, or failed if the writer is closed
+     */
+    synchronized CompletableFuture<Void> append(FileChannel channel, ByteBuffer frame) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IOException("The journal writer is closed"));
+        }
+        Append append = new Append(channel, frame);
+        queue.add(append);
+        return append.done;
+    }
+
+    /**
+     * Stops the writer thread after the frames already queued have been written.
+     * Frames appended afterwards fail at once.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (!closed) {
+                closed = true;
+                queue.add(STOP);
+            }
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes batches of queued frames until the writer is closed.
+     */
+    private void run() {
+        List<Append> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            
+            boolean stop = batch.remove(STOP);
+            writeBatch(batch);
+            batch.clear();
+            if (stop) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of frames and forces every file they went to once.
+     *
+     * @param batch The frames to write
+     */
+    private void writeBatch(List<Append> batch) {
+        Set<FileChannel> written = new LinkedHashSet<>();
+        for (Append append : batch) {
+            try {
+                while (append.frame.hasRemaining()) {
+                    append.channel.write(append.frame);
+                }
+                written.add(append.channel);
+            } catch (IOException e) {
+                append.done.completeExceptionally(e);
+            }
+        }
+        
+        Map<FileChannel, IOException> failures = new HashMap<>();
+        for (FileChannel channel : written) {
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                failures.put(channel, e);
+            }
+        }
+        
+        for (Append append : batch) {
+            IOException failure = failures.get(append.channel);
+            if (failure != null) {
+                append.done.completeExceptionally(failure);
+            } else {
+                append.done.complete(null);
+            }
+        }
+    }
+
+    /**
+     * A frame waiting to be appended.
+     */
+    private static class Append {
+        private final FileChannel channel;
+        private final ByteBuffer frame;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        
+        Append(FileChannel channel, ByteBuffer frame) {
+            this.channel = channel;
+            this.frame = frame;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package local.pphilfre.save;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import local.pphilfre.datamodel.CompiledWorld;
+import local.pphilfre.datamodel.GameState;
+import local.pphilfre.utils.JsonUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The original JSON save format. Saves are keyed by string IDs, so they are larger and slower
+ * than binary saves, but they can be read and edited by hand.
+ */
+public class JsonSaveCodec implements SaveCodec {
+
+    @Override
+    public String getName() {
+        return "json";
+    }
+
+    @Override
+    public String getFileExtension() {
+        return ".json";
+    }
+
+    @Override
+    public void write(GameState state, CompiledWorld world, OutputStream out) throws IOException {
+        JsonUtil.writeObject(state, out);
+    }
+
+    @Override
+    public GameState read(InputStream in, CompiledWorld world) throws IOException {
+        return JsonUtil.readObject(in, GameState.class);
+    }
+
+    @Override
+    public SaveHeader readHeader(InputStream in) throws IOException {
+        String gameVersion = null;
+        long saveTimestamp = 0;
+        String currentRoomId = null;
+        long playTimeMillis = 0;
+        int commandCount = 0;
+        
+        // The header fields come first in saves written by this version, so reading stops at the
+        // world state; older saves may have them in any order, and large objects are skipped unread
+        try (JsonParser parser = JsonUtil.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Not a JSON save file");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "gameVersion":
+                        gameVersion = parser.getValueAsString();
+                        break;
+                    case "saveTimestamp":
+                        saveTimestamp = parser.getValueAsLong();
+                        break;
+                    case "playTimeMillis":
+                        playTimeMillis = parser.getValueAsLong();
+                        break;
+                    case "commandCount":
+                        commandCount = parser.getValueAsInt();
+                        break;
+                    case "playerState":
+                        currentRoomId = readCurrentRoomId(parser);
+                        break;
+                    case "worldDynamicState":
+                        if (gameVersion != null && saveTimestamp != 0) {
+                            return new SaveHeader(gameVersion, saveTimestamp, currentRoomId, playTimeMillis, commandCount);
+                        }
+                        parser.skipChildren();
+                        break;
+                    default:
+                        if (value.isStructStart()) {
+                            parser.skipChildren();
+                        }
+                        break;
+                }
+            }
+        }
+        return new SaveHeader(gameVersion, saveTimestamp, currentRoomId, playTimeMillis, commandCount);
+    }
+
+    /**
+     * Reads the player's room from the player state object the parser is positioned at,
+     * skipping everything else in it.
+     *
+     * @param parser The parser, positioned at the start of the player state
+     * @return The room ID, or null if there is none
+     * @throws IOException If the JSON cannot be read
+     */
+    private String readCurrentRoomId(JsonParser parser) throws IOException {
+        String roomId = null;
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals("currentRoomId")) {
+                roomId = parser.getValueAsString();
+            } else if (value.isStructStart()) {
+                parser.skipChildren();
+            }
+        }
+        return roomId;
+    }
+}
@@ -0,0 +1,676 @@
+package local.pphilfre.save;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps every save in one memory-mapped file of fixed-size pages, so saving creates no files
+ * and makes no system calls beyond flushing the pages it touched.
+ * <p>
+ * Page 0 holds the file header. Each save occupies a run of consecutive pages; the first byte of
+ * every page says whether it is free, the head of a save or a continuation, and the rest of the run
+ * holds the save's header (page count, sequence number, checksum, key length, data length),
+ * its key and its data. The index from key to page run and save header, and the list of free runs,
+ * live in memory and are rebuilt by scanning the pages when the store is opened.
+ * <p>
+ * A save is written into free pages and published by marking its head page last, so a crash
+ * part-way through leaves the previous save in place. When both the old and new copy of a save
+ * survive a crash, the one with the higher sequence number wins. Freed runs are reused by later
+ * saves, and once more than half the pages are free the store compacts itself by moving saves
+ * from the end of the file into earlier gaps and shrinking the file.
+ * <p>
+ * The file is mapped as a single buffer, so it holds at most 2 GiB of pages.
+ */
+public class MappedSaveStore implements SaveStore {
+    /** Page size used when none is given; a typical binary save fits in one page. */
+    public static final int DEFAULT_PAGE_SIZE = 1024;
+
+    private static final byte[] MAGIC = { 'T', 'A', 'S', 'S' };
+    private static final int FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 12;      // magic, version, page size
+    private static final int RECORD_HEADER_SIZE = 22;    // pages, sequence, checksum, key length, data length
+    private static final int MIN_PAGE_SIZE = 64;
+    private static final int MIN_CAPACITY = 64;          // pages mapped when the store is created
+    private static final int COMPACT_MIN_PAGES = 256;    // stores smaller than this are never compacted
+
+    // Page states, stored in the first byte of every page
+    private static final byte FREE = 0;
+    private static final byte HEAD = 1;
+    private static final byte CONTINUATION = 2;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int pageSize;
+
+    // Guarded by this
+    private MappedByteBuffer buffer;
+    private int capacity;                                      // pages currently mapped
+    private int pageCount;                                     // pages up to the end of the last save
+    private final TreeMap<String, Slot> index = new TreeMap<>();
+    private final TreeMap<Integer, Integer> freeRuns = new TreeMap<>(); // first page -> length, below pageCount
+    private int freePages;                                     // total length of the free runs
+    private long nextSequence = 1;
+    private boolean closed;
+
+    /**
+     * Opens a store with the default page size, creating the file if it does not exist.
+     *
+     * @param file The store file
+     * @throws IOException If the file cannot be opened or is not a save store
+     */
+    public MappedSaveStore(Path file) throws IOException {
+        this(file, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Opens a store, creating the file if it does not exist.
+     * An existing store keeps the page size it was created with.
+     *
+     * @param file The store file
+     * @param pageSize The page size for a new store, in bytes
+     * @throws IOException If the file cannot be opened or is not a save store
+     */
+    public MappedSaveStore(Path file, int pageSize) throws IOException {
+        if (pageSize < MIN_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page size must be at least " + MIN_PAGE_SIZE + ": " + pageSize);
+        }
+        
+        this.file = file;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            this.pageSize = size == 0 ? pageSize : readPageSize(size);
+            if (size == 0) {
+                map(MIN_CAPACITY);
+                buffer.put(0, MAGIC);
+                buffer.putInt(MAGIC.length, FORMAT_VERSION);
+                buffer.putInt(MAGIC.length + 4, pageSize);
+                buffer.force(0, FILE_HEADER_SIZE);
+                pageCount = 1;
+            } else {
+                map((int) (size / this.pageSize));
+                scan();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized byte[] read(String key) throws IOException {
+        ensureOpen();
+        Slot slot = index.get(key);
+        if (slot == null) {
+            return null;
+        }
+        
+        ByteBuffer header = ByteBuffer.wrap(get(slot.page, 0, RECORD_HEADER_SIZE));
+        int checksum = header.getInt(12);
+        int keyLength = header.getShort(16) & 0xFFFF;
+        int dataLength = header.getInt(18);
+        byte[] data = get(slot.page, RECORD_HEADER_SIZE + keyLength, dataLength);
+        
+        CRC32 crc = new CRC32();
+        crc.update(get(slot.page, RECORD_HEADER_SIZE, keyLength));
+        crc.update(data);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Save " + key + " is corrupt");
+        }
+        return data;
+    }
+
+    @Override
+    public synchronized void write(String key, byte[] data) throws IOException {
+        ensureOpen();
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xFFFF) {
+            throw new IOException("Save key is too long");
+        }
+        
+        int pages = pagesFor(RECORD_HEADER_SIZE + keyBytes.length + (long) data.length);
+        int page = allocate(pages);
+        long sequence = nextSequence++;
+        
+        CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        crc.update(data);
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        header.putInt(pages).putLong(sequence).putInt((int) crc.getValue())
+              .putShort((short) keyBytes.length).putInt(data.length);
+        
+        // Fill the pages while the head page still reads as free, then publish the save
+        buffer.put(offset(page), FREE);
+        int position = put(page, 0, header.array());
+        position = put(page, position, keyBytes);
+        put(page, position, data);
+        for (int p = page + 1; p < page + pages; p++) {
+            buffer.put(offset(p), CONTINUATION);
+        }
+        buffer.force(offset(page), pages * pageSize);
+        buffer.put(offset(page), HEAD);
+        buffer.force(offset(page), 1);
+        
+        Slot previous = index.put(key, new Slot(key, page, pages, sequence, headerOf(key, data)));
+        if (previous != null) {
+            release(previous);
+        }
+        compactIfSparse();
+    }
+
+    @Override
+    public synchronized boolean delete(String key) throws IOException {
+        ensureOpen();
+        Slot slot = index.remove(key);
+        if (slot == null) {
+            return false;
+        }
+        
+        release(slot);
+        compactIfSparse();
+        return true;
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    @Override
+    public List<String> keys() {
+        return keys("");
+    }
+
+    @Override
+    public synchronized List<String> keys(String prefix) {
+        return new ArrayList<>(slotsUnder(prefix).keySet());
+    }
+
+    @Override
+    public synchronized SaveHeader readHeader(String key) {
+        Slot slot = index.get(key);
+        return slot != null ? slot.header : null;
+    }
+
+    @Override
+    public Map<String, SaveHeader> listSaves() {
+        return listSaves("");
+    }
+
+    @Override
+    public synchronized Map<String, SaveHeader> listSaves(String prefix) {
+        Map<String, SaveHeader> saves = new TreeMap<>();
+        for (Slot slot : slotsUnder(prefix).values()) {
+            if (slot.header != null) {
+                saves.put(slot.key, slot.header);
+            }
+        }
+        return saves;
+    }
+
+    @Override
+    public String describe(String key) {
+        return key + " in " + file;
+    }
+
+    /**
+     * Gets the slots whose keys start with a prefix, as a view of the sorted index.
+     *
+     * @param prefix The prefix, or "" for every slot
+     * @return The slots by key
+     */
+    private Map<String, Slot> slotsUnder(String prefix) {
+        return prefix.isEmpty() ? index : index.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    /**
+     * Gets the number of pages the saves and the gaps between them take up, including the header page.
+     *
+     * @return The number of pages in use
+     */
+    public synchronized int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Gets the number of free pages between saves, waiting to be reused.
+     *
+     * @return The number of free pages
+     */
+    public synchronized int getFreePageCount() {
+        return freePages;
+    }
+
+    /**
+     * Moves saves from the end of the file into earlier gaps and shrinks the file.
+     * A save is only moved into a gap that it fits into completely, so every move
+     * is as crash-safe as an ordinary save.
+     *
+     * @throws IOException If a save cannot be moved
+     */
+    public synchronized void compact() throws IOException {
+        ensureOpen();
+        List<Slot> slots = new ArrayList<>(index.values());
+        slots.sort((a, b) -> Integer.compare(b.page, a.page));
+        
+        for (Slot slot : slots) {
+            int target = 0; // the header page, never free, so 0 means no gap fits
+            for (Map.Entry<Integer, Integer> run : freeRuns.entrySet()) {
+                if (run.getKey() > slot.page) {
+                    break;
+                }
+                if (run.getValue() >= slot.pages) {
+                    target = run.getKey();
+                    break;
+                }
+            }
+            if (target == 0) {
+                continue;
+            }
+            
+            take(target, slot.pages);
+            int length = slot.pages * pageSize;
+            buffer.put(offset(target) + 1, buffer, offset(slot.page) + 1, length - 1);
+            buffer.force(offset(target), length);
+            buffer.put(offset(target), HEAD);
+            buffer.force(offset(target), 1);
+            
+            index.put(slot.key, new Slot(slot.key, target, slot.pages, slot.sequence, slot.header));
+            release(slot);
+        }
+        
+        shrink();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        
+        closed = true;
+        buffer.force();
+        buffer = null;
+        channel.close();
+    }
+
+    /**
+     * Reads the page size from the header of an existing store.
+     *
+     * @param size The file size
+     * @return The page size
+     * @throws IOException If the file is not a save store
+     */
+    private int readPageSize(long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // Keep reading until the header is complete or the file ends
+        }
+        header.flip();
+        
+        byte[] magic = new byte[MAGIC.length];
+        if (header.remaining() < FILE_HEADER_SIZE) {
+            throw new IOException("Not a save store");
+        }
+        header.get(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not a save store");
+            }
+        }
+        int version = header.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported save store version " + version);
+        }
+        int storedPageSize = header.getInt();
+        if (storedPageSize < MIN_PAGE_SIZE || size % storedPageSize != 0 || size > Integer.MAX_VALUE) {
+            throw new IOException("Corrupt save store header");
+        }
+        return storedPageSize;
+    }
+
+    /**
+     * Rebuilds the index and the free runs by scanning every page.
+     * Torn saves are treated as free pages, and of two copies of a save the older one is freed.
+     *
+     * @throws IOException If the store cannot be read
+     */
+    private void scan() throws IOException {
+        List<Slot> slots = new ArrayList<>();
+        int page = 1;
+        while (page < capacity) {
+            Slot slot = buffer.get(offset(page)) == HEAD ? readSlot(page) : null;
+            if (slot == null) {
+                page++;
+                continue;
+            }
+            
+            slots.add(slot);
+            nextSequence = Math.max(nextSequence, slot.sequence + 1);
+            page += slot.pages;
+        }
+        
+        pageCount = 1;
+        List<Slot> stale = new ArrayList<>();
+        for (Slot slot : slots) {
+            Slot other = index.get(slot.key);
+            if (other != null && other.sequence >= slot.sequence) {
+                stale.add(slot);
+                continue;
+            }
+            if (other != null) {
+                stale.add(other);
+            }
+            index.put(slot.key, slot);
+        }
+        for (Slot slot : index.values()) {
+            pageCount = Math.max(pageCount, slot.page + slot.pages);
+        }
+        
+        // Every page below the last save that no save owns is free
+        List<Slot> live = new ArrayList<>(index.values());
+        live.sort((a, b) -> Integer.compare(a.page, b.page));
+        int next = 1;
+        for (Slot slot : live) {
+            if (slot.page > next) {
+                addFreeRun(next, slot.page - next);
+            }
+            next = slot.page + slot.pages;
+        }
+        
+        // The gaps above already cover the older copies, so they only need clearing on disk
+        for (Slot slot : stale) {
+            markFree(slot);
+        }
+    }
+
+    /**
+     * Reads and checks the save starting at a head page.
+     *
+     * @param page The head page
+     * @return The save's slot, or null if the save is torn or corrupt
+     */
+    private Slot readSlot(int page) {
+        ByteBuffer header = ByteBuffer.wrap(get(page, 0, RECORD_HEADER_SIZE));
+        int pages = header.getInt(0);
+        long sequence = header.getLong(4);
+        int checksum = header.getInt(12);
+        int keyLength = header.getShort(16) & 0xFFFF;
+        int dataLength = header.getInt(18);
+        long length = RECORD_HEADER_SIZE + keyLength + (long) dataLength;
+        if (pages < 1 || pages > capacity - page || dataLength < 0
+                || length > (long) pages * (pageSize - 1) || length <= (long) (pages - 1) * (pageSize - 1)) {
+            return null;
+        }
+        
+        byte[] key = get(page, RECORD_HEADER_SIZE, keyLength);
+        byte[] data = get(page, RECORD_HEADER_SIZE + keyLength, dataLength);
+        CRC32 crc = new CRC32();
+        crc.update(key);
+        crc.update(data);
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        String keyString = new String(key, StandardCharsets.UTF_8);
+        return new Slot(keyString, page, pages, sequence, headerOf(keyString, data));
+    }
+
+    /**
+     * Reads the header at the start of a save for the index.
+     *
+     * @param key The save key
+     * @param data The encoded save
+     * @return The header, or null if the save is not in a known format or its header cannot be read
+     */
+    private static SaveHeader headerOf(String key, byte[] data) {
+        try {
+            return SaveCodecs.readHeader(key, data);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Finds a run of free pages for a save, growing the file if no gap is large enough.
+     *
+     * @param pages The number of pages needed
+     * @return The first page of the run
+     * @throws IOException If the file cannot grow
+     */
+    private int allocate(int pages) throws IOException {
+        for (Map.Entry<Integer, Integer> run : freeRuns.entrySet()) {
+            if (run.getValue() >= pages) {
+                int page = run.getKey();
+                take(page, pages);
+                return page;
+            }
+        }
+        
+        int page = pageCount;
+        if ((long) page + pages > capacity) {
+            long maxPages = Integer.MAX_VALUE / pageSize;
+            if (page + (long) pages > maxPages) {
+                throw new IOException("Save store is full");
+            }
+            map((int) Math.min(maxPages, Math.max((long) capacity * 2, (long) page + pages)));
+        }
+        pageCount = page + pages;
+        return page;
+    }
+
+    /**
+     * Takes pages from the start of a free run.
+     *
+     * @param page The first page of the run
+     * @param pages The number of pages to take
+     */
+    private void take(int page, int pages) {
+        int length = freeRuns.remove(page);
+        if (length > pages) {
+            freeRuns.put(page + pages, length - pages);
+        }
+        freePages -= pages;
+    }
+
+    /**
+     * Marks a save's pages as free on disk and returns them to the free runs.
+     *
+     * @param slot The save's slot
+     */
+    private void release(Slot slot) {
+        markFree(slot);
+        addFreeRun(slot.page, slot.pages);
+    }
+
+    /**
+     * Marks a save's pages as free on disk, so the save is gone when the store is next opened.
+     *
+     * @param slot The save's slot
+     */
+    private void markFree(Slot slot) {
+        for (int p = slot.page; p < slot.page + slot.pages; p++) {
+            buffer.put(offset(p), FREE);
+        }
+        buffer.force(offset(slot.page), slot.pages * pageSize);
+    }
+
+    /**
+     * Adds a run of pages to the free runs, merging it with its neighbours.
+     * A run that reaches the end of the last save shortens the store instead.
+     *
+     * @param page The first page of the run
+     * @param pages The length of the run
+     */
+    private void addFreeRun(int page, int pages) {
+        Map.Entry<Integer, Integer> before = freeRuns.floorEntry(page);
+        if (before != null && before.getKey() + before.getValue() == page) {
+            freeRuns.remove(before.getKey());
+            freePages -= before.getValue();
+            page = before.getKey();
+            pages += before.getValue();
+        }
+        Integer after = freeRuns.remove(page + pages);
+        if (after != null) {
+            freePages -= after;
+            pages += after;
+        }
+        
+        if (page + pages >= pageCount) {
+            pageCount = Math.min(pageCount, page);
+        } else {
+            freeRuns.put(page, pages);
+            freePages += pages;
+        }
+    }
+
+    /**
+     * Compacts the store once more than half of a large enough store is free.
+     *
+     * @throws IOException If a save cannot be moved
+     */
+    private void compactIfSparse() throws IOException {
+        if (pageCount >= COMPACT_MIN_PAGES && freePages * 2 > pageCount) {
+            compact();
+        }
+    }
+
+    /**
+     * Shrinks the file when most of the mapped pages lie beyond the last save.
+     *
+     * @throws IOException If the file cannot be remapped
+     */
+    private void shrink() throws IOException {
+        if (capacity <= MIN_CAPACITY || pageCount * 4 > capacity) {
+            return;
+        }
+        
+        int newCapacity = Math.max(MIN_CAPACITY, pageCount * 2);
+        buffer.force();
+        map(newCapacity);
+        try {
+            channel.truncate((long) newCapacity * pageSize);
+        } catch (IOException e) {
+            // Some platforms refuse to truncate a file that is still mapped. The pages past the
+            // new end are all free, so the store stays valid and reuses them once reopened
+        }
+    }
+
+    /**
+     * Maps the first pages of the file, growing the file if it is shorter.
+     *
+     * @param pages The number of pages to map
+     * @throws IOException If the file cannot be mapped
+     */
+    private void map(int pages) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) pages * pageSize);
+        capacity = pages;
+    }
+
+    /**
+     * Copies bytes into a save's pages, skipping the state byte at the start of each page.
+     *
+     * @param page The save's head page
+     * @param position The position within the save's bytes
+     * @param bytes The bytes to copy
+     * @return The position after the copied bytes
+     */
+    private int put(int page, int position, byte[] bytes) {
+        int usable = pageSize - 1;
+        int done = 0;
+        while (done < bytes.length) {
+            int at = position + done;
+            int length = Math.min(bytes.length - done, usable - at % usable);
+            buffer.put(offset(page + at / usable) + 1 + at % usable, bytes, done, length);
+            done += length;
+        }
+        return position + bytes.length;
+    }
+
+    /**
+     * Copies bytes out of a save's pages, skipping the state byte at the start of each page.
+     *
+     * @param page The save's head page
+     * @param position The position within the save's bytes
+     * @param length The number of bytes to copy
+     * @return The bytes
+     */
+    private byte[] get(int page, int position, int length) {
+        int usable = pageSize - 1;
+        byte[] bytes = new byte[length];
+        int done = 0;
+        while (done < length) {
+            int at = position + done;
+            int chunk = Math.min(length - done, usable - at % usable);
+            buffer.get(offset(page + at / usable) + 1 + at % usable, bytes, done, chunk);
+            done += chunk;
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the number of pages a save of a given size needs.
+     *
+     * @param length The size of the save's header, key and data
+     * @return The number of pages
+     * @throws IOException If the save could never fit in a store
+     */
+    private int pagesFor(long length) throws IOException {
+        long pages = (length + pageSize - 2) / (pageSize - 1);
+        if (pages > Integer.MAX_VALUE / pageSize) {
+            throw new IOException("Save is too large: " + length + " bytes");
+        }
+        return (int) pages;
+    }
+
+    /**
+     * Gets the offset of a page in the file.
+     *
+     * @param page The page
+     * @return The byte offset
+     */
+    private int offset(int page) {
+        return page * pageSize;
+    }
+
+    /**
+     * Checks that the store has not been closed.
+     *
+     * @throws IOException If the store is closed
+     */
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Save store is closed");
+        }
+    }
+
+    /**
+     * Where a save lives in the file, and its header.
+     */
+    private static class Slot {
+        private final String key;
+        private final int page;
+        private final int pages;
+        private final long sequence;
+        private final SaveHeader header; // null if the save is not in a known format
+        
+        Slot(String key, int page, int pages, long sequence, SaveHeader header) {
+            this.key = key;
+            this.page = page;
+            this.pages = pages;
+            this.sequence = sequence;
+            this.header = header;
+        }
+    }
+}
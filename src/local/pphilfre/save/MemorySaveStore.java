@@ -0,0 +1,96 @@
+package local.pphilfre.save;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps saves in memory only, so they are gone once the store is dropped.
+ * Used for games that must not touch the disk, such as transcripts replayed side by side.
+ */
+public class MemorySaveStore implements SaveStore {
+    private final TreeMap<String, byte[]> saves = new TreeMap<>();       // guarded by this
+    private final TreeMap<String, SaveHeader> headers = new TreeMap<>(); // guarded by this, null if unreadable
+
+    @Override
+    public synchronized byte[] read(String key) {
+        return saves.get(key);
+    }
+
+    @Override
+    public synchronized void write(String key, byte[] data) {
+        saves.put(key, data);
+        SaveHeader header;
+        try {
+            header = SaveCodecs.readHeader(key, data);
+        } catch (IOException e) {
+            header = null;
+        }
+        headers.put(key, header);
+    }
+
+    @Override
+    public synchronized boolean delete(String key) {
+        headers.remove(key);
+        return saves.remove(key) != null;
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return saves.containsKey(key);
+    }
+
+    @Override
+    public List<String> keys() {
+        return keys("");
+    }
+
+    @Override
+    public synchronized List<String> keys(String prefix) {
+        return new ArrayList<>(under(saves, prefix).keySet());
+    }
+
+    @Override
+    public synchronized SaveHeader readHeader(String key) {
+        return headers.get(key);
+    }
+
+    @Override
+    public Map<String, SaveHeader> listSaves() {
+        return listSaves("");
+    }
+
+    @Override
+    public synchronized Map<String, SaveHeader> listSaves(String prefix) {
+        Map<String, SaveHeader> list = new TreeMap<>();
+        for (Map.Entry<String, SaveHeader> entry : under(headers, prefix).entrySet()) {
+            if (entry.getValue() != null) {
+                list.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public String describe(String key) {
+        return "memory:" + key;
+    }
+
+    @Override
+    public void close() {
+        // Nothing is held open
+    }
+
+    /**
+     * Gets the entries of a sorted map whose keys start with a prefix.
+     *
+     * @param map The map
+     * @param prefix The prefix, or "" for every entry
+     * @return A view of the entries under the prefix
+     */
+    private static <V> Map<String, V> under(TreeMap<String, V> map, String prefix) {
+        return prefix.isEmpty() ? map : map.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+}
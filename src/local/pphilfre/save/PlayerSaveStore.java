@@ -0,0 +1,151 @@
+package local.pphilfre.save;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * One player's view of a store shared by many players. Every key is qualified with the player's
+ * name, e.g. {@code "default.sav"} is kept as {@code "alice/default.sav"}, so a player only sees,
+ * loads and overwrites their own saves.
+ * <p>
+ * Keys given to the view must be plain slot names; a key that could reach another player's saves,
+ * such as {@code "../bob/default.sav"}, is refused. Closing the view leaves the shared store open.
+ */
+public class PlayerSaveStore implements SaveStore {
+    private static final int MAX_PLAYER_NAME_LENGTH = 32;
+
+    private final SaveStore store;
+    private final String prefix; // the player's name followed by "/"
+
+    /**
+     * Creates a view of a shared store for one player.
+     *
+     * @param store The shared store
+     * @param player The player's name
+     * @throws IllegalArgumentException If the name is not a valid player name
+     */
+    public PlayerSaveStore(SaveStore store, String player) {
+        if (!isValidPlayerName(player)) {
+            throw new IllegalArgumentException("Invalid player name: " + player);
+        }
+        this.store = store;
+        this.prefix = player + "/";
+    }
+
+    /**
+     * Checks whether a name can be used as a player name: 1 to 32 letters, digits, '-' or '_'.
+     *
+     * @param name The name to check
+     * @return true if the name is valid
+     */
+    public static boolean isValidPlayerName(String name) {
+        if (name == null || name.isEmpty() || name.length() > MAX_PLAYER_NAME_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9') && c != '-' && c != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public byte[] read(String key) throws IOException {
+        return store.read(qualify(key));
+    }
+
+    @Override
+    public void write(String key, byte[] data) throws IOException {
+        store.write(qualify(key), data);
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        return store.delete(qualify(key));
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return isSlotName(key) && store.contains(prefix + key);
+    }
+
+    @Override
+    public List<String> keys() throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (String key : store.keys(prefix)) {
+            keys.add(key.substring(prefix.length()));
+        }
+        return keys;
+    }
+
+    @Override
+    public List<String> keys(String slotPrefix) throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (String key : keys()) {
+            if (key.startsWith(slotPrefix)) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public SaveHeader readHeader(String key) throws IOException {
+        return store.readHeader(qualify(key));
+    }
+
+    @Override
+    public Map<String, SaveHeader> listSaves() throws IOException {
+        Map<String, SaveHeader> saves = new TreeMap<>();
+        for (Map.Entry<String, SaveHeader> entry : store.listSaves(prefix).entrySet()) {
+            saves.put(entry.getKey().substring(prefix.length()), entry.getValue());
+        }
+        return saves;
+    }
+
+    @Override
+    public Map<String, SaveHeader> listSaves(String slotPrefix) throws IOException {
+        Map<String, SaveHeader> saves = listSaves();
+        saves.keySet().removeIf(key -> !key.startsWith(slotPrefix));
+        return saves;
+    }
+
+    @Override
+    public String describe(String key) {
+        return store.describe(prefix + key);
+    }
+
+    @Override
+    public void close() {
+        // The shared store belongs to whoever created it
+    }
+
+    /**
+     * Qualifies a slot name with the player's name.
+     *
+     * @param key The slot name
+     * @return The key in the shared store
+     * @throws IOException If the key is not a plain slot name
+     */
+    private String qualify(String key) throws IOException {
+        if (!isSlotName(key)) {
+            throw new IOException("Invalid save name: " + key);
+        }
+        return prefix + key;
+    }
+
+    /**
+     * Checks whether a key is a plain slot name, with no path in it.
+     *
+     * @param key The key to check
+     * @return true if the key names a slot of this player's
+     */
+    private static boolean isSlotName(String key) {
+        return !key.isEmpty() && key.indexOf('/') < 0 && key.indexOf('\\') < 0 && !key.equals(".") && !key.equals("..");
+    }
+}
@@ -0,0 +1,59 @@
+package local.pphilfre.save;
+
+import local.pphilfre.datamodel.CompiledWorld;
+import local.pphilfre.datamodel.GameState;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Converts a saved {@link GameState} to and from bytes.
+ * Codecs are stateless, so one instance can be shared by every session.
+ */
+public interface SaveCodec {
+
+    /**
+     * Gets the short name of the format, e.g. "binary" or "json".
+     *
+     * @return The format name
+     */
+    String getName();
+
+    /**
+     * Gets the file extension used for saves in this format, including the dot.
+     *
+     * @return The file extension
+     */
+    String getFileExtension();
+
+    /**
+     * Writes a game state. The stream is not closed.
+     *
+     * @param state The state to write
+     * @param world The compiled world the state belongs to
+     * @param out The stream to write to
+     * @throws IOException If the state cannot be written
+     */
+    void write(GameState state, CompiledWorld world, OutputStream out) throws IOException;
+
+    /**
+     * Reads a game state. The stream is not closed.
+     *
+     * @param in The stream to read from
+     * @param world The compiled world the state will be restored into
+     * @return The game state
+     * @throws IOException If the data cannot be read or does not belong to this world
+     */
+    GameState read(InputStream in, CompiledWorld world) throws IOException;
+
+    /**
+     * Reads only the header at the start of a save, for listing saves.
+     * The save is not checked against any world. The stream is not closed.
+     *
+     * @param in The stream to read from
+     * @return The save's header
+     * @throws IOException If the header cannot be read
+     */
+    SaveHeader readHeader(InputStream in) throws IOException;
+}
@@ -0,0 +1,77 @@
+package local.pphilfre.save;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The save formats the game knows about.
+ */
+public class SaveCodecs {
+    /** Compact binary saves; the default. */
+    public static final SaveCodec BINARY = new BinarySaveCodec();
+
+    /** Human-readable JSON saves, mainly for debugging. */
+    public static final SaveCodec JSON = new JsonSaveCodec();
+
+    private static final List<SaveCodec> ALL = List.of(BINARY, JSON);
+
+    private SaveCodecs() {
+        // Constants only
+    }
+
+    /**
+     * Gets every known codec, most preferred first.
+     *
+     * @return The codecs
+     */
+    public static List<SaveCodec> all() {
+        return ALL;
+    }
+
+    /**
+     * Finds a codec by its format name.
+     *
+     * @param name The format name, e.g. "binary" or "json"
+     * @return The codec, or null if no codec has that name
+     */
+    public static SaveCodec forName(String name) {
+        for (SaveCodec codec : ALL) {
+            if (codec.getName().equalsIgnoreCase(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the codec a save was written with from the extension of its key.
+     *
+     * @param key The save key or file name, e.g. "default.sav"
+     * @return The codec, or null if the key does not end in a save extension
+     */
+    public static SaveCodec forKey(String key) {
+        for (SaveCodec codec : ALL) {
+            if (key.endsWith(codec.getFileExtension())) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the header of an encoded save, using the codec its key names.
+     *
+     * @param key The save key
+     * @param data The encoded save
+     * @return The header, or null if the key does not name a save format
+     * @throws IOException If the header cannot be read
+     */
+    public static SaveHeader readHeader(String key, byte[] data) throws IOException {
+        SaveCodec codec = forKey(key);
+        if (codec == null) {
+            return null;
+        }
+        return codec.readHeader(new ByteArrayInputStream(data));
+    }
+}
@@ -0,0 +1,65 @@
+package local.pphilfre.save;
+
+import local.pphilfre.datamodel.GameState;
+
+/**
+ * The few facts about a save that a save menu shows, read without decoding the rest of the save.
+ * Every codec writes these at the start of a save, so reading them touches only a few bytes.
+ */
+public class SaveHeader {
+    private final String gameVersion;
+    private final long saveTimestamp;
+    private final String currentRoomId;   // null for saves written before the header held it
+    private final long playTimeMillis;
+    private final int commandCount;
+
+    /**
+     * Creates a new save header.
+     *
+     * @param gameVersion The version of the game that wrote the save
+     * @param saveTimestamp When the game was saved, in milliseconds since the epoch
+     * @param currentRoomId The room the player was in, or null if unknown
+     * @param playTimeMillis How long the game had been played, in milliseconds
+     * @param commandCount How many commands the player had entered
+     */
+    public SaveHeader(String gameVersion, long saveTimestamp, String currentRoomId,
+                      long playTimeMillis, int commandCount) {
+        this.gameVersion = gameVersion;
+        this.saveTimestamp = saveTimestamp;
+        this.currentRoomId = currentRoomId;
+        this.playTimeMillis = playTimeMillis;
+        this.commandCount = commandCount;
+    }
+
+    /**
+     * Gets the header of a game state that is about to be saved.
+     *
+     * @param state The game state
+     * @return The header
+     */
+    public static SaveHeader of(GameState state) {
+        String roomId = state.getPlayerState() != null ? state.getPlayerState().getCurrentRoomId() : null;
+        return new SaveHeader(state.getGameVersion(), state.getSaveTimestamp(), roomId,
+                              state.getPlayTimeMillis(), state.getCommandCount());
+    }
+
+    public String getGameVersion() {
+        return gameVersion;
+    }
+
+    public long getSaveTimestamp() {
+        return saveTimestamp;
+    }
+
+    public String getCurrentRoomId() {
+        return currentRoomId;
+    }
+
+    public long getPlayTimeMillis() {
+        return playTimeMillis;
+    }
+
+    public int getCommandCount() {
+        return commandCount;
+    }
+}
@@ -0,0 +1,110 @@
+package local.pphilfre.save;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Somewhere encoded saves are kept, looked up by key.
+ * <p>
+ * A key names one save slot, such as {@code "default.sav"}; callers that keep several players
+ * in one store can qualify it, e.g. {@code "alice/default.sav"}. The store does not interpret
+ * the bytes, so one store can hold saves written by any {@link SaveCodec}.
+ * It does keep the {@link SaveHeader} of every save in an in-memory index, taken from the start of
+ * each save by the codec its key's extension names, so listing saves does not decode them.
+ * Implementations are safe to share between sessions.
+ */
+public interface SaveStore extends Closeable {
+
+    /**
+     * Reads a save.
+     *
+     * @param key The save key
+     * @return The encoded save, or null if there is no save under the key
+     * @throws IOException If the save exists but cannot be read
+     */
+    byte[] read(String key) throws IOException;
+
+    /**
+     * Writes a save, replacing any save under the same key.
+     * Either the old or the new save survives a crash part-way through.
+     *
+     * @param key The save key
+     * @param data The encoded save
+     * @throws IOException If the save cannot be written
+     */
+    void write(String key, byte[] data) throws IOException;
+
+    /**
+     * Deletes a save.
+     *
+     * @param key The save key
+     * @return true if there was a save to delete
+     * @throws IOException If the save cannot be deleted
+     */
+    boolean delete(String key) throws IOException;
+
+    /**
+     * Checks whether there is a save under a key.
+     *
+     * @param key The save key
+     * @return true if the save exists
+     */
+    boolean contains(String key);
+
+    /**
+     * Gets the keys of every save in the store.
+     *
+     * @return The keys, sorted
+     * @throws IOException If the store cannot be listed
+     */
+    List<String> keys() throws IOException;
+
+    /**
+     * Gets the keys of the saves whose keys start with a prefix, such as one player's {@code "alice/"}.
+     * Only the saves under the prefix are looked at.
+     *
+     * @param prefix The prefix, or "" for every save
+     * @return The keys, sorted
+     * @throws IOException If the store cannot be listed
+     */
+    List<String> keys(String prefix) throws IOException;
+
+    /**
+     * Gets the header of a save from the index.
+     *
+     * @param key The save key
+     * @return The header, or null if there is no save under the key or its header cannot be read
+     * @throws IOException If the store cannot be read
+     */
+    SaveHeader readHeader(String key) throws IOException;
+
+    /**
+     * Gets the headers of every save in a known format, from the index.
+     * Saves whose header cannot be read are left out.
+     *
+     * @return The headers by key, sorted by key
+     * @throws IOException If the store cannot be listed
+     */
+    Map<String, SaveHeader> listSaves() throws IOException;
+
+    /**
+     * Gets the headers of every save in a known format whose key starts with a prefix, from the index.
+     * Only the saves under the prefix are looked at, so one player's listing costs the same however
+     * many other players share the store.
+     *
+     * @param prefix The prefix, or "" for every save
+     * @return The headers by key, sorted by key
+     * @throws IOException If the store cannot be listed
+     */
+    Map<String, SaveHeader> listSaves(String prefix) throws IOException;
+
+    /**
+     * Describes where a save is kept, for messages to the player.
+     *
+     * @param key The save key
+     * @return A description of the save's location
+     */
+    String describe(String key);
+}
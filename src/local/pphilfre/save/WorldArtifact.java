@@ -0,0 +1,1085 @@
+package local.pphilfre.save;
+
+import local.pphilfre.datamodel.ConditionCriterion;
+import local.pphilfre.datamodel.DialogueNode;
+import local.pphilfre.datamodel.DialogueResponseOption;
+import local.pphilfre.datamodel.EndCondition;
+import local.pphilfre.datamodel.Exit;
+import local.pphilfre.datamodel.GameDefinition;
+import local.pphilfre.datamodel.GameInfo;
+import local.pphilfre.datamodel.Item;
+import local.pphilfre.datamodel.LazyText;
+import local.pphilfre.datamodel.NpcDefinition;
+import local.pphilfre.datamodel.PlayerStart;
+import local.pphilfre.datamodel.Puzzle;
+import local.pphilfre.datamodel.PuzzleEffect;
+import local.pphilfre.datamodel.PuzzleSolutionCondition;
+import local.pphilfre.datamodel.Room;
+import local.pphilfre.datamodel.UseEffect;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A world file compiled ahead of time into a binary artifact that loads far faster than the JSON.
+ * <p>
+ * The artifact sits next to the world file, e.g. {@code world.json.compiled}, and is keyed by the
+ * SHA-256 of the world file's bytes: it is only used while the JSON it was compiled from is
+ * unchanged, and is otherwise ignored. It holds the whole {@link GameDefinition} in file order,
+ * so compiled ordinals and fingerprints match the JSON's, together with the warnings validation
+ * found, so loading it needs neither the JSON parser nor another validation pass.
+ * <p>
+ * The descriptions of rooms, items and NPCs, which make up most of a large world, are not read
+ * when the artifact is loaded. They are kept in regions of {@value #REGION_SIZE} consecutive
+ * entries, and a region is read from the mapped file the first time one of its descriptions is
+ * needed. Regions are only softly held, so the garbage collector drops the ones nobody is looking
+ * at when memory runs short, and the heap holds descriptions only for the parts of the world in
+ * play. Neighbouring rooms are usually written together, so one region tends to cover one area.
+ * <p>
+ * Layout (version 2):
+ * <pre>
+ * magic "TAWA", varint format version, 32-byte SHA-256 of the world file,
+ * warnings:   strings
+ * definition: game info, player start, rooms with exits, items with use effects,
+ *             NPCs with dialogue, puzzles, end conditions, global flags, verb aliases
+ * texts:      room descriptions, item descriptions, NPC presence descriptions; each a varint
+ *             count, then each region as a varint byte length followed by its strings
+ * </pre>
+ * Version 1 held the descriptions inline and is no longer read; such artifacts are ignored
+ * until the world is compiled again.
+ * Primitives are written as in {@link BinarySaveCodec}. Maps and lists are a varint count + 1
+ * (0 for null) followed by the entries. IDs, map keys and other short names go through a string
+ * table: 0 is null, 1 is a new string that follows, and n + 2 repeats the n-th string, so each ID
+ * is stored and allocated once however often the world refers to it. Exit messages, which
+ * large worlds tend to repeat word for word, go through the table too.
+ */
+public class WorldArtifact {
+    /** Appended to the world file's name to name its artifact. */
+    public static final String SUFFIX = ".compiled";
+
+    private static final byte[] MAGIC = { 'T', 'A', 'W', 'A' };
+    private static final int FORMAT_VERSION = 2;
+    private static final int REGION_SIZE = 64;
+    private static final int HASH_LENGTH = 32;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final GameDefinition definition;
+    private final List<String> validationErrors;
+
+    /**
+     * Creates a loaded artifact.
+     *
+     * @param definition The game definition, not yet sealed
+     * @param validationErrors The warnings validation found when the artifact was compiled
+     */
+    private WorldArtifact(GameDefinition definition, List<String> validationErrors) {
+        this.definition = definition;
+        this.validationErrors = validationErrors;
+    }
+
+    /**
+     * Gets the path of the artifact for a world file.
+     *
+     * @param worldFile The world file
+     * @return The artifact's path, beside the world file
+     */
+    public static Path pathFor(Path worldFile) {
+        return worldFile.resolveSibling(worldFile.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Compiles a world into an artifact beside its world file, replacing any older artifact.
+     *
+     * @param worldFile The world file the definition was loaded from
+     * @param definition The game definition
+     * @param validationErrors The warnings validation found in the definition
+     * @return The artifact's path
+     * @throws IOException If the world file cannot be read or the artifact cannot be written
+     */
+    public static Path write(Path worldFile, GameDefinition definition, List<String> validationErrors) throws IOException {
+        byte[] hash = hash(worldFile);
+        Path artifact = pathFor(worldFile);
+        
+        // Write beside the old artifact and rename over it, so a crash never leaves half an artifact
+        Path temporary = artifact.resolveSibling(artifact.getFileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_SIZE)) {
+            Encoder encoder = new Encoder(new BinaryWriter(out));
+            encoder.writer.writeBytes(MAGIC);
+            encoder.writer.writeVarInt(FORMAT_VERSION);
+            encoder.writer.writeBytes(hash);
+            encoder.writeList(validationErrors, encoder.writer::writeString);
+            encoder.writeDefinition(definition);
+        }
+        Files.move(temporary, artifact, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return artifact;
+    }
+
+    /**
+     * Loads the artifact for a world file, if there is one and it was compiled from the file's
+     * current contents.
+     *
+     * @param worldFile The world file
+     * @return The artifact, or null if there is none or it is out of date
+     * @throws IOException If the artifact is current but cannot be read
+     */
+    public static WorldArtifact readIfCurrent(Path worldFile) throws IOException {
+        Path artifact = pathFor(worldFile);
+        if (!Files.isRegularFile(artifact)) {
+            return null;
+        }
+        
+        // Map the artifact rather than stream it: the decoder reads it a byte at a time, and a
+        // mapped buffer serves those reads without the locking of a buffered stream
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(artifact, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        
+        Decoder decoder = new Decoder(buffer);
+        byte[] magic = decoder.reader.readBytes(MAGIC.length);
+        if (!Arrays.equals(magic, MAGIC) || decoder.reader.readVarInt() != FORMAT_VERSION) {
+            return null; // written by a different version of the game, so compile it again
+        }
+        if (!Arrays.equals(decoder.reader.readBytes(HASH_LENGTH), hash(worldFile))) {
+            return null;
+        }
+        
+        List<String> validationErrors = decoder.readList(decoder.reader::readString);
+        return new WorldArtifact(decoder.readDefinition(), validationErrors);
+    }
+
+    /**
+     * Gets the SHA-256 of a file's contents.
+     *
+     * @param file The file
+     * @return The 32-byte hash
+     * @throws IOException If the file cannot be read
+     */
+    private static byte[] hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        return digest.digest();
+    }
+
+    public GameDefinition getDefinition() {
+        return definition;
+    }
+
+    public List<String> getValidationErrors() {
+        return validationErrors;
+    }
+
+    /**
+     * Reads a byte buffer as a stream, without the locking of the JDK's streams.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+        
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+        
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+
+    /**
+     * The descriptions of one kind of entity, read from the mapped artifact a region at a time.
+     * Safe to share between sessions: two threads may both read a region that neither finds
+     * loaded, but they read the same strings and either copy will do.
+     */
+    private static class TextRegions {
+        private final ByteBuffer buffer;     // the mapped artifact; only ever read through duplicates
+        private final int[] offsets;         // region -> position of its first string
+        private final int count;
+        private final AtomicReferenceArray<SoftReference<String[]>> loaded;
+        
+        TextRegions(ByteBuffer buffer, int[] offsets, int count) {
+            this.buffer = buffer;
+            this.offsets = offsets;
+            this.count = count;
+            this.loaded = new AtomicReferenceArray<>(offsets.length);
+        }
+        
+        /**
+         * Gets a description, reading its region if it is not loaded.
+         *
+         * @param index The entity's position in its map
+         * @return The description, or null
+         */
+        String get(int index) {
+            int region = index / REGION_SIZE;
+            SoftReference<String[]> reference = loaded.get(region);
+            String[] texts = reference != null ? reference.get() : null;
+            if (texts == null) {
+                texts = read(region);
+                loaded.set(region, new SoftReference<>(texts));
+            }
+            return texts[index % REGION_SIZE];
+        }
+        
+        /**
+         * Reads every description in a region.
+         *
+         * @param region The region
+         * @return The descriptions
+         */
+        private String[] read(int region) {
+            ByteBuffer view = buffer.duplicate();
+            view.position(offsets[region]);
+            BinaryReader reader = new BinaryReader(new ByteBufferInputStream(view));
+            String[] texts = new String[Math.min(REGION_SIZE, count - region * REGION_SIZE)];
+            try {
+                for (int i = 0; i < texts.length; i++) {
+                    texts[i] = reader.readString();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Corrupt world artifact: cannot read descriptions", e);
+            }
+            return texts;
+        }
+    }
+
+    /**
+     * One entity's description in a {@link TextRegions}.
+     */
+    private static class RegionText implements LazyText {
+        private final TextRegions regions;
+        private final int index;
+        
+        RegionText(TextRegions regions, int index) {
+            this.regions = regions;
+            this.index = index;
+        }
+        
+        @Override
+        public String get() {
+            return regions.get(index);
+        }
+    }
+
+    /**
+     * Writes one value of a list or map.
+     *
+     * @param <T> The type of value
+     */
+    private interface ValueWriter<T> {
+        /**
+         * Writes the value.
+         *
+         * @param value The value
+         * @throws IOException If the value cannot be written
+         */
+        void write(T value) throws IOException;
+    }
+
+    /**
+     * Reads one value of a list or map.
+     *
+     * @param <T> The type of value
+     */
+    private interface ValueReader<T> {
+        /**
+         * Reads the value.
+         *
+         * @return The value
+         * @throws IOException If the value cannot be read
+         */
+        T read() throws IOException;
+    }
+
+    /**
+     * Writes a game definition, numbering strings as it goes.
+     */
+    private static class Encoder {
+        private final BinaryWriter writer;
+        private final Map<String, Integer> strings = new HashMap<>();
+        
+        Encoder(BinaryWriter writer) {
+            this.writer = writer;
+        }
+        
+        /**
+         * Writes a string through the string table.
+         *
+         * @param value The string, or null
+         * @throws IOException If the stream cannot be written
+         */
+        void writeId(String value) throws IOException {
+            if (value == null) {
+                writer.writeVarInt(0);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                writer.writeVarInt(index + 2);
+                return;
+            }
+            strings.put(value, strings.size());
+            writer.writeVarInt(1);
+            writer.writeString(value);
+        }
+        
+        /**
+         * Writes a list.
+         *
+         * @param <T> The type of element
+         * @param list The list, or null
+         * @param values Writes one element
+         * @throws IOException If the stream cannot be written
+         */
+        <T> void writeList(List<T> list, ValueWriter<T> values) throws IOException {
+            if (list == null) {
+                writer.writeVarInt(0);
+                return;
+            }
+            writer.writeVarInt(list.size() + 1);
+            for (T value : list) {
+                values.write(value);
+            }
+        }
+        
+        /**
+         * Writes a map, with its keys through the string table.
+         *
+         * @param <T> The type of value
+         * @param map The map, or null
+         * @param values Writes one value
+         * @throws IOException If the stream cannot be written
+         */
+        <T> void writeMap(Map<String, T> map, ValueWriter<T> values) throws IOException {
+            if (map == null) {
+                writer.writeVarInt(0);
+                return;
+            }
+            writer.writeVarInt(map.size() + 1);
+            for (Map.Entry<String, T> entry : map.entrySet()) {
+                writeId(entry.getKey());
+                values.write(entry.getValue());
+            }
+        }
+        
+        /**
+         * Writes a nullable value, preceded by a byte saying whether it is present.
+         *
+         * @param <T> The type of value
+         * @param value The value, or null
+         * @param values Writes the value
+         * @throws IOException If the stream cannot be written
+         */
+        <T> void writeOptional(T value, ValueWriter<T> values) throws IOException {
+            writer.writeByte(value != null ? 1 : 0);
+            if (value != null) {
+                values.write(value);
+            }
+        }
+        
+        /**
+         * Writes a boolean as a byte.
+         *
+         * @param value The value
+         * @throws IOException If the stream cannot be written
+         */
+        void writeBoolean(boolean value) throws IOException {
+            writer.writeByte(value ? 1 : 0);
+        }
+        
+        /**
+         * Writes a game definition.
+         *
+         * @param definition The game definition
+         * @throws IOException If the stream cannot be written
+         */
+        void writeDefinition(GameDefinition definition) throws IOException {
+            writeOptional(definition.getGameInfo(), this::writeGameInfo);
+            writeOptional(definition.getPlayerStart(), this::writePlayerStart);
+            writeMap(definition.getRooms(), room -> writeOptional(room, this::writeRoom));
+            writeMap(definition.getItems(), item -> writeOptional(item, this::writeItem));
+            writeMap(definition.getNpcs(), npc -> writeOptional(npc, this::writeNpc));
+            writeMap(definition.getPuzzles(), puzzle -> writeOptional(puzzle, this::writePuzzle));
+            writeList(definition.getEndConditions(), condition -> writeOptional(condition, this::writeEndCondition));
+            writeMap(definition.getGlobalFlags(), this::writeId);
+            writeMap(definition.getVerbAliases(), this::writeId);
+            
+            writeTexts(definition.getRooms(), Room::getBaseDescription);
+            writeTexts(definition.getItems(), Item::getDescription);
+            writeTexts(definition.getNpcs(), NpcDefinition::getPresenceDescription);
+        }
+        
+        /**
+         * Writes one description of every entity in a map, in regions that can be read on their own.
+         *
+         * @param <T> The type of entity
+         * @param entities The entities, or null
+         * @param text Gets an entity's description
+         * @throws IOException If the stream cannot be written
+         */
+        <T> void writeTexts(Map<String, T> entities, Function<T, String> text) throws IOException {
+            List<String> texts = new ArrayList<>();
+            if (entities != null) {
+                for (T entity : entities.values()) {
+                    texts.add(entity != null ? text.apply(entity) : null);
+                }
+            }
+            
+            writer.writeVarInt(texts.size());
+            for (int start = 0; start < texts.size(); start += REGION_SIZE) {
+                ByteArrayOutputStream region = new ByteArrayOutputStream();
+                BinaryWriter regionWriter = new BinaryWriter(region);
+                for (int i = start; i < Math.min(start + REGION_SIZE, texts.size()); i++) {
+                    regionWriter.writeString(texts.get(i));
+                }
+                writer.writeVarInt(region.size());
+                writer.writeBytes(region.toByteArray());
+            }
+        }
+        
+        /**
+         * Writes game info.
+         *
+         * @param gameInfo The game info
+         * @throws IOException If the stream cannot be written
+         */
+        void writeGameInfo(GameInfo gameInfo) throws IOException {
+            writer.writeString(gameInfo.getGameTitle());
+            writer.writeString(gameInfo.getVersion());
+            writer.writeString(gameInfo.getWelcomeMessage());
+            writer.writeString(gameInfo.getHelpText());
+        }
+        
+        /**
+         * Writes the player's start.
+         *
+         * @param playerStart The player's start
+         * @throws IOException If the stream cannot be written
+         */
+        void writePlayerStart(PlayerStart playerStart) throws IOException {
+            writeId(playerStart.getStartRoomId());
+            writeList(playerStart.getInitialInventory(), this::writeId);
+        }
+        
+        /**
+         * Writes a room.
+         *
+         * @param room The room
+         * @throws IOException If the stream cannot be written
+         */
+        void writeRoom(Room room) throws IOException {
+            writeId(room.getId());
+            writer.writeString(room.getName());
+            writeList(room.getItemIds(), this::writeId);
+            writeList(room.getNpcIds(), this::writeId);
+            writeMap(room.getExits(), exit -> writeOptional(exit, this::writeExit));
+        }
+        
+        /**
+         * Writes an exit.
+         *
+         * @param exit The exit
+         * @throws IOException If the stream cannot be written
+         */
+        void writeExit(Exit exit) throws IOException {
+            writeId(exit.getTargetRoomId());
+            writeBoolean(exit.isInitiallyLocked());
+            writeId(exit.getLockedMessage());
+            writeId(exit.getUnlockedMessage());
+            writeId(exit.getRequiredItemIdToUnlock());
+            writeId(exit.getRequiredPuzzleIdSolved());
+            writeId(exit.getRequiredFlagName());
+            writeId(exit.getRequiredFlagValue());
+        }
+        
+        /**
+         * Writes an item.
+         *
+         * @param item The item
+         * @throws IOException If the stream cannot be written
+         */
+        void writeItem(Item item) throws IOException {
+            writeId(item.getId());
+            writer.writeString(item.getName());
+            writeBoolean(item.isTakeable());
+            writeList(item.getCanBeCombinedWith(), this::writeId);
+            writeId(item.getCombinationResultItemId());
+            writeMap(item.getUseEffects(), effect -> writeOptional(effect, this::writeUseEffect));
+        }
+        
+        /**
+         * Writes an item's use effect.
+         *
+         * @param effect The item's use effect
+         * @throws IOException If the stream cannot be written
+         */
+        void writeUseEffect(UseEffect effect) throws IOException {
+            writeId(effect.getTriggersPuzzleId());
+            writer.writeString(effect.getSuccessMessage());
+            writer.writeString(effect.getFailureMessage());
+            writeBoolean(effect.isConsumesItem());
+            writeId(effect.getSetsFlagName());
+            writeId(effect.getSetsFlagValue());
+        }
+        
+        /**
+         * Writes an NPC.
+         *
+         * @param npc The NPC
+         * @throws IOException If the stream cannot be written
+         */
+        void writeNpc(NpcDefinition npc) throws IOException {
+            writeId(npc.getId());
+            writer.writeString(npc.getName());
+            writeId(npc.getInitialDialogueNodeId());
+            writeMap(npc.getDialogueTree(), node -> writeOptional(node, this::writeDialogueNode));
+            writeList(npc.getInitialItemIds(), this::writeId);
+            writeMap(npc.getInitialNpcFlags(), this::writeId);
+        }
+        
+        /**
+         * Writes a dialogue node.
+         *
+         * @param node The dialogue node
+         * @throws IOException If the stream cannot be written
+         */
+        void writeDialogueNode(DialogueNode node) throws IOException {
+            writer.writeString(node.getText());
+            writeList(node.getResponses(), option -> writeOptional(option, this::writeResponseOption));
+            writeId(node.getTriggersQuestId());
+            writeId(node.getGivesItemId());
+            writeId(node.getRequiresItemId());
+            writeId(node.getSetsNpcFlag());
+            writeId(node.getSetsGlobalFlag());
+            writeBoolean(node.isEndsDialogue());
+        }
+        
+        /**
+         * Writes a dialogue response option.
+         *
+         * @param option The dialogue response option
+         * @throws IOException If the stream cannot be written
+         */
+        void writeResponseOption(DialogueResponseOption option) throws IOException {
+            writer.writeString(option.getText());
+            writeId(option.getTargetNodeId());
+            writeId(option.getRequiresPlayerItem());
+            writeId(option.getRequiresNpcFlag());
+            writeId(option.getRequiresGlobalFlag());
+        }
+        
+        /**
+         * Writes a puzzle.
+         *
+         * @param puzzle The puzzle
+         * @throws IOException If the stream cannot be written
+         */
+        void writePuzzle(Puzzle puzzle) throws IOException {
+            writeId(puzzle.getId());
+            writer.writeString(puzzle.getDescription());
+            writeOptional(puzzle.getSolutionCondition(), this::writeSolutionCondition);
+            writer.writeString(puzzle.getSuccessMessage());
+            writer.writeString(puzzle.getFailureMessage());
+            writer.writeString(puzzle.getAlreadySolvedMessage());
+            writeList(puzzle.getEffectsOnSolve(), effect -> writeOptional(effect, this::writePuzzleEffect));
+            writeId(puzzle.getSetsFlagOnSolve());
+            writeId(puzzle.getSetsFlagValueOnSolve());
+        }
+        
+        /**
+         * Writes a puzzle's solution condition.
+         *
+         * @param condition The puzzle's solution condition
+         * @throws IOException If the stream cannot be written
+         */
+        void writeSolutionCondition(PuzzleSolutionCondition condition) throws IOException {
+            writeId(condition.getType());
+            writeId(condition.getRequiredItemId());
+            writeId(condition.getRequiredTargetId());
+            writeId(condition.getRequiredNpcId());
+            writeId(condition.getRequiredNpcFlag());
+            writeId(condition.getRequiredNpcFlagValue());
+            writeId(condition.getRequiredGlobalFlag());
+            writeId(condition.getRequiredGlobalFlagValue());
+        }
+        
+        /**
+         * Writes a puzzle effect.
+         *
+         * @param effect The puzzle effect
+         * @throws IOException If the stream cannot be written
+         */
+        void writePuzzleEffect(PuzzleEffect effect) throws IOException {
+            writeId(effect.getType());
+            writeId(effect.getTargetRoomId());
+            writeId(effect.getExitDirection());
+            writeId(effect.getItemIdToSpawnOrRemove());
+            writeId(effect.getNpcIdToMove());
+            writeId(effect.getDestinationRoomId());
+            writeId(effect.getFlagToSet());
+            writeId(effect.getFlagValue());
+        }
+        
+        /**
+         * Writes an end condition.
+         *
+         * @param condition The end condition
+         * @throws IOException If the stream cannot be written
+         */
+        void writeEndCondition(EndCondition condition) throws IOException {
+            writeId(condition.getType());
+            writer.writeString(condition.getMessage());
+            writeList(condition.getCriteria(), criterion -> writeOptional(criterion, this::writeCriterion));
+        }
+        
+        /**
+         * Writes an end condition's criterion.
+         *
+         * @param criterion The end condition's criterion
+         * @throws IOException If the stream cannot be written
+         */
+        void writeCriterion(ConditionCriterion criterion) throws IOException {
+            writeId(criterion.getType());
+            writeId(criterion.getItemId());
+            writeId(criterion.getRoomId());
+            writeId(criterion.getFlagName());
+            writeId(criterion.getFlagValue());
+        }
+    }
+
+    /**
+     * Reads a game definition written by {@link Encoder}.
+     */
+    private static class Decoder {
+        private final ByteBuffer buffer;
+        private final BinaryReader reader;
+        private final List<String> strings = new ArrayList<>();
+        
+        Decoder(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.reader = new BinaryReader(new ByteBufferInputStream(buffer));
+        }
+        
+        /**
+         * Reads a string through the string table.
+         *
+         * @return The string, or null
+         * @throws IOException If the stream ends, cannot be read, or refers to an unknown string
+         */
+        String readId() throws IOException {
+            int code = reader.readVarInt();
+            if (code == 0) {
+                return null;
+            }
+            if (code == 1) {
+                String value = reader.readString();
+                strings.add(value);
+                return value;
+            }
+            if (code - 2 >= strings.size()) {
+                throw new IOException("Corrupt world artifact: unknown string " + (code - 2));
+            }
+            return strings.get(code - 2);
+        }
+        
+        /**
+         * Reads a list.
+         *
+         * @param <T> The type of element
+         * @param values Reads one element
+         * @return The list, or null
+         * @throws IOException If the stream ends or cannot be read
+         */
+        <T> List<T> readList(ValueReader<T> values) throws IOException {
+            int count = reader.readCount();
+            if (count == 0) {
+                return null;
+            }
+            List<T> list = new ArrayList<>(count - 1);
+            for (int i = 1; i < count; i++) {
+                list.add(values.read());
+            }
+            return list;
+        }
+        
+        /**
+         * Reads a map, keeping the order it was written in.
+         *
+         * @param <T> The type of value
+         * @param values Reads one value
+         * @return The map, or null
+         * @throws IOException If the stream ends or cannot be read
+         */
+        <T> Map<String, T> readMap(ValueReader<T> values) throws IOException {
+            int count = reader.readCount();
+            if (count == 0) {
+                return null;
+            }
+            Map<String, T> map = new LinkedHashMap<>(Math.max(16, (int) ((count - 1) / 0.75f) + 1));
+            for (int i = 1; i < count; i++) {
+                String key = readId();
+                map.put(key, values.read());
+            }
+            return map;
+        }
+        
+        /**
+         * Reads a nullable value written by {@link Encoder#writeOptional}.
+         *
+         * @param <T> The type of value
+         * @param values Reads the value
+         * @return The value, or null
+         * @throws IOException If the stream ends or cannot be read
+         */
+        <T> T readOptional(ValueReader<T> values) throws IOException {
+            return reader.readByte() != 0 ? values.read() : null;
+        }
+        
+        /**
+         * Reads a boolean written as a byte.
+         *
+         * @return The value
+         * @throws IOException If the stream ends or cannot be read
+         */
+        boolean readBoolean() throws IOException {
+            return reader.readByte() != 0;
+        }
+        
+        /**
+         * Reads a game definition.
+         *
+         * @return The game definition
+         * @throws IOException If the stream ends or cannot be read
+         */
+        GameDefinition readDefinition() throws IOException {
+            GameDefinition definition = new GameDefinition();
+            definition.setGameInfo(readOptional(this::readGameInfo));
+            definition.setPlayerStart(readOptional(this::readPlayerStart));
+            definition.setRooms(readMap(() -> readOptional(this::readRoom)));
+            definition.setItems(readMap(() -> readOptional(this::readItem)));
+            definition.setNpcs(readMap(() -> readOptional(this::readNpc)));
+            definition.setPuzzles(readMap(() -> readOptional(this::readPuzzle)));
+            definition.setEndConditions(readList(() -> readOptional(this::readEndCondition)));
+            definition.setGlobalFlags(readMap(this::readId));
+            definition.setVerbAliases(readMap(this::readId));
+            
+            deferTexts(definition.getRooms(), Room::deferBaseDescription);
+            deferTexts(definition.getItems(), Item::deferDescription);
+            deferTexts(definition.getNpcs(), NpcDefinition::deferPresenceDescription);
+            return definition;
+        }
+        
+        /**
+         * Finds the regions holding one description of every entity in a map, without reading
+         * them, and gives each entity its description as lazy text.
+         *
+         * @param <T> The type of entity
+         * @param entities The entities, or null
+         * @param defer Gives an entity its description
+         * @throws IOException If the stream ends, cannot be read, or does not match the entities
+         */
+        <T> void deferTexts(Map<String, T> entities, BiConsumer<T, LazyText> defer) throws IOException {
+            int count = reader.readCount();
+            if (count != (entities != null ? entities.size() : 0)) {
+                throw new IOException("Corrupt world artifact: " + count + " descriptions for "
+                        + (entities != null ? entities.size() : 0) + " entries");
+            }
+            
+            int[] offsets = new int[(count + REGION_SIZE - 1) / REGION_SIZE];
+            for (int region = 0; region < offsets.length; region++) {
+                int length = reader.readCount();
+                if (length > buffer.remaining()) {
+                    throw new IOException("Corrupt world artifact: region overruns the file");
+                }
+                offsets[region] = buffer.position();
+                buffer.position(buffer.position() + length);
+            }
+            if (count == 0) {
+                return;
+            }
+            
+            TextRegions regions = new TextRegions(buffer.duplicate(), offsets, count);
+            int index = 0;
+            for (T entity : entities.values()) {
+                if (entity != null) {
+                    defer.accept(entity, new RegionText(regions, index));
+                }
+                index++;
+            }
+        }
+        
+        /**
+         * Reads game info.
+         *
+         * @return The game info
+         * @throws IOException If the stream ends or cannot be read
+         */
+        GameInfo readGameInfo() throws IOException {
+            return new GameInfo(reader.readString(), reader.readString(), reader.readString(), reader.readString());
+        }
+        
+        /**
+         * Reads the player's start.
+         *
+         * @return The player's start
+         * @throws IOException If the stream ends or cannot be read
+         */
+        PlayerStart readPlayerStart() throws IOException {
+            PlayerStart playerStart = new PlayerStart();
+            playerStart.setStartRoomId(readId());
+            playerStart.setInitialInventory(readList(this::readId));
+            return playerStart;
+        }
+        
+        /**
+         * Reads a room.
+         *
+         * @return The room
+         * @throws IOException If the stream ends or cannot be read
+         */
+        Room readRoom() throws IOException {
+            Room room = new Room();
+            room.setId(readId());
+            room.setName(reader.readString());
+            room.setItemIds(readList(this::readId));
+            room.setNpcIds(readList(this::readId));
+            room.setExits(readMap(() -> readOptional(this::readExit)));
+            return room;
+        }
+        
+        /**
+         * Reads an exit.
+         *
+         * @return The exit
+         * @throws IOException If the stream ends or cannot be read
+         */
+        Exit readExit() throws IOException {
+            Exit exit = new Exit();
+            exit.setTargetRoomId(readId());
+            exit.setInitiallyLocked(readBoolean());
+            exit.setLockedMessage(readId());
+            exit.setUnlockedMessage(readId());
+            exit.setRequiredItemIdToUnlock(readId());
+            exit.setRequiredPuzzleIdSolved(readId());
+            exit.setRequiredFlagName(readId());
+            exit.setRequiredFlagValue(readId());
+            return exit;
+        }
+        
+        /**
+         * Reads an item.
+         *
+         * @return The item
+         * @throws IOException If the stream ends or cannot be read
+         */
+        Item readItem() throws IOException {
+            Item item = new Item();
+            item.setId(readId());
+            item.setName(reader.readString());
+            item.setTakeable(readBoolean());
+            item.setCanBeCombinedWith(readList(this::readId));
+            item.setCombinationResultItemId(readId());
+            item.setUseEffects(readMap(() -> readOptional(this::readUseEffect)));
+            return item;
+        }
+        
+        /**
+         * Reads an item's use effect.
+         *
+         * @return The item's use effect
+         * @throws IOException If the stream ends or cannot be read
+         */
+        UseEffect readUseEffect() throws IOException {
+            UseEffect effect = new UseEffect();
+            effect.setTriggersPuzzleId(readId());
+            effect.setSuccessMessage(reader.readString());
+            effect.setFailureMessage(reader.readString());
+            effect.setConsumesItem(readBoolean());
+            effect.setSetsFlagName(readId());
+            effect.setSetsFlagValue(readId());
+            return effect;
+        }
+        
+        /**
+         * Reads an NPC.
+         *
+         * @return The NPC
+         * @throws IOException If the stream ends or cannot be read
+         */
+        NpcDefinition readNpc() throws IOException {
+            NpcDefinition npc = new NpcDefinition();
+            npc.setId(readId());
+            npc.setName(reader.readString());
+            npc.setInitialDialogueNodeId(readId());
+            npc.setDialogueTree(readMap(() -> readOptional(this::readDialogueNode)));
+            npc.setInitialItemIds(readList(this::readId));
+            npc.setInitialNpcFlags(readMap(this::readId));
+            return npc;
+        }
+        
+        /**
+         * Reads a dialogue node.
+         *
+         * @return The dialogue node
+         * @throws IOException If the stream ends or cannot be read
+         */
+        DialogueNode readDialogueNode() throws IOException {
+            DialogueNode node = new DialogueNode();
+            node.setText(reader.readString());
+            node.setResponses(readList(() -> readOptional(this::readResponseOption)));
+            node.setTriggersQuestId(readId());
+            node.setGivesItemId(readId());
+            node.setRequiresItemId(readId());
+            node.setSetsNpcFlag(readId());
+            node.setSetsGlobalFlag(readId());
+            node.setEndsDialogue(readBoolean());
+            return node;
+        }
+        
+        /**
+         * Reads a dialogue response option.
+         *
+         * @return The dialogue response option
+         * @throws IOException If the stream ends or cannot be read
+         */
+        DialogueResponseOption readResponseOption() throws IOException {
+            DialogueResponseOption option = new DialogueResponseOption();
+            option.setText(reader.readString());
+            option.setTargetNodeId(readId());
+            option.setRequiresPlayerItem(readId());
+            option.setRequiresNpcFlag(readId());
+            option.setRequiresGlobalFlag(readId());
+            return option;
+        }
+        
+        /**
+         * Reads a puzzle.
+         *
+         * @return The puzzle
+         * @throws IOException If the stream ends or cannot be read
+         */
+        Puzzle readPuzzle() throws IOException {
+            Puzzle puzzle = new Puzzle();
+            puzzle.setId(readId());
+            puzzle.setDescription(reader.readString());
+            puzzle.setSolutionCondition(readOptional(this::readSolutionCondition));
+            puzzle.setSuccessMessage(reader.readString());
+            puzzle.setFailureMessage(reader.readString());
+            puzzle.setAlreadySolvedMessage(reader.readString());
+            puzzle.setEffectsOnSolve(readList(() -> readOptional(this::readPuzzleEffect)));
+            puzzle.setSetsFlagOnSolve(readId());
+            puzzle.setSetsFlagValueOnSolve(readId());
+            return puzzle;
+        }
+        
+        /**
+         * Reads a puzzle's solution condition.
+         *
+         * @return The puzzle's solution condition
+         * @throws IOException If the stream ends or cannot be read
+         */
+        PuzzleSolutionCondition readSolutionCondition() throws IOException {
+            PuzzleSolutionCondition condition = new PuzzleSolutionCondition();
+            condition.setType(readId());
+            condition.setRequiredItemId(readId());
+            condition.setRequiredTargetId(readId());
+            condition.setRequiredNpcId(readId());
+            condition.setRequiredNpcFlag(readId());
+            condition.setRequiredNpcFlagValue(readId());
+            condition.setRequiredGlobalFlag(readId());
+            condition.setRequiredGlobalFlagValue(readId());
+            return condition;
+        }
+        
+        /**
+         * Reads a puzzle effect.
+         *
+         * @return The puzzle effect
+         * @throws IOException If the stream ends or cannot be read
+         */
+        PuzzleEffect readPuzzleEffect() throws IOException {
+            PuzzleEffect effect = new PuzzleEffect();
+            effect.setType(readId());
+            effect.setTargetRoomId(readId());
+            effect.setExitDirection(readId());
+            effect.setItemIdToSpawnOrRemove(readId());
+            effect.setNpcIdToMove(readId());
+            effect.setDestinationRoomId(readId());
+            effect.setFlagToSet(readId());
+            effect.setFlagValue(readId());
+            return effect;
+        }
+        
+        /**
+         * Reads an end condition.
+         *
+         * @return The end condition
+         * @throws IOException If the stream ends or cannot be read
+         */
+        EndCondition readEndCondition() throws IOException {
+            EndCondition condition = new EndCondition();
+            condition.setType(readId());
+            condition.setMessage(reader.readString());
+            condition.setCriteria(readList(() -> readOptional(this::readCriterion)));
+            return condition;
+        }
+        
+        /**
+         * Reads an end condition's criterion.
+         *
+         * @return The end condition's criterion
+         * @throws IOException If the stream ends or cannot be read
+         */
+        ConditionCriterion readCriterion() throws IOException {
+            ConditionCriterion criterion = new ConditionCriterion();
+            criterion.setType(readId());
+            criterion.setItemId(readId());
+            criterion.setRoomId(readId());
+            criterion.setFlagName(readId());
+            criterion.setFlagValue(readId());
+            return criterion;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package local.pphilfre.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An output sink that collects text in memory and hands it to a writer in a single
+ * write on each flush, e.g. once per command for a console or socket session.
+ * Like {@link java.io.PrintStream}, it never throws on write failure; use {@link #checkError()}.
+ */
+public class BufferedOutputSink implements OutputSink {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final StringBuilder buffer;
+    private final Writer writer;
+    private boolean error;
+
+    /**
+     * Creates a sink that writes UTF-8 text to an output stream.
+     *
+     * @param out The stream to write to
+     */
+    public BufferedOutputSink(OutputStream out) {
+        this(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a sink that writes to a writer.
+     *
+     * @param writer The writer to write to
+     */
+    public BufferedOutputSink(Writer writer) {
+        this.buffer = new StringBuilder(1024);
+        this.writer = writer;
+    }
+
+    @Override
+    public void print(String text) {
+        buffer.append(text);
+    }
+
+    @Override
+    public void println(String text) {
+        buffer.append(text).append(LINE_SEPARATOR);
+    }
+
+    @Override
+    public void println() {
+        buffer.append(LINE_SEPARATOR);
+    }
+
+    @Override
+    public void flush() {
+        if (buffer.length() == 0) {
+            return;
+        }
+        
+        try {
+            writer.append(buffer);
+            writer.flush();
+        } catch (IOException e) {
+            error = true;
+        } finally {
+            buffer.setLength(0);
+        }
+    }
+
+    /**
+     * Checks whether a flush has failed, e.g. because the client disconnected.
+     *
+     * @return true if writing to the underlying writer has failed, false otherwise
+     */
+    public boolean checkError() {
+        return error;
+    }
+}
@@ -0,0 +1,28 @@
+package local.pphilfre.utils;
+
+/**
+ * An output sink that throws away everything written to it, for games nobody is watching,
+ * such as those the solver and the benchmarks play.
+ */
+public class DiscardingOutputSink implements OutputSink {
+
+    @Override
+    public void print(String text) {
+        // Discarded
+    }
+
+    @Override
+    public void println(String text) {
+        // Discarded
+    }
+
+    @Override
+    public void println() {
+        // Discarded
+    }
+
+    @Override
+    public void flush() {
+        // Nothing to push anywhere
+    }
+}
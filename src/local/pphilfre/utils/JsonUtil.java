@@ -1,13 +1,16 @@
 package local.pphilfre.utils;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.io.OutputStream;
 
 /**
  * A utility class for handling JSON serialization and deserialization.
@@ -35,51 +38,84 @@ public class JsonUtil {
     }
     
     /**
-     * Loads a game definition from a JSON file, trying both direct path and classpath resource.
+     * Opens a JSON file, trying the direct path, then the classpath, then the path relative to
+     * the working directory.
      *
-     * @param <T> The type of object to load
      * @param filePath The path to the JSON file
-     * @param clazz The class of the object to load
-     * @return The loaded object
-     * @throws IOException If an error occurs during loading
+     * @return A buffered stream over the file, which the caller must close
+     * @throws IOException If the file cannot be found or opened
      */
-    public static <T> T loadGameDefinition(String filePath, Class<T> clazz) throws IOException {
+    public static InputStream openJsonFile(String filePath) throws IOException {
         // First try direct file path
         File file = new File(filePath);
         if (file.exists()) {
-            return objectMapper.readValue(file, clazz);
+            return new BufferedInputStream(new FileInputStream(file));
         }
         
         // Then try classpath resource
         InputStream is = JsonUtil.class.getClassLoader().getResourceAsStream(filePath);
         if (is != null) {
-            return objectMapper.readValue(is, clazz);
+            return new BufferedInputStream(is);
         }
         
         // Try relative path
         file = new File("." + File.separator + filePath);
         if (file.exists()) {
-            return objectMapper.readValue(file, clazz);
+            return new BufferedInputStream(new FileInputStream(file));
         }
         
         throw new IOException("Could not find JSON file at path: " + filePath);
     }
-    
+
     /**
-     * Saves an object to a JSON file.
+     * Writes an object as JSON to a stream. The stream is not closed.
      *
-     * @param object The object to save
-     * @param filePath The path to the JSON file
-     * @throws IOException If an error occurs during saving
+     * @param object The object to write
+     * @param out The stream to write to
+     * @throws IOException If an error occurs during writing
      */
-    public static void saveObjectToJsonFile(Object object, String filePath) throws IOException {
-        // Ensure parent directories exist
-        File file = new File(filePath);
-        File parentDir = file.getParentFile();
-        if (parentDir != null) {
-            Files.createDirectories(parentDir.toPath());
-        }
-        
-        objectMapper.writeValue(file, object);
+    public static void writeObject(Object object, OutputStream out) throws IOException {
+        objectMapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(out, object);
+    }
+
+    /**
+     * Reads an object from JSON on a stream. The stream is not closed.
+     *
+     * @param <T> The type of object to read
+     * @param in The stream to read from
+     * @param clazz The class of the object to read
+     * @return The object
+     * @throws IOException If an error occurs during reading
+     */
+    public static <T> T readObject(InputStream in, Class<T> clazz) throws IOException {
+        return objectMapper.readerFor(clazz).without(JsonParser.Feature.AUTO_CLOSE_SOURCE).readValue(in);
+    }
+
+    /**
+     * Creates a streaming parser over JSON on a stream, for reading only part of a document.
+     * Closing the parser does not close the stream.
+     *
+     * @param in The stream to read from
+     * @return The parser
+     * @throws IOException If the parser cannot be created
+     */
+    public static JsonParser createParser(InputStream in) throws IOException {
+        JsonParser parser = objectMapper.getFactory().createParser(in);
+        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        return parser;
+    }
+
+    /**
+     * Creates a streaming generator writing compact JSON to a stream, for documents too large
+     * to build in memory first. Closing the generator does not close the stream.
+     *
+     * @param out The stream to write to
+     * @return The generator
+     * @throws IOException If the generator cannot be created
+     */
+    public static JsonGenerator createGenerator(OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return generator;
     }
 }
@@ -0,0 +1,33 @@
+package local.pphilfre.utils;
+
+/**
+ * Destination for all text the game shows to a player.
+ * Implementations are used by a single session at a time and need not be thread-safe.
+ */
+public interface OutputSink {
+
+    /**
+     * Writes text without a trailing line break.
+     *
+     * @param text The text to write
+     */
+    void print(String text);
+
+    /**
+     * Writes text followed by a line break.
+     *
+     * @param text The text to write
+     */
+    void println(String text);
+
+    /**
+     * Writes a line break.
+     */
+    void println();
+
+    /**
+     * Pushes everything written so far to the underlying destination.
+     * The game calls this once per command and before waiting for input.
+     */
+    void flush();
+}
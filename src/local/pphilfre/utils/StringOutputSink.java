@@ -0,0 +1,46 @@
+package local.pphilfre.utils;
+
+/**
+ * An output sink that keeps everything written to it in memory, for capturing game output.
+ */
+public class StringOutputSink implements OutputSink {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    @Override
+    public void print(String text) {
+        buffer.append(text);
+    }
+
+    @Override
+    public void println(String text) {
+        buffer.append(text).append(LINE_SEPARATOR);
+    }
+
+    @Override
+    public void println() {
+        buffer.append(LINE_SEPARATOR);
+    }
+
+    @Override
+    public void flush() {
+        // Nothing to push anywhere; the text stays available until drained
+    }
+
+    /**
+     * Returns everything written since the last drain and clears the sink.
+     *
+     * @return The captured text
+     */
+    public String drain() {
+        String text = buffer.toString();
+        buffer.setLength(0);
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+}
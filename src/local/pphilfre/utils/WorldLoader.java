@@ -0,0 +1,481 @@
+package local.pphilfre.utils;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import local.pphilfre.datamodel.EndCondition;
+import local.pphilfre.datamodel.Exit;
+import local.pphilfre.datamodel.GameDefinition;
+import local.pphilfre.datamodel.GameInfo;
+import local.pphilfre.datamodel.Item;
+import local.pphilfre.datamodel.NpcDefinition;
+import local.pphilfre.datamodel.PlayerStart;
+import local.pphilfre.datamodel.Puzzle;
+import local.pphilfre.datamodel.Room;
+import local.pphilfre.datamodel.UseEffect;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads a world file with Jackson's streaming parser, one section and one entry at a time.
+ * <p>
+ * Binding the whole document with {@code ObjectMapper.readValue} goes through reflective
+ * deserializers for every room and exit. Rooms, exits and items make up nearly all of a large
+ * world, so this loader reads them by hand straight from the token stream; the rarer, deeply
+ * nested sections (NPC dialogue trees, puzzles, end conditions) are still bound by Jackson, but
+ * one entry at a time. Every ID is interned while loading, so the thousands of exits, item lists
+ * and requirements that name the same room or item share a single string.
+ * <p>
+ * The result is the same {@link GameDefinition}, in the same order, as binding the file with
+ * Jackson, so compiled ordinals and world fingerprints do not change. Like Jackson, the loader
+ * rejects fields it does not know.
+ */
+public class WorldLoader {
+    private final JsonParser parser;
+    private final Map<String, String> ids = new HashMap<>(); // intern pool for IDs, for this load only
+
+    /**
+     * Creates a loader over a parser.
+     *
+     * @param parser The parser, positioned before the document
+     */
+    private WorldLoader(JsonParser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Loads a game definition from a world file, looking for it the same way as
+     * {@link JsonUtil#openJsonFile(String)}.
+     *
+     * @param filePath The path to the world file
+     * @return The game definition, not yet validated or sealed
+     * @throws IOException If the file cannot be found or is not a valid world
+     */
+    public static GameDefinition load(String filePath) throws IOException {
+        try (InputStream in = JsonUtil.openJsonFile(filePath)) {
+            return load(in);
+        }
+    }
+
+    /**
+     * Loads a game definition from a stream. The stream is not closed.
+     *
+     * @param in The stream holding the world JSON
+     * @return The game definition, not yet validated or sealed
+     * @throws IOException If the stream does not hold a valid world
+     */
+    public static GameDefinition load(InputStream in) throws IOException {
+        try (JsonParser parser = JsonUtil.createParser(in)) {
+            parser.nextToken();
+            return new WorldLoader(parser).readGameDefinition();
+        }
+    }
+
+    /**
+     * Reads the whole document.
+     *
+     * @return The game definition
+     * @throws IOException If the document is not a valid world
+     */
+    private GameDefinition readGameDefinition() throws IOException {
+        expect(JsonToken.START_OBJECT, "a world definition");
+        GameDefinition definition = new GameDefinition();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "gameInfo":
+                    definition.setGameInfo(readBound(GameInfo.class));
+                    break;
+                case "playerStart":
+                    definition.setPlayerStart(readPlayerStart());
+                    break;
+                case "rooms":
+                    definition.setRooms(readMap(this::readRoom));
+                    break;
+                case "items":
+                    definition.setItems(readMap(this::readItem));
+                    break;
+                case "npcs":
+                    definition.setNpcs(readMap(this::readNpc));
+                    break;
+                case "puzzles":
+                    definition.setPuzzles(readMap(this::readPuzzle));
+                    break;
+                case "endConditions":
+                    definition.setEndConditions(readList(() -> readBound(EndCondition.class)));
+                    break;
+                case "globalFlags":
+                    definition.setGlobalFlags(readMap(this::readId));
+                    break;
+                case "verbAliases":
+                    definition.setVerbAliases(readMap(this::readString));
+                    break;
+                default:
+                    throw unknownField(field, GameDefinition.class);
+            }
+        }
+        return definition;
+    }
+
+    /**
+     * Reads the player's starting position and inventory.
+     *
+     * @return The player start, or null
+     * @throws IOException If the JSON is not a valid player start
+     */
+    private PlayerStart readPlayerStart() throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        
+        expect(JsonToken.START_OBJECT, "a player start");
+        PlayerStart playerStart = new PlayerStart();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "startRoomId":
+                    playerStart.setStartRoomId(readId());
+                    break;
+                case "initialInventory":
+                    playerStart.setInitialInventory(readList(this::readId));
+                    break;
+                default:
+                    throw unknownField(field, PlayerStart.class);
+            }
+        }
+        return playerStart;
+    }
+
+    /**
+     * Reads a room and its exits.
+     *
+     * @return The room, or null
+     * @throws IOException If the JSON is not a valid room
+     */
+    private Room readRoom() throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        
+        expect(JsonToken.START_OBJECT, "a room");
+        Room room = new Room();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                    room.setId(readId());
+                    break;
+                case "name":
+                    room.setName(readString());
+                    break;
+                case "baseDescription":
+                    room.setBaseDescription(readString());
+                    break;
+                case "itemIds":
+                    room.setItemIds(readList(this::readId));
+                    break;
+                case "npcIds":
+                    room.setNpcIds(readList(this::readId));
+                    break;
+                case "exits":
+                    room.setExits(readMap(this::readExit));
+                    break;
+                default:
+                    throw unknownField(field, Room.class);
+            }
+        }
+        return room;
+    }
+
+    /**
+     * Reads an exit.
+     *
+     * @return The exit, or null
+     * @throws IOException If the JSON is not a valid exit
+     */
+    private Exit readExit() throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        
+        expect(JsonToken.START_OBJECT, "an exit");
+        Exit exit = new Exit();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "targetRoomId":
+                    exit.setTargetRoomId(readId());
+                    break;
+                case "isInitiallyLocked":
+                    exit.setInitiallyLocked(readBoolean());
+                    break;
+                case "lockedMessage":
+                    exit.setLockedMessage(readString());
+                    break;
+                case "unlockedMessage":
+                    exit.setUnlockedMessage(readString());
+                    break;
+                case "requiredItemIdToUnlock":
+                    exit.setRequiredItemIdToUnlock(readId());
+                    break;
+                case "requiredPuzzleIdSolved":
+                    exit.setRequiredPuzzleIdSolved(readId());
+                    break;
+                case "requiredFlagName":
+                    exit.setRequiredFlagName(readId());
+                    break;
+                case "requiredFlagValue":
+                    exit.setRequiredFlagValue(readId());
+                    break;
+                default:
+                    throw unknownField(field, Exit.class);
+            }
+        }
+        return exit;
+    }
+
+    /**
+     * Reads an item.
+     *
+     * @return The item, or null
+     * @throws IOException If the JSON is not a valid item
+     */
+    private Item readItem() throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        
+        expect(JsonToken.START_OBJECT, "an item");
+        Item item = new Item();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                    item.setId(readId());
+                    break;
+                case "name":
+                    item.setName(readString());
+                    break;
+                case "description":
+                    item.setDescription(readString());
+                    break;
+                case "takeable":
+                    item.setTakeable(readBoolean());
+                    break;
+                case "canBeCombinedWith":
+                    item.setCanBeCombinedWith(readList(this::readId));
+                    break;
+                case "combinationResultItemId":
+                    item.setCombinationResultItemId(readId());
+                    break;
+                case "useEffects":
+                    item.setUseEffects(readMap(() -> readBound(UseEffect.class)));
+                    break;
+                default:
+                    throw unknownField(field, Item.class);
+            }
+        }
+        return item;
+    }
+
+    /**
+     * Reads an NPC, binding it with Jackson and then interning its IDs.
+     *
+     * @return The NPC, or null
+     * @throws IOException If the JSON is not a valid NPC
+     */
+    private NpcDefinition readNpc() throws IOException {
+        NpcDefinition npc = readBound(NpcDefinition.class);
+        if (npc != null) {
+            npc.setId(intern(npc.getId()));
+            npc.setInitialItemIds(internAll(npc.getInitialItemIds()));
+        }
+        return npc;
+    }
+
+    /**
+     * Reads a puzzle, binding it with Jackson and then interning its ID.
+     *
+     * @return The puzzle, or null
+     * @throws IOException If the JSON is not a valid puzzle
+     */
+    private Puzzle readPuzzle() throws IOException {
+        Puzzle puzzle = readBound(Puzzle.class);
+        if (puzzle != null) {
+            puzzle.setId(intern(puzzle.getId()));
+        }
+        return puzzle;
+    }
+
+    /**
+     * Binds the value at the current token with Jackson.
+     *
+     * @param <T> The type to bind to
+     * @param type The class to bind to
+     * @return The bound value, or null
+     * @throws IOException If the value cannot be bound
+     */
+    private <T> T readBound(Class<T> type) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        return parser.readValueAs(type);
+    }
+
+    /**
+     * Reads an object whose keys are IDs, keeping the order of the file.
+     *
+     * @param <T> The type of the values
+     * @param values Reads one value at the current token
+     * @return The map, or null
+     * @throws IOException If the JSON is not an object of valid values
+     */
+    private <T> Map<String, T> readMap(ValueReader<T> values) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        
+        expect(JsonToken.START_OBJECT, "an object");
+        Map<String, T> map = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = intern(parser.getCurrentName());
+            parser.nextToken();
+            map.put(key, values.read());
+        }
+        return map;
+    }
+
+    /**
+     * Reads an array.
+     *
+     * @param <T> The type of the elements
+     * @param values Reads one element at the current token
+     * @return The list, or null
+     * @throws IOException If the JSON is not an array of valid elements
+     */
+    private <T> List<T> readList(ValueReader<T> values) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        
+        expect(JsonToken.START_ARRAY, "an array");
+        List<T> list = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            list.add(values.read());
+        }
+        return list;
+    }
+
+    /**
+     * Reads a string that names something in the world, and interns it.
+     *
+     * @return The interned string, or null
+     * @throws IOException If the value is not a string
+     */
+    private String readId() throws IOException {
+        return intern(readString());
+    }
+
+    /**
+     * Reads a string. Numbers and booleans are read as their text, as Jackson does.
+     *
+     * @return The string, or null
+     * @throws IOException If the value is an object or array
+     */
+    private String readString() throws IOException {
+        if (parser.currentToken().isStructStart()) {
+            throw new JsonParseException(parser, "Expected a string but found " + parser.currentToken());
+        }
+        return parser.getValueAsString();
+    }
+
+    /**
+     * Reads a boolean. Strings such as "true" are accepted, as Jackson does.
+     *
+     * @return The boolean
+     * @throws IOException If the value is an object or array
+     */
+    private boolean readBoolean() throws IOException {
+        if (parser.currentToken().isStructStart()) {
+            throw new JsonParseException(parser, "Expected a boolean but found " + parser.currentToken());
+        }
+        return parser.getValueAsBoolean();
+    }
+
+    /**
+     * Checks that the parser is at a given token.
+     *
+     * @param token The expected token
+     * @param what A description of the expected value, for the error message
+     * @throws IOException If the parser is at a different token
+     */
+    private void expect(JsonToken token, String what) throws IOException {
+        if (parser.currentToken() != token) {
+            throw new JsonParseException(parser, "Expected " + what + " but found " + parser.currentToken());
+        }
+    }
+
+    /**
+     * Creates the error for a field the model does not have.
+     *
+     * @param field The field name
+     * @param type The class being read
+     * @return The error
+     */
+    private JsonParseException unknownField(String field, Class<?> type) {
+        return new JsonParseException(parser, "Unrecognized field \"" + field + "\" (class " + type.getName() + ")");
+    }
+
+    /**
+     * Gets the shared instance of an ID.
+     *
+     * @param id The ID, or null
+     * @return The first instance of an equal ID seen during this load, or null
+     */
+    private String intern(String id) {
+        if (id == null) {
+            return null;
+        }
+        String existing = ids.putIfAbsent(id, id);
+        return existing != null ? existing : id;
+    }
+
+    /**
+     * Interns every ID in a list, in place.
+     *
+     * @param list The list of IDs
+     * @return The same list
+     */
+    private List<String> internAll(List<String> list) {
+        for (int i = 0; i < list.size(); i++) {
+            list.set(i, intern(list.get(i)));
+        }
+        return list;
+    }
+
+    /**
+     * Reads one value at the parser's current token.
+     *
+     * @param <T> The type of value
+     */
+    private interface ValueReader<T> {
+        /**
+         * Reads the value.
+         *
+         * @return The value
+         * @throws IOException If the value cannot be read
+         */
+        T read() throws IOException;
+    }
+}